@@ -69,6 +69,14 @@ public interface ClientConfig extends Config {
     @DefaultBoolean(true)
     boolean getCollectionDatasourceDbSortEnabled();
 
+    /**
+     * @return Whether to calculate aggregations of a paged datasource on DB (using separate SELECT with aggregate
+     * functions), so the results cover all the rows instead of the current page only.
+     */
+    @Property("cuba.collectionDatasourceDbAggregationEnabled")
+    @DefaultBoolean(true)
+    boolean getCollectionDatasourceDbAggregationEnabled();
+
     /**
      * @return If true, client will try to find missing localized messages on the server.
      */
@@ -31,6 +31,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Component(DataManager.NAME)
 public class DataManagerClientImpl implements DataManager {
@@ -41,6 +42,9 @@ public class DataManagerClientImpl implements DataManager {
     @Inject
     protected Metadata metadata;
 
+    @Inject
+    protected GlobalConfig globalConfig;
+
     @Nullable
     @Override
     public <E extends Entity> E load(LoadContext<E> context) {
@@ -53,6 +57,40 @@ public class DataManagerClientImpl implements DataManager {
         return dataService.loadList(context);
     }
 
+    @Override
+    public <E extends Entity> void loadStream(LoadContext<E> context, Consumer<E> consumer) {
+        LoadContext.Query query = context.getQuery();
+        if (query == null) {
+            E entity = load(context);
+            if (entity != null) {
+                consumer.accept(entity);
+            }
+            return;
+        }
+
+        // a database cursor cannot be kept open between remote invocations, so load the result page by page
+        int pageSize = query.getFetchSize() > 0 ? query.getFetchSize() : globalConfig.getDataManagerStreamingFetchSize();
+        int firstResult = query.getFirstResult();
+        int remaining = query.getMaxResults() > 0 ? query.getMaxResults() : Integer.MAX_VALUE;
+
+        @SuppressWarnings("unchecked")
+        LoadContext<E> pageContext = (LoadContext<E>) context.copy();
+        pageContext.setLoadPartialEntities(context.isLoadPartialEntities());
+        while (remaining > 0) {
+            int maxResults = Math.min(pageSize, remaining);
+            pageContext.getQuery().setFirstResult(firstResult);
+            pageContext.getQuery().setMaxResults(maxResults);
+
+            List<E> page = dataService.loadList(pageContext);
+            page.forEach(consumer);
+            if (page.size() < maxResults) {
+                break;
+            }
+            firstResult += page.size();
+            remaining -= page.size();
+        }
+    }
+
     @Override
     public long getCount(LoadContext<? extends Entity> context) {
         return dataService.getCount(context);
@@ -23,8 +23,9 @@ import javax.annotation.Nullable;
 import javax.persistence.FlushModeType;
 import javax.persistence.LockModeType;
 import javax.persistence.TemporalType;
-import java.util.List;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Interface used to control query execution.
@@ -54,6 +55,36 @@ public interface Query {
      */
     List getResultList();
 
+    /**
+     * Execute a SELECT query and return an iterator over its results, which are read from a forward-only database
+     * cursor as the iterator advances. Unlike {@link #getResultList()}, the query results are not cached and
+     * are not collected in memory.
+     * <p>The returned iterator must be closed before the end of the current transaction.
+     * <p>The default implementation iterates over the list returned by {@link #getResultList()}.
+     *
+     * @param fetchSize JDBC fetch size, 0 to use the driver's default
+     * @return iterator over the results
+     * @throws IllegalStateException if called for a Java Persistence query language UPDATE or DELETE statement
+     */
+    default QueryResultIterator getResultIterator(int fetchSize) {
+        Iterator iterator = getResultList().iterator();
+        return new QueryResultIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Object next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
     /**
      * Execute a SELECT query that returns a single result.
      *
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core;
+
+import java.util.Iterator;
+
+/**
+ * Iterator over query results which are read from an open database cursor.
+ * <p>The iterator holds JDBC resources, so it must be closed after use, preferably in try-with-resources block.
+ * It is valid only inside the transaction in which it was created.
+ *
+ * @see Query#getResultIterator(int)
+ */
+public interface QueryResultIterator<T> extends Iterator<T>, AutoCloseable {
+
+    /**
+     * Releases the underlying database cursor.
+     */
+    @Override
+    void close();
+}
@@ -35,6 +35,12 @@ public interface TypedQuery<T> extends Query {
     @Override
     List<T> getResultList();
 
+    @Override
+    @SuppressWarnings("unchecked")
+    default QueryResultIterator<T> getResultIterator(int fetchSize) {
+        return Query.super.getResultIterator(fetchSize);
+    }
+
     @Override
     T getSingleResult();
 
@@ -21,6 +21,7 @@ import com.haulmont.cuba.core.config.Config;
 import com.haulmont.cuba.core.config.Property;
 import com.haulmont.cuba.core.config.Source;
 import com.haulmont.cuba.core.config.SourceType;
+import com.haulmont.cuba.core.config.defaults.DefaultBoolean;
 import com.haulmont.cuba.core.config.defaults.DefaultInt;
 import com.haulmont.cuba.core.config.defaults.DefaultLong;
 
@@ -51,4 +52,26 @@ public interface ClusterConfig extends Config {
     @Property("cuba.cluster.messageSendingQueueCapacity")
     @DefaultInt(Integer.MAX_VALUE)
     int getClusterMessageSendingQueueCapacity();
+
+    /**
+     * @return whether asynchronously sent messages are collected into batches which are sent to the cluster
+     * as single compressed messages
+     */
+    @Property("cuba.cluster.messageBatchingEnabled")
+    @DefaultBoolean(false)
+    boolean getClusterMessageBatchingEnabled();
+
+    /**
+     * @return time in milliseconds during which messages are collected into a batch before sending
+     */
+    @Property("cuba.cluster.messageBatchingWindow")
+    @DefaultInt(50)
+    int getClusterMessageBatchingWindow();
+
+    /**
+     * @return maximum number of messages in a batch. A batch is sent immediately when it reaches this size.
+     */
+    @Property("cuba.cluster.messageBatchMaxSize")
+    @DefaultInt(500)
+    int getClusterMessageBatchMaxSize();
 }
@@ -16,6 +16,12 @@
  */
 package com.haulmont.cuba.core.app;
 
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * Interface to be implemented by middleware cluster listeners. A cluster listener receives messages from other nodes
  * in the cluster.
@@ -50,4 +56,31 @@ public interface ClusterListener<T> {
      * @param state byte array containing the state
      */
     void setState(byte[] state);
+
+    /**
+     * Write state of this cluster node to the stream to send it to other nodes. The stream must not be closed.
+     *
+     * <p>The default implementation writes the result of {@link #getState()}. Listeners having large state should
+     * override this method together with {@link #readState(InputStream)} to stream the state, e.g. using
+     * {@link ClusterStateCodec}.</p>
+     *
+     * @param output stream to write the state to
+     */
+    default void writeState(OutputStream output) throws IOException {
+        byte[] state = getState();
+        if (state != null) {
+            output.write(state);
+        }
+    }
+
+    /**
+     * Read state written by {@link #writeState(OutputStream)} on other active node. The stream must not be closed.
+     *
+     * <p>The default implementation reads the whole stream and passes it to {@link #setState(byte[])}.</p>
+     *
+     * @param input stream containing the state
+     */
+    default void readState(InputStream input) throws IOException {
+        setState(IOUtils.toByteArray(input));
+    }
 }
@@ -18,12 +18,15 @@ package com.haulmont.cuba.core.app;
 
 import com.google.common.base.Strings;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.haulmont.bali.datastruct.Pair;
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.global.GlobalConfig;
 import com.haulmont.cuba.core.global.Resources;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.serialization.SerializationSupport;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
 import org.jgroups.*;
 import org.jgroups.conf.XmlConfigurator;
 import org.jgroups.jmx.JmxConfigurator;
@@ -39,11 +42,16 @@ import javax.inject.Inject;
 import javax.management.MBeanServer;
 import java.io.*;
 import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Standard implementation of middleware clustering based on JGroups.
@@ -61,6 +69,12 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
 
     protected ThreadPoolExecutor executor;
 
+    protected ScheduledExecutorService batchingExecutor;
+
+    protected final Object batchLock = new Object();
+
+    protected List<Serializable> batch = new ArrayList<>();
+
     @Inject
     protected Resources resources;
 
@@ -76,6 +90,10 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
 
     protected static final String STATE_MAGIC = "CUBA_STATE";
 
+    protected static final String STREAMED_STATE_MAGIC = "CUBA_STREAMED_STATE";
+
+    protected static final int STATE_CHUNK_SIZE = 64 * 1024;
+
     public ClusterManager() {
         AppContext.addListener(this);
     }
@@ -93,10 +111,19 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
                 new RejectedExecutionHandler() {
                     @Override
                     public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-                        SendMessageRunnable sendMessageRunnable = (SendMessageRunnable) r;
-                        log.info("Queue capacity is exceeded. Message: {}: {}", sendMessageRunnable.message.getClass(), sendMessageRunnable.message);
+                        if (r instanceof SendBatchRunnable) {
+                            log.info("Queue capacity is exceeded. Batch of {} messages", ((SendBatchRunnable) r).messages.size());
+                        } else {
+                            SendMessageRunnable sendMessageRunnable = (SendMessageRunnable) r;
+                            log.info("Queue capacity is exceeded. Message: {}: {}", sendMessageRunnable.message.getClass(), sendMessageRunnable.message);
+                        }
                     }
                 });
+        if (clusterConfig.getClusterMessageBatchingEnabled()) {
+            batchingExecutor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setNameFormat("ClusterManagerMessageBatcher-%d").setDaemon(true).build());
+        }
+        messagesStat.put(ClusterMessageBatch.class.getName(), new MessageStat());
     }
 
     @Override
@@ -107,6 +134,8 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
         Boolean sync = forceSyncSending.get();
         if (sync != null && sync) {
             internalSend(message, true);
+        } else if (batchingExecutor != null) {
+            addToBatch(message);
         } else {
             log.trace("Submitting message: {}: {} to send asynchronously", message.getClass(), message);
             executor.execute(new SendMessageRunnable(message));
@@ -130,15 +159,92 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
             if (stat != null) {
                 stat.updateSent(bytes.length);
             }
-            Message msg = new Message(null, null, bytes);
-            if (sync) {
-                msg.setFlag(Message.Flag.RSVP);
+            sendBytes(bytes, sync);
+        } finally {
+            sw.stop();
+        }
+    }
+
+    protected void sendBytes(byte[] bytes, boolean sync) {
+        Message msg = new Message(null, null, bytes);
+        if (sync) {
+            msg.setFlag(Message.Flag.RSVP);
+        }
+        try {
+            channel.send(msg);
+        } catch (Exception e) {
+            log.error("Error sending message", e);
+        }
+    }
+
+    protected void addToBatch(Serializable message) {
+        log.trace("Adding message: {}: {} to batch", message.getClass(), message);
+        List<Serializable> messages = null;
+        synchronized (batchLock) {
+            batch.add(message);
+            if (batch.size() >= clusterConfig.getClusterMessageBatchMaxSize()) {
+                messages = batch;
+                batch = new ArrayList<>();
+            } else if (batch.size() == 1) {
+                batchingExecutor.schedule(this::flushBatch, clusterConfig.getClusterMessageBatchingWindow(), TimeUnit.MILLISECONDS);
             }
-            try {
-                channel.send(msg);
-            } catch (Exception e) {
-                log.error("Error sending message", e);
+        }
+        if (messages != null) {
+            executor.execute(new SendBatchRunnable(messages));
+        }
+    }
+
+    protected void flushBatch() {
+        List<Serializable> messages;
+        synchronized (batchLock) {
+            messages = batch;
+            batch = new ArrayList<>();
+        }
+        if (!messages.isEmpty()) {
+            executor.execute(new SendBatchRunnable(messages));
+        }
+    }
+
+    protected void internalSendBatch(List<Serializable> messages) {
+        if (channel == null)
+            return;
+
+        StopWatch sw = new Log4JStopWatch("sendClusterMessageBatch");
+        try {
+            // identical idempotent messages are sent once, at the position of the last one
+            Map<Object, Pair<Serializable, byte[]>> serialized = new LinkedHashMap<>();
+            for (Serializable message : messages) {
+                byte[] bytes = SerializationSupport.serialize(message);
+                Object key = message instanceof IdempotentClusterMessage ? ByteBuffer.wrap(bytes) : new Object();
+                if (serialized.remove(key) != null) {
+                    log.trace("Skipping duplicate message: {}: {}", message.getClass(), message);
+                }
+                serialized.put(key, new Pair<>(message, bytes));
+            }
+
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bos))) {
+                out.writeInt(serialized.size());
+                for (Pair<Serializable, byte[]> pair : serialized.values()) {
+                    byte[] bytes = pair.getSecond();
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                    MessageStat stat = messagesStat.get(pair.getFirst().getClass().getName());
+                    if (stat != null) {
+                        stat.updateSent(bytes.length);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error writing message batch", e);
+            }
+
+            byte[] bytes = SerializationSupport.serialize(new ClusterMessageBatch(bos.toByteArray()));
+            log.debug("Sending batch of {} messages ({} bytes)", serialized.size(), bytes.length);
+            MessageStat stat = messagesStat.get(ClusterMessageBatch.class.getName());
+            if (stat != null) {
+                stat.updateSent(bytes.length);
             }
+            sendBytes(bytes, false);
         } finally {
             sw.stop();
         }
@@ -179,6 +285,10 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
 
     @Override
     public void applicationStopped() {
+        if (batchingExecutor != null) {
+            batchingExecutor.shutdownNow();
+            flushBatch();
+        }
         executor.shutdown();
         stop();
     }
@@ -303,16 +413,21 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
     public String printSharedStateStat() {
         StringBuilder clusterStateStat = new StringBuilder();
         for (Map.Entry<String, ClusterListener> entry : listeners.entrySet()) {
-            byte[] data = null;
+            CountingOutputStream output = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+            long size;
             StopWatch sw = new StopWatch();
             try {
-                data = entry.getValue().getState();
+                entry.getValue().writeState(output);
+                size = output.getByteCount();
+            } catch (IOException e) {
+                log.error("Error serializing state: {}", entry.getKey(), e);
+                size = -1;
             } finally {
                 sw.stop();
             }
             clusterStateStat
                     .append(String.format("State: %s, size: %s bytes, serialize time: %s ms\n",
-                            entry.getKey(), data != null ? data.length : -1, sw.getElapsedTime()));
+                            entry.getKey(), size, sw.getElapsedTime()));
         }
         return clusterStateStat.toString();
     }
@@ -386,23 +501,47 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
                 log.debug("Null buffer received");
                 return;
             }
+            Serializable data = (Serializable) SerializationSupport.deserialize(bytes);
+            if (data instanceof ClusterMessageBatch) {
+                MessageStat stat = messagesStat.get(ClusterMessageBatch.class.getName());
+                if (stat != null) {
+                    stat.updateReceived(bytes.length);
+                }
+                receiveBatch((ClusterMessageBatch) data);
+            } else {
+                receiveMessage(data, bytes.length);
+            }
+        }
+
+        protected void receiveBatch(ClusterMessageBatch batch) {
+            try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(batch.data)))) {
+                int count = in.readInt();
+                log.debug("Received batch of {} messages", count);
+                for (int i = 0; i < count; i++) {
+                    byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    receiveMessage((Serializable) SerializationSupport.deserialize(bytes), bytes.length);
+                }
+            } catch (IOException e) {
+                log.error("Error reading message batch", e);
+            }
+        }
+
+        protected void receiveMessage(Serializable data, int length) {
             StopWatch sw = new Log4JStopWatch();
-            String simpleClassName = null;
+            String className = data.getClass().getName();
             try {
-                Serializable data = (Serializable) SerializationSupport.deserialize(bytes);
-                String className = data.getClass().getName();
-                simpleClassName = data.getClass().getSimpleName();
-                log.debug("Received message: {}: {} ({} bytes)", data.getClass(), data, bytes.length);
+                log.debug("Received message: {}: {} ({} bytes)", data.getClass(), data, length);
                 MessageStat stat = messagesStat.get(className);
                 if (stat != null) {
-                    stat.updateReceived(bytes.length);
+                    stat.updateReceived(length);
                 }
                 ClusterListener listener = listeners.get(className);
                 if (listener != null) {
                     listener.receive(data);
                 }
             } finally {
-                sw.stop(String.format("receiveClusterMessage(%s)", simpleClassName));
+                sw.stop(String.format("receiveClusterMessage(%s)", data.getClass().getSimpleName()));
             }
         }
 
@@ -416,29 +555,22 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
         public void getState(OutputStream output) {
             log.debug("Sending state");
             try (DataOutputStream out = new DataOutputStream(output)) {
-                Map<String, byte[]> state = new HashMap<>();
-                for (Map.Entry<String, ClusterListener> entry : listeners.entrySet()) {
-                    byte[] data;
+                Map<String, ClusterListener> stateListeners = new HashMap<>(listeners);
+                out.writeUTF(STREAMED_STATE_MAGIC);
+                out.writeInt(stateListeners.size());
+                for (Map.Entry<String, ClusterListener> entry : stateListeners.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    StateChunkOutputStream chunks = new StateChunkOutputStream(out, STATE_CHUNK_SIZE);
                     StopWatch sw = new Log4JStopWatch(String.format("getClusterState(%s)", entry.getKey()));
                     try {
-                        data = entry.getValue().getState();
+                        entry.getValue().writeState(chunks);
+                    } catch (Exception e) {
+                        log.error("Error sending state: {}", entry.getKey(), e);
                     } finally {
+                        chunks.finish();
                         sw.stop();
                     }
-                    if (data != null && data.length > 0) {
-                        state.put(entry.getKey(), data);
-                    }
-                }
-
-                if (state.size() > 0) {
-                    out.writeUTF(STATE_MAGIC);
-                    out.writeInt(state.size());
-                    for (Map.Entry<String, byte[]> entry : state.entrySet()) {
-                        log.debug("Sending state: {} ({} bytes)", entry.getKey(), entry.getValue().length);
-                        out.writeUTF(entry.getKey());
-                        out.writeInt(entry.getValue().length);
-                        out.write(entry.getValue());
-                    }
+                    log.debug("Sending state: {} ({} bytes)", entry.getKey(), chunks.getByteCount());
                 }
             } catch (Exception e) {
                 log.error("Error sending state", e);
@@ -459,6 +591,11 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
                     return;
 
                 String magic = in.readUTF();
+                if (STREAMED_STATE_MAGIC.equals(magic)) {
+                    receiveStreamedState(in);
+                    return;
+                }
+                // state sent by a node of previous version
                 if (!STATE_MAGIC.equals(magic)) {
                     log.debug("Invalid magic in state received");
                     return;
@@ -490,6 +627,29 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
             }
         }
 
+        protected void receiveStreamedState(DataInputStream in) throws IOException {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                StateChunkInputStream chunks = new StateChunkInputStream(in);
+                StopWatch sw = new Log4JStopWatch(String.format("setClusterState(%s)", name));
+                try {
+                    log.debug("Receiving state: {}", name);
+                    ClusterListener listener = listeners.get(name);
+                    if (listener != null) {
+                        listener.readState(chunks);
+                    }
+                } catch (Exception e) {
+                    log.error("Error receiving state: {}", name, e);
+                } finally {
+                    // skip data not read by the listener to get to the next state
+                    chunks.skipRemaining();
+                    sw.stop();
+                }
+            }
+            log.debug("State received");
+        }
+
         @Override
         public void block() {
         }
@@ -512,6 +672,157 @@ public class ClusterManager implements ClusterManagerAPI, AppContext.Listener, O
         }
     }
 
+    protected class SendBatchRunnable implements Runnable {
+        protected List<Serializable> messages;
+
+        public SendBatchRunnable(List<Serializable> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public void run() {
+            internalSendBatch(messages);
+        }
+    }
+
+    /**
+     * Envelope of a batch of messages. Contains compressed serialized messages preceded by their count,
+     * each message is preceded by its length.
+     */
+    protected static class ClusterMessageBatch implements Serializable {
+        private static final long serialVersionUID = -1857412740829157614L;
+
+        protected final byte[] data;
+
+        public ClusterMessageBatch(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public String toString() {
+            return "ClusterMessageBatch{" + data.length + " bytes}";
+        }
+    }
+
+    /**
+     * Splits the state of a listener into chunks preceded by their length, so that the state can be streamed
+     * without knowing its size in advance. The end of the state is marked by a zero length chunk.
+     */
+    protected static class StateChunkOutputStream extends OutputStream {
+        protected final DataOutputStream out;
+        protected final byte[] buffer;
+        protected int count;
+        protected long byteCount;
+
+        public StateChunkOutputStream(DataOutputStream out, int chunkSize) {
+            this.out = out;
+            this.buffer = new byte[chunkSize];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        protected void writeChunk() throws IOException {
+            if (count > 0) {
+                out.writeInt(count);
+                out.write(buffer, 0, count);
+                byteCount += count;
+                count = 0;
+            }
+        }
+
+        public void finish() throws IOException {
+            writeChunk();
+            out.writeInt(0);
+        }
+
+        public long getByteCount() {
+            return byteCount;
+        }
+
+        @Override
+        public void close() {
+            // the underlying stream contains states of other listeners
+        }
+    }
+
+    /**
+     * Reads the state of a listener written by {@link StateChunkOutputStream}.
+     */
+    protected static class StateChunkInputStream extends InputStream {
+        protected final DataInputStream in;
+        protected int remaining;
+        protected boolean finished;
+
+        public StateChunkInputStream(DataInputStream in) {
+            this.in = in;
+        }
+
+        protected boolean nextChunk() throws IOException {
+            if (!finished && remaining == 0) {
+                remaining = in.readInt();
+                finished = remaining == 0;
+            }
+            return !finished;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            remaining--;
+            return in.readUnsignedByte();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int n = in.read(b, off, Math.min(len, remaining));
+            if (n < 0) {
+                throw new EOFException("Unexpected end of cluster state");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        public void skipRemaining() throws IOException {
+            while (nextChunk()) {
+                IOUtils.skipFully(in, remaining);
+                remaining = 0;
+            }
+        }
+
+        @Override
+        public void close() {
+            // the underlying stream contains states of other listeners
+        }
+    }
+
     protected class MessageStat {
         protected LongAdder sentBytes = new LongAdder();
         protected LongAdder receivedBytes = new LongAdder();
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Encodes shared state of {@link ClusterListener}s when it is transferred to a node joining the cluster.
+ * <p>The default implementation is {@link KryoClusterStateCodec}. It can be replaced by registering another bean
+ * with the {@link #NAME} name in the application's spring.xml.
+ */
+public interface ClusterStateCodec {
+
+    String NAME = "cuba_ClusterStateCodec";
+
+    /**
+     * Writes objects to the stream one by one. The stream is not closed.
+     *
+     * @param objects objects to write, can be modified concurrently
+     * @param output  output stream
+     */
+    void write(Iterable<?> objects, OutputStream output) throws IOException;
+
+    /**
+     * Reads objects written by {@link #write(Iterable, OutputStream)} and passes them to the consumer one by one.
+     * The stream is not closed.
+     *
+     * @param input    input stream
+     * @param consumer consumer of the read objects
+     */
+    void read(InputStream input, Consumer<Object> consumer) throws IOException;
+
+    /**
+     * @return true if the state starts with the Java serialization stream header, i.e. it was sent by a node
+     * of a previous version which used {@link java.io.ObjectOutputStream} to write its state
+     */
+    static boolean isJavaSerialized(byte[] state) {
+        return state.length >= 2 && state[0] == (byte) 0xAC && state[1] == (byte) 0xED;
+    }
+}
@@ -28,7 +28,6 @@ import org.slf4j.LoggerFactory;
 
 import org.springframework.stereotype.Component;
 import javax.inject.Inject;
-import java.io.Serializable;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -58,7 +57,7 @@ public class ConfigStorage implements ConfigStorageAPI {
 
     private Logger log = LoggerFactory.getLogger(ConfigStorage.class);
 
-    private static class InvalidateCacheMsg implements Serializable {
+    private static class InvalidateCacheMsg implements IdempotentClusterMessage {
         private static final long serialVersionUID = -3116358584797500962L;
     }
     
@@ -34,6 +34,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Component(DataManager.NAME)
 public class DataManagerBean implements DataManager {
@@ -86,6 +87,21 @@ public class DataManagerBean implements DataManager {
         return entities;
     }
 
+    @Override
+    public <E extends Entity> void loadStream(LoadContext<E> context, Consumer<E> consumer) {
+        MetaClass metaClass = metadata.getClassNN(context.getMetaClass());
+        String storeName = metadataTools.getStoreName(metaClass);
+        if (storeName == null) {
+            log.debug("Data store for {} is not defined, nothing to load", metaClass);
+            return;
+        }
+        DataStore storage = storeFactory.get(storeName);
+        storage.loadChunks(context, chunk -> {
+            readCrossDataStoreReferences(chunk, context.getView(), metaClass);
+            chunk.forEach(consumer);
+        });
+    }
+
     @Override
     public long getCount(LoadContext<? extends Entity> context) {
         MetaClass metaClass = metadata.getClassNN(context.getMetaClass());
@@ -24,9 +24,11 @@ import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.PersistenceSecurity;
 import com.haulmont.cuba.core.Query;
+import com.haulmont.cuba.core.app.queryresults.QueryResultsManagerAPI;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.QueryMacroHandler;
+import com.haulmont.cuba.core.sys.QueryTransformationCache;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -54,9 +56,15 @@ public class DataServiceQueryBuilder {
     @Inject
     protected Metadata metadata;
 
+    @Inject
+    protected QueryTransformationCache transformationCache;
+
     @Inject
     private PersistenceSecurity security;
 
+    @Inject
+    protected QueryResultsManagerAPI queryResultsManager;
+
     public void init(String queryString, Map<String, Object> queryParams,
                      Object id, String entityName)
     {
@@ -81,6 +89,15 @@ public class DataServiceQueryBuilder {
         MetaProperty primaryKey = metadata.getTools().getPrimaryKeyProperty(metaClass);
         if (primaryKey == null)
             throw new IllegalStateException(String.format("Entity %s has no primary key", entityName));
+
+        List previousResults = queryResultsManager.getInMemoryResults(sessionId, queryKey);
+        if (previousResults != null) {
+            transformer.addWhere(String.format("{E}.%s in :_qr_ids", primaryKey.getName()));
+            queryString = transformer.getResult();
+            this.queryParams.put("_qr_ids", previousResults);
+            return;
+        }
+
         Class type = primaryKey.getJavaType();
         String entityIdField;
         if (UUID.class.equals(type)) {
@@ -113,8 +130,8 @@ public class DataServiceQueryBuilder {
 
         applyConstraints(query);
 
-        QueryParser parser = QueryTransformerFactory.createParser(queryString);
-        Set<String> paramNames = parser.getParamNames();
+        Set<String> paramNames = transformationCache.get("paramNames", queryString, null, () ->
+                Collections.unmodifiableSet(new HashSet<>(QueryTransformerFactory.createParser(queryString).getParamNames())));
 
         for (Map.Entry<String, Object> entry : queryParams.entrySet()) {
             String name = entry.getKey();
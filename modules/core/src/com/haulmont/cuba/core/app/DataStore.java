@@ -25,6 +25,7 @@ import com.haulmont.cuba.core.global.ValueLoadContext;
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * INTERNAL.
@@ -45,6 +46,18 @@ public interface DataStore {
      */
     <E extends Entity> List<E> loadList(LoadContext<E> context);
 
+    /**
+     * Loads collection of entity instances and passes them to the consumer in chunks, so the whole result is never
+     * held in memory. The default implementation loads the whole list and passes it as a single chunk.
+     * @param chunkConsumer receives non-empty lists of detached instances
+     */
+    default <E extends Entity> void loadChunks(LoadContext<E> context, Consumer<List<E>> chunkConsumer) {
+        List<E> list = loadList(context);
+        if (!list.isEmpty()) {
+            chunkConsumer.accept(list);
+        }
+    }
+
     /**
      * Returns the number of entity instances for the given query passed in the {@link LoadContext}.
      * @return number of instances in the storage
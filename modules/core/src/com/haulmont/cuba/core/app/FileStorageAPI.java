@@ -19,6 +19,10 @@ package com.haulmont.cuba.core.app;
 import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.global.FileStorageException;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -65,6 +69,31 @@ public interface FileStorageAPI {
      */
     InputStream openStream(FileDescriptor fileDescr) throws FileStorageException;
 
+    /**
+     * Return an input stream to load a part of a file contents.
+     * <p>The default implementation skips the first {@code offset} bytes of the whole file stream, implementations
+     * should override it if they are able to start reading from the given position.</p>
+     * @param fileDescr             file descriptor
+     * @param offset                position of the first byte to read
+     * @param length                maximum number of bytes to read
+     * @return                      input stream, must be closed after use
+     * @throws IllegalArgumentException if arguments are incorrect
+     * @throws FileStorageException     if something goes wrong
+     */
+    default InputStream openStream(FileDescriptor fileDescr, long offset, long length) throws FileStorageException {
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException("Invalid range: offset " + offset + ", length " + length);
+
+        InputStream inputStream = openStream(fileDescr);
+        try {
+            IOUtils.skipFully(inputStream, offset);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(inputStream);
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, fileDescr.getId().toString(), e);
+        }
+        return new BoundedInputStream(inputStream, length);
+    }
+
     /**
      * Load a file contents into byte array.
      * @param fileDescr             file descriptor
@@ -0,0 +1,27 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import java.io.Serializable;
+
+/**
+ * Marker interface of cluster messages which can be applied several times with the same effect as once.
+ * <p>When messages are sent in batches (see {@link ClusterConfig#getClusterMessageBatchingEnabled()}),
+ * identical messages of such classes are sent only once per batch, at the position of the last of them.
+ */
+public interface IdempotentClusterMessage extends Serializable {
+}
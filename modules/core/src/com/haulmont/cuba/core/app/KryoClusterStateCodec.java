@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.haulmont.cuba.core.sys.serialization.KryoSerialization;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Cluster state codec based on {@link KryoSerialization}. Kryo instances and I/O buffers are reused by each thread,
+ * and data is written to the stream as soon as the buffer is filled, so the whole state is never kept in memory.
+ */
+@Component(ClusterStateCodec.NAME)
+public class KryoClusterStateCodec extends KryoSerialization implements ClusterStateCodec {
+
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected final ThreadLocal<Output> outputs = ThreadLocal.withInitial(() -> new Output(BUFFER_SIZE));
+
+    protected final ThreadLocal<Input> inputs = ThreadLocal.withInitial(() -> new Input(BUFFER_SIZE));
+
+    @Override
+    public void write(Iterable<?> objects, OutputStream output) throws IOException {
+        Kryo kryo = kryos.get();
+        Output out = outputs.get();
+        out.setOutputStream(output);
+        try {
+            // each object is preceded by a flag instead of a count, because the collection can be modified concurrently
+            for (Object object : objects) {
+                out.writeBoolean(true);
+                kryo.writeClassAndObject(out, object);
+            }
+            out.writeBoolean(false);
+            out.flush();
+        } catch (KryoException e) {
+            throw new IOException("Error writing cluster state", e);
+        } finally {
+            out.setOutputStream(null);
+        }
+    }
+
+    @Override
+    public void read(InputStream input, Consumer<Object> consumer) throws IOException {
+        Kryo kryo = kryos.get();
+        Input in = inputs.get();
+        in.setInputStream(input);
+        try {
+            while (in.readBoolean()) {
+                consumer.accept(kryo.readClassAndObject(in));
+            }
+        } catch (KryoException e) {
+            throw new IOException("Error reading cluster state", e);
+        } finally {
+            in.setInputStream(null);
+        }
+    }
+}
@@ -88,6 +88,9 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
     @Inject
     private UserSessionSource userSessionSource;
 
+    @Inject
+    private ClusterStateCodec clusterStateCodec;
+
     private ClusterManagerAPI clusterManager;
 
     @Inject
@@ -237,12 +240,9 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
 
     @Override
     public byte[] getState() {
-        List<LockInfo> list = new ArrayList<>(locks.values());
-
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         try {
-            ObjectOutputStream oos = new ObjectOutputStream(bos);
-            oos.writeObject(list);
+            writeState(bos);
         } catch (IOException e) {
             log.error("Error serializing LockInfo list", e);
             return new byte[0];
@@ -255,10 +255,26 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
         if (state == null || state.length == 0)
             return;
 
+        if (ClusterStateCodec.isJavaSerialized(state)) {
+            setLegacyState(state);
+            return;
+        }
+
+        try {
+            readState(new ByteArrayInputStream(state));
+        } catch (IOException e) {
+            log.error("Error deserializing LockInfo list", e);
+        }
+    }
+
+    /**
+     * Reads the state sent by a node of a previous version.
+     */
+    @SuppressWarnings("unchecked")
+    protected void setLegacyState(byte[] state) {
         List<LockInfo> list;
-        ByteArrayInputStream bis = new ByteArrayInputStream(state);
         try {
-            ObjectInputStream ois = new ObjectInputStream(bis);
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(state));
             list = (List<LockInfo>) ois.readObject();
         } catch (Exception e) {
             log.error("Error deserializing LockInfo list", e);
@@ -269,4 +285,14 @@ public class LockManager implements LockManagerAPI, ClusterListener<LockInfo> {
             receive(lockInfo);
         }
     }
+
+    @Override
+    public void writeState(OutputStream output) throws IOException {
+        clusterStateCodec.write(locks.values(), output);
+    }
+
+    @Override
+    public void readState(InputStream input) throws IOException {
+        clusterStateCodec.read(input, lockInfo -> receive((LockInfo) lockInfo));
+    }
 }
\ No newline at end of file
@@ -28,6 +28,8 @@ import com.haulmont.cuba.core.app.queryresults.QueryResultsManagerAPI;
 import com.haulmont.cuba.core.entity.*;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.QueryTransformationCache;
+import com.haulmont.cuba.core.sys.persistence.PersistenceImplSupport;
 import com.haulmont.cuba.security.entity.ConstraintOperationType;
 import com.haulmont.cuba.security.entity.EntityAttrAccess;
 import com.haulmont.cuba.security.entity.EntityOp;
@@ -41,7 +43,10 @@ import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.persistence.NoResultException;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static org.apache.commons.lang.StringUtils.isBlank;
@@ -56,6 +61,14 @@ public class RdbmsStore implements DataStore {
 
     public static final String NAME = "cuba_RdbmsStore";
 
+    protected static final String KEYSET_SORT_VALUE_PARAM = "_keyset_sortValue";
+    protected static final String KEYSET_ID_PARAM = "_keyset_id";
+
+    protected static final Pattern ORDER_BY_PATTERN =
+            Pattern.compile("\\border\\s+by\\s+(.+)$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    protected static final Pattern ORDER_BY_ITEM_PATTERN =
+            Pattern.compile("([\\w.]+)(?:\\s+(asc|desc))?", Pattern.CASE_INSENSITIVE);
+
     private Logger log = LoggerFactory.getLogger(RdbmsStore.class);
 
     @Inject
@@ -91,6 +104,15 @@ public class RdbmsStore implements DataStore {
     @Inject
     protected QueryTransformerFactory queryTransformerFactory;
 
+    @Inject
+    protected QueryTransformationCache queryTransformationCache;
+
+    @Inject
+    protected PersistenceImplSupport persistenceImplSupport;
+
+    @Inject
+    protected GlobalConfig globalConfig;
+
     protected String storeName;
 
     public RdbmsStore(String storeName) {
@@ -182,17 +204,26 @@ public class RdbmsStore implements DataStore {
 
             boolean ensureDistinct = false;
             if (serverConfig.getInMemoryDistinct() && context.getQuery() != null) {
-                QueryTransformer transformer = queryTransformerFactory.transformer(
-                        context.getQuery().getQueryString());
-                ensureDistinct = transformer.removeDistinct();
-                if (ensureDistinct) {
-                    context.getQuery().setQueryString(transformer.getResult());
-                }
+                ensureDistinct = removeDistinct(context.getQuery());
             }
-            Query query = createQuery(em, context);
-            query.setView(createRestrictedView(context));
+            if (isKeysetPagination(context) && context.getQuery().getKeysetSortProperty() != null) {
+                // instances with null sort values are selected by separate queries, see getResultListByKeyset()
+                Collection<E> collection = ensureDistinct ? new LinkedHashSet<>() : new ArrayList<>();
+                resultList = getResultListByKeyset(context, collection, 0, needToApplyInMemoryReadConstraints(context));
+            } else {
+                Query query;
+                if (isKeysetPagination(context)) {
+                    LoadContext.Query contextQuery = context.getQuery();
+                    Object[] keysetAfter = contextQuery.getKeysetId() == null ? null :
+                            new Object[]{null, contextQuery.getKeysetId()};
+                    query = createKeysetQuery(em, context, keysetAfter, contextQuery.getFirstResult(), contextQuery.getMaxResults());
+                } else {
+                    query = createQuery(em, context);
+                }
+                query.setView(createRestrictedView(context));
 
-            resultList = getResultList(context, query, ensureDistinct);
+                resultList = getResultList(context, query, ensureDistinct);
+            }
 
             // Fetch dynamic attributes
             if (!resultList.isEmpty() && resultList.get(0) instanceof BaseGenericIdEntity && context.isLoadDynamicAttributes()) {
@@ -212,6 +243,73 @@ public class RdbmsStore implements DataStore {
         return resultList;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public <E extends Entity> void loadChunks(LoadContext<E> context, Consumer<List<E>> chunkConsumer) {
+        if (log.isDebugEnabled())
+            log.debug("loadChunks: metaClass=" + context.getMetaClass() + ", view=" + context.getView()
+                    + (context.getPrevQueries().isEmpty() ? "" : ", from selected")
+                    + ", query=" + (context.getQuery() == null ? null : DataServiceQueryBuilder.printQuery(context.getQuery().getQueryString())));
+
+        MetaClass metaClass = metadata.getClassNN(context.getMetaClass());
+
+        if (!isEntityOpPermitted(metaClass, EntityOp.READ)) {
+            log.debug("reading of {} not permitted, returning nothing", metaClass);
+            return;
+        }
+
+        queryResultsManager.savePreviousQueryResults(context);
+
+        int chunkSize = context.getQuery() != null && context.getQuery().getFetchSize() > 0 ?
+                context.getQuery().getFetchSize() : globalConfig.getDataManagerStreamingFetchSize();
+        boolean applyInMemoryReadConstraints = needToApplyInMemoryReadConstraints(context);
+        boolean applyConstraints = needToApplyConstraints(context);
+        Set<Class> dynamicAttributesClasses = context.isLoadDynamicAttributes() ?
+                collectEntityClassesWithDynamicAttributes(context.getView()) : Collections.emptySet();
+
+        // instances are detached before the end of the transaction, so it must not change them
+        TransactionParams txParams = new TransactionParams();
+        txParams.setReadOnly(true);
+        try (Transaction tx = persistence.createTransaction(storeName, txParams)) {
+            EntityManager em = persistence.getEntityManager(storeName);
+            em.setSoftDeletion(context.isSoftDeletion());
+            persistence.getEntityManagerContext(storeName).setDbHints(context.getDbHints());
+
+            Query query = createQuery(em, context);
+            query.setView(createRestrictedView(context));
+
+            try (QueryResultIterator<E> iterator = query.getResultIterator(chunkSize)) {
+                List<E> chunk = new ArrayList<>(chunkSize);
+                while (iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() >= chunkSize || !iterator.hasNext()) {
+                        if (applyInMemoryReadConstraints) {
+                            security.filterByConstraints((Collection<Entity>) chunk);
+                        }
+                        if (!chunk.isEmpty() && chunk.get(0) instanceof BaseGenericIdEntity && !dynamicAttributesClasses.isEmpty()) {
+                            dynamicAttributesManagerAPI.fetchDynamicAttributes((List<BaseGenericIdEntity>) chunk,
+                                    dynamicAttributesClasses);
+                        }
+
+                        persistenceImplSupport.detachInstances(em);
+
+                        if (applyConstraints) {
+                            security.applyConstraints((Collection<Entity>) chunk);
+                        }
+                        attributeSecurity.afterLoad(chunk);
+
+                        if (!chunk.isEmpty()) {
+                            chunkConsumer.accept(chunk);
+                        }
+                        chunk = new ArrayList<>(chunkSize);
+                    }
+                }
+            }
+
+            tx.commit();
+        }
+    }
+
     @Override
     public long getCount(LoadContext<? extends Entity> context) {
         if (log.isDebugEnabled())
@@ -238,12 +336,7 @@ public class RdbmsStore implements DataStore {
 
                 boolean ensureDistinct = false;
                 if (serverConfig.getInMemoryDistinct() && context.getQuery() != null) {
-                    QueryTransformer transformer = QueryTransformerFactory.createTransformer(
-                            context.getQuery().getQueryString());
-                    ensureDistinct = transformer.removeDistinct();
-                    if (ensureDistinct) {
-                        context.getQuery().setQueryString(transformer.getResult());
-                    }
+                    ensureDistinct = removeDistinct(context.getQuery());
                 }
                 context.getQuery().setFirstResult(0);
                 context.getQuery().setMaxResults(0);
@@ -257,10 +350,14 @@ public class RdbmsStore implements DataStore {
             }
             return resultList.size();
         } else {
-            QueryTransformer transformer = QueryTransformerFactory.createTransformer(context.getQuery().getQueryString());
-            transformer.replaceWithCount();
+            String queryString = context.getQuery().getQueryString();
+            String countQueryString = queryTransformationCache.get("replaceWithCount", queryString, null, () -> {
+                QueryTransformer transformer = queryTransformerFactory.transformer(queryString);
+                transformer.replaceWithCount();
+                return transformer.getResult();
+            });
             context = context.copy();
-            context.getQuery().setQueryString(transformer.getResult());
+            context.getQuery().setQueryString(countQueryString);
 
             Number result;
             try (Transaction tx = createLoadTransaction()) {
@@ -516,6 +613,25 @@ public class RdbmsStore implements DataStore {
         return query;
     }
 
+    /**
+     * Removes 'distinct' from the query string to ensure distinct results in memory.
+     *
+     * @return true if the query string contained 'distinct'
+     */
+    protected boolean removeDistinct(LoadContext.Query contextQuery) {
+        String queryString = contextQuery.getQueryString();
+        // the source string is cached if there is nothing to remove
+        String result = queryTransformationCache.get("removeDistinct", queryString, null, () -> {
+            QueryTransformer transformer = queryTransformerFactory.transformer(queryString);
+            return transformer.removeDistinct() ? transformer.getResult() : queryString;
+        });
+        if (result.equals(queryString)) {
+            return false;
+        }
+        contextQuery.setQueryString(result);
+        return true;
+    }
+
     protected View createRestrictedView(LoadContext context) {
         View view = context.getView() != null ? context.getView() :
                 viewRepository.getView(metadata.getClassNN(context.getMetaClass()), View.LOCAL);
@@ -565,6 +681,10 @@ public class RdbmsStore implements DataStore {
             return new ArrayList<>(filteredCollection);
         }
 
+        if (isKeysetPagination(context)) {
+            return getResultListByKeyset(context, filteredCollection, initialSize, needApplyConstraints);
+        }
+
         int setSize = initialSize + requestedFirst;
         int factor = filteredCollection.size() == 0 ? 2 : initialSize / filteredCollection.size() * 2;
 
@@ -607,6 +727,182 @@ public class RdbmsStore implements DataStore {
         return result;
     }
 
+    /**
+     * Fills the collection with the query results using keyset pagination: each next chunk is selected by a condition
+     * on the sort attribute and identifier of the last instance of the previous chunk, so the database does not
+     * have to scan and skip the rows loaded before.
+     * <p>Instances having null in the sort attribute go last, ordered by identifier. They are selected by separate
+     * queries after the instances with non-null values, because databases differ in how they order nulls.
+     *
+     * @param initialSize number of instances loaded by the first query, 0 if nothing has been loaded yet
+     */
+    @SuppressWarnings("unchecked")
+    protected <E extends Entity> List<E> getResultListByKeyset(LoadContext<E> context,
+                                                               Collection<E> filteredCollection,
+                                                               int initialSize, boolean needApplyConstraints) {
+        LoadContext.Query contextQuery = context.getQuery();
+        int requestedFirst = contextQuery.getFirstResult();
+        int requestedMax = contextQuery.getMaxResults();
+
+        int setSize = requestedMax == 0 ? Integer.MAX_VALUE : requestedFirst + requestedMax;
+        int factor;
+        if (initialSize == 0) {
+            factor = 1;
+        } else {
+            factor = filteredCollection.size() == 0 ? 2 : initialSize / filteredCollection.size() * 2;
+        }
+
+        filteredCollection.clear();
+
+        EntityManager em = persistence.getEntityManager(storeName);
+        View view = createRestrictedView(context);
+        Object[] keysetAfter = contextQuery.getKeysetId() == null ? null :
+                new Object[]{contextQuery.getKeysetSortValue(), contextQuery.getKeysetId()};
+        // 0 means no limit
+        int maxResults = requestedMax == 0 ? 0 : setSize * factor;
+        int i = 0;
+        while (filteredCollection.size() < setSize) {
+            if (i++ > 10000) {
+                log.warn("Keyset pagination: endless loop detected for " + context);
+                break;
+            }
+            boolean nonNullValues = contextQuery.getKeysetSortProperty() != null
+                    && (keysetAfter == null || keysetAfter[0] != null);
+            Query query = createKeysetQuery(em, context, keysetAfter, 0, maxResults);
+            query.setView(view);
+            List<E> list = query.getResultList();
+            boolean lastChunk = maxResults == 0 || list.size() < maxResults;
+            if (!list.isEmpty()) {
+                keysetAfter = getKeysetPosition(contextQuery, list.get(list.size() - 1));
+                if (needApplyConstraints) {
+                    security.filterByConstraints((Collection<Entity>) list);
+                }
+                filteredCollection.addAll(list);
+            }
+            if (lastChunk) {
+                if (!nonNullValues) {
+                    break;
+                }
+                // continue with the instances having null values from the beginning
+                keysetAfter = new Object[]{null, null};
+            }
+        }
+
+        int max = Math.min(setSize, filteredCollection.size());
+        List<E> result = new ArrayList<>(Math.max(max - requestedFirst, 0));
+        int j = 0;
+        for (E item : filteredCollection) {
+            if (j >= max)
+                break;
+            if (j >= requestedFirst)
+                result.add(item);
+            j++;
+        }
+        return result;
+    }
+
+    protected boolean isKeysetPagination(LoadContext context) {
+        LoadContext.Query contextQuery = context.getQuery();
+        if (contextQuery == null || !contextQuery.isKeysetPagination())
+            return false;
+
+        MetaClass metaClass = metadata.getClassNN(context.getMetaClass());
+        if (metadata.getTools().getPrimaryKeyName(metaClass) == null || metadata.getTools().hasCompositePrimaryKey(metaClass)) {
+            log.debug("Keyset pagination is not supported for {}, using offset", metaClass);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates a query ordered by the keyset sort attribute and identifier and, if the position is given,
+     * restricted to the rows following it. The query selects either instances with non-null values of the sort
+     * attribute or, if the position contains null value, instances with null values.
+     *
+     * @param keysetAfter array of the sort attribute value and identifier, or null to start from the beginning.
+     *                    The identifier is null at the beginning of instances with null values.
+     */
+    protected Query createKeysetQuery(EntityManager em, LoadContext context, @Nullable Object[] keysetAfter,
+                                      int firstResult, int maxResults) {
+        LoadContext<?> keysetContext = context.copy();
+        LoadContext.Query contextQuery = keysetContext.getQuery();
+
+        MetaClass metaClass = metadata.getClassNN(context.getMetaClass());
+        String pkName = metadata.getTools().getPrimaryKeyName(metaClass);
+        String sortProperty = contextQuery.getKeysetSortProperty();
+        boolean desc = isKeysetOrderDescending(contextQuery.getQueryString(), sortProperty, pkName);
+        String op = desc ? "<" : ">";
+
+        QueryTransformer transformer = queryTransformerFactory.transformer(contextQuery.getQueryString());
+        if (sortProperty != null) {
+            transformer.replaceOrderBy(desc, sortProperty, pkName);
+            if (keysetAfter == null) {
+                transformer.addWhere(String.format("{E}.%s is not null", sortProperty));
+            } else if (keysetAfter[0] == null) {
+                transformer.addWhere(String.format("{E}.%s is null", sortProperty));
+            } else {
+                transformer.addWhere(String.format("({E}.%1$s %5$s :%3$s or ({E}.%1$s = :%3$s and {E}.%2$s %5$s :%4$s))",
+                        sortProperty, pkName, KEYSET_SORT_VALUE_PARAM, KEYSET_ID_PARAM, op));
+                contextQuery.setParameter(KEYSET_SORT_VALUE_PARAM, keysetAfter[0]);
+            }
+        } else {
+            transformer.replaceOrderBy(desc, pkName);
+        }
+        if (keysetAfter != null && keysetAfter[1] != null
+                && (sortProperty == null || keysetAfter[0] == null)) {
+            transformer.addWhere(String.format("{E}.%s %s :%s", pkName, op, KEYSET_ID_PARAM));
+        }
+        if (keysetAfter != null && keysetAfter[1] != null) {
+            contextQuery.setParameter(KEYSET_ID_PARAM, keysetAfter[1]);
+        }
+        contextQuery.setQueryString(transformer.getResult());
+        contextQuery.setFirstResult(firstResult);
+        contextQuery.setMaxResults(maxResults);
+
+        return createQuery(em, keysetContext);
+    }
+
+    protected Object[] getKeysetPosition(LoadContext.Query contextQuery, Entity entity) {
+        String sortProperty = contextQuery.getKeysetSortProperty();
+        Object sortValue = sortProperty != null ? entity.getValueEx(sortProperty) : null;
+        return new Object[]{sortValue, entity.getId()};
+    }
+
+    /**
+     * Returns the direction of keyset pagination defined by the ORDER BY clause of the query. The clause can be
+     * omitted or contain the keyset sort attribute optionally followed by the identifier, in the same direction.
+     *
+     * @throws IllegalArgumentException if the query is ordered differently
+     */
+    protected boolean isKeysetOrderDescending(String queryString, @Nullable String sortProperty, String pkName) {
+        Matcher matcher = ORDER_BY_PATTERN.matcher(queryString);
+        if (!matcher.find()) {
+            return false;
+        }
+
+        String alias = queryTransformerFactory.parser(queryString).getEntityAlias();
+        List<String> keysetOrder = new ArrayList<>(2);
+        if (sortProperty != null) {
+            keysetOrder.add(alias + "." + sortProperty);
+        }
+        keysetOrder.add(alias + "." + pkName);
+
+        String[] items = matcher.group(1).trim().split("\\s*,\\s*");
+        Boolean desc = null;
+        for (int i = 0; i < items.length; i++) {
+            Matcher itemMatcher = ORDER_BY_ITEM_PATTERN.matcher(items[i]);
+            boolean itemDesc = itemMatcher.matches() && "desc".equalsIgnoreCase(itemMatcher.group(2));
+            if (i >= keysetOrder.size() || !itemMatcher.matches() || !keysetOrder.get(i).equals(itemMatcher.group(1))
+                    || (desc != null && desc != itemDesc)) {
+                throw new IllegalArgumentException(String.format(
+                        "Keyset pagination by %s requires the query to be ordered by it only: %s",
+                        keysetOrder, queryString));
+            }
+            desc = itemDesc;
+        }
+        return desc;
+    }
+
     @SuppressWarnings("unchecked")
     protected <E extends Entity> List<E> executeQuery(Query query, boolean singleResult) {
         List<E> list;
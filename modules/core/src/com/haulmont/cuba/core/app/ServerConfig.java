@@ -76,6 +76,24 @@ public interface ServerConfig extends Config {
     int getUserSessionSendTimeoutSec();
     void setUserSessionSendTimeoutSec(int timeout);
 
+    /**
+     * @return interval in seconds of sending the full user session state in cluster when the session is used.
+     * In between, only compact "last used" timestamps are sent.
+     */
+    @Property("cuba.userSessionFullSendTimeoutSec")
+    @DefaultInt(300)
+    int getUserSessionFullSendTimeoutSec();
+
+    /**
+     * @return maximum number of ids of previous query results ("query from selected") kept in memory of the
+     * middleware node instead of the SYS_QUERY_RESULT table. The value is also limited by the number of parameters
+     * supported by the database in the "in" clause. 0 (default) means that results are always stored in the table.
+     */
+    @Property("cuba.inMemoryQueryResultsMaxSize")
+    @DefaultInt(0)
+    int getInMemoryQueryResultsMaxSize();
+    void setInMemoryQueryResultsMaxSize(int size);
+
     /**
      * @return DB scripts directory.
      * Does not end with "/"
@@ -105,6 +123,21 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(true)
     boolean getImmutableFileStorage();
 
+    /**
+     * @return maximum number of files waiting to be copied to secondary file storage directories.
+     * When the queue is full, the file is copied by the thread saving it.
+     */
+    @Property("cuba.fileStorageReplicationQueueCapacity")
+    @DefaultInt(1000)
+    int getFileStorageReplicationQueueCapacity();
+
+    /**
+     * @return number of attempts to copy a file to a secondary file storage directory
+     */
+    @Property("cuba.fileStorageReplicationMaxAttempts")
+    @DefaultInt(5)
+    int getFileStorageReplicationMaxAttempts();
+
     /**
      * @return Scheduled tasks execution control.
      */
@@ -257,4 +290,19 @@ public interface ServerConfig extends Config {
     @DefaultBoolean(false)
     boolean getRestStoreTokensInDb();
 
+    /**
+     * @return initial capacity of the in-memory REST API token store. Should correspond to the expected number of
+     * active tokens to avoid rehashing.
+     */
+    @Property("cuba.rest.tokenStoreInitialCapacity")
+    @DefaultInt(1024)
+    int getRestTokenStoreInitialCapacity();
+
+    /**
+     * @return maximum number of JPQL transformation results kept by {@code QueryTransformationCache}
+     */
+    @Property("cuba.queryTransformationCacheMaxSize")
+    @DefaultInt(2000)
+    int getQueryTransformationCacheMaxSize();
+
 }
\ No newline at end of file
@@ -0,0 +1,332 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.util.concurrent.Striped;
+import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.global.FileStorageException;
+import com.haulmont.cuba.core.global.UuidProvider;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * File storage which keeps the contents of identical files only once.
+ * <p>The contents are stored in the {@code blobs} directory of each storage root under their SHA-256 hash.
+ * The file of a file descriptor is replaced by a reference to the contents with the same name, kept in the
+ * {@code references} subdirectory of the usual date-based location.
+ * Each contents file has a directory of markers of the file descriptors referencing it, and the contents
+ * are removed together with the last reference.</p>
+ * <p>Files saved by {@link FileStorage} before switching to this implementation remain readable.
+ * Reference counting is synchronized within the middleware block only, so storage roots should not be shared
+ * by several middleware servers.</p>
+ * <p>To use this implementation, register it in {@code spring.xml} of the core module:</p>
+ * <pre>
+ * &lt;bean name="cuba_FileStorage" class="com.haulmont.cuba.core.app.filestorage.ContentAddressedFileStorage"/&gt;
+ * </pre>
+ */
+public class ContentAddressedFileStorage extends FileStorage {
+
+    private final Logger log = LoggerFactory.getLogger(ContentAddressedFileStorage.class);
+
+    public static final String BLOBS_DIR = "blobs";
+
+    protected static final String TMP_DIR = "tmp";
+
+    protected static final String REFS_SUFFIX = ".refs";
+
+    protected static final String REFERENCES_DIR = "references";
+
+    protected static final String REFERENCE_PREFIX = "sha256:";
+
+    protected final Striped<Lock> blobLocks = Striped.lock(64);
+
+    @Override
+    public long saveStream(FileDescriptor fileDescr, InputStream inputStream) throws FileStorageException {
+        checkFileDescriptor(fileDescr);
+
+        File[] roots = getStorageRoots();
+
+        checkStorageDefined(roots, fileDescr);
+        checkPrimaryStorageAccessible(roots, fileDescr);
+
+        File referenceFile = getReferenceFile(roots[0], fileDescr);
+        File dir = referenceFile.getParentFile();
+        dir.mkdirs();
+        checkDirectoryExists(dir);
+
+        File legacyFile = super.resolveFile(roots[0], fileDescr);
+        checkFileExists(legacyFile);
+        checkFileExists(referenceFile);
+
+        // Write the contents to a temporary file to find out their hash
+
+        File tmpFile = createTempFile(roots[0]);
+        long size = 0;
+        Hasher hasher = checksumFunction.newHasher();
+        OutputStream os = null;
+        try {
+            os = FileUtils.openOutputStream(tmpFile);
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                os.write(buffer, 0, n);
+                hasher.putBytes(buffer, 0, n);
+                size += n;
+            }
+            os.close();
+        } catch (IOException e) {
+            IOUtils.closeQuietly(os);
+            FileUtils.deleteQuietly(tmpFile);
+
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, referenceFile.getAbsolutePath(), e);
+        }
+
+        HashCode hash = hasher.hash();
+        try {
+            HashCode previousHash = referenceFile.exists() ? readReference(referenceFile) : null;
+
+            addReference(roots[0], hash, fileDescr, tmpFile);
+            writeReference(referenceFile, hash);
+            writeLog(legacyFile, false);
+            // the reference takes precedence, so the contents saved before switching to this storage are stale
+            FileUtils.deleteQuietly(legacyFile);
+
+            if (previousHash != null && !previousHash.equals(hash)) {
+                removeReference(roots[0], previousHash, fileDescr);
+            }
+        } catch (IOException e) {
+            throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, referenceFile.getAbsolutePath(), e);
+        } finally {
+            FileUtils.deleteQuietly(tmpFile);
+        }
+
+        // Add references in secondary storages asynchronously, the contents are copied only if they are missing
+
+        File blobFile = getBlobFile(roots[0], hash);
+        for (int i = 1; i < roots.length; i++) {
+            if (!roots[i].exists()) {
+                log.error("Error saving {} into {} : directory doesn't exist", fileDescr, roots[i]);
+                continue;
+            }
+
+            File referenceCopy = getReferenceFile(roots[i], fileDescr);
+            replicate(new ReferenceReplicationTask(fileDescr, blobFile, referenceCopy, hash, roots[i]));
+        }
+
+        return size;
+    }
+
+    @Override
+    public void removeFile(FileDescriptor fileDescr) throws FileStorageException {
+        checkFileDescriptor(fileDescr);
+
+        File[] roots = getStorageRoots();
+        if (roots.length == 0) {
+            log.error("No storage directories defined");
+            return;
+        }
+
+        for (File root : roots) {
+            File referenceFile = getReferenceFile(root, fileDescr);
+            if (!referenceFile.exists())
+                continue;
+
+            try {
+                HashCode hash = readReference(referenceFile);
+                if (!referenceFile.delete()) {
+                    throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION,
+                            "Unable to delete file " + referenceFile.getAbsolutePath());
+                }
+                writeLog(super.resolveFile(root, fileDescr), true);
+
+                removeReference(root, hash, fileDescr);
+            } catch (IOException e) {
+                throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, referenceFile.getAbsolutePath(), e);
+            }
+        }
+
+        // files saved before switching to the content-addressed storage
+        super.removeFile(fileDescr);
+    }
+
+    @Override
+    protected File resolveFile(File rootDir, FileDescriptor fileDescr) {
+        File referenceFile = getReferenceFile(rootDir, fileDescr);
+        // a file saved before switching to the content-addressed storage
+        if (!referenceFile.exists())
+            return super.resolveFile(rootDir, fileDescr);
+
+        HashCode hash;
+        try {
+            hash = readReference(referenceFile);
+        } catch (IOException e) {
+            log.error("Error reading file reference " + referenceFile, e);
+            return null;
+        }
+        return getBlobFile(rootDir, hash);
+    }
+
+    @Override
+    public Collection<File> listStorageFiles(File rootDir) {
+        Collection<File> files = super.listStorageFiles(rootDir);
+        Path blobsPath = new File(rootDir, BLOBS_DIR).toPath();
+        files.removeIf(file -> file.toPath().startsWith(blobsPath));
+        return files;
+    }
+
+    /**
+     * INTERNAL. Don't use in application code.
+     * @return the file containing the contents with the given hash in the storage root
+     */
+    public File getBlobFile(File rootDir, HashCode hash) {
+        String name = hash.toString();
+        return new File(rootDir, BLOBS_DIR + "/" + name.substring(0, 2) + "/" + name.substring(2, 4) + "/" + name);
+    }
+
+    /**
+     * INTERNAL. Don't use in application code.
+     * @return the file referencing the contents of the file descriptor in the storage root
+     */
+    public File getReferenceFile(File rootDir, FileDescriptor fileDescr) {
+        return new File(new File(getStorageDir(rootDir, fileDescr), REFERENCES_DIR), getFileName(fileDescr));
+    }
+
+    protected File getReferencesDir(File blobFile) {
+        return new File(blobFile.getParentFile(), blobFile.getName() + REFS_SUFFIX);
+    }
+
+    protected File createTempFile(File rootDir) {
+        return new File(rootDir, BLOBS_DIR + "/" + TMP_DIR + "/" + UuidProvider.createUuid() + ".tmp");
+    }
+
+    /**
+     * Registers the file descriptor as a reference to the contents.
+     * @param contents  temporary file in the same storage root, moved to the contents location if the storage
+     *                  does not contain the contents yet. Can be null if the contents are known to exist.
+     */
+    protected void addReference(File rootDir, HashCode hash, FileDescriptor fileDescr, File contents) throws IOException {
+        File blobFile = getBlobFile(rootDir, hash);
+        Lock lock = blobLocks.get(hash);
+        lock.lock();
+        try {
+            File referencesDir = getReferencesDir(blobFile);
+            FileUtils.forceMkdir(referencesDir);
+            File marker = new File(referencesDir, fileDescr.getId().toString());
+            if (!marker.exists() && !marker.createNewFile() && !marker.exists()) {
+                throw new IOException("Unable to create file " + marker.getAbsolutePath());
+            }
+
+            if (!blobFile.exists()) {
+                if (contents == null || !contents.exists()) {
+                    throw new IOException("Contents " + hash + " not found in " + rootDir.getAbsolutePath());
+                }
+                FileUtils.moveFile(contents, blobFile);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the reference of the file descriptor to the contents and the contents if they are not referenced
+     * anymore.
+     */
+    protected void removeReference(File rootDir, HashCode hash, FileDescriptor fileDescr) throws IOException {
+        File blobFile = getBlobFile(rootDir, hash);
+        Lock lock = blobLocks.get(hash);
+        lock.lock();
+        try {
+            File referencesDir = getReferencesDir(blobFile);
+            FileUtils.deleteQuietly(new File(referencesDir, fileDescr.getId().toString()));
+
+            String[] references = referencesDir.list();
+            if (references == null || references.length == 0) {
+                FileUtils.deleteQuietly(referencesDir);
+                if (blobFile.exists() && !blobFile.delete()) {
+                    throw new IOException("Unable to delete file " + blobFile.getAbsolutePath());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return hash of the contents
+     * @throws IOException if the file cannot be read or is not a valid reference
+     */
+    protected HashCode readReference(File referenceFile) throws IOException {
+        String reference = FileUtils.readFileToString(referenceFile, StandardCharsets.US_ASCII);
+        if (!reference.startsWith(REFERENCE_PREFIX))
+            throw new IOException("Invalid file reference " + referenceFile.getAbsolutePath());
+
+        try {
+            return HashCode.fromString(reference.substring(REFERENCE_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid file reference " + referenceFile.getAbsolutePath(), e);
+        }
+    }
+
+    protected void writeReference(File referenceFile, HashCode hash) throws IOException {
+        FileUtils.writeStringToFile(referenceFile, REFERENCE_PREFIX + hash, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Adds the file reference in a secondary storage, copying the contents from the primary storage if
+     * the secondary one does not contain them yet.
+     */
+    protected class ReferenceReplicationTask extends ReplicationTask {
+
+        protected final File rootDir;
+
+        public ReferenceReplicationTask(FileDescriptor fileDescr, File source, File target, HashCode checksum,
+                                        File rootDir) {
+            super(fileDescr, source, target, checksum);
+            this.rootDir = rootDir;
+        }
+
+        @Override
+        protected void transfer() throws IOException {
+            File tmpFile = null;
+            try {
+                if (!getBlobFile(rootDir, checksum).exists()) {
+                    tmpFile = createTempFile(rootDir);
+                    FileUtils.copyFile(source, tmpFile, true);
+                    verify(tmpFile);
+                }
+                addReference(rootDir, checksum, fileDescr, tmpFile);
+                writeReference(target, checksum);
+            } finally {
+                FileUtils.deleteQuietly(tmpFile);
+            }
+        }
+    }
+}
@@ -16,6 +16,11 @@
  */
 package com.haulmont.cuba.core.app.filestorage;
 
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.haulmont.cuba.core.app.FileStorageAPI;
 import com.haulmont.cuba.core.app.ServerConfig;
@@ -25,7 +30,9 @@ import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.SecurityContext;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.commons.lang.StringUtils;
+import org.apache.commons.lang.time.FastDateFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -34,13 +41,12 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
 
@@ -49,6 +55,12 @@ public class FileStorage implements FileStorageAPI {
 
     private final Logger log = LoggerFactory.getLogger(FileStorage.class);
 
+    protected static final int BUFFER_SIZE = 64 * 1024;
+
+    protected static final long REPLICATION_RETRY_DELAY_MS = 1000;
+
+    protected static final FastDateFormat LOG_DATE_FORMAT = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss.SSS");
+
     @Inject
     protected UserSessionSource userSessionSource;
 
@@ -60,14 +72,45 @@ public class FileStorage implements FileStorageAPI {
 
     protected boolean isImmutableFileStorage;
 
-    protected ExecutorService writeExecutor = Executors.newFixedThreadPool(5,
-            new ThreadFactoryBuilder().setNameFormat("FileStorageWriter-%d").build());
+    protected int replicationMaxAttempts;
+
+    protected long replicationRetryDelayMs = REPLICATION_RETRY_DELAY_MS;
+
+    protected BlockingQueue<Runnable> replicationQueue;
+
+    protected ExecutorService writeExecutor;
+
+    protected ScheduledExecutorService retryExecutor;
+
+    protected FileStorageJournal journal = new FileStorageJournal();
+
+    protected final HashFunction checksumFunction = Hashing.sha256();
+
+    protected final AtomicLong replicatedCount = new AtomicLong();
+    protected final AtomicLong replicationRetryCount = new AtomicLong();
+    protected final AtomicLong replicationFailedCount = new AtomicLong();
 
     protected volatile File[] storageRoots;
 
     @PostConstruct
     public void init() {
-        this.isImmutableFileStorage = configuration.getConfig(ServerConfig.class).getImmutableFileStorage();
+        ServerConfig serverConfig = configuration.getConfig(ServerConfig.class);
+        this.isImmutableFileStorage = serverConfig.getImmutableFileStorage();
+        this.replicationMaxAttempts = Math.max(1, serverConfig.getFileStorageReplicationMaxAttempts());
+        initReplication(serverConfig.getFileStorageReplicationQueueCapacity());
+
+        journal.start();
+    }
+
+    protected void initReplication(int queueCapacity) {
+        // when the queue is full, the saving thread copies the file itself, which slows down uploads
+        // instead of accumulating pending copies in memory
+        replicationQueue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        writeExecutor = new ThreadPoolExecutor(5, 5, 0L, TimeUnit.MILLISECONDS, replicationQueue,
+                new ThreadFactoryBuilder().setNameFormat("FileStorageWriter-%d").build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        retryExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("FileStorageReplicationRetry-%d").setDaemon(true).build());
     }
 
     /**
@@ -115,51 +158,98 @@ public class FileStorage implements FileStorageAPI {
         final File file = new File(dir, getFileName(fileDescr));
         checkFileExists(file);
 
+        // Open copies in secondary storages to write them together with the primary file
+
+        List<FileCopy> copies = new ArrayList<>();
+        for (int i = 1; i < roots.length; i++) {
+            if (!roots[i].exists()) {
+                log.error("Error saving {} into {} : directory doesn't exist", fileDescr, roots[i]);
+                continue;
+            }
+
+            File copyDir = getStorageDir(roots[i], fileDescr);
+            copies.add(new FileCopy(fileDescr, new File(copyDir, getFileName(fileDescr))));
+        }
+
         long size = 0;
+        Hasher hasher = checksumFunction.newHasher();
         OutputStream os = null;
         try {
             os = FileUtils.openOutputStream(file);
-            size = IOUtils.copyLarge(inputStream, os);
-            os.flush();
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                os.write(buffer, 0, n);
+                hasher.putBytes(buffer, 0, n);
+                for (FileCopy copy : copies) {
+                    copy.write(buffer, n);
+                }
+                size += n;
+            }
+            os.close();
             writeLog(file, false);
         } catch (IOException e) {
             IOUtils.closeQuietly(os);
             FileUtils.deleteQuietly(file);
+            for (FileCopy copy : copies) {
+                copy.discard();
+            }
 
             throw new FileStorageException(FileStorageException.Type.IO_EXCEPTION, file.getAbsolutePath(), e);
         } finally {
             IOUtils.closeQuietly(os);
         }
 
-        // Copy file to secondary storages asynchronously
+        // Copies which failed are replicated from the primary storage asynchronously
 
-        final SecurityContext securityContext = AppContext.getSecurityContext();
-        for (int i = 1; i < roots.length; i++) {
-            if (!roots[i].exists()) {
-                log.error("Error saving {} into {} : directory doesn't exist", fileDescr, roots[i]);
-                continue;
+        HashCode checksum = hasher.hash();
+        for (FileCopy copy : copies) {
+            if (copy.complete()) {
+                writeLog(copy.file, false);
+            } else {
+                replicate(new ReplicationTask(fileDescr, file, copy.file, checksum));
             }
+        }
 
-            File copyDir = getStorageDir(roots[i], fileDescr);
-            final File fileCopy = new File(copyDir, getFileName(fileDescr));
+        return size;
+    }
 
-            writeExecutor.submit(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        AppContext.setSecurityContext(securityContext);
-                        FileUtils.copyFile(file, fileCopy, true);
-                        writeLog(fileCopy, false);
-                    } catch (Exception e) {
-                        log.error("Error saving {} into {} : {}", fileDescr, fileCopy.getAbsolutePath(), e.getMessage());
-                    } finally {
-                        AppContext.setSecurityContext(null);
-                    }
-                }
-            });
+    protected void replicate(ReplicationTask task) {
+        try {
+            writeExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            replicationFailedCount.incrementAndGet();
+            log.error("Error saving {} into {} : file storage is stopped", task.fileDescr, task.target.getAbsolutePath());
         }
+    }
 
-        return size;
+    /**
+     * @return number of files waiting to be copied to secondary storages
+     */
+    public int getReplicationQueueSize() {
+        return replicationQueue != null ? replicationQueue.size() : 0;
+    }
+
+    /**
+     * @return number of files copied to secondary storages asynchronously
+     */
+    public long getReplicatedCount() {
+        return replicatedCount.get();
+    }
+
+    /**
+     * @return number of repeated attempts to copy files to secondary storages
+     */
+    public long getReplicationRetryCount() {
+        return replicationRetryCount.get();
+    }
+
+    /**
+     * @return number of files which have not been copied to secondary storages
+     */
+    public long getReplicationFailedCount() {
+        return replicationFailedCount.get();
     }
 
     protected void checkFileExists(File file) throws FileStorageException {
@@ -192,11 +282,9 @@ public class FileStorage implements FileStorageAPI {
         saveStream(fileDescr, new ByteArrayInputStream(data));
     }
 
-    protected synchronized void writeLog(File file, boolean remove) {
-        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-
+    protected void writeLog(File file, boolean remove) {
         StringBuilder sb = new StringBuilder();
-        sb.append(df.format(timeSource.currentTimestamp())).append(" ");
+        sb.append(LOG_DATE_FORMAT.format(timeSource.currentTimestamp())).append(" ");
         sb.append("[").append(userSessionSource.getUserSession().getUser()).append("] ");
         sb.append(remove ? "REMOVE" : "CREATE").append(" ");
         sb.append("\"").append(file.getAbsolutePath()).append("\"\n");
@@ -208,14 +296,7 @@ public class FileStorage implements FileStorageAPI {
             log.error("Unable to write log: invalid file storage structure", e);
             return;
         }
-        File logFile = new File(rootDir, "storage.log");
-        try {
-            try (FileOutputStream fos = new FileOutputStream(logFile, true)) {
-                IOUtils.write(sb.toString(), fos, StandardCharsets.UTF_8.name());
-            }
-        } catch (IOException e) {
-            log.error("Unable to write log", e);
-        }
+        journal.append(rootDir, sb.toString());
     }
 
     @Override
@@ -259,10 +340,8 @@ public class FileStorage implements FileStorageAPI {
 
         InputStream inputStream = null;
         for (File root : roots) {
-            File dir = getStorageDir(root, fileDescr);
-
-            File file = new File(dir, getFileName(fileDescr));
-            if (!file.exists()) {
+            File file = resolveFile(root, fileDescr);
+            if (file == null || !file.exists()) {
                 log.error("File " + file + " not found");
                 continue;
             }
@@ -280,6 +359,41 @@ public class FileStorage implements FileStorageAPI {
             throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, fileDescr.getId().toString());
     }
 
+    @Override
+    public InputStream openStream(FileDescriptor fileDescr, long offset, long length) throws FileStorageException {
+        checkFileDescriptor(fileDescr);
+        if (offset < 0 || length < 0)
+            throw new IllegalArgumentException("Invalid range: offset " + offset + ", length " + length);
+
+        File[] roots = getStorageRoots();
+        for (File root : roots) {
+            File file = resolveFile(root, fileDescr);
+            if (file == null || !file.exists()) {
+                log.error("File " + file + " not found");
+                continue;
+            }
+
+            FileInputStream inputStream = null;
+            try {
+                inputStream = FileUtils.openInputStream(file);
+                inputStream.getChannel().position(offset);
+                return new BoundedInputStream(inputStream, length);
+            } catch (IOException e) {
+                IOUtils.closeQuietly(inputStream);
+                log.error("Error opening input stream for " + file, e);
+            }
+        }
+        throw new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, fileDescr.getId().toString());
+    }
+
+    /**
+     * Returns the file containing the contents of the file descriptor in the given storage root.
+     * @return the file or null if the storage root contains no such file
+     */
+    protected File resolveFile(File rootDir, FileDescriptor fileDescr) {
+        return new File(getStorageDir(rootDir, fileDescr), getFileName(fileDescr));
+    }
+
     @Override
     public byte[] loadFile(FileDescriptor fileDescr) throws FileStorageException {
         InputStream inputStream = openStream(fileDescr);
@@ -298,15 +412,34 @@ public class FileStorage implements FileStorageAPI {
 
         File[] roots = getStorageRoots();
         for (File root : roots) {
-            File dir = getStorageDir(root, fileDescr);
-            File file = new File(dir, getFileName(fileDescr));
-            if (file.exists()) {
+            File file = resolveFile(root, fileDescr);
+            if (file != null && file.exists()) {
                 return true;
             }
         }
         return false;
     }
 
+    /**
+     * INTERNAL. Don't use in application code.
+     * @return true if the given storage root contains the file of the file descriptor
+     */
+    public boolean fileExists(File rootDir, FileDescriptor fileDescr) {
+        File file = resolveFile(rootDir, fileDescr);
+        return file != null && file.exists();
+    }
+
+    /**
+     * INTERNAL. Don't use in application code.
+     * @return files of the storage root corresponding to file descriptors
+     */
+    public Collection<File> listStorageFiles(File rootDir) {
+        Collection<File> files = FileUtils.listFiles(rootDir, null, true);
+        // files of the root folder (e.g. storage.log) do not belong to file descriptors
+        files.removeAll(FileUtils.listFiles(rootDir, null, false));
+        return files;
+    }
+
     /**
      * INTERNAL. Don't use in application code.
      */
@@ -331,6 +464,149 @@ public class FileStorage implements FileStorageAPI {
 
     @PreDestroy
     protected void stopWriteExecutor() {
+        // make the last attempt of pending retries right away instead of dropping them
+        List<Runnable> pendingRetries = retryExecutor.shutdownNow();
+        if (!pendingRetries.isEmpty()) {
+            log.info("Replicating {} files waiting for retry before shutdown", pendingRetries.size());
+            pendingRetries.forEach(Runnable::run);
+        }
         writeExecutor.shutdown();
+        try {
+            if (!writeExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("{} files have not been copied to secondary storages", replicationQueue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.stop();
+    }
+
+    /**
+     * Copy of a file in a secondary storage, written together with the file in the primary storage.
+     * A failed copy is deleted and then replicated asynchronously.
+     */
+    protected class FileCopy {
+
+        protected final FileDescriptor fileDescr;
+        protected final File file;
+        protected OutputStream outputStream;
+        protected boolean failed;
+
+        public FileCopy(FileDescriptor fileDescr, File file) {
+            this.fileDescr = fileDescr;
+            this.file = file;
+            try {
+                outputStream = FileUtils.openOutputStream(file);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public void write(byte[] buffer, int length) {
+            if (failed)
+                return;
+            try {
+                outputStream.write(buffer, 0, length);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public boolean complete() {
+            if (failed)
+                return false;
+            try {
+                outputStream.close();
+                return true;
+            } catch (IOException e) {
+                fail(e);
+                return false;
+            }
+        }
+
+        public void discard() {
+            IOUtils.closeQuietly(outputStream);
+            FileUtils.deleteQuietly(file);
+        }
+
+        protected void fail(IOException e) {
+            log.warn("Error saving {} into {} : {}, the file will be replicated later",
+                    fileDescr, file.getAbsolutePath(), e.getMessage());
+            failed = true;
+            discard();
+        }
+    }
+
+    /**
+     * Copies a file from the primary storage to a secondary one and verifies the checksum of the copy.
+     * Repeated with increasing delay until {@link ServerConfig#getFileStorageReplicationMaxAttempts()}
+     * attempts are made.
+     */
+    protected class ReplicationTask implements Runnable {
+
+        protected final FileDescriptor fileDescr;
+        protected final File source;
+        protected final File target;
+        protected final HashCode checksum;
+        protected final SecurityContext securityContext;
+        protected int attempt;
+
+        public ReplicationTask(FileDescriptor fileDescr, File source, File target, HashCode checksum) {
+            this.fileDescr = fileDescr;
+            this.source = source;
+            this.target = target;
+            this.checksum = checksum;
+            this.securityContext = AppContext.getSecurityContext();
+        }
+
+        @Override
+        public void run() {
+            // the task can run in the saving thread if the queue is full, so its context must be restored
+            SecurityContext previousSecurityContext = AppContext.getSecurityContext();
+            attempt++;
+            try {
+                AppContext.setSecurityContext(securityContext);
+                if (!source.exists()) {
+                    log.debug("Replication of {} into {} is skipped: the file has been removed",
+                            fileDescr, target.getAbsolutePath());
+                    return;
+                }
+                transfer();
+                replicatedCount.incrementAndGet();
+                writeLog(target, false);
+            } catch (Exception e) {
+                FileUtils.deleteQuietly(target);
+                if (attempt < replicationMaxAttempts && !retryExecutor.isShutdown()) {
+                    replicationRetryCount.incrementAndGet();
+                    log.warn("Error saving {} into {} : {}, attempt {} of {}",
+                            fileDescr, target.getAbsolutePath(), e.getMessage(), attempt, replicationMaxAttempts);
+                    try {
+                        retryExecutor.schedule(() -> replicate(this),
+                                replicationRetryDelayMs << Math.min(attempt - 1, 6), TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException re) {
+                        replicationFailedCount.incrementAndGet();
+                        log.error("Error saving {} into {} : file storage is stopped",
+                                fileDescr, target.getAbsolutePath());
+                    }
+                } else {
+                    replicationFailedCount.incrementAndGet();
+                    log.error("Error saving {} into {} : {}", fileDescr, target.getAbsolutePath(), e.getMessage());
+                }
+            } finally {
+                AppContext.setSecurityContext(previousSecurityContext);
+            }
+        }
+
+        protected void transfer() throws IOException {
+            FileUtils.copyFile(source, target, true);
+            verify(target);
+        }
+
+        protected void verify(File file) throws IOException {
+            HashCode actual = Files.asByteSource(file).hash(checksumFunction);
+            if (!checksum.equals(actual)) {
+                throw new IOException("Checksum mismatch: expected " + checksum + ", actual " + actual);
+            }
+        }
     }
 }
\ No newline at end of file
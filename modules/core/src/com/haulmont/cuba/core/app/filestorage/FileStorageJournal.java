@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of file storage operations, written to {@code storage.log} files in the storage roots.
+ * <p>Entries are queued by the calling threads and written by a single background thread which keeps
+ * the log files open, so saving files is never blocked by writing the log.</p>
+ */
+public class FileStorageJournal {
+
+    public static final String LOG_FILE_NAME = "storage.log";
+
+    private final Logger log = LoggerFactory.getLogger(FileStorageJournal.class);
+
+    protected final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+
+    // accessed only by the writer thread
+    protected final Map<File, Writer> writers = new HashMap<>();
+
+    protected Thread writerThread;
+
+    protected volatile boolean stopped;
+
+    public void start() {
+        writerThread = new Thread(this::run, "FileStorageJournalWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Writes queued entries and stops the writer thread.
+     */
+    public void stop() {
+        stopped = true;
+        if (writerThread != null) {
+            try {
+                writerThread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Adds a line to the journal of the storage root. The line is written asynchronously.
+     */
+    public void append(File rootDir, String line) {
+        queue.add(new Entry(rootDir, line));
+    }
+
+    protected void run() {
+        List<Entry> entries = new ArrayList<>();
+        try {
+            while (!stopped || !queue.isEmpty()) {
+                Entry entry = queue.poll(1, TimeUnit.SECONDS);
+                if (entry == null)
+                    continue;
+
+                entries.add(entry);
+                queue.drainTo(entries);
+                write(entries);
+                entries.clear();
+            }
+        } catch (InterruptedException e) {
+            log.warn("File storage journal writer is interrupted, {} entries are not written", queue.size());
+        } finally {
+            for (Writer writer : writers.values()) {
+                IOUtils.closeQuietly(writer);
+            }
+            writers.clear();
+        }
+    }
+
+    protected void write(List<Entry> entries) {
+        Set<File> written = new LinkedHashSet<>();
+        for (Entry entry : entries) {
+            try {
+                Writer writer = writers.get(entry.rootDir);
+                if (writer == null) {
+                    writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(new File(entry.rootDir, LOG_FILE_NAME), true), StandardCharsets.UTF_8));
+                    writers.put(entry.rootDir, writer);
+                }
+                writer.write(entry.line);
+                written.add(entry.rootDir);
+            } catch (IOException e) {
+                log.error("Unable to write log", e);
+                closeWriter(entry.rootDir);
+            }
+        }
+        for (File rootDir : written) {
+            Writer writer = writers.get(rootDir);
+            if (writer != null) {
+                try {
+                    writer.flush();
+                } catch (IOException e) {
+                    log.error("Unable to write log", e);
+                    closeWriter(rootDir);
+                }
+            }
+        }
+    }
+
+    protected void closeWriter(File rootDir) {
+        // the log file is reopened on the next write
+        IOUtils.closeQuietly(writers.remove(rootDir));
+    }
+
+    protected static class Entry {
+        protected final File rootDir;
+        protected final String line;
+
+        public Entry(File rootDir, String line) {
+            this.rootDir = rootDir;
+            this.line = line;
+        }
+    }
+}
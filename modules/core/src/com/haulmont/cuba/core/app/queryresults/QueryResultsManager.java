@@ -17,6 +17,8 @@
 
 package com.haulmont.cuba.core.app.queryresults;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.haulmont.bali.db.QueryRunner;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
@@ -24,23 +26,34 @@ import com.haulmont.cuba.core.Query;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
 import com.haulmont.cuba.core.app.DataServiceQueryBuilder;
+import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.QueryHolder;
 import com.haulmont.cuba.core.sys.persistence.DbTypeConverter;
+import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory;
 import com.haulmont.cuba.security.app.UserSessionsAPI;
 import com.haulmont.cuba.security.entity.UserSessionEntity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Supports functionality that allows queries from previously selected results.
- *
+ * <p>Small results are kept in memory of the middleware node which has loaded them, larger ones are stored
+ * in the SYS_QUERY_RESULT table.</p>
  */
 @Component(QueryResultsManagerAPI.NAME)
 public class QueryResultsManager implements QueryResultsManagerAPI {
@@ -65,8 +78,25 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
 
     private static final int BATCH_SIZE = 100;
 
+    private static final int MAX_BATCH_SIZE = 5000;
+
+    private static final String IN_MEMORY_RESULTS_ATTR = "_inMemoryQueryResults";
+
     private Logger log = LoggerFactory.getLogger(getClass());
 
+    /**
+     * Previous query results kept in memory: user session id -> query key -> ids.
+     */
+    protected Cache<UUID, ConcurrentMap<Integer, InMemoryResults>> inMemoryResults;
+
+    @PostConstruct
+    protected void init() {
+        inMemoryResults = CacheBuilder.newBuilder()
+                .expireAfterAccess(configuration.getConfig(ServerConfig.class).getUserSessionExpirationTimeoutSec(),
+                        TimeUnit.SECONDS)
+                .build();
+    }
+
     @Override
     public void savePreviousQueryResults(LoadContext loadContext) {
         List<LoadContext.Query> prevQueries = loadContext.getPrevQueries();
@@ -81,8 +111,11 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
             return;
 
         int queryKey = loadContext.getQueryKey();
+        UUID userSessionId = userSessionSource.getUserSession().getId();
 
-        if (resultsAlreadySaved(queryKey, contextQuery))
+        if (resultsAlreadySaved(queryKey, contextQuery)
+                // results kept in memory of another node must be loaded again
+                && (getInMemoryResults(userSessionId, queryKey) != null || !isSavedInMemory(queryKey)))
             return;
 
         List idList;
@@ -116,7 +149,56 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
         }
 
         delete(queryKey);
-        insert(queryKey, idList);
+        if (!idList.isEmpty() && idList.size() <= getInMemoryResultsMaxSize()) {
+            saveInMemory(userSessionId, queryKey, idList);
+        } else {
+            insert(queryKey, idList);
+        }
+    }
+
+    protected int getInMemoryResultsMaxSize() {
+        int maxSize = configuration.getConfig(ServerConfig.class).getInMemoryQueryResultsMaxSize();
+        // ids are passed to the query as a collection parameter
+        return Math.min(maxSize, DbmsSpecificFactory.getDbmsFeatures().getMaxIdsBatchSize());
+    }
+
+    protected void saveInMemory(UUID userSessionId, int queryKey, List idList) {
+        log.debug("Save {} query results in memory for {} / {}", idList.size(), userSessionId, queryKey);
+        try {
+            inMemoryResults.get(userSessionId, ConcurrentHashMap::new).put(queryKey, new InMemoryResults(idList));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+        setSavedInMemory(queryKey, true);
+    }
+
+    @Nullable
+    @Override
+    public List getInMemoryResults(UUID userSessionId, int queryKey) {
+        ConcurrentMap<Integer, InMemoryResults> sessionResults = inMemoryResults.getIfPresent(userSessionId);
+        if (sessionResults == null)
+            return null;
+        InMemoryResults results = sessionResults.get(queryKey);
+        return results != null ? results.toList() : null;
+    }
+
+    protected boolean isSavedInMemory(int queryKey) {
+        HashSet<Integer> keys = userSessionSource.getUserSession().getAttribute(IN_MEMORY_RESULTS_ATTR);
+        return keys != null && keys.contains(queryKey);
+    }
+
+    protected void setSavedInMemory(int queryKey, boolean inMemory) {
+        HashSet<Integer> keys = userSessionSource.getUserSession().getAttribute(IN_MEMORY_RESULTS_ATTR);
+        if (inMemory == (keys != null && keys.contains(queryKey)))
+            return;
+        // do not modify the attribute value, it can be used by other threads
+        keys = keys == null ? new HashSet<>() : new HashSet<>(keys);
+        if (inMemory) {
+            keys.add(queryKey);
+        } else {
+            keys.remove(queryKey);
+        }
+        userSessionSource.getUserSession().setAttribute(IN_MEMORY_RESULTS_ATTR, keys);
     }
 
     private boolean resultsAlreadySaved(Integer queryKey, LoadContext.Query query) {
@@ -170,15 +252,17 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
             }
             QueryRunner runner = new QueryRunner();
             try {
-                String userSessionIdStr = converter.getSqlObject(userSessionId).toString(); // assuming that UUID can be passed to query as string in all databases
-                String sql = String.format("insert into SYS_QUERY_RESULT (SESSION_ID, QUERY_KEY, %s) values ('%s', %s, ?)",
-                        columnName, userSessionIdStr, queryKey);
-                int[] paramTypes = new int[] { converter.getSqlType(idFromList.getClass()) };
-                for (int i = 0; i < idList.size(); i += BATCH_SIZE) {
-                    List<UUID> sublist = idList.subList(i, Math.min(i + BATCH_SIZE, idList.size()));
-                    Object[][] params = new Object[sublist.size()][1];
+                Object userSessionIdParam = converter.getSqlObject(userSessionId);
+                String sql = String.format("insert into SYS_QUERY_RESULT (SESSION_ID, QUERY_KEY, %s) values (?, ?, ?)",
+                        columnName);
+                int[] paramTypes = new int[] {
+                        converter.getSqlType(UUID.class), Types.INTEGER, converter.getSqlType(idFromList.getClass()) };
+                int batchSize = getBatchSize(idList.size());
+                for (int i = 0; i < idList.size(); i += batchSize) {
+                    List<UUID> sublist = idList.subList(i, Math.min(i + batchSize, idList.size()));
+                    Object[][] params = new Object[sublist.size()][];
                     for (int j = 0; j < sublist.size(); j++) {
-                        params[j][0] = converter.getSqlObject(sublist.get(j));
+                        params[j] = new Object[] { userSessionIdParam, queryKey, converter.getSqlObject(sublist.get(j)) };
                     }
                     runner.batch(em.getConnection(), sql, params, paramTypes);
                 }
@@ -193,6 +277,14 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
         }
     }
 
+    /**
+     * Returns the number of rows inserted by one JDBC batch: large results are inserted in larger batches
+     * to reduce the number of round-trips.
+     */
+    protected int getBatchSize(int size) {
+        return Math.max(BATCH_SIZE, Math.min(size / 10, MAX_BATCH_SIZE));
+    }
+
     @Override
     public void delete(int queryKey) {
         UUID userSessionId = userSessionSource.getUserSession().getId();
@@ -200,12 +292,19 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
         String logMsg = "Delete query results for " + userSessionId + " / " + queryKey;
         log.debug(logMsg);
 
-        String sql = "delete from SYS_QUERY_RESULT where SESSION_ID = '"
-                + userSessionId + "' and QUERY_KEY = " + queryKey;
+        ConcurrentMap<Integer, InMemoryResults> sessionResults = inMemoryResults.getIfPresent(userSessionId);
+        if (sessionResults != null) {
+            sessionResults.remove(queryKey);
+        }
+        setSavedInMemory(queryKey, false);
+
+        DbTypeConverter converter = persistence.getDbTypeConverter();
+        String sql = "delete from SYS_QUERY_RESULT where SESSION_ID = ? and QUERY_KEY = ?";
 
         QueryRunner runner = new QueryRunner(persistence.getDataSource());
         try {
-            runner.update(sql);
+            runner.update(sql, new Object[] { converter.getSqlObject(userSessionId), queryKey },
+                    new int[] { converter.getSqlType(UUID.class), Types.INTEGER });
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -214,10 +313,15 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
 
     @Override
     public void deleteForCurrentSession() {
+        UUID userSessionId = userSessionSource.getUserSession().getId();
+        inMemoryResults.invalidate(userSessionId);
+
+        DbTypeConverter converter = persistence.getDbTypeConverter();
         QueryRunner runner = new QueryRunner(persistence.getDataSource());
         try {
-            runner.update("delete from SYS_QUERY_RESULT where SESSION_ID = '"
-                    + userSessionSource.getUserSession().getId() + "'");
+            runner.update("delete from SYS_QUERY_RESULT where SESSION_ID = ?",
+                    new Object[] { converter.getSqlObject(userSessionId) },
+                    new int[] { converter.getSqlType(UUID.class) });
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
@@ -225,12 +329,21 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
 
     @Override
     public void deleteForInactiveSessions() {
-        if (!AppContext.isStarted() || !clusterManager.isMaster()
-                || !configuration.getConfig(GlobalConfig.class).getAllowQueryFromSelected())
+        if (!AppContext.isStarted() || !configuration.getConfig(GlobalConfig.class).getAllowQueryFromSelected())
             return;
 
         log.debug("Delete query results for inactive user sessions");
 
+        // results in memory are deleted on each node
+        Set<UUID> activeSessionIds = new HashSet<>();
+        for (UserSessionEntity userSessionEntity : userSessions.getUserSessionInfo()) {
+            activeSessionIds.add(userSessionEntity.getId());
+        }
+        inMemoryResults.asMap().keySet().retainAll(activeSessionIds);
+
+        if (!clusterManager.isMaster())
+            return;
+
         StringBuilder sb = new StringBuilder("delete from SYS_QUERY_RESULT");
         Collection<UserSessionEntity> userSessionEntities = userSessions.getUserSessionInfo();
         if (!userSessionEntities.isEmpty()) {
@@ -250,4 +363,58 @@ public class QueryResultsManager implements QueryResultsManagerAPI {
             throw new RuntimeException(e);
         }
     }
+
+    /**
+     * Ids of previous query results in compact form: UUID, Long and Integer ids are kept in a primitive array.
+     */
+    protected static class InMemoryResults {
+        protected final Class idClass;
+        protected final long[] longs;
+        protected final Object[] objects;
+
+        public InMemoryResults(List idList) {
+            idClass = idList.get(0).getClass();
+            if (UUID.class.equals(idClass)) {
+                longs = new long[idList.size() * 2];
+                for (int i = 0; i < idList.size(); i++) {
+                    UUID uuid = (UUID) idList.get(i);
+                    longs[i * 2] = uuid.getMostSignificantBits();
+                    longs[i * 2 + 1] = uuid.getLeastSignificantBits();
+                }
+                objects = null;
+            } else if (Long.class.equals(idClass) || Integer.class.equals(idClass)) {
+                longs = new long[idList.size()];
+                for (int i = 0; i < idList.size(); i++) {
+                    longs[i] = ((Number) idList.get(i)).longValue();
+                }
+                objects = null;
+            } else {
+                longs = null;
+                objects = idList.toArray();
+            }
+        }
+
+        public List toList() {
+            if (objects != null) {
+                return Arrays.asList(objects);
+            }
+            List<Object> list;
+            if (UUID.class.equals(idClass)) {
+                list = new ArrayList<>(longs.length / 2);
+                for (int i = 0; i < longs.length; i += 2) {
+                    list.add(new UUID(longs[i], longs[i + 1]));
+                }
+            } else {
+                list = new ArrayList<>(longs.length);
+                for (long value : longs) {
+                    if (Long.class.equals(idClass)) {
+                        list.add(value);
+                    } else {
+                        list.add((int) value);
+                    }
+                }
+            }
+            return list;
+        }
+    }
 }
\ No newline at end of file
@@ -19,6 +19,7 @@ package com.haulmont.cuba.core.app.queryresults;
 
 import com.haulmont.cuba.core.global.LoadContext;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.UUID;
 
@@ -36,6 +37,13 @@ public interface QueryResultsManagerAPI {
 
     void delete(int queryKey);
 
+    /**
+     * @return ids of previous query results kept in memory of this middleware node, or null if the results
+     * are stored in the database
+     */
+    @Nullable
+    List getInMemoryResults(UUID userSessionId, int queryKey);
+
     void deleteForCurrentSession();
 
     void deleteForInactiveSessions();
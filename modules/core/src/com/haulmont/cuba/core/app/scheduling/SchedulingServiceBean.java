@@ -20,6 +20,7 @@ package com.haulmont.cuba.core.app.scheduling;
 import com.haulmont.cuba.core.*;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.IdempotentClusterMessage;
 import com.haulmont.cuba.core.app.SchedulingService;
 import com.haulmont.cuba.core.app.scheduled.MethodInfo;
 import com.haulmont.cuba.core.app.scheduled.MethodParameterInfo;
@@ -38,7 +39,6 @@ import org.springframework.core.LocalVariableTableParameterNameDiscoverer;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
-import java.io.Serializable;
 import java.lang.reflect.Method;
 import java.util.*;
 
@@ -128,7 +128,7 @@ public class SchedulingServiceBean implements SchedulingService {
         }
     }
 
-    public static class SetSchedulingActiveMsg implements Serializable {
+    public static class SetSchedulingActiveMsg implements IdempotentClusterMessage {
         private static final long serialVersionUID = 6934530919733469448L;
 
         public final boolean active;
@@ -54,6 +54,8 @@ public class FileDownloadController {
 
     private static Logger log = LoggerFactory.getLogger(FileDownloadController.class);
 
+    protected static final long[] UNSATISFIABLE_RANGE = new long[0];
+
     @Inject
     private UserSessionManager userSessionManager;
 
@@ -88,7 +90,27 @@ public class FileDownloadController {
             InputStream is = null;
             ServletOutputStream os = null;
             try {
-                is = fd != null ? fileStorage.openStream(fd) : FileUtils.openInputStream(file);
+                long[] range = null;
+                if (fd != null && fd.getSize() != null) {
+                    response.setHeader("Accept-Ranges", "bytes");
+                    range = parseRange(request.getHeader("Range"), fd.getSize());
+                }
+
+                if (range == UNSATISFIABLE_RANGE) {
+                    response.setHeader("Content-Range", "bytes */" + fd.getSize());
+                    response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+
+                if (range != null) {
+                    long length = range[1] - range[0] + 1;
+                    is = fileStorage.openStream(fd, range[0], length);
+                    response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                    response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + fd.getSize());
+                    response.setHeader("Content-Length", String.valueOf(length));
+                } else {
+                    is = fd != null ? fileStorage.openStream(fd) : FileUtils.openInputStream(file);
+                }
                 os = response.getOutputStream();
                 IOUtils.copy(is, os);
                 os.flush();
@@ -107,6 +129,44 @@ public class FileDownloadController {
         }
     }
 
+    /**
+     * Parses a single byte range of the Range request header.
+     * @return first and last positions of the range, {@link #UNSATISFIABLE_RANGE} if the range lies outside of
+     * the file, or null if the whole file should be sent
+     */
+    protected long[] parseRange(String rangeHeader, long size) {
+        if (rangeHeader == null || !rangeHeader.startsWith("bytes=") || rangeHeader.contains(","))
+            return null;
+
+        String spec = rangeHeader.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0)
+            return null;
+
+        long start, end;
+        try {
+            if (dash == 0) {
+                long suffixLength = Long.parseLong(spec.substring(1));
+                if (suffixLength <= 0 || size == 0)
+                    return UNSATISFIABLE_RANGE;
+                start = Math.max(0, size - suffixLength);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        // syntactically invalid range is ignored
+        if (start > end)
+            return null;
+        if (start >= size)
+            return UNSATISFIABLE_RANGE;
+        return new long[]{start, Math.min(end, size - 1)};
+    }
+
     protected UserSession getSession(HttpServletRequest request, HttpServletResponse response) throws IOException {
         UUID sessionId;
         try {
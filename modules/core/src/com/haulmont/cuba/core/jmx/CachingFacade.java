@@ -22,6 +22,8 @@ import com.haulmont.cuba.core.global.Messages;
 import com.haulmont.cuba.core.global.Scripting;
 import com.haulmont.cuba.core.global.ViewRepository;
 import com.haulmont.cuba.core.sys.AbstractViewRepository;
+import com.haulmont.cuba.core.sys.NumberIdCache;
+import com.haulmont.cuba.core.sys.QueryTransformationCache;
 import com.haulmont.cuba.security.app.EntityLogAPI;
 
 import org.springframework.stereotype.Component;
@@ -48,6 +50,12 @@ public class CachingFacade implements CachingFacadeMBean {
     @Inject
     protected DynamicAttributesManagerAPI dynamicAttributesManagerAPI;
 
+    @Inject
+    protected QueryTransformationCache queryTransformationCache;
+
+    @Inject
+    protected NumberIdCache numberIdCache;
+
     @Override
     public int getMessagesCacheSize() {
         return messages.getCacheSize();
@@ -78,6 +86,41 @@ public class CachingFacade implements CachingFacadeMBean {
         dynamicAttributesManagerAPI.loadCache();
     }
 
+    @Override
+    public long getQueryTransformationCacheSize() {
+        return queryTransformationCache.size();
+    }
+
+    @Override
+    public double getQueryTransformationCacheHitRate() {
+        return queryTransformationCache.getStats().hitRate();
+    }
+
+    @Override
+    public void clearQueryTransformationCache() {
+        queryTransformationCache.invalidateAll();
+    }
+
+    @Override
+    public long getNumberIdCacheRefillCount() {
+        return numberIdCache.getRefillCount();
+    }
+
+    @Override
+    public double getNumberIdCacheAverageRefillTime() {
+        return numberIdCache.getAverageRefillTime();
+    }
+
+    @Override
+    public double getNumberIdCacheMaxRefillTime() {
+        return numberIdCache.getMaxRefillTime();
+    }
+
+    @Override
+    public long getNumberIdCacheWaitCount() {
+        return numberIdCache.getWaitCount();
+    }
+
     @Override
     public void clearViewRepositoryCache() {
         ((AbstractViewRepository) viewRepository).reset();
@@ -31,4 +31,18 @@ public interface CachingFacadeMBean {
     void clearViewRepositoryCache();
 
     void clearDynamicAttributesCache();
+
+    long getQueryTransformationCacheSize();
+
+    double getQueryTransformationCacheHitRate();
+
+    void clearQueryTransformationCache();
+
+    long getNumberIdCacheRefillCount();
+
+    double getNumberIdCacheAverageRefillTime();
+
+    double getNumberIdCacheMaxRefillTime();
+
+    long getNumberIdCacheWaitCount();
 }
\ No newline at end of file
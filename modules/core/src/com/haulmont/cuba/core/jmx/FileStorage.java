@@ -22,7 +22,6 @@ import com.haulmont.cuba.core.app.FileStorageAPI;
 import com.haulmont.cuba.core.entity.FileDescriptor;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.FileStorageException;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.exception.ExceptionUtils;
 
 import org.springframework.stereotype.Component;
@@ -48,6 +47,38 @@ public class FileStorage implements FileStorageMBean {
         }
     }
 
+    @Override
+    public int getReplicationQueueSize() {
+        com.haulmont.cuba.core.app.filestorage.FileStorage fileStorage = getFileStorage();
+        return fileStorage != null ? fileStorage.getReplicationQueueSize() : 0;
+    }
+
+    @Override
+    public long getReplicatedCount() {
+        com.haulmont.cuba.core.app.filestorage.FileStorage fileStorage = getFileStorage();
+        return fileStorage != null ? fileStorage.getReplicatedCount() : 0;
+    }
+
+    @Override
+    public long getReplicationRetryCount() {
+        com.haulmont.cuba.core.app.filestorage.FileStorage fileStorage = getFileStorage();
+        return fileStorage != null ? fileStorage.getReplicationRetryCount() : 0;
+    }
+
+    @Override
+    public long getReplicationFailedCount() {
+        com.haulmont.cuba.core.app.filestorage.FileStorage fileStorage = getFileStorage();
+        return fileStorage != null ? fileStorage.getReplicationFailedCount() : 0;
+    }
+
+    protected com.haulmont.cuba.core.app.filestorage.FileStorage getFileStorage() {
+        FileStorageAPI fileStorageAPI = AppBeans.get(FileStorageAPI.class);
+        if (fileStorageAPI instanceof com.haulmont.cuba.core.app.filestorage.FileStorage) {
+            return (com.haulmont.cuba.core.app.filestorage.FileStorage) fileStorageAPI;
+        }
+        return null;
+    }
+
     @Override
     public String findOrphanDescriptors() {
         com.haulmont.cuba.core.app.filestorage.FileStorage fileStorage;
@@ -69,9 +100,7 @@ public class FileStorage implements FileStorageMBean {
             TypedQuery<FileDescriptor> query = em.createQuery("select fd from sys$FileDescriptor fd", FileDescriptor.class);
             List<FileDescriptor> fileDescriptors = query.getResultList();
             for (FileDescriptor fileDescriptor : fileDescriptors) {
-                File dir = fileStorage.getStorageDir(roots[0], fileDescriptor);
-                File file = new File(dir, com.haulmont.cuba.core.app.filestorage.FileStorage.getFileName(fileDescriptor));
-                if (!file.exists()) {
+                if (!fileStorage.fileExists(roots[0], fileDescriptor)) {
                     sb.append(fileDescriptor.getId())
                             .append(", ")
                             .append(fileDescriptor.getName())
@@ -108,12 +137,8 @@ public class FileStorage implements FileStorageMBean {
             return ExceptionUtils.getStackTrace(
                     new FileStorageException(FileStorageException.Type.FILE_NOT_FOUND, storageFolder.getAbsolutePath()));
 
-        @SuppressWarnings("unchecked")
-        Collection<File> systemFiles = FileUtils.listFiles(storageFolder, null, true);
-        @SuppressWarnings("unchecked")
-        Collection<File> filesInRootFolder = FileUtils.listFiles(storageFolder, null, false);
-        //remove files of root storage folder (e.g. storage.log) from files collection
-        systemFiles.removeAll(filesInRootFolder);
+        Collection<File> systemFiles =
+                ((com.haulmont.cuba.core.app.filestorage.FileStorage) fileStorageAPI).listStorageFiles(storageFolder);
 
         List<FileDescriptor> fileDescriptors;
         Transaction tx = persistence.createTransaction();
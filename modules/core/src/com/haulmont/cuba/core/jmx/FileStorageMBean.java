@@ -38,4 +38,24 @@ public interface FileStorageMBean {
      * @return the list of files in the storage which have no corresponding descriptors in the database
      */
     String findOrphanFiles();
+
+    /**
+     * @return number of files waiting to be copied to secondary storages
+     */
+    int getReplicationQueueSize();
+
+    /**
+     * @return number of files copied to secondary storages asynchronously
+     */
+    long getReplicatedCount();
+
+    /**
+     * @return number of repeated attempts to copy files to secondary storages
+     */
+    long getReplicationRetryCount();
+
+    /**
+     * @return number of files which have not been copied to secondary storages after all attempts
+     */
+    long getReplicationFailedCount();
 }
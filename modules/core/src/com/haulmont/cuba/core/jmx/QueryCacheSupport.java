@@ -45,6 +45,63 @@ public class QueryCacheSupport implements QueryCacheSupportMBean {
         return queryCache.size();
     }
 
+    @Override
+    public long getHitCount() {
+        return queryCacheMgr.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return queryCacheMgr.getMissCount();
+    }
+
+    @Override
+    public long getEntityCacheHitCount() {
+        return queryCacheMgr.getEntityCacheHitCount();
+    }
+
+    @Override
+    public long getBatchLoadCount() {
+        return queryCacheMgr.getBatchLoadCount();
+    }
+
+    @Override
+    public long getBatchLoadedInstanceCount() {
+        return queryCacheMgr.getBatchLoadedInstanceCount();
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        return queryCache.getStats().hitRate();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return queryCache.getStats().evictionCount();
+    }
+
+    @Override
+    public long getIndexSize() {
+        return queryCache.getIndexSize();
+    }
+
+    @Override
+    public long getCachedInstanceCount() {
+        long count = 0;
+        for (QueryResult queryResult : queryCache.asMap().values()) {
+            if (queryResult.getResult() != null) {
+                count += queryResult.getResult().size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String resetStatistics() {
+        queryCacheMgr.resetStatistics();
+        return "Done";
+    }
+
     @Override
     public String evictAll() {
         queryCacheMgr.invalidateAll(true);
@@ -27,6 +27,36 @@ public interface QueryCacheSupportMBean {
     @ManagedAttribute(description = "Current number of cached queries")
     long getSize();
 
+    @ManagedAttribute(description = "Number of queries whose results were found in the cache")
+    long getHitCount();
+
+    @ManagedAttribute(description = "Number of queries whose results were not found in the cache")
+    long getMissCount();
+
+    @ManagedAttribute(description = "Number of cached query result instances taken from the entity cache")
+    long getEntityCacheHitCount();
+
+    @ManagedAttribute(description = "Number of batch queries loading cached query result instances")
+    long getBatchLoadCount();
+
+    @ManagedAttribute(description = "Number of cached query result instances loaded by batch queries")
+    long getBatchLoadedInstanceCount();
+
+    @ManagedAttribute(description = "Ratio of cache lookups that found query results, since the cache was created")
+    double getCacheHitRate();
+
+    @ManagedAttribute(description = "Number of cached queries evicted because the cache reached its maximum size")
+    long getEvictionCount();
+
+    @ManagedAttribute(description = "Number of entries in the indexes by entity name and query identifier")
+    long getIndexSize();
+
+    @ManagedAttribute(description = "Total number of instance identifiers held by cached queries")
+    long getCachedInstanceCount();
+
+    @ManagedOperation(description = "Reset cache statistics")
+    String resetStatistics();
+
     @ManagedOperation(description = "Discard all query results in the cache")
     String evictAll();
 
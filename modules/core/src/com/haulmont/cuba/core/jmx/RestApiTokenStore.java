@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.jmx;
+
+import com.haulmont.cuba.restapi.ServerTokenStore;
+import com.haulmont.cuba.restapi.ServerTokenStoreImpl;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+import java.util.Date;
+
+@Component("cuba_RestApiTokenStoreMBean")
+public class RestApiTokenStore implements RestApiTokenStoreMBean {
+
+    @Inject
+    protected ServerTokenStore serverTokenStore;
+
+    @Override
+    public int getTokenCount() {
+        ServerTokenStoreImpl tokenStore = getTokenStore();
+        return tokenStore != null ? tokenStore.getTokenCount() : 0;
+    }
+
+    @Override
+    public int getAuthenticationKeyCount() {
+        ServerTokenStoreImpl tokenStore = getTokenStore();
+        return tokenStore != null ? tokenStore.getAuthenticationKeyCount() : 0;
+    }
+
+    @Override
+    public int getSessionCount() {
+        ServerTokenStoreImpl tokenStore = getTokenStore();
+        return tokenStore != null ? tokenStore.getSessionCount() : 0;
+    }
+
+    @Override
+    public int getExpiryIndexSize() {
+        ServerTokenStoreImpl tokenStore = getTokenStore();
+        return tokenStore != null ? tokenStore.getExpiryIndexSize() : 0;
+    }
+
+    @Override
+    public Date getNextExpiry() {
+        ServerTokenStoreImpl tokenStore = getTokenStore();
+        return tokenStore != null ? tokenStore.getNextExpiry() : null;
+    }
+
+    @Override
+    public int getRemovedTokensCount() {
+        ServerTokenStoreImpl tokenStore = getTokenStore();
+        return tokenStore != null ? tokenStore.getRemovedTokensCount() : 0;
+    }
+
+    @Override
+    public String sweepExpiredTokens() {
+        ServerTokenStoreImpl tokenStore = getTokenStore();
+        if (tokenStore == null)
+            return "<not supported>";
+        try {
+            int before = tokenStore.getTokenCount();
+            tokenStore.sweepExpiredTokens();
+            return "Done, tokens in memory: " + before + " -> " + tokenStore.getTokenCount();
+        } catch (Exception e) {
+            return ExceptionUtils.getStackTrace(e);
+        }
+    }
+
+    protected ServerTokenStoreImpl getTokenStore() {
+        return serverTokenStore instanceof ServerTokenStoreImpl ? (ServerTokenStoreImpl) serverTokenStore : null;
+    }
+}
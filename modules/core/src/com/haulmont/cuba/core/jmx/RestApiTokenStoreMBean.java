@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.jmx;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import java.util.Date;
+
+@ManagedResource(description = "Monitors the in-memory store of REST API tokens")
+public interface RestApiTokenStoreMBean {
+
+    @ManagedAttribute(description = "Number of access tokens in memory")
+    int getTokenCount();
+
+    @ManagedAttribute(description = "Number of entries in the index by authentication key")
+    int getAuthenticationKeyCount();
+
+    @ManagedAttribute(description = "Number of access tokens having a user session")
+    int getSessionCount();
+
+    @ManagedAttribute(description = "Number of entries in the index by expiry time")
+    int getExpiryIndexSize();
+
+    @ManagedAttribute(description = "Expiry time of the token which expires first")
+    Date getNextExpiry();
+
+    @ManagedAttribute(description = "Number of recently removed tokens kept for client tier caches")
+    int getRemovedTokensCount();
+
+    @ManagedOperation(description = "Remove expired tokens from memory of this node")
+    String sweepExpiredTokens();
+}
@@ -16,6 +16,8 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.haulmont.chile.core.model.Instance;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
@@ -53,6 +55,10 @@ public class EntityFetcher {
     @Inject
     protected Persistence persistence;
 
+    // names of view properties to fetch, keyed by entity class and names of all view properties, because views
+    // are mutable and usually copied for each load
+    protected Cache<String, List<String>> fetchedProperties = CacheBuilder.newBuilder().maximumSize(1000).build();
+
     public void fetch(Entity instance, View view) {
         if (view == null)
             return;
@@ -72,11 +78,7 @@ public class EntityFetcher {
         if (log.isTraceEnabled()) log.trace("Fetching instance " + entity);
 
         MetaClass metaClass = metadata.getClassNN(entity.getClass());
-        for (ViewProperty property : view.getProperties()) {
-            MetaProperty metaProperty = metaClass.getPropertyNN(property.getName());
-            if (!metaProperty.getRange().isClass() && !isLazyFetchedLocalAttribute(metaProperty))
-                continue;
-
+        for (ViewProperty property : getFetchedProperties(metaClass, view)) {
             if (log.isTraceEnabled()) log.trace("Fetching property " + property.getName());
 
             Object value = entity.getValue(property.getName());
@@ -106,6 +108,33 @@ public class EntityFetcher {
         }
     }
 
+    /**
+     * @return properties of the view that reference other entities or are lazy local attributes
+     */
+    protected List<ViewProperty> getFetchedProperties(MetaClass metaClass, View view) {
+        StringBuilder key = new StringBuilder(metaClass.getName());
+        for (ViewProperty property : view.getProperties()) {
+            key.append(',').append(property.getName());
+        }
+
+        List<String> names = fetchedProperties.asMap().computeIfAbsent(key.toString(), k -> {
+            List<String> result = new ArrayList<>();
+            for (ViewProperty property : view.getProperties()) {
+                MetaProperty metaProperty = metaClass.getPropertyNN(property.getName());
+                if (metaProperty.getRange().isClass() || isLazyFetchedLocalAttribute(metaProperty)) {
+                    result.add(property.getName());
+                }
+            }
+            return Collections.unmodifiableList(result);
+        });
+
+        List<ViewProperty> properties = new ArrayList<>(names.size());
+        for (String name : names) {
+            properties.add(view.getProperty(name));
+        }
+        return properties;
+    }
+
     private boolean isLazyFetchedLocalAttribute(MetaProperty metaProperty) {
         AnnotatedElement annotatedElement = metaProperty.getAnnotatedElement();
         Basic annotation = annotatedElement.getAnnotation(Basic.class);
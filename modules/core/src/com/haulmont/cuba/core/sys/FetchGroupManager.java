@@ -55,6 +55,9 @@ public class FetchGroupManager {
     @Inject
     private ViewRepository viewRepository;
 
+    @Inject
+    private QueryTransformationCache transformationCache;
+
     public void setView(JpaQuery query, String queryString, @Nullable View view, boolean singleResultExpected) {
         Preconditions.checkNotNullArgument(query, "query is null");
         if (view != null) {
@@ -91,6 +94,54 @@ public class FetchGroupManager {
 
         boolean useFetchGroup = attrGroup instanceof FetchGroup;
 
+        // views are usually copied for each query, so the plan is cached by the view structure rather than instance
+        StringBuilder planKey = new StringBuilder();
+        planKey.append(useFetchGroup ? 'F' : 'L').append(singleResultExpected ? '1' : 'N');
+        appendViewStructure(view, planKey);
+
+        FetchPlan plan = transformationCache.get("fetchPlan", queryString, planKey.toString(),
+                () -> createFetchPlan(queryString, view, useFetchGroup, singleResultExpected));
+
+        if (log.isTraceEnabled())
+            log.trace((useFetchGroup ? "Fetch" : "Load") + " group for " + view + ":\n" + plan.attributes.stream().collect(Collectors.joining("\n")));
+        if (attrGroup instanceof FetchGroup)
+            ((FetchGroup) attrGroup).setShouldLoadAll(true);
+        for (String attribute : plan.attributes) {
+            attrGroup.addAttribute(attribute);
+        }
+
+        if (!plan.cacheable) {
+            query.setHint(useFetchGroup ? QueryHints.FETCH_GROUP : QueryHints.LOAD_GROUP, attrGroup);
+        }
+
+        if (log.isDebugEnabled()) {
+            String fetchModes = plan.fetchHints.entrySet().stream()
+                    .map(e -> e.getKey() + "=" + (e.getValue().equals(QueryHints.LEFT_FETCH) ? "JOIN" : "BATCH"))
+                    .collect(Collectors.joining(", "));
+            log.debug("Fetch modes for " + view + ": " + (fetchModes.equals("") ? "<none>" : fetchModes));
+        }
+        for (Map.Entry<String, String> entry : plan.fetchHints.entrySet()) {
+            query.setHint(entry.getValue(), entry.getKey());
+        }
+
+        if (plan.hasBatches) {
+            query.setHint(QueryHints.BATCH_TYPE, "IN");
+        }
+    }
+
+    private void appendViewStructure(View view, StringBuilder sb) {
+        sb.append(view.getEntityClass().getName()).append('{');
+        for (ViewProperty property : view.getProperties()) {
+            sb.append(property.getName()).append(':').append(property.getFetchMode());
+            if (property.getView() != null) {
+                appendViewStructure(property.getView(), sb);
+            }
+            sb.append(',');
+        }
+        sb.append('}');
+    }
+
+    private FetchPlan createFetchPlan(String queryString, View view, boolean useFetchGroup, boolean singleResultExpected) {
         Set<FetchGroupField> fetchGroupFields = new LinkedHashSet<>();
         processView(view, null, fetchGroupFields, useFetchGroup);
 
@@ -100,8 +151,6 @@ public class FetchGroupManager {
         for (FetchGroupField field : fetchGroupFields) {
             fetchGroupAttributes.add(field.path());
         }
-        if (attrGroup instanceof FetchGroup)
-            ((FetchGroup) attrGroup).setShouldLoadAll(true);
 
         List<FetchGroupField> refFields = new ArrayList<>();
         for (FetchGroupField field : fetchGroupFields) {
@@ -113,7 +162,8 @@ public class FetchGroupManager {
 
         MetaClass metaClass = metadata.getClassNN(view.getEntityClass());
         if (!refFields.isEmpty()) {
-            String alias = QueryTransformerFactory.createParser(queryString).getEntityAlias();
+            QueryParser parser = QueryTransformerFactory.createParser(queryString);
+            String alias = parser.getEntityAlias();
 
             List<FetchGroupField> batchFields = new ArrayList<>();
             List<FetchGroupField> joinFields = new ArrayList<>();
@@ -180,8 +230,6 @@ public class FetchGroupManager {
                 }
             }
 
-            QueryParser parser = QueryTransformerFactory.createParser(queryString);
-
             for (Iterator<FetchGroupField> fieldIt = joinFields.iterator(); fieldIt.hasNext(); ) {
                 FetchGroupField joinField = fieldIt.next();
                 if (joinField.fetchMode == FetchMode.AUTO && parser.hasIsNullCondition(joinField.path())) {
@@ -226,29 +274,7 @@ public class FetchGroupManager {
             }
         }
 
-        if (log.isTraceEnabled())
-            log.trace((useFetchGroup ? "Fetch" : "Load") + " group for " + view + ":\n" + fetchGroupAttributes.stream().collect(Collectors.joining("\n")));
-        for (String attribute : fetchGroupAttributes) {
-            attrGroup.addAttribute(attribute);
-        }
-
-        if (!metadataTools.isCacheable(metaClass)) {
-            query.setHint(useFetchGroup ? QueryHints.FETCH_GROUP : QueryHints.LOAD_GROUP, attrGroup);
-        }
-
-        if (log.isDebugEnabled()) {
-            String fetchModes = fetchHints.entrySet().stream()
-                    .map(e -> e.getKey() + "=" + (e.getValue().equals(QueryHints.LEFT_FETCH) ? "JOIN" : "BATCH"))
-                    .collect(Collectors.joining(", "));
-            log.debug("Fetch modes for " + view + ": " + (fetchModes.equals("") ? "<none>" : fetchModes));
-        }
-        for (Map.Entry<String, String> entry : fetchHints.entrySet()) {
-            query.setHint(entry.getValue(), entry.getKey());
-        }
-
-        if (hasBatches) {
-            query.setHint(QueryHints.BATCH_TYPE, "IN");
-        }
+        return new FetchPlan(fetchGroupAttributes, fetchHints, hasBatches, metadataTools.isCacheable(metaClass));
     }
 
     private List<String> getMasterEntityAttributes(Set<FetchGroupField> fetchGroupFields,
@@ -367,6 +393,24 @@ public class FetchGroupManager {
         return metadata.getClassNN(entityClass);
     }
 
+    /**
+     * Attributes and hints computed for a view and a query, cached by {@link QueryTransformationCache}.
+     */
+    protected static class FetchPlan {
+        private final List<String> attributes;
+        private final Map<String, String> fetchHints;
+        private final boolean hasBatches;
+        private final boolean cacheable;
+
+        public FetchPlan(Collection<String> attributes, Map<String, String> fetchHints, boolean hasBatches,
+                         boolean cacheable) {
+            this.attributes = Collections.unmodifiableList(new ArrayList<>(attributes));
+            this.fetchHints = Collections.unmodifiableMap(new LinkedHashMap<>(fetchHints));
+            this.hasBatches = hasBatches;
+            this.cacheable = cacheable;
+        }
+    }
+
     protected static class FetchGroupField {
         private final MetaClass metaClass;
         private FetchMode fetchMode;
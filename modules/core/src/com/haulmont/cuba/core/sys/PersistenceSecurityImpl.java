@@ -18,6 +18,7 @@
 package com.haulmont.cuba.core.sys;
 
 import com.google.common.collect.Multimap;
+import com.haulmont.bali.datastruct.Pair;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.cuba.core.EntityManager;
@@ -41,6 +42,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import java.io.Serializable;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static java.lang.String.format;
 
@@ -57,10 +59,14 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
     @Inject
     protected Persistence persistence;
 
+    @Inject
+    protected QueryTransformationCache transformationCache;
+
     @Override
     public boolean applyConstraints(Query query) {
-        QueryParser parser = QueryTransformerFactory.createParser(query.getQueryString());
-        String entityName = parser.getEntityName();
+        String queryString = query.getQueryString();
+        String entityName = transformationCache.get("entityName", queryString, null,
+                () -> QueryTransformerFactory.createParser(queryString).getEntityName());
 
         List<ConstraintData> constraints = getConstraints(metadata.getClassNN(entityName), constraint ->
                 constraint.getCheckType().database()
@@ -70,14 +76,23 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
         if (constraints.isEmpty())
             return false;
 
-        QueryTransformer transformer = QueryTransformerFactory.createTransformer(query.getQueryString());
-
+        // constraints differ by user groups, so the result is cached per set of constraint expressions
+        List<Pair<String, String>> constraintExpressions = new ArrayList<>(constraints.size());
         for (ConstraintData constraint : constraints) {
-            processConstraint(transformer, constraint, entityName);
+            constraintExpressions.add(new Pair<>(constraint.getJoin(), constraint.getWhereClause()));
         }
-        query.setQueryString(transformer.getResult());
+        Pair<String, List<String>> result = transformationCache.get("constraints", queryString, constraintExpressions,
+                () -> {
+                    QueryTransformer transformer = QueryTransformerFactory.createTransformer(queryString);
+                    for (ConstraintData constraint : constraints) {
+                        processConstraint(transformer, constraint, entityName);
+                    }
+                    return new Pair<>(transformer.getResult(),
+                            Collections.unmodifiableList(new ArrayList<>(transformer.getAddedParams())));
+                });
+        query.setQueryString(result.getFirst());
 
-        for (String paramName : transformer.getAddedParams()) {
+        for (String paramName : result.getSecond()) {
             setQueryParam(query, paramName);
         }
         return true;
@@ -117,10 +132,11 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
 
     @Override
     public boolean filterByConstraints(Collection<Entity> entities) {
+        Set<Entity> notPermitted = getNotPermittedInMemory(entities);
         boolean filtered = false;
         for (Iterator<Entity> iterator = entities.iterator(); iterator.hasNext(); ) {
             Entity entity = iterator.next();
-            if (entity instanceof HasUuid && !isPermittedInMemory(entity)) {
+            if (notPermitted.contains(entity)) {
                 //we ignore situations when the collection is immutable
                 iterator.remove();
                 filtered = true;
@@ -230,11 +246,18 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
         }
     }
 
+    /**
+     * Checks in-memory constraints of all elements before descending into references of any of them, so a constraint
+     * of an element is evaluated before references of the preceding elements are filtered. The result can differ from
+     * checking the elements one by one only if the constraint reads an entity reachable from a preceding element whose
+     * references are filtered.
+     */
     protected Set<UUID> internalApplyConstraints(Collection<Entity> entities, Set<UUID> handled) {
         Set<UUID> filtered = new LinkedHashSet<>();
+        Set<Entity> notPermitted = getNotPermittedInMemory(entities);
         for (Iterator<Entity> iterator = entities.iterator(); iterator.hasNext(); ) {
             Entity next = iterator.next();
-            if (internalApplyConstraints(next, handled, true)) {
+            if (notPermitted.contains(next) || internalApplyConstraints(next, handled, false)) {
                 filtered.add(((HasUuid) next).getUuid());
                 //we ignore situations when the collection is immutable
                 iterator.remove();
@@ -248,7 +271,7 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
     protected boolean internalApplyConstraints(Entity entity, Set<UUID> handled, boolean checkPermitted) {
         MetaClass metaClass = entity.getMetaClass();
 
-        if (!isPermittedInMemory(entity) && checkPermitted) {
+        if (checkPermitted && !isPermittedInMemory(entity)) {
             return true;
         }
 
@@ -287,9 +310,19 @@ public class PersistenceSecurityImpl extends SecurityImpl implements Persistence
     }
 
     protected boolean isPermittedInMemory(Entity entity) {
-        return isPermitted(entity, constraint ->
-                constraint.getCheckType().memory()
-                        && (constraint.getOperationType() == ConstraintOperationType.READ
-                        || constraint.getOperationType() == ConstraintOperationType.ALL));
+        return isPermitted(entity, this::isInMemoryReadConstraint);
+    }
+
+    protected Set<Entity> getNotPermittedInMemory(Collection<Entity> entities) {
+        List<Entity> checked = entities.stream()
+                .filter(entity -> entity instanceof HasUuid)
+                .collect(Collectors.toList());
+        return getNotPermitted(checked, this::isInMemoryReadConstraint);
+    }
+
+    protected boolean isInMemoryReadConstraint(ConstraintData constraint) {
+        return constraint.getCheckType().memory()
+                && (constraint.getOperationType() == ConstraintOperationType.READ
+                || constraint.getOperationType() == ConstraintOperationType.ALL);
     }
 }
\ No newline at end of file
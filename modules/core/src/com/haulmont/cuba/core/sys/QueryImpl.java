@@ -21,6 +21,7 @@ import com.google.common.collect.Sets;
 import com.haulmont.bali.util.ReflectionHelper;
 import com.haulmont.chile.core.datatypes.impl.EnumClass;
 import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.QueryResultIterator;
 import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.IdProxy;
@@ -33,10 +34,13 @@ import com.haulmont.cuba.core.sys.persistence.PersistenceImplSupport;
 import org.eclipse.persistence.config.CascadePolicy;
 import org.eclipse.persistence.config.HintValues;
 import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.config.ResultSetConcurrency;
+import org.eclipse.persistence.config.ResultSetType;
 import org.eclipse.persistence.internal.jpa.EJBQueryImpl;
 import org.eclipse.persistence.jpa.JpaQuery;
 import org.eclipse.persistence.queries.DatabaseQuery;
 import org.eclipse.persistence.queries.ObjectLevelReadQuery;
+import org.eclipse.persistence.queries.ScrollableCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -65,6 +69,7 @@ public class QueryImpl<T> implements TypedQuery<T> {
     private EntityFetcher entityFetcher;
     private QueryCacheManager queryCacheMgr;
     private QueryTransformerFactory queryTransformerFactory;
+    private QueryTransformationCache transformationCache;
     private Set<Param> params = new HashSet<>();
     private LockModeType lockMode;
     private List<View> views = new ArrayList<>();
@@ -90,6 +95,7 @@ public class QueryImpl<T> implements TypedQuery<T> {
         this.support = AppBeans.get(PersistenceImplSupport.NAME);
         this.queryCacheMgr = AppBeans.get(QueryCacheManager.NAME);
         this.queryTransformerFactory = AppBeans.get(QueryTransformerFactory.NAME);
+        this.transformationCache = AppBeans.get(QueryTransformationCache.NAME);
     }
 
     private JpaQuery<T> getQuery() {
@@ -189,7 +195,50 @@ public class QueryImpl<T> implements TypedQuery<T> {
     }
 
     private String transformQueryString() {
-        String result = expandMacros(queryString);
+        String expandedQuery = expandMacros(queryString);
+
+        TransformedQuery transformedQuery = transformationCache.get("QueryImpl", expandedQuery, getParamsShape(),
+                () -> buildTransformedQuery(expandedQuery));
+
+        for (Iterator<Param> iterator = params.iterator(); iterator.hasNext(); ) {
+            Param param = iterator.next();
+            if (param.value instanceof String) {
+                String strValue = (String) param.value;
+                if (strValue.startsWith("(?i)")) {
+                    param.value = strValue.substring(4).toLowerCase();
+                }
+            }
+            if (param.isNamedParam() && transformedQuery.removedParams.contains(param.name.toString())) {
+                iterator.remove();
+            }
+        }
+        return transformedQuery.queryString;
+    }
+
+    /**
+     * @return everything about the parameters that affects the result of {@link #replaceParams}
+     */
+    private Set<String> getParamsShape() {
+        Set<String> shape = new HashSet<>();
+        for (Param param : params) {
+            String paramName = param.name.toString();
+            if (param.value instanceof String && ((String) param.value).startsWith("(?i)")) {
+                shape.add(paramName + ":ci");
+            } else if (param.isNamedParam()) {
+                if (param.value == null) {
+                    shape.add(paramName + ":null");
+                } else if (param.value instanceof Collection && ((Collection) param.value).isEmpty()) {
+                    shape.add(paramName + ":empty");
+                } else {
+                    shape.add(paramName);
+                }
+            }
+        }
+        return shape;
+    }
+
+    private TransformedQuery buildTransformedQuery(String expandedQuery) {
+        String result = expandedQuery;
 
         boolean rebuildParser = false;
         QueryParser parser = queryTransformerFactory.parser(result);
@@ -204,7 +253,8 @@ public class QueryImpl<T> implements TypedQuery<T> {
             rebuildParser = true;
         }
 
-        result = replaceParams(result, parser);
+        Set<String> removedParams = new HashSet<>();
+        result = replaceParams(result, parser, removedParams);
 
         if (rebuildParser) {
             parser = queryTransformerFactory.parser(result);
@@ -223,7 +273,7 @@ public class QueryImpl<T> implements TypedQuery<T> {
             result = transformer.getResult();
         }
 
-        return result;
+        return new TransformedQuery(result, removedParams);
     }
 
     private String expandMacros(String queryStr) {
@@ -236,17 +286,19 @@ public class QueryImpl<T> implements TypedQuery<T> {
         return result;
     }
 
-    private String replaceParams(String query, QueryParser parser) {
+    /**
+     * Parameter values are not changed here, because the result is cached. Names of the parameters that
+     * must be removed from the query are added to the {@code removedParams} set.
+     */
+    private String replaceParams(String query, QueryParser parser, Set<String> removedParams) {
         String result = query;
         Set<String> paramNames = Sets.newHashSet(parser.getParamNames());
-        for (Iterator<Param> iterator = params.iterator(); iterator.hasNext(); ) {
-            Param param = iterator.next();
+        for (Param param : params) {
             String paramName = param.name.toString();
             if (param.value instanceof String) {
                 String strValue = (String) param.value;
                 if (strValue.startsWith("(?i)")) {
                     result = replaceCaseInsensitiveParam(result, paramName);
-                    param.value = strValue.substring(4).toLowerCase();
                 }
             }
             if (param.isNamedParam()) {
@@ -255,13 +307,13 @@ public class QueryImpl<T> implements TypedQuery<T> {
                     Collection collectionValue = (Collection) param.value;
                     if (collectionValue.isEmpty()) {
                         result = replaceInCollectionParam(result, paramName);
-                        iterator.remove();
+                        removedParams.add(paramName);
                     }
                 }
                 if (param.value == null) {
                     if (parser.isParameterInCondition(paramName)) {
                         result = replaceInCollectionParam(result, paramName);
-                        iterator.remove();
+                        removedParams.add(paramName);
                     }
                 }
             }
@@ -322,6 +374,27 @@ public class QueryImpl<T> implements TypedQuery<T> {
         return resultList;
     }
 
+    @Override
+    public QueryResultIterator<T> getResultIterator(int fetchSize) {
+        if (log.isDebugEnabled())
+            log.debug(queryString.replaceAll("[\\t\\n\\x0B\\f\\r]", " "));
+
+        singleResultExpected = false;
+
+        JpaQuery<T> jpaQuery = getQuery();
+        // the cursor hints must not affect further executions, so the next one creates a new delegate
+        query = null;
+        jpaQuery.setHint(QueryHints.SCROLLABLE_CURSOR, HintValues.TRUE);
+        jpaQuery.setHint(QueryHints.RESULT_SET_TYPE, ResultSetType.ForwardOnly);
+        jpaQuery.setHint(QueryHints.RESULT_SET_CONCURRENCY, ResultSetConcurrency.ReadOnly);
+        if (fetchSize > 0) {
+            jpaQuery.setHint(QueryHints.JDBC_FETCH_SIZE, fetchSize);
+        }
+        preExecute(jpaQuery);
+        ScrollableCursor cursor = (ScrollableCursor) jpaQuery.getSingleResult();
+        return new CursorResultIterator(cursor);
+    }
+
     @Override
     public T getSingleResult() {
         if (log.isDebugEnabled())
@@ -620,6 +693,42 @@ public class QueryImpl<T> implements TypedQuery<T> {
         return result;
     }
 
+    protected class CursorResultIterator implements QueryResultIterator<T> {
+
+        private final ScrollableCursor cursor;
+
+        protected CursorResultIterator(ScrollableCursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !cursor.isClosed() && cursor.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            @SuppressWarnings("unchecked")
+            T item = (T) cursor.next();
+            if (item instanceof Entity) {
+                for (View view : views) {
+                    entityFetcher.fetch((Entity) item, view);
+                }
+            }
+            return item;
+        }
+
+        @Override
+        public void close() {
+            if (!cursor.isClosed()) {
+                cursor.close();
+            }
+        }
+    }
+
     protected static class Param {
         private Object name;
         private Object value;
@@ -667,4 +776,17 @@ public class QueryImpl<T> implements TypedQuery<T> {
             return name.hashCode();
         }
     }
+
+    /**
+     * Result of the query string transformation, cached by {@link QueryTransformationCache}.
+     */
+    protected static class TransformedQuery {
+        private final String queryString;
+        private final Set<String> removedParams;
+
+        public TransformedQuery(String queryString, Set<String> removedParams) {
+            this.queryString = queryString;
+            this.removedParams = Collections.unmodifiableSet(removedParams);
+        }
+    }
 }
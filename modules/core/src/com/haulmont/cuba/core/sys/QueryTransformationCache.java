@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.haulmont.chile.core.model.Session;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.global.Metadata;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of JPQL transformation results.
+ * <p>
+ * Parsing a query string is expensive, and the same query strings are transformed the same way on every execution.
+ * A result is cached by the transformation kind, the source query string and a discriminator containing
+ * everything else the transformation depends on, e.g. the shape of query parameters or the applied constraints.
+ * Cached results must be immutable. All results are dropped when metadata is reloaded, because transformations
+ * depend on entity names.
+ */
+@Component(QueryTransformationCache.NAME)
+public class QueryTransformationCache {
+
+    public static final String NAME = "cuba_QueryTransformationCache";
+
+    @Inject
+    protected ServerConfig serverConfig;
+
+    @Inject
+    protected Metadata metadata;
+
+    protected Cache<Key, Object> cache;
+
+    protected volatile Session metadataSession;
+
+    @PostConstruct
+    protected void init() {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(serverConfig.getQueryTransformationCacheMaxSize())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached result of the transformation or performs the transformation and caches its result.
+     *
+     * @param kind           transformation kind
+     * @param queryString    source query string
+     * @param discriminator  additional data the result depends on, must implement equals and hashCode
+     * @param transformation performs the transformation if there is no cached result, must not return null
+     * @return transformation result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String kind, String queryString, @Nullable Object discriminator, Supplier<T> transformation) {
+        checkMetadataSession();
+
+        Key key = new Key(kind, queryString, discriminator);
+        Object result = cache.getIfPresent(key);
+        if (result == null) {
+            result = transformation.get();
+            cache.put(key, result);
+        }
+        return (T) result;
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    protected void checkMetadataSession() {
+        Session session = metadata.getSession();
+        if (session != metadataSession) {
+            cache.invalidateAll();
+            metadataSession = session;
+        }
+    }
+
+    protected static class Key {
+        protected final String kind;
+        protected final String queryString;
+        protected final Object discriminator;
+
+        public Key(String kind, String queryString, @Nullable Object discriminator) {
+            this.kind = kind;
+            this.queryString = queryString;
+            this.discriminator = discriminator;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key that = (Key) o;
+            return kind.equals(that.kind)
+                    && queryString.equals(that.queryString)
+                    && Objects.equals(discriminator, that.discriminator);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = kind.hashCode();
+            result = 31 * result + queryString.hashCode();
+            result = 31 * result + Objects.hashCode(discriminator);
+            return result;
+        }
+    }
+}
@@ -18,6 +18,7 @@ package com.haulmont.cuba.core.sys;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import com.haulmont.bali.datastruct.Pair;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
 import com.haulmont.cuba.core.entity.BaseGenericIdEntity;
@@ -28,11 +29,15 @@ import org.springframework.stereotype.Component;
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
+import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import static org.apache.commons.lang.StringUtils.rightPad;
 import static org.apache.commons.lang.StringUtils.substring;
@@ -41,34 +46,61 @@ import static org.apache.commons.lang.StringUtils.substring;
 public class SecurityTokenManager {
     public static final String NAME = "cuba_SecurityTokenManager";
 
+    /**
+     * First byte of a token in the binary format. Tokens of the previous JSON format start with '{'.
+     */
+    protected static final byte TOKEN_FORMAT_VERSION = 1;
+
     @Inject
     protected ServerConfig config;
 
+    protected static final int CIPHER_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    /**
+     * Ciphers initialized with the current key. A cipher is not thread-safe, so it is taken from the pool
+     * for a single operation and returned afterwards.
+     */
+    protected volatile CipherPool cipherPool;
+
+    /**
+     * Token of an entity without filtered data together with the key it was encrypted with.
+     */
+    protected volatile Pair<String, byte[]> emptyToken;
+
     /**
      * Encrypt filtered data and write the result to the security token
      */
     public void writeSecurityToken(BaseGenericIdEntity<?> resultEntity) {
         Multimap<String, UUID> filtered = BaseEntityInternalAccess.getFilteredData(resultEntity);
-        JSONObject jsonObject = new JSONObject();
-        if (filtered != null) {
-            Set<Map.Entry<String, Collection<UUID>>> entries = filtered.asMap().entrySet();
-            String[] filteredAttributes = new String[entries.size()];
-            int i = 0;
-            for (Map.Entry<String, Collection<UUID>> entry : entries) {
-                jsonObject.put(entry.getKey(), entry.getValue());
-                filteredAttributes[i++] = entry.getKey();
-            }
-            BaseEntityInternalAccess.setFilteredAttributes(resultEntity, filteredAttributes);
+        if (filtered == null || filtered.isEmpty()) {
+            BaseEntityInternalAccess.setSecurityToken(resultEntity, getEmptyToken().clone());
+            return;
         }
 
-        String json = jsonObject.toString();
+        Set<Map.Entry<String, Collection<UUID>>> entries = filtered.asMap().entrySet();
+        String[] filteredAttributes = new String[entries.size()];
         byte[] encrypted;
-        Cipher cipher = getCipher(Cipher.ENCRYPT_MODE);
         try {
-            encrypted = cipher.doFinal(json.getBytes(StandardCharsets.UTF_8));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + filtered.size() * 16);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(TOKEN_FORMAT_VERSION);
+            out.writeInt(entries.size());
+            int i = 0;
+            for (Map.Entry<String, Collection<UUID>> entry : entries) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (UUID uuid : entry.getValue()) {
+                    out.writeLong(uuid.getMostSignificantBits());
+                    out.writeLong(uuid.getLeastSignificantBits());
+                }
+                filteredAttributes[i++] = entry.getKey();
+            }
+            out.flush();
+            encrypted = doFinal(Cipher.ENCRYPT_MODE, bytes.toByteArray());
         } catch (Exception e) {
             throw new RuntimeException("An error occurred while generating security token", e);
         }
+        BaseEntityInternalAccess.setFilteredAttributes(resultEntity, filteredAttributes);
         BaseEntityInternalAccess.setSecurityToken(resultEntity, encrypted);
     }
 
@@ -76,33 +108,94 @@ public class SecurityTokenManager {
      * Decrypt security token and read filtered data
      */
     public void readSecurityToken(BaseGenericIdEntity<?> resultEntity) {
-        if (BaseEntityInternalAccess.getSecurityToken(resultEntity) == null) {
+        byte[] securityToken = BaseEntityInternalAccess.getSecurityToken(resultEntity);
+        if (securityToken == null) {
             return;
         }
 
         BaseEntityInternalAccess.setFilteredData(resultEntity, null);
-        Cipher cipher = getCipher(Cipher.DECRYPT_MODE);
+        if (Arrays.equals(securityToken, getEmptyToken())) {
+            // nothing was filtered, no need to decrypt
+            return;
+        }
+
         try {
-            byte[] decrypted = cipher.doFinal(BaseEntityInternalAccess.getSecurityToken(resultEntity));
-            String json = new String(decrypted, StandardCharsets.UTF_8);
-            JSONObject jsonObject = new JSONObject(json);
-            for (Object key : jsonObject.keySet()) {
-                String elementName = String.valueOf(key);
-                JSONArray jsonArray = jsonObject.getJSONArray(elementName);
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    String id = jsonArray.getString(i);
-                    addFiltered(resultEntity, elementName, UUID.fromString(id));
+            byte[] decrypted = doFinal(Cipher.DECRYPT_MODE, securityToken);
+            if (decrypted.length > 0 && decrypted[0] == TOKEN_FORMAT_VERSION) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(decrypted, 1, decrypted.length - 1));
+                int attributesCount = in.readInt();
+                for (int i = 0; i < attributesCount; i++) {
+                    String elementName = in.readUTF();
+                    int idsCount = in.readInt();
+                    for (int j = 0; j < idsCount; j++) {
+                        addFiltered(resultEntity, elementName, new UUID(in.readLong(), in.readLong()));
+                    }
                 }
+            } else {
+                readJsonSecurityToken(resultEntity, new String(decrypted, StandardCharsets.UTF_8));
             }
         } catch (Exception e) {
             throw new RuntimeException("An error occurred while reading security token", e);
         }
     }
 
+    /**
+     * Reads tokens of the previous format, which can still come from clients that obtained them before an upgrade.
+     */
+    protected void readJsonSecurityToken(BaseGenericIdEntity<?> resultEntity, String json) {
+        JSONObject jsonObject = new JSONObject(json);
+        for (Object key : jsonObject.keySet()) {
+            String elementName = String.valueOf(key);
+            JSONArray jsonArray = jsonObject.getJSONArray(elementName);
+            for (int i = 0; i < jsonArray.length(); i++) {
+                String id = jsonArray.getString(i);
+                addFiltered(resultEntity, elementName, UUID.fromString(id));
+            }
+        }
+    }
+
+    protected byte[] getEmptyToken() {
+        String key = config.getKeyForSecurityTokenEncryption();
+        Pair<String, byte[]> token = emptyToken;
+        if (token == null || !token.getFirst().equals(key)) {
+            try {
+                token = new Pair<>(key, doFinal(Cipher.ENCRYPT_MODE, new byte[]{TOKEN_FORMAT_VERSION, 0, 0, 0, 0}));
+            } catch (Exception e) {
+                throw new RuntimeException("An error occurred while generating security token", e);
+            }
+            emptyToken = token;
+        }
+        return token.getSecond();
+    }
+
+    protected byte[] doFinal(int mode, byte[] input) throws Exception {
+        String key = config.getKeyForSecurityTokenEncryption();
+        CipherPool pool = cipherPool;
+        if (pool == null || !pool.key.equals(key)) {
+            pool = new CipherPool(key);
+            cipherPool = pool;
+        }
+
+        BlockingQueue<Cipher> ciphers = mode == Cipher.ENCRYPT_MODE ? pool.encryptCiphers : pool.decryptCiphers;
+        Cipher cipher = ciphers.poll();
+        if (cipher == null) {
+            cipher = getCipher(mode, key);
+        }
+        // the cipher state is undefined after a failure, so it is returned to the pool only on success
+        byte[] result = cipher.doFinal(input);
+        // ciphers exceeding the pool size are dropped
+        ciphers.offer(cipher);
+        return result;
+    }
+
     protected Cipher getCipher(int mode) {
+        return getCipher(mode, config.getKeyForSecurityTokenEncryption());
+    }
+
+    protected Cipher getCipher(int mode, String key) {
         try {
             Cipher cipher = Cipher.getInstance("AES");
-            byte[] encryptionKey = rightPad(substring(config.getKeyForSecurityTokenEncryption(), 0, 16), 16).getBytes();
+            byte[] encryptionKey = rightPad(substring(key, 0, 16), 16).getBytes();
             SecretKeySpec sKeySpec = new SecretKeySpec(encryptionKey, "AES");
             cipher.init(mode, sKeySpec);
             return cipher;
@@ -136,4 +229,14 @@ public class SecurityTokenManager {
             BaseEntityInternalAccess.setFilteredData(entity, ArrayListMultimap.create());
         }
     }
+
+    protected static class CipherPool {
+        protected final String key;
+        protected final BlockingQueue<Cipher> encryptCiphers = new ArrayBlockingQueue<>(CIPHER_POOL_SIZE);
+        protected final BlockingQueue<Cipher> decryptCiphers = new ArrayBlockingQueue<>(CIPHER_POOL_SIZE);
+
+        protected CipherPool(String key) {
+            this.key = key;
+        }
+    }
 }
\ No newline at end of file
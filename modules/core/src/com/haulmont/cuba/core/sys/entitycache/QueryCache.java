@@ -16,6 +16,7 @@
 
 package com.haulmont.cuba.core.sys.entitycache;
 
+import com.google.common.cache.CacheStats;
 
 import java.util.Map;
 import java.util.Set;
@@ -80,6 +81,22 @@ public interface QueryCache {
      */
     long getMaxSize();
 
+    /**
+     * Returns a snapshot of this cache's cumulative statistics: hits, misses, evictions.
+     * The default implementation returns empty statistics.
+     */
+    default CacheStats getStats() {
+        return new CacheStats(0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Returns the number of entries in the auxiliary indexes used to find cached queries
+     * by entity names and query identifiers. The default implementation returns 0.
+     */
+    default long getIndexSize() {
+        return 0;
+    }
+
     /**
      * Returns a view of the entries stored in this cache as a map. Modifications made to
      * the map doesn't affect the cache.
@@ -17,26 +17,33 @@
 package com.haulmont.cuba.core.sys.entitycache;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.haulmont.chile.core.model.MetaClass;
 import com.haulmont.chile.core.model.MetadataObject;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.TypedQuery;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManager;
+import com.haulmont.cuba.core.app.IdempotentClusterMessage;
 import com.haulmont.cuba.core.entity.BaseGenericIdEntity;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.IdProxy;
 import com.haulmont.cuba.core.global.Metadata;
 import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.sys.persistence.DbmsFeatures;
+import com.haulmont.cuba.core.sys.persistence.DbmsSpecificFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import javax.persistence.Cache;
 import javax.persistence.MappedSuperclass;
-import javax.persistence.TypedQuery;
-import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Component(QueryCacheManager.NAME)
@@ -57,6 +64,12 @@ public class QueryCacheManager {
 
     protected static final Logger log = LoggerFactory.getLogger(QueryCacheManager.class);
 
+    protected final AtomicLong hitCount = new AtomicLong();
+    protected final AtomicLong missCount = new AtomicLong();
+    protected final AtomicLong entityCacheHitCount = new AtomicLong();
+    protected final AtomicLong batchLoadCount = new AtomicLong();
+    protected final AtomicLong batchLoadedInstanceCount = new AtomicLong();
+
     @PostConstruct
     public void init() {
         clusterManager.addListener(InvalidateQueryCacheMsg.class, new ClusterListenerAdapter<InvalidateQueryCacheMsg>() {
@@ -89,21 +102,82 @@ public class QueryCacheManager {
         List<T> resultList = null;
         QueryResult queryResult = queryCache.get(queryKey);
         if (queryResult != null) {
-            EntityManager em = persistence.getEntityManager();
-            resultList = new ArrayList<>(queryResult.getResult().size());
+            hitCount.incrementAndGet();
             MetaClass metaClass = metadata.getClassNN(queryResult.getType());
             if (!metadata.getTools().isCacheable(metaClass)) {
                 log.warn("Using cacheable query without entity cache for {}", queryResult.getType());
             }
-            for (Object id : queryResult.getResult()) {
-                resultList.add((T) em.find(metaClass.getJavaClass(), id, views.toArray(new View[views.size()])));
-            }
+            resultList = (List<T>) loadInstances(metaClass, queryResult.getResult(), views);
         } else {
+            missCount.incrementAndGet();
             log.debug("Query results are not found in cache: {}", queryKey.printDescription());
         }
         return resultList;
     }
 
+    /**
+     * Loads instances by the list of cached identifiers. Instances contained in the entity cache are taken from it,
+     * the rest are loaded by {@code in (...)} queries in batches limited by
+     * {@link DbmsFeatures#getMaxIdsBatchSize()}. The order of identifiers is preserved, instances not found in
+     * the database are skipped.
+     */
+    @SuppressWarnings("unchecked")
+    protected List<Entity> loadInstances(MetaClass metaClass, List ids, List<View> views) {
+        EntityManager em = persistence.getEntityManager();
+        Class javaClass = metaClass.getJavaClass();
+        View[] viewArray = views.toArray(new View[views.size()]);
+        Cache entityCache = em.getDelegate().getEntityManagerFactory().getCache();
+
+        Map<Object, Entity> instances = new HashMap<>(ids.size());
+        List<Object> missingIds = new ArrayList<>();
+        for (Object id : ids) {
+            if (entityCache.contains(javaClass, id)) {
+                Entity instance = (Entity) em.find(javaClass, id, viewArray);
+                if (instance != null) {
+                    instances.put(id, instance);
+                    entityCacheHitCount.incrementAndGet();
+                    continue;
+                }
+            }
+            missingIds.add(id);
+        }
+
+        if (!missingIds.isEmpty()) {
+            String pkName = metadata.getTools().getPrimaryKeyName(metaClass);
+            if (pkName == null)
+                throw new IllegalStateException("Cannot determine PK name for entity " + metaClass);
+            String queryString = String.format("select e from %s e where e.%s in :ids", metaClass.getName(), pkName);
+            int batchSize = DbmsSpecificFactory.getDbmsFeatures().getMaxIdsBatchSize();
+
+            for (List<Object> batch : Lists.partition(missingIds, batchSize)) {
+                TypedQuery<Entity> query = em.createQuery(queryString, javaClass);
+                query.setParameter("ids", batch.stream()
+                        .map(id -> id instanceof IdProxy ? ((IdProxy) id).get() : id)
+                        .collect(Collectors.toList()));
+                for (View view : views) {
+                    query.addView(view);
+                }
+                List<Entity> loaded = query.getResultList();
+                for (Entity instance : loaded) {
+                    instances.put(instance.getId(), instance);
+                }
+                batchLoadCount.incrementAndGet();
+                batchLoadedInstanceCount.addAndGet(loaded.size());
+            }
+        }
+
+        List<Entity> resultList = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            Entity instance = instances.get(id);
+            if (instance != null) {
+                resultList.add(instance);
+            } else {
+                log.debug("Cached instance {}-{} is not found", metaClass.getName(), id);
+            }
+        }
+        return resultList;
+    }
+
     /**
      * Get single query results from query cache by specified {@code queryKey}
      * If query is cached and no results found exception is thrown
@@ -113,6 +187,7 @@ public class QueryCacheManager {
         log.debug("Looking for query in cache: {}", queryKey.printDescription());
         QueryResult queryResult = queryCache.get(queryKey);
         if (queryResult != null) {
+            hitCount.incrementAndGet();
             MetaClass metaClass = metadata.getClassNN(queryResult.getType());
             if (!metadata.getTools().isCacheable(metaClass)) {
                 log.warn("Using cacheable query without entity cache for {}", queryResult.getType());
@@ -126,6 +201,8 @@ public class QueryCacheManager {
             for (Object id : queryResult.getResult()) {
                 return (T) em.find(metaClass.getJavaClass(), id, views.toArray(new View[views.size()]));
             }
+        } else {
+            missCount.incrementAndGet();
         }
         log.debug("Query results are not found in cache: {}", queryKey.printDescription());
         return null;
@@ -159,7 +236,7 @@ public class QueryCacheManager {
      * Results are extracted as identifiers from entity {@code result}
      * @param type - result entity type (metaClass name)
      * @param relatedTypes - query dependent types (metaClass names). It's a list of entity types used in query
-     * @param exception - store exception in the query cache if {@link TypedQuery#getSingleResult()} throws exception
+     * @param exception - store exception in the query cache if {@link javax.persistence.TypedQuery#getSingleResult()} throws exception
      */
     @SuppressWarnings("unchecked")
     public <T> void putResultToCache(QueryKey queryKey, T result, String type, Set<String> relatedTypes, RuntimeException exception) {
@@ -229,6 +306,52 @@ public class QueryCacheManager {
         }
     }
 
+    /**
+     * Returns the number of query results found in the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Returns the number of lookups for query results not found in the cache.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the number of instances of cached query results taken from the entity cache.
+     */
+    public long getEntityCacheHitCount() {
+        return entityCacheHitCount.get();
+    }
+
+    /**
+     * Returns the number of batch queries executed to load instances of cached query results.
+     */
+    public long getBatchLoadCount() {
+        return batchLoadCount.get();
+    }
+
+    /**
+     * Returns the number of instances of cached query results loaded by batch queries.
+     */
+    public long getBatchLoadedInstanceCount() {
+        return batchLoadedInstanceCount.get();
+    }
+
+    /**
+     * Resets the cache statistics counters.
+     */
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        entityCacheHitCount.set(0);
+        batchLoadCount.set(0);
+        batchLoadedInstanceCount.set(0);
+    }
+
     protected Set<String> getDescendants(Set<String> relatedTypes) {
         if (relatedTypes == null) return null;
         Set<String> newRelatedTypes = new HashSet<>();
@@ -245,7 +368,7 @@ public class QueryCacheManager {
         return newRelatedTypes;
     }
 
-    protected static class InvalidateQueryCacheMsg implements Serializable {
+    protected static class InvalidateQueryCacheMsg implements IdempotentClusterMessage {
         private static final long serialVersionUID = -9099037380378341477L;
 
         protected Set<String> typeNames;
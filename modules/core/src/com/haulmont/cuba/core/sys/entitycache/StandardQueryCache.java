@@ -18,18 +18,21 @@ package com.haulmont.cuba.core.sys.entitycache;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Striped;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -38,8 +41,30 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 public class StandardQueryCache implements QueryCache {
 
     protected Cache<QueryKey, QueryResult> data;
-    protected ConcurrentMap<String, CopyOnWriteArrayList<QueryKey>> typeIndex = new ConcurrentHashMap<>();
+    /**
+     * Keys of cached queries by related entity names. Kept in sync with {@link #data} by processing removal
+     * notifications.
+     */
+    protected ConcurrentMap<String, Set<QueryKey>> typeIndex = new ConcurrentHashMap<>();
+    /**
+     * Keys of cached queries by query identifiers.
+     */
+    protected ConcurrentMap<UUID, QueryKey> idIndex = new ConcurrentHashMap<>();
+    /**
+     * Identifiers of cached queries. Equal keys may have different identifiers, so the identifier of the
+     * key actually indexed is stored here.
+     */
+    protected ConcurrentMap<QueryKey, UUID> keyIds = new ConcurrentHashMap<>();
     protected ReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Guard updates of the indexes together with the corresponding {@link #data} updates of the same key.
+     */
+    protected Striped<Lock> keyLocks = Striped.lock(64);
+    /**
+     * Removal notifications are queued by the listener and processed by the writing threads after they release
+     * the key locks, because the listener can be called by a thread holding the lock of another key.
+     */
+    protected Queue<RemovalNotification<QueryKey, QueryResult>> removals = new ConcurrentLinkedQueue<>();
 
     @Inject
     protected QueryCacheConfig queryCacheConfig;
@@ -48,7 +73,11 @@ public class StandardQueryCache implements QueryCache {
 
     @PostConstruct
     protected void init() {
-        data = CacheBuilder.newBuilder().maximumSize(queryCacheConfig.getQueryCacheMaxSize()).build();
+        data = CacheBuilder.newBuilder()
+                .maximumSize(queryCacheConfig.getQueryCacheMaxSize())
+                .removalListener(removals::add)
+                .recordStats()
+                .build();
     }
 
     @Override
@@ -61,30 +90,86 @@ public class StandardQueryCache implements QueryCache {
         Lock readLock = lock.readLock();
         readLock.lock();
         try {
-            data.put(queryKey, queryResult);
-
-            for (String type : queryResult.getRelatedTypes()) {
-                CopyOnWriteArrayList<QueryKey> keys = typeIndex.get(type);
-                if (keys == null) {
-                    typeIndex.putIfAbsent(type, new CopyOnWriteArrayList<>());
-                    keys = typeIndex.get(type);
+            Lock keyLock = keyLocks.get(queryKey);
+            keyLock.lock();
+            try {
+                // index before putting, so the result is never cached unindexed
+                for (String type : queryResult.getRelatedTypes()) {
+                    typeIndex.compute(type, (t, keys) -> {
+                        Set<QueryKey> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                        result.add(queryKey);
+                        return result;
+                    });
+                }
+                UUID queryId = queryKey.getId();
+                if (queryId != null) {
+                    UUID prevQueryId = keyIds.put(queryKey, queryId);
+                    if (prevQueryId != null && !prevQueryId.equals(queryId)) {
+                        idIndex.remove(prevQueryId);
+                    }
+                    idIndex.put(queryId, queryKey);
                 }
-                keys.add(queryKey);
+                data.put(queryKey, queryResult);
+            } finally {
+                keyLock.unlock();
             }
         } finally {
             readLock.unlock();
         }
+        processRemovals();
+    }
+
+    protected void processRemovals() {
+        RemovalNotification<QueryKey, QueryResult> notification;
+        while ((notification = removals.poll()) != null) {
+            QueryKey queryKey = notification.getKey();
+            QueryResult queryResult = notification.getValue();
+            if (queryKey == null) {
+                continue;
+            }
+            Lock keyLock = keyLocks.get(queryKey);
+            keyLock.lock();
+            try {
+                // the key can be put again before the notification is processed, then only the types
+                // not related to the currently mapped result are removed
+                QueryResult currentResult = data.asMap().get(queryKey);
+                if (queryResult != null) {
+                    for (String type : queryResult.getRelatedTypes()) {
+                        if (currentResult == null || !currentResult.getRelatedTypes().contains(type)) {
+                            removeFromTypeIndex(type, queryKey);
+                        }
+                    }
+                }
+                if (currentResult == null) {
+                    removeFromIdIndex(queryKey);
+                }
+            } finally {
+                keyLock.unlock();
+            }
+        }
+    }
+
+    protected void removeFromTypeIndex(String type, QueryKey queryKey) {
+        typeIndex.computeIfPresent(type, (t, keys) -> {
+            keys.remove(queryKey);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    protected void removeFromIdIndex(QueryKey queryKey) {
+        UUID queryId = keyIds.remove(queryKey);
+        if (queryId != null) {
+            idIndex.remove(queryId, queryKey);
+        }
     }
 
     @Override
     public QueryKey findQueryKeyById(UUID queryId) {
-        Set<QueryKey> keys = Sets.newHashSet(data.asMap().keySet());
-        for (QueryKey key : keys) {
-            if (Objects.equals(queryId, key.getId())) {
-                return key;
-            }
+        QueryKey queryKey = idIndex.get(queryId);
+        if (queryKey != null && data.getIfPresent(queryKey) == null) {
+            return null;
         }
-        return null;
+        return queryKey;
     }
 
     @Override
@@ -93,10 +178,11 @@ public class StandardQueryCache implements QueryCache {
         readLock.lock();
         try {
             log.debug("Invalidate query by key {}", queryKey.printDescription());
-            data.invalidate(queryKey);
+            invalidateKey(queryKey);
         } finally {
             readLock.unlock();
         }
+        processRemovals();
     }
 
     @Override
@@ -104,13 +190,11 @@ public class StandardQueryCache implements QueryCache {
         Lock readLock = lock.readLock();
         readLock.lock();
         try {
-            CopyOnWriteArrayList<QueryKey> keys = typeIndex.get(typeName);
-            if (keys == null) return;
-            log.debug("Invalidate cache for type {}", typeName);
-            Arrays.stream(keys.toArray()).forEach(it -> data.invalidate(it));
+            invalidateType(typeName);
         } finally {
             readLock.unlock();
         }
+        processRemovals();
     }
 
     @Override
@@ -118,35 +202,58 @@ public class StandardQueryCache implements QueryCache {
         Lock readLock = lock.readLock();
         readLock.lock();
         try {
-            typeNames.forEach(typeName -> {
-                        CopyOnWriteArrayList<QueryKey> keys = typeIndex.get(typeName);
-                        if (keys == null) return;
-                        log.debug("Invalidate cache for type {}", typeName);
-                        Arrays.stream(keys.toArray()).forEach(it -> data.invalidate(it));
-                    }
-            );
+            typeNames.forEach(this::invalidateType);
         } finally {
             readLock.unlock();
         }
+        processRemovals();
+    }
+
+    protected void invalidateType(String typeName) {
+        Set<QueryKey> keys = typeIndex.get(typeName);
+        if (keys == null) return;
+        log.debug("Invalidate cache for type {}", typeName);
+        // the set is modified concurrently, so invalidate a snapshot of it
+        for (QueryKey queryKey : new ArrayList<>(keys)) {
+            invalidateKey(queryKey, typeName);
+        }
+    }
+
+    protected void invalidateKey(QueryKey queryKey) {
+        invalidateKey(queryKey, null);
+    }
+
+    protected void invalidateKey(QueryKey queryKey, @Nullable String typeName) {
+        Lock keyLock = keyLocks.get(queryKey);
+        keyLock.lock();
+        try {
+            data.invalidate(queryKey);
+            // the key may be already gone from the cache, then nothing notifies about its removal
+            removeFromIdIndex(queryKey);
+            if (typeName != null) {
+                removeFromTypeIndex(typeName, queryKey);
+            }
+        } finally {
+            keyLock.unlock();
+        }
     }
 
     @Override
     public QueryKey invalidate(UUID queryId) {
+        QueryKey queryKey;
         Lock readLock = lock.readLock();
         readLock.lock();
         try {
-            Set<QueryKey> keys = Sets.newHashSet(data.asMap().keySet());
-            for (QueryKey key : keys) {
-                if (Objects.equals(queryId, key.getId())) {
-                    log.debug("Invalidate query by identifier {}", queryId);
-                    data.invalidate(key);
-                    return key;
-                }
+            queryKey = idIndex.get(queryId);
+            if (queryKey != null) {
+                log.debug("Invalidate query by identifier {}", queryId);
+                invalidateKey(queryKey);
             }
         } finally {
             readLock.unlock();
         }
-        return null;
+        processRemovals();
+        return queryKey;
     }
 
     @Override
@@ -156,7 +263,10 @@ public class StandardQueryCache implements QueryCache {
         try {
             log.debug("Invalidate all cache");
             data.invalidateAll();
+            removals.clear();
             typeIndex.clear();
+            idIndex.clear();
+            keyIds.clear();
         } finally {
             writeLock.unlock();
         }
@@ -172,6 +282,20 @@ public class StandardQueryCache implements QueryCache {
         return queryCacheConfig.getQueryCacheMaxSize();
     }
 
+    @Override
+    public CacheStats getStats() {
+        return data.stats();
+    }
+
+    @Override
+    public long getIndexSize() {
+        long size = idIndex.size();
+        for (Set<QueryKey> keys : typeIndex.values()) {
+            size += keys.size();
+        }
+        return size;
+    }
+
     @Override
     public Map<QueryKey, QueryResult> asMap() {
         return Maps.newHashMap(data.asMap());
@@ -71,4 +71,12 @@ public interface DbmsFeatures {
      * @return default sort order of null values
      */
     boolean isNullsLastSorting();
+
+    /**
+     * @return maximum number of values that can be safely passed in a single {@code in (...)} condition.
+     * The default value of 1000 is accepted by all supported databases.
+     */
+    default int getMaxIdsBatchSize() {
+        return 1000;
+    }
 }
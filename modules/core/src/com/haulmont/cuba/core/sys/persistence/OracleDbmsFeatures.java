@@ -72,4 +72,9 @@ public class OracleDbmsFeatures implements DbmsFeatures {
     public boolean isNullsLastSorting() {
         return true;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getMaxIdsBatchSize() {
+        return 1000;
+    }
+}
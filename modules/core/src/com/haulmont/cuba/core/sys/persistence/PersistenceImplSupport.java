@@ -136,6 +136,45 @@ public class PersistenceImplSupport implements ApplicationContextAware {
         return getInstanceContainerResourceHolder(getStorageName(unitOfWork)).getInstances(unitOfWork);
     }
 
+    /**
+     * Detaches all instances registered in the current transaction for the given entity manager and clears its
+     * persistence context, so the instances can be garbage collected before the transaction ends. Used when
+     * processing large query results chunk by chunk. The instances are supposed to be unchanged.
+     */
+    public void detachInstances(EntityManager entityManager) {
+        if (!TransactionSynchronizationManager.isActualTransactionActive())
+            throw new RuntimeException("No transaction");
+
+        UnitOfWork unitOfWork = entityManager.getDelegate().unwrap(UnitOfWork.class);
+        String storeName = getStorageName(unitOfWork);
+        Set<Entity> instances = getInstanceContainerResourceHolder(storeName).unitOfWorkMap.remove(unitOfWork);
+        if (instances != null) {
+            for (Entity entity : instances) {
+                if (entity instanceof ChangeTracker) {
+                    AttributeChangeListener changeListener =
+                            (AttributeChangeListener) ((ChangeTracker) entity)._persistence_getPropertyChangeListener();
+                    if (changeListener != null && changeListener.hasChanges())
+                        throw new IllegalStateException("Changed instance " + entity + " cannot be detached before commit");
+                }
+
+                if (entity instanceof FetchGroupTracker) {
+                    FetchGroupTracker fetchGroupTracker = (FetchGroupTracker) entity;
+                    FetchGroup fetchGroup = fetchGroupTracker._persistence_getFetchGroup();
+                    if (fetchGroup != null && !(fetchGroup instanceof CubaEntityFetchGroup))
+                        fetchGroupTracker._persistence_setFetchGroup(new CubaEntityFetchGroup(fetchGroup));
+                }
+
+                entityListenerManager.fireListener(entity, EntityListenerType.BEFORE_DETACH, storeName);
+
+                if (entity instanceof BaseGenericIdEntity) {
+                    BaseEntityInternalAccess.setManaged((BaseGenericIdEntity) entity, false);
+                    BaseEntityInternalAccess.setDetached((BaseGenericIdEntity) entity, true);
+                }
+            }
+        }
+        entityManager.getDelegate().clear();
+    }
+
     public String getStorageName(Session session) {
         String storeName = (String) session.getProperty(PROP_NAME);
         return Strings.isNullOrEmpty(storeName) ? Stores.MAIN : storeName;
@@ -67,4 +67,9 @@ public class PostgresDbmsFeatures implements DbmsFeatures {
     public boolean isNullsLastSorting() {
         return true;
     }
-}
\ No newline at end of file
+
+    @Override
+    public int getMaxIdsBatchSize() {
+        return 5000;
+    }
+}
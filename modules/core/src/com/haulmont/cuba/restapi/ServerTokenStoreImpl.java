@@ -16,12 +16,15 @@
 
 package com.haulmont.cuba.restapi;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.haulmont.cuba.core.EntityManager;
 import com.haulmont.cuba.core.Persistence;
 import com.haulmont.cuba.core.Transaction;
 import com.haulmont.cuba.core.app.ClusterListener;
 import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterStateCodec;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.entity.RestApiToken;
 import com.haulmont.cuba.core.global.Metadata;
@@ -38,16 +41,21 @@ import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.io.*;
-import java.util.Date;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
+ * In-memory store of REST API tokens replicated across the cluster and optionally backed by the database.
+ * <p>Each token is kept in a single {@link TokenRecord}. Tokens having expiry time are also registered in an index
+ * ordered by expiry, which is used by {@link #sweepExpiredTokens()} to remove them without scanning the store.</p>
+ * <p>Records are read without locking. Modifications of the store and its indexes are performed under
+ * {@link #storeLock}, so the indexes are consistent with the store.</p>
+ * <p>A session id put for a token which is not in memory yet is kept aside and attached to the record when the token
+ * is stored or loaded from the database.</p>
  */
 @Component(ServerTokenStore.NAME)
 public class ServerTokenStoreImpl implements ServerTokenStore {
@@ -58,6 +66,9 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     @Inject
     protected ClusterManagerAPI clusterManagerAPI;
 
+    @Inject
+    protected ClusterStateCodec clusterStateCodec;
+
     @Inject
     protected ServerConfig serverConfig;
 
@@ -72,18 +83,32 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
 
     protected Logger log = LoggerFactory.getLogger(ServerTokenStoreImpl.class);
 
-    protected ReadWriteLock lock = new ReentrantReadWriteLock();
+    protected static final long REMOVED_TOKENS_RETENTION_MS = TimeUnit.MINUTES.toMillis(10);
+
+    protected static final int REMOVED_TOKENS_MAX_SIZE = 100000;
+
+    protected static final int PENDING_SESSION_IDS_MAX_SIZE = 100000;
+
+    private ConcurrentHashMap<String, TokenRecord> tokenValueToRecordStore;
+    private ConcurrentHashMap<String, String> authenticationKeyToTokenValueStore;
 
-    private ConcurrentHashMap<String, byte[]> tokenValueToAccessTokenStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, byte[]> tokenValueToAuthenticationStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, byte[]> authenticationToAccessTokenStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, UUID> tokenValueToSessionIdStore = new ConcurrentHashMap<>();
-    private ConcurrentHashMap<String, String> tokenValueToAuthenticationKeyStore = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<TokenExpiry> expiryIndex = new ConcurrentSkipListSet<>();
 
-    private final DelayQueue<TokenExpiry> expiryQueue = new DelayQueue<>();
+    protected final Object storeLock = new Object();
+
+    private final Deque<RemovedToken> removedTokens = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger removedTokensCount = new AtomicInteger();
+
+    private final Cache<String, UUID> pendingSessionIds = CacheBuilder.newBuilder()
+            .maximumSize(PENDING_SESSION_IDS_MAX_SIZE)
+            .build();
 
     @PostConstruct
     public void init() {
+        int initialCapacity = serverConfig.getRestTokenStoreInitialCapacity();
+        tokenValueToRecordStore = new ConcurrentHashMap<>(initialCapacity);
+        authenticationKeyToTokenValueStore = new ConcurrentHashMap<>(initialCapacity);
+
         initClusterListeners();
     }
 
@@ -100,27 +125,16 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
 
             @Override
             public byte[] getState() {
-                if (tokenValueToAccessTokenStore.isEmpty() && tokenValueToAccessTokenStore.isEmpty() & authenticationToAccessTokenStore.isEmpty()
-                        & tokenValueToSessionIdStore.isEmpty() & tokenValueToAuthenticationKeyStore.isEmpty()) {
+                if (tokenValueToRecordStore.isEmpty()) {
                     return new byte[0];
                 }
 
                 ByteArrayOutputStream bos = new ByteArrayOutputStream();
-
-                lock.readLock().lock();
                 try {
-                    ObjectOutputStream oos = new ObjectOutputStream(bos);
-                    oos.writeObject(tokenValueToAccessTokenStore);
-                    oos.writeObject(tokenValueToAuthenticationStore);
-                    oos.writeObject(authenticationToAccessTokenStore);
-                    oos.writeObject(tokenValueToSessionIdStore);
-                    oos.writeObject(tokenValueToAuthenticationKeyStore);
+                    writeState(bos);
                 } catch (IOException e) {
-                    throw new RuntimeException("Unable to serialize ServerTokenStore fields for cluster state", e);
-                } finally {
-                    lock.readLock().unlock();
+                    throw new RuntimeException("Unable to serialize ServerTokenStore records for cluster state", e);
                 }
-
                 return bos.toByteArray();
             }
 
@@ -130,21 +144,27 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
                     return;
                 }
 
-                ByteArrayInputStream bis = new ByteArrayInputStream(state);
-                lock.writeLock().lock();
+                if (ClusterStateCodec.isJavaSerialized(state)) {
+                    setLegacyState(state);
+                    return;
+                }
+
                 try {
-                    ObjectInputStream ois = new ObjectInputStream(bis);
-                    tokenValueToAccessTokenStore = (ConcurrentHashMap<String, byte[]>) ois.readObject();
-                    tokenValueToAuthenticationStore = (ConcurrentHashMap<String, byte[]>) ois.readObject();
-                    authenticationToAccessTokenStore = (ConcurrentHashMap<String, byte[]>) ois.readObject();
-                    tokenValueToSessionIdStore = (ConcurrentHashMap<String, UUID>) ois.readObject();
-                    tokenValueToAuthenticationKeyStore = (ConcurrentHashMap<String, String>) ois.readObject();
-                } catch (IOException | ClassNotFoundException e) {
+                    readState(new ByteArrayInputStream(state));
+                } catch (IOException e) {
                     log.error("Error receiving state", e);
-                } finally {
-                    lock.writeLock().unlock();
                 }
             }
+
+            @Override
+            public void writeState(OutputStream output) throws IOException {
+                writeClusterState(output);
+            }
+
+            @Override
+            public void readState(InputStream input) throws IOException {
+                readClusterState(input);
+            }
         });
 
         clusterManagerAPI.addListener(TokenStorePutSessionMsg.class, new ClusterListenerAdapter<TokenStorePutSessionMsg>() {
@@ -162,6 +182,74 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
         });
     }
 
+    /**
+     * Writes the state transferred to a node joining the cluster. Records are written one by one without blocking
+     * the store, expired ones are skipped. If tokens are stored in the database, only session ids are written,
+     * because the joining node loads the tokens from the database on demand.
+     */
+    protected void writeClusterState(OutputStream output) throws IOException {
+        long now = timeSource.currentTimeMillis();
+        if (serverConfig.getRestStoreTokensInDb()) {
+            Iterable<TokenSession> sessions = () -> tokenValueToRecordStore.values().stream()
+                    .filter(record -> record.getSessionId() != null && !record.isExpired(now))
+                    .map(record -> new TokenSession(record.getTokenValue(), record.getSessionId()))
+                    .iterator();
+            clusterStateCodec.write(sessions, output);
+        } else {
+            Iterable<TokenRecord> records = () -> tokenValueToRecordStore.values().stream()
+                    .filter(record -> !record.isExpired(now))
+                    .iterator();
+            clusterStateCodec.write(records, output);
+        }
+    }
+
+    protected void readClusterState(InputStream input) throws IOException {
+        clusterStateCodec.read(input, object -> {
+            if (object instanceof TokenRecord) {
+                storeRecord((TokenRecord) object);
+            } else if (object instanceof TokenSession) {
+                TokenSession tokenSession = (TokenSession) object;
+                _putSessionId(tokenSession.getTokenValue(), tokenSession.getSessionId());
+            }
+        });
+    }
+
+    /**
+     * Reads the state sent by a node of a previous version. The previous format does not contain expiry time,
+     * so these tokens are not swept from memory until they are stored again.
+     */
+    @SuppressWarnings("unchecked")
+    protected void setLegacyState(byte[] state) {
+        Map<String, byte[]> accessTokens;
+        Map<String, byte[]> authentications;
+        Map<String, UUID> sessionIds;
+        Map<String, String> authenticationKeys;
+        try {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(state));
+            accessTokens = (Map<String, byte[]>) ois.readObject();
+            authentications = (Map<String, byte[]>) ois.readObject();
+            // access tokens by authentication key are restored from the authentication keys of the tokens
+            ois.readObject();
+            sessionIds = (Map<String, UUID>) ois.readObject();
+            authenticationKeys = (Map<String, String>) ois.readObject();
+        } catch (Exception e) {
+            log.error("Error deserializing ServerTokenStore state", e);
+            return;
+        }
+
+        for (Map.Entry<String, byte[]> entry : accessTokens.entrySet()) {
+            String tokenValue = entry.getKey();
+            String authenticationKey = authenticationKeys.get(tokenValue);
+            byte[] authenticationBytes = authentications.get(tokenValue);
+            if (authenticationKey == null || authenticationBytes == null)
+                continue;
+
+            TokenRecord record = new TokenRecord(tokenValue, entry.getValue(), authenticationKey, authenticationBytes, null);
+            record.setSessionId(sessionIds.get(tokenValue));
+            storeRecord(record);
+        }
+    }
+
     @Override
     public byte[] getAccessTokenByAuthentication(String authenticationKey) {
         byte[] accessTokenBytes;
@@ -177,7 +265,9 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected byte[] getAccessTokenByAuthenticationFromMemory(String authenticationKey) {
-        return authenticationToAccessTokenStore.get(authenticationKey);
+        String tokenValue = authenticationKeyToTokenValueStore.get(authenticationKey);
+        TokenRecord record = tokenValue != null ? tokenValueToRecordStore.get(tokenValue) : null;
+        return record != null ? record.getAccessTokenBytes() : null;
     }
 
     @Override
@@ -199,19 +289,46 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
                                             String authenticationKey,
                                             byte[] authenticationBytes,
                                             Date tokenExpiry) {
-        lock.writeLock().lock();
-        try {
-            tokenValueToAccessTokenStore.put(tokenValue, accessTokenBytes);
-            authenticationToAccessTokenStore.put(authenticationKey, accessTokenBytes);
-            tokenValueToAuthenticationStore.put(tokenValue, authenticationBytes);
-            tokenValueToAuthenticationKeyStore.put(tokenValue, authenticationKey);
-        } finally {
-            lock.writeLock().unlock();
+        storeRecord(new TokenRecord(tokenValue, accessTokenBytes, authenticationKey, authenticationBytes, tokenExpiry));
+    }
+
+    /**
+     * Puts the record to the store replacing the record with the same token value, and updates the indexes.
+     * The session id of the replaced record or the session id put before the token was stored is kept
+     * if the new record has no session id.
+     */
+    protected void storeRecord(TokenRecord record) {
+        synchronized (storeLock) {
+            TokenRecord previous = tokenValueToRecordStore.get(record.getTokenValue());
+            if (previous != null) {
+                unindex(previous);
+                if (record.getSessionId() == null) {
+                    record.setSessionId(previous.getSessionId());
+                }
+            }
+            UUID pendingSessionId = pendingSessionIds.getIfPresent(record.getTokenValue());
+            if (pendingSessionId != null) {
+                pendingSessionIds.invalidate(record.getTokenValue());
+                if (record.getSessionId() == null) {
+                    record.setSessionId(pendingSessionId);
+                }
+            }
+            tokenValueToRecordStore.put(record.getTokenValue(), record);
+            index(record);
         }
+    }
 
-        if (tokenExpiry != null) {
-            TokenExpiry expiry = new TokenExpiry(tokenValue, tokenExpiry);
-            this.expiryQueue.put(expiry);
+    protected void index(TokenRecord record) {
+        authenticationKeyToTokenValueStore.put(record.getAuthenticationKey(), record.getTokenValue());
+        if (record.getExpiry() != 0) {
+            expiryIndex.add(new TokenExpiry(record.getTokenValue(), record.getExpiry()));
+        }
+    }
+
+    protected void unindex(TokenRecord record) {
+        authenticationKeyToTokenValueStore.remove(record.getAuthenticationKey(), record.getTokenValue());
+        if (record.getExpiry() != 0) {
+            expiryIndex.remove(new TokenExpiry(record.getTokenValue(), record.getExpiry()));
         }
     }
 
@@ -248,7 +365,8 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected byte[] getAccessTokenByTokenValueFromMemory(String tokenValue) {
-        return tokenValueToAccessTokenStore.get(tokenValue);
+        TokenRecord record = tokenValueToRecordStore.get(tokenValue);
+        return record != null ? record.getAccessTokenBytes() : null;
     }
 
     @Override
@@ -266,7 +384,8 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected byte[] getAuthenticationByTokenValueFromMemory(String tokenValue) {
-        return tokenValueToAuthenticationStore.get(tokenValue);
+        TokenRecord record = tokenValueToRecordStore.get(tokenValue);
+        return record != null ? record.getAuthenticationBytes() : null;
     }
 
     @Nullable
@@ -298,23 +417,20 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     /**
-     * Method fills in-memory maps from the {@link RestApiToken} object got from the database
+     * Method fills in-memory store from the {@link RestApiToken} object got from the database
      */
     protected void restoreInMemoryTokenData(RestApiToken restApiToken) {
-        lock.writeLock().lock();
-        try {
-            tokenValueToAccessTokenStore.put(restApiToken.getAccessTokenValue(), restApiToken.getAccessTokenBytes());
-            authenticationToAccessTokenStore.put(restApiToken.getAuthenticationKey(), restApiToken.getAccessTokenBytes());
-            tokenValueToAuthenticationStore.put(restApiToken.getAccessTokenValue(), restApiToken.getAuthenticationBytes());
-            tokenValueToAuthenticationKeyStore.put(restApiToken.getAccessTokenValue(), restApiToken.getAuthenticationKey());
-        } finally {
-            lock.writeLock().unlock();
-        }
+        storeRecord(new TokenRecord(restApiToken.getAccessTokenValue(),
+                restApiToken.getAccessTokenBytes(),
+                restApiToken.getAuthenticationKey(),
+                restApiToken.getAuthenticationBytes(),
+                restApiToken.getExpiry()));
     }
 
     @Override
     public UUID getSessionIdByTokenValue(String tokenValue) {
-        return tokenValueToSessionIdStore.get(tokenValue);
+        TokenRecord record = tokenValueToRecordStore.get(tokenValue);
+        return record != null ? record.getSessionId() : null;
     }
 
     @Override
@@ -325,11 +441,17 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected UUID _putSessionId(String tokenValue, UUID sessionId) {
-        lock.writeLock().lock();
-        try {
-            return tokenValueToSessionIdStore.put(tokenValue, sessionId);
-        } finally {
-            lock.writeLock().unlock();
+        synchronized (storeLock) {
+            TokenRecord record = tokenValueToRecordStore.get(tokenValue);
+            if (record == null) {
+                // the token is not loaded from the database yet or its message has not arrived yet
+                log.debug("Session id {} is kept until token {} is stored", sessionId, tokenValue);
+                pendingSessionIds.put(tokenValue, sessionId);
+                return null;
+            }
+            UUID previous = record.getSessionId();
+            record.setSessionId(sessionId);
+            return previous;
         }
     }
 
@@ -343,17 +465,19 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
     }
 
     protected void removeAccessTokenFromMemory(String tokenValue) {
-        UUID sessionId;
-        lock.writeLock().lock();
-        try {
-            tokenValueToAccessTokenStore.remove(tokenValue);
-            tokenValueToAuthenticationStore.remove(tokenValue);
-            String authenticationKey = tokenValueToAuthenticationKeyStore.remove(tokenValue);
-            authenticationToAccessTokenStore.remove(authenticationKey);
-            sessionId = tokenValueToSessionIdStore.remove(tokenValue);
-        } finally {
-            lock.writeLock().unlock();
+        TokenRecord removed;
+        UUID pendingSessionId;
+        synchronized (storeLock) {
+            removed = tokenValueToRecordStore.remove(tokenValue);
+            if (removed != null) {
+                unindex(removed);
+            }
+            pendingSessionId = pendingSessionIds.getIfPresent(tokenValue);
+            pendingSessionIds.invalidate(tokenValue);
         }
+        registerRemovedToken(tokenValue);
+
+        UUID sessionId = removed != null ? removed.getSessionId() : pendingSessionId;
         if (sessionId != null) {
             try {
                 UserSession session = userSessionManager.getSession(sessionId);
@@ -373,19 +497,63 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
         }
     }
 
+    protected void registerRemovedToken(String tokenValue) {
+        long now = timeSource.currentTimeMillis();
+        removedTokens.addLast(new RemovedToken(tokenValue, now));
+        removedTokensCount.incrementAndGet();
+
+        RemovedToken oldest;
+        while ((oldest = removedTokens.peekFirst()) != null
+                && (oldest.getTime() < now - REMOVED_TOKENS_RETENTION_MS || removedTokensCount.get() > REMOVED_TOKENS_MAX_SIZE)) {
+            if (removedTokens.remove(oldest)) {
+                removedTokensCount.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public Set<String> getRemovedTokenValues(long since) {
+        Set<String> result = new HashSet<>();
+        Iterator<RemovedToken> iterator = removedTokens.descendingIterator();
+        while (iterator.hasNext()) {
+            RemovedToken removedToken = iterator.next();
+            if (removedToken.getTime() < since)
+                break;
+            result.add(removedToken.getValue());
+        }
+        return result;
+    }
+
     @Override
     public void deleteExpiredTokens() {
-        deleteExpiredTokensInMemory();
+        sweepExpiredTokens();
         if (serverConfig.getRestStoreTokensInDb() && clusterManagerAPI.isMaster()) {
             deleteExpiredTokensInDatabase();
         }
     }
 
-    protected void deleteExpiredTokensInMemory() {
-        TokenExpiry expiry = expiryQueue.poll();
-        while (expiry != null) {
-            removeAccessToken(expiry.getValue());
-            expiry = expiryQueue.poll();
+    /**
+     * Removes expired tokens from the memory of this cluster node. Invoked by the scheduler on each node,
+     * so the removal is not sent to other nodes.
+     */
+    public void sweepExpiredTokens() {
+        long now = timeSource.currentTimeMillis();
+        int count = 0;
+        for (TokenExpiry expiry : expiryIndex) {
+            if (expiry.getExpiry() > now)
+                break;
+            // the token could be stored again with a new expiry, so the entry itself must be removed anyway
+            synchronized (storeLock) {
+                expiryIndex.remove(expiry);
+            }
+            TokenRecord record = tokenValueToRecordStore.get(expiry.getValue());
+            if (record != null && record.isExpired(now)) {
+                removeAccessTokenFromMemory(expiry.getValue());
+                count++;
+            }
+        }
+        if (count > 0) {
+            log.debug("Removed {} expired REST API tokens", count);
         }
     }
 
@@ -398,27 +566,174 @@ public class ServerTokenStoreImpl implements ServerTokenStore {
         }
     }
 
-    protected static class TokenExpiry implements Delayed {
+    public int getTokenCount() {
+        return tokenValueToRecordStore.size();
+    }
+
+    public int getAuthenticationKeyCount() {
+        return authenticationKeyToTokenValueStore.size();
+    }
+
+    public int getSessionCount() {
+        int count = 0;
+        for (TokenRecord record : tokenValueToRecordStore.values()) {
+            if (record.getSessionId() != null)
+                count++;
+        }
+        return count;
+    }
+
+    public int getExpiryIndexSize() {
+        return expiryIndex.size();
+    }
+
+    @Nullable
+    public Date getNextExpiry() {
+        TokenExpiry first = expiryIndex.isEmpty() ? null : expiryIndex.first();
+        return first != null ? new Date(first.getExpiry()) : null;
+    }
+
+    public int getRemovedTokensCount() {
+        return removedTokensCount.get();
+    }
+
+    /**
+     * All data of an access token kept in memory and transferred to joining cluster nodes.
+     */
+    protected static class TokenRecord implements Serializable {
+
+        private static final long serialVersionUID = -6424232463592356853L;
+
+        private String tokenValue;
+        private byte[] accessTokenBytes;
+        private String authenticationKey;
+        private byte[] authenticationBytes;
+        private long expiry;
+        private volatile UUID sessionId;
+
+        public TokenRecord(String tokenValue, byte[] accessTokenBytes, String authenticationKey,
+                           byte[] authenticationBytes, @Nullable Date expiry) {
+            this.tokenValue = tokenValue;
+            this.accessTokenBytes = accessTokenBytes;
+            this.authenticationKey = authenticationKey;
+            this.authenticationBytes = authenticationBytes;
+            this.expiry = expiry != null ? expiry.getTime() : 0;
+        }
+
+        public String getTokenValue() {
+            return tokenValue;
+        }
+
+        public byte[] getAccessTokenBytes() {
+            return accessTokenBytes;
+        }
+
+        public String getAuthenticationKey() {
+            return authenticationKey;
+        }
+
+        public byte[] getAuthenticationBytes() {
+            return authenticationBytes;
+        }
+
+        /**
+         * @return expiry time in milliseconds or 0 if the token does not expire
+         */
+        public long getExpiry() {
+            return expiry;
+        }
+
+        public boolean isExpired(long now) {
+            return expiry != 0 && expiry <= now;
+        }
+
+        public UUID getSessionId() {
+            return sessionId;
+        }
+
+        public void setSessionId(UUID sessionId) {
+            this.sessionId = sessionId;
+        }
+    }
+
+    /**
+     * Session id of a token transferred to joining cluster nodes when the tokens themselves are stored
+     * in the database.
+     */
+    protected static class TokenSession implements Serializable {
+
+        private static final long serialVersionUID = 4177324418474958426L;
+
+        private final String tokenValue;
+
+        private final UUID sessionId;
+
+        public TokenSession(String tokenValue, UUID sessionId) {
+            this.tokenValue = tokenValue;
+            this.sessionId = sessionId;
+        }
+
+        public String getTokenValue() {
+            return tokenValue;
+        }
+
+        public UUID getSessionId() {
+            return sessionId;
+        }
+    }
+
+    protected static class RemovedToken {
+
+        private final String value;
+
+        private final long time;
+
+        public RemovedToken(String value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getTime() {
+            return time;
+        }
+    }
+
+    protected static class TokenExpiry implements Comparable<TokenExpiry> {
 
         private final long expiry;
 
         private final String value;
 
-        public TokenExpiry(String value, Date date) {
+        public TokenExpiry(String value, long expiry) {
             this.value = value;
-            this.expiry = date.getTime();
+            this.expiry = expiry;
         }
 
-        public int compareTo(Delayed other) {
-            if (this == other) {
-                return 0;
-            }
-            long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
-            return (diff == 0 ? 0 : ((diff < 0) ? -1 : 1));
+        @Override
+        public int compareTo(TokenExpiry other) {
+            int result = Long.compare(expiry, other.expiry);
+            return result != 0 ? result : value.compareTo(other.value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TokenExpiry that = (TokenExpiry) o;
+            return expiry == that.expiry && value.equals(that.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * value.hashCode() + Long.hashCode(expiry);
         }
 
-        public long getDelay(TimeUnit unit) {
-            return expiry - System.currentTimeMillis();
+        public long getExpiry() {
+            return expiry;
         }
 
         public String getValue() {
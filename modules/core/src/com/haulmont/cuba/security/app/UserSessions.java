@@ -18,7 +18,9 @@ package com.haulmont.cuba.security.app;
 
 import com.haulmont.bali.util.Preconditions;
 import com.haulmont.cuba.core.app.ClusterListener;
+import com.haulmont.cuba.core.app.ClusterListenerAdapter;
 import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterStateCodec;
 import com.haulmont.cuba.core.app.ServerConfig;
 import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.Metadata;
@@ -50,12 +52,14 @@ public class UserSessions implements UserSessionsAPI {
         protected final long since;
         protected volatile long lastUsedTs; // set to 0 when propagating removal to cluster
         protected volatile long lastSentTs;
+        protected volatile long lastFullSentTs;
 
         public UserSessionInfo(UserSession session, long now) {
             this.session = session;
             this.since = now;
             this.lastUsedTs = now;
             this.lastSentTs = now;
+            this.lastFullSentTs = now;
         }
 
         public UserSession getSession() {
@@ -81,14 +85,60 @@ public class UserSessions implements UserSessionsAPI {
         }
     }
 
+    /**
+     * Cluster message carrying only identifiers and "last used" timestamps of sessions used on the sending node.
+     */
+    protected static class UserSessionTouchMessage implements Serializable {
+        private static final long serialVersionUID = 2717313853361226862L;
+
+        protected final long[] mostSigBits;
+        protected final long[] leastSigBits;
+        protected final long[] lastUsedTs;
+
+        public UserSessionTouchMessage(List<UserSessionInfo> sessions) {
+            int size = sessions.size();
+            mostSigBits = new long[size];
+            leastSigBits = new long[size];
+            lastUsedTs = new long[size];
+            for (int i = 0; i < size; i++) {
+                UserSessionInfo usi = sessions.get(i);
+                UUID id = usi.session.getId();
+                mostSigBits[i] = id.getMostSignificantBits();
+                leastSigBits[i] = id.getLeastSignificantBits();
+                lastUsedTs[i] = usi.lastUsedTs;
+            }
+        }
+
+        public int size() {
+            return lastUsedTs.length;
+        }
+
+        public UUID getId(int index) {
+            return new UUID(mostSigBits[index], leastSigBits[index]);
+        }
+
+        public long getLastUsedTs(int index) {
+            return lastUsedTs[index];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d session(s) touched", size());
+        }
+    }
+
     private Logger log = LoggerFactory.getLogger(UserSessions.class);
 
     protected Map<UUID, UserSessionInfo> cache = new ConcurrentHashMap<>();
 
+    protected Set<UUID> touchedSessions = ConcurrentHashMap.newKeySet();
+
     protected volatile int expirationTimeout = 1800;
 
     protected volatile int sendTimeout = 10;
 
+    protected volatile int fullSendTimeout = 300;
+
     protected ClusterManagerAPI clusterManager;
 
     protected UserSession NO_USER_SESSION;
@@ -101,6 +151,9 @@ public class UserSessions implements UserSessionsAPI {
     @Inject
     protected Metadata metadata;
 
+    @Inject
+    protected ClusterStateCodec clusterStateCodec;
+
     public UserSessions() {
         User noUser = new User();
         noUser.setLogin("server");
@@ -119,6 +172,7 @@ public class UserSessions implements UserSessionsAPI {
         serverConfig = configuration.getConfig(ServerConfig.class);
         setExpirationTimeoutSec(serverConfig.getUserSessionExpirationTimeoutSec());
         setSendTimeoutSec(serverConfig.getUserSessionSendTimeoutSec());
+        fullSendTimeout = serverConfig.getUserSessionFullSendTimeoutSec();
     }
 
     @Inject
@@ -149,11 +203,7 @@ public class UserSessions implements UserSessionsAPI {
 
                         ByteArrayOutputStream bos = new ByteArrayOutputStream();
                         try {
-                            ObjectOutputStream oos = new ObjectOutputStream(bos);
-                            oos.writeInt(cache.size());
-                            for (UserSessionInfo usi : cache.values()) {
-                                oos.writeObject(usi);
-                            }
+                            writeState(bos);
                         } catch (IOException e) {
                             throw new RuntimeException(e);
                         }
@@ -165,18 +215,49 @@ public class UserSessions implements UserSessionsAPI {
                         if (state == null || state.length == 0)
                             return;
 
-                        ByteArrayInputStream bis = new ByteArrayInputStream(state);
                         try {
-                            ObjectInputStream ois = new ObjectInputStream(bis);
-                            int size = ois.readInt();
-                            for (int i = 0; i < size; i++) {
-                                UserSessionInfo usi = (UserSessionInfo) ois.readObject();
-                                receive(usi);
+                            if (ClusterStateCodec.isJavaSerialized(state)) {
+                                // state sent by a node of a previous version
+                                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(state));
+                                int size = ois.readInt();
+                                for (int i = 0; i < size; i++) {
+                                    receive((UserSessionInfo) ois.readObject());
+                                }
+                            } else {
+                                readState(new ByteArrayInputStream(state));
                             }
                         } catch (IOException | ClassNotFoundException e) {
                             log.error("Error receiving state", e);
                         }
                     }
+
+                    @Override
+                    public void writeState(OutputStream output) throws IOException {
+                        clusterStateCodec.write(cache.values(), output);
+                    }
+
+                    @Override
+                    public void readState(InputStream input) throws IOException {
+                        clusterStateCodec.read(input, usi -> receive((UserSessionInfo) usi));
+                    }
+                }
+        );
+        this.clusterManager.addListener(
+                UserSessionTouchMessage.class,
+                new ClusterListenerAdapter<UserSessionTouchMessage>() {
+
+                    @Override
+                    public void receive(UserSessionTouchMessage message) {
+                        for (int i = 0; i < message.size(); i++) {
+                            UserSessionInfo usi = cache.get(message.getId(i));
+                            long lastUsedTs = message.getLastUsedTs(i);
+                            if (usi != null && usi.lastUsedTs < lastUsedTs) {
+                                usi.lastUsedTs = lastUsedTs;
+                                // the sending node has just propagated this timestamp, no need to send it again
+                                usi.lastSentTs = lastUsedTs;
+                            }
+                        }
+                    }
                 }
         );
     }
@@ -215,9 +296,15 @@ public class UserSessions implements UserSessionsAPI {
             long now = timeSource.currentTimeMillis();
             usi.lastUsedTs = now;
             if (propagate && !usi.session.isSystem()) {
-                if (now > (usi.lastSentTs + sendTimeout * 1000)) {
+                if (now > (usi.lastFullSentTs + fullSendTimeout * 1000L)) {
+                    // full state repairs nodes that missed the creation message and replicates attributes
+                    // changed without propagate()
                     usi.lastSentTs = now;
+                    usi.lastFullSentTs = now;
                     clusterManager.send(usi);
+                } else if (now > (usi.lastSentTs + sendTimeout * 1000)) {
+                    usi.lastSentTs = now;
+                    touchedSessions.add(id);
                 }
             }
             return usi.session;
@@ -232,10 +319,31 @@ public class UserSessions implements UserSessionsAPI {
             long now = timeSource.currentTimeMillis();
             usi.lastUsedTs = now;
             usi.lastSentTs = now;
+            usi.lastFullSentTs = now;
             clusterManager.send(usi);
         }
     }
 
+    @Override
+    public void sendTouches() {
+        if (touchedSessions.isEmpty())
+            return;
+
+        List<UserSessionInfo> sessions = new ArrayList<>();
+        for (Iterator<UUID> it = touchedSessions.iterator(); it.hasNext(); ) {
+            UUID id = it.next();
+            it.remove();
+            UserSessionInfo usi = cache.get(id);
+            if (usi != null) {
+                sessions.add(usi);
+            }
+        }
+        if (!sessions.isEmpty()) {
+            log.trace("Sending {} touched session(s) to cluster", sessions.size());
+            clusterManager.send(new UserSessionTouchMessage(sessions));
+        }
+    }
+
     @Override
     public int getExpirationTimeoutSec() {
         return expirationTimeout;
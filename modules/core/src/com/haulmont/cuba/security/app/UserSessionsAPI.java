@@ -43,6 +43,12 @@ public interface UserSessionsAPI {
      */
     UserSession get(UUID id, boolean propagate);
 
+    /**
+     * Sends "last used" timestamps of sessions touched by {@link #get(UUID, boolean)} since the previous call
+     * to the cluster in a single message. Full session state is not sent.
+     */
+    void sendTouches();
+
     /**
      * Propagates the user session state to the cluster
      * @param id    session id. If session with this id is not found, does nothing.
@@ -29,11 +29,9 @@ import org.junit.ClassRule;
 import org.junit.Test;
 
 import javax.persistence.TemporalType;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
+import static com.haulmont.cuba.testsupport.TestSupport.assertFail;
 import static org.junit.Assert.*;
 
 public class DataManagerTest {
@@ -99,6 +97,138 @@ public class DataManagerTest {
         assertTrue(list.size() > 0);
     }
 
+    @Test
+    public void testLoadStream() {
+        for (int i = 0; i < 5; i++) {
+            Server server = new Server();
+            server.setName("server-" + i);
+            server.setRunning(true);
+            dataManager.commit(server);
+        }
+
+        LoadContext<Server> loadContext = LoadContext.create(Server.class);
+        loadContext.setQueryString("select s from sys$Server s order by s.name").setFetchSize(2);
+
+        List<Server> list = new ArrayList<>();
+        dataManager.loadStream(loadContext, list::add);
+        assertEquals(5, list.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("server-" + i, list.get(i).getName());
+            assertTrue(PersistenceHelper.isDetached(list.get(i)));
+        }
+    }
+
+    @Test
+    public void testKeysetPagination() {
+        for (int i = 0; i < 5; i++) {
+            Server server = new Server();
+            server.setName("server-" + i);
+            server.setRunning(true);
+            dataManager.commit(server);
+        }
+
+        LoadContext<Server> loadContext = LoadContext.create(Server.class);
+        loadContext.setQueryString("select s from sys$Server s")
+                .setKeysetPagination(true)
+                .setKeysetSortProperty("name")
+                .setMaxResults(2);
+
+        List<Server> page = dataManager.loadList(loadContext);
+        assertEquals(2, page.size());
+        assertEquals("server-0", page.get(0).getName());
+        assertEquals("server-1", page.get(1).getName());
+
+        Server last = page.get(1);
+        loadContext.getQuery().setKeysetAfter(last.getName(), last.getId());
+        page = dataManager.loadList(loadContext);
+        assertEquals(2, page.size());
+        assertEquals("server-2", page.get(0).getName());
+        assertEquals("server-3", page.get(1).getName());
+
+        last = page.get(1);
+        loadContext.getQuery().setKeysetAfter(last.getName(), last.getId());
+        page = dataManager.loadList(loadContext);
+        assertEquals(1, page.size());
+        assertEquals("server-4", page.get(0).getName());
+    }
+
+    @Test
+    public void testKeysetPaginationDescending() {
+        for (int i = 0; i < 4; i++) {
+            Server server = new Server();
+            server.setName("server-" + i);
+            server.setRunning(true);
+            dataManager.commit(server);
+        }
+
+        LoadContext<Server> loadContext = LoadContext.create(Server.class);
+        loadContext.setQueryString("select s from sys$Server s order by s.name desc")
+                .setKeysetPagination(true)
+                .setKeysetSortProperty("name")
+                .setMaxResults(2);
+
+        List<Server> page = dataManager.loadList(loadContext);
+        assertEquals(2, page.size());
+        assertEquals("server-3", page.get(0).getName());
+        assertEquals("server-2", page.get(1).getName());
+
+        Server last = page.get(1);
+        loadContext.getQuery().setKeysetAfter(last.getName(), last.getId());
+        page = dataManager.loadList(loadContext);
+        assertEquals(2, page.size());
+        assertEquals("server-1", page.get(0).getName());
+        assertEquals("server-0", page.get(1).getName());
+
+        // the query order conflicting with the keyset order is rejected
+        LoadContext<Server> conflictingContext = LoadContext.create(Server.class);
+        conflictingContext.setQueryString("select s from sys$Server s order by s.running")
+                .setKeysetPagination(true)
+                .setKeysetSortProperty("name")
+                .setMaxResults(2);
+        assertFail(() -> dataManager.loadList(conflictingContext));
+    }
+
+    @Test
+    public void testKeysetPaginationNullsLast() {
+        List<UUID> nullIds = new ArrayList<>();
+        for (String data : new String[]{null, "b", null, "a"}) {
+            Server server = new Server();
+            server.setName("server");
+            server.setData(data);
+            dataManager.commit(server);
+            if (data == null) {
+                nullIds.add(server.getId());
+            }
+        }
+
+        LoadContext<Server> loadContext = LoadContext.create(Server.class);
+        loadContext.setQueryString("select s from sys$Server s")
+                .setKeysetPagination(true)
+                .setKeysetSortProperty("data")
+                .setMaxResults(3);
+
+        List<Server> page = dataManager.loadList(loadContext);
+        assertEquals(3, page.size());
+        assertEquals("a", page.get(0).getData());
+        assertEquals("b", page.get(1).getData());
+        assertNull(page.get(2).getData());
+
+        Server last = page.get(2);
+        loadContext.getQuery().setKeysetAfter(last.getData(), last.getId());
+        List<Server> nextPage = dataManager.loadList(loadContext);
+        assertEquals(1, nextPage.size());
+        assertNull(nextPage.get(0).getData());
+
+        assertEquals(new HashSet<>(nullIds), new HashSet<>(Arrays.asList(last.getId(), nextPage.get(0).getId())));
+
+        // without paging all instances are loaded, nulls last
+        loadContext.getQuery().setKeysetAfter(null, null).setMaxResults(0);
+        List<Server> all = dataManager.loadList(loadContext);
+        assertEquals(4, all.size());
+        assertEquals("a", all.get(0).getData());
+        assertNull(all.get(3).getData());
+    }
+
     @Test
     public void testLoadListById() {
         Server server = new Server();
@@ -20,10 +20,14 @@ package com.haulmont.cuba.core;
 import com.haulmont.bali.db.MapListHandler;
 import com.haulmont.bali.db.QueryRunner;
 import com.haulmont.cuba.core.app.DataService;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.app.queryresults.QueryResultsManagerAPI;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.QueryResult;
 import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Configuration;
 import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.UserSessionSource;
 import com.haulmont.cuba.core.global.View;
 import com.haulmont.cuba.security.entity.Group;
 import com.haulmont.cuba.security.entity.User;
@@ -38,6 +42,7 @@ import java.sql.SQLException;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 @SuppressWarnings("IncorrectCreateEntity")
 public class QueryResultTest {
@@ -186,6 +191,39 @@ public class QueryResultTest {
         assertEquals(20, queryResults.size());
     }
 
+    @Test
+    public void testSecondQueryInMemory() throws SQLException {
+        ServerConfig serverConfig = AppBeans.get(Configuration.class).getConfig(ServerConfig.class);
+        int inMemoryMaxSize = serverConfig.getInMemoryQueryResultsMaxSize();
+        serverConfig.setInMemoryQueryResultsMaxSize(1000);
+        try {
+            DataService dataService = AppBeans.get(DataService.class);
+            LoadContext context = new LoadContext(User.class).setView(View.LOCAL);
+            context.setQueryString("select u from sec$User u where u.email like :email").setParameter("email", "%aaa.com");
+
+            LoadContext.Query prevQuery = new LoadContext.Query("select u from sec$User u where u.name like :name")
+                    .setParameter("name", "A-%");
+            context.getPrevQueries().add(prevQuery);
+            context.setQueryKey(112);
+
+            List<Entity> entities = dataService.loadList(context);
+            assertEquals(10, entities.size());
+
+            List<Map<String, Object>> queryResults = getQueryResults();
+            assertEquals(0, queryResults.size());
+
+            QueryResultsManagerAPI queryResultsManager = AppBeans.get(QueryResultsManagerAPI.NAME);
+            UUID sessionId = AppBeans.get(UserSessionSource.class).getUserSession().getId();
+            assertEquals(20, queryResultsManager.getInMemoryResults(sessionId, 112).size());
+
+            // results of the session are deleted from memory as well
+            queryResultsManager.deleteForCurrentSession();
+            assertNull(queryResultsManager.getInMemoryResults(sessionId, 112));
+        } finally {
+            serverConfig.setInMemoryQueryResultsMaxSize(inMemoryMaxSize);
+        }
+    }
+
     @Test
     public void testThirdQuery() throws SQLException {
         DataService dataService = AppBeans.get(DataService.class);
@@ -30,6 +30,7 @@ import org.junit.ClassRule;
 import org.junit.Test;
 
 import javax.persistence.FlushModeType;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -517,6 +518,88 @@ public class QueryTest {
         }
     }
 
+    @Test
+    public void testSameQueryWithDifferentParameterShapes() throws Exception {
+        // the transformed query string is cached by the shape of the parameters, the values must not leak between
+        // executions of the same query
+        String queryString = "select u from sec$User u where u.id in :ids and u.name like :name";
+        List<UUID> ids = Arrays.asList(userId, user2Id);
+
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+
+            TypedQuery<User> query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", ids);
+            query.setParameter("name", "(?i)%USER%");
+            assertEquals(2, query.getResultList().size());
+
+            query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", null);
+            query.setParameter("name", "testUser");
+            assertTrue(query.getResultList().isEmpty());
+
+            query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", ids);
+            query.setParameter("name", "testUser");
+            List<User> list = query.getResultList();
+            assertEquals(1, list.size());
+            assertEquals(userId, list.get(0).getId());
+
+            query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", Collections.emptyList());
+            query.setParameter("name", "(?i)%user%");
+            assertTrue(query.getResultList().isEmpty());
+
+            query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", ids);
+            query.setParameter("name", "(?i)%USER2");
+            list = query.getResultList();
+            assertEquals(1, list.size());
+            assertEquals(user2Id, list.get(0).getId());
+
+            query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", Collections.singletonList(user2Id));
+            query.setParameter("name", "testUser2");
+            list = query.getResultList();
+            assertEquals(1, list.size());
+            assertEquals(user2Id, list.get(0).getId());
+
+            // the null parameter is removed from the query again
+            query = em.createQuery(queryString, User.class);
+            query.setParameter("ids", null);
+            query.setParameter("name", "(?i)%user%");
+            assertTrue(query.getResultList().isEmpty());
+
+            tx.commit();
+        }
+    }
+
+    @Test
+    public void testResultIteratorAndResultList() throws Exception {
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.persistence().getEntityManager();
+
+            TypedQuery<User> query = em.createQuery("select u from sec$User u where u.id in :ids order by u.name",
+                    User.class);
+            query.setParameter("ids", Arrays.asList(userId, user2Id));
+
+            List<UUID> iterated = new ArrayList<>();
+            try (QueryResultIterator<User> iterator = query.getResultIterator(1)) {
+                while (iterator.hasNext()) {
+                    iterated.add(iterator.next().getId());
+                }
+            }
+            assertEquals(Arrays.asList(userId, user2Id), iterated);
+
+            // the same query is executed as a regular one after the cursor
+            List<User> list = query.getResultList();
+            assertEquals(2, list.size());
+            assertEquals(userId, list.get(0).getId());
+
+            tx.commit();
+        }
+    }
+
     @Test
     public void testSingleBooleanResult() {
         // works
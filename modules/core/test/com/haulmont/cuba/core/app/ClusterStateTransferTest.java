@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClusterStateTransferTest {
+
+    @Test
+    public void testChunkedState() throws Exception {
+        KryoClusterStateCodec codec = new KryoClusterStateCodec();
+
+        List<String> state = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            state.add("item-" + i);
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        ClusterManager.StateChunkOutputStream chunks = new ClusterManager.StateChunkOutputStream(out, 100);
+        codec.write(state, chunks);
+        chunks.finish();
+        // the state of the next listener
+        out.writeUTF("next");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        ClusterManager.StateChunkInputStream inputChunks = new ClusterManager.StateChunkInputStream(in);
+        List<Object> received = new ArrayList<>();
+        codec.read(inputChunks, received::add);
+        inputChunks.skipRemaining();
+
+        assertEquals(state, received);
+        assertEquals("next", in.readUTF());
+    }
+
+    @Test
+    public void testSkipUnreadState() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        ClusterManager.StateChunkOutputStream chunks = new ClusterManager.StateChunkOutputStream(out, 10);
+        chunks.write(new byte[55]);
+        chunks.finish();
+        out.writeUTF("next");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bos.toByteArray()));
+        ClusterManager.StateChunkInputStream inputChunks = new ClusterManager.StateChunkInputStream(in);
+        assertEquals(0, inputChunks.read());
+        inputChunks.skipRemaining();
+
+        assertEquals(-1, inputChunks.read());
+        assertEquals("next", in.readUTF());
+    }
+
+    @Test
+    public void testLegacyStateDetection() throws Exception {
+        ByteArrayOutputStream legacy = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(legacy);
+        oos.writeObject(new ArrayList<>());
+        oos.flush();
+        assertTrue(ClusterStateCodec.isJavaSerialized(legacy.toByteArray()));
+
+        KryoClusterStateCodec codec = new KryoClusterStateCodec();
+        ByteArrayOutputStream current = new ByteArrayOutputStream();
+        List<String> state = new ArrayList<>();
+        state.add("item");
+        codec.write(state, current);
+        assertFalse(ClusterStateCodec.isJavaSerialized(current.toByteArray()));
+
+        current.reset();
+        codec.write(new ArrayList<>(), current);
+        assertFalse(ClusterStateCodec.isJavaSerialized(current.toByteArray()));
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage;
+
+import com.google.common.hash.HashCode;
+import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.apache.commons.io.FileUtils;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class ContentAddressedFileStorageTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected ContentAddressedFileStorage storage;
+    protected File primaryRoot;
+
+    protected static class TestFileStorage extends ContentAddressedFileStorage {
+
+        @Override
+        protected void writeLog(File file, boolean remove) {
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        primaryRoot = folder.newFolder("primary");
+
+        storage = new TestFileStorage();
+        storage.replicationRetryDelayMs = 1;
+        storage.initReplication(10);
+        storage.storageRoots = new File[]{primaryRoot};
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.stopWriteExecutor();
+    }
+
+    @Test
+    public void testIdenticalContentsAreStoredOnce() throws Exception {
+        FileDescriptor fd1 = save("content");
+        FileDescriptor fd2 = save("content");
+        FileDescriptor fd3 = save("other content");
+
+        File blob = storage.getBlobFile(primaryRoot, checksum("content"));
+        assertEquals(blob, storage.resolveFile(primaryRoot, fd1));
+        assertEquals(blob, storage.resolveFile(primaryRoot, fd2));
+        assertNotEquals(blob, storage.resolveFile(primaryRoot, fd3));
+        assertEquals(2, references(blob).size());
+
+        assertEquals("content", read(storage.resolveFile(primaryRoot, fd2)));
+        assertEquals("other content", read(storage.resolveFile(primaryRoot, fd3)));
+
+        // only the references are visible as storage files
+        assertEquals(3, storage.listStorageFiles(primaryRoot).size());
+    }
+
+    @Test
+    public void testRemoveDecrementsReferences() throws Exception {
+        FileDescriptor fd1 = save("content");
+        FileDescriptor fd2 = save("content");
+        File blob = storage.getBlobFile(primaryRoot, checksum("content"));
+
+        storage.removeFile(fd1);
+
+        assertTrue(blob.exists());
+        assertEquals(1, references(blob).size());
+        assertTrue(references(blob).contains(fd2.getId().toString()));
+        assertFalse(storage.fileExists(fd1));
+        assertEquals("content", read(storage.resolveFile(primaryRoot, fd2)));
+
+        storage.removeFile(fd2);
+
+        assertFalse(blob.exists());
+        assertFalse(storage.getReferencesDir(blob).exists());
+        assertFalse(storage.fileExists(fd2));
+    }
+
+    @Test
+    public void testSecondaryRootReceivesReference() throws Exception {
+        File secondaryRoot = folder.newFolder("secondary");
+        storage.storageRoots = new File[]{primaryRoot, secondaryRoot};
+
+        FileDescriptor fd1 = save("content");
+        FileDescriptor fd2 = save("content");
+
+        waitFor(() -> storage.getReplicatedCount() == 2);
+        File blob = storage.getBlobFile(secondaryRoot, checksum("content"));
+        assertEquals(blob, storage.resolveFile(secondaryRoot, fd1));
+        assertEquals(2, references(blob).size());
+
+        storage.removeFile(fd1);
+        storage.removeFile(fd2);
+        assertFalse(blob.exists());
+    }
+
+    @Test
+    public void testLegacyFileLookingLikeReference() throws Exception {
+        FileDescriptor fd = new FileDescriptor();
+        fd.setCreateDate(new Date());
+        fd.setName("test.txt");
+        fd.setExtension("txt");
+
+        // saved by the plain file storage before switching, contents happen to look like a reference
+        String content = ContentAddressedFileStorage.REFERENCE_PREFIX + checksum("content");
+        File legacyFile = new File(storage.getStorageDir(primaryRoot, fd), FileStorage.getFileName(fd));
+        FileUtils.writeStringToFile(legacyFile, content, StandardCharsets.UTF_8);
+
+        assertEquals(legacyFile, storage.resolveFile(primaryRoot, fd));
+        assertEquals(content, read(storage.resolveFile(primaryRoot, fd)));
+
+        storage.removeFile(fd);
+        assertFalse(legacyFile.exists());
+    }
+
+    @Test
+    public void testConcurrentSaveAndRemove() throws Exception {
+        FileDescriptor kept = save("content");
+        File blob = storage.getBlobFile(primaryRoot, checksum("content"));
+
+        int threads = 8;
+        int iterations = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    for (int j = 0; j < iterations; j++) {
+                        FileDescriptor fd = save("content");
+                        assertEquals("content", read(storage.resolveFile(primaryRoot, fd)));
+                        storage.removeFile(fd);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(blob.exists());
+        assertEquals(1, references(blob).size());
+        assertEquals("content", read(storage.resolveFile(primaryRoot, kept)));
+
+        storage.removeFile(kept);
+        assertFalse(blob.exists());
+    }
+
+    @Test
+    public void testConcurrentSaveAndRemoveOfLastReference() throws Exception {
+        int threads = 8;
+        int iterations = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    for (int j = 0; j < iterations; j++) {
+                        // the contents can be removed by another thread right before this one adds its reference
+                        FileDescriptor fd = save("content");
+                        assertEquals("content", read(storage.resolveFile(primaryRoot, fd)));
+                        storage.removeFile(fd);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        File blob = storage.getBlobFile(primaryRoot, checksum("content"));
+        assertFalse(blob.exists());
+        assertFalse(storage.getReferencesDir(blob).exists());
+    }
+
+    protected FileDescriptor save(String content) throws Exception {
+        FileDescriptor fd = new FileDescriptor();
+        fd.setCreateDate(new Date());
+        fd.setName("test.txt");
+        fd.setExtension("txt");
+        storage.saveStream(fd, new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+        return fd;
+    }
+
+    protected List<String> references(File blob) {
+        String[] names = storage.getReferencesDir(blob).list();
+        List<String> list = new ArrayList<>();
+        if (names != null) {
+            for (String name : names) {
+                list.add(name);
+            }
+        }
+        return list;
+    }
+
+    protected HashCode checksum(String content) {
+        return storage.checksumFunction.hashBytes(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    protected String read(File file) throws IOException {
+        return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+    }
+
+    protected void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition is not met in 10 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.filestorage;
+
+import com.google.common.hash.HashCode;
+import com.haulmont.cuba.core.entity.FileDescriptor;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.apache.commons.io.FileUtils;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class FileStorageTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    protected TestFileStorage storage;
+    protected File primaryRoot;
+    protected File secondaryRoot;
+
+    protected static class TestFileStorage extends FileStorage {
+
+        protected List<String> logEntries = new CopyOnWriteArrayList<>();
+
+        @Override
+        protected void writeLog(File file, boolean remove) {
+            logEntries.add((remove ? "REMOVE " : "CREATE ") + file.getAbsolutePath());
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        primaryRoot = folder.newFolder("primary");
+        secondaryRoot = folder.newFolder("secondary");
+
+        storage = new TestFileStorage();
+        storage.replicationMaxAttempts = 3;
+        storage.replicationRetryDelayMs = 1;
+        storage.initReplication(10);
+        storage.storageRoots = new File[]{primaryRoot, secondaryRoot};
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        storage.stopWriteExecutor();
+    }
+
+    @Test
+    public void testSaveToAllRoots() throws Exception {
+        FileDescriptor fd = createFileDescriptor();
+        storage.saveStream(fd, new ByteArrayInputStream(bytes("content")));
+
+        assertEquals("content", read(storage.resolveFile(primaryRoot, fd)));
+        assertEquals("content", read(storage.resolveFile(secondaryRoot, fd)));
+        assertEquals(2, storage.logEntries.size());
+        assertEquals(0, storage.getReplicatedCount());
+        assertEquals(0, storage.getReplicationFailedCount());
+    }
+
+    @Test
+    public void testFailedCopyIsCounted() throws Exception {
+        FileDescriptor fd = createFileDescriptor();
+        // a file in place of the year directory makes the secondary root unwritable
+        File yearDir = storage.getStorageDir(secondaryRoot, fd).getParentFile().getParentFile();
+        FileUtils.writeStringToFile(yearDir, "blocker", StandardCharsets.UTF_8);
+
+        storage.saveStream(fd, new ByteArrayInputStream(bytes("content")));
+
+        waitFor(() -> storage.getReplicationFailedCount() == 1);
+        assertEquals("content", read(storage.resolveFile(primaryRoot, fd)));
+        assertEquals(0, storage.getReplicatedCount());
+        assertEquals(2, storage.getReplicationRetryCount());
+    }
+
+    @Test
+    public void testReplicationRetry() throws Exception {
+        FileDescriptor fd = createFileDescriptor();
+        File source = storage.resolveFile(primaryRoot, fd);
+        FileUtils.writeStringToFile(source, "content", StandardCharsets.UTF_8);
+        File target = storage.resolveFile(secondaryRoot, fd);
+
+        storage.replicate(new FailingReplicationTask(storage, fd, source, target, checksum("content"), 1));
+
+        waitFor(() -> storage.getReplicatedCount() == 1);
+        assertEquals(1, storage.getReplicationRetryCount());
+        assertEquals(0, storage.getReplicationFailedCount());
+        assertEquals("content", read(target));
+    }
+
+    @Test
+    public void testChecksumMismatch() throws Exception {
+        FileDescriptor fd = createFileDescriptor();
+        File source = storage.resolveFile(primaryRoot, fd);
+        FileUtils.writeStringToFile(source, "content", StandardCharsets.UTF_8);
+        File target = storage.resolveFile(secondaryRoot, fd);
+
+        storage.replicate(storage.new ReplicationTask(fd, source, target, checksum("other content")));
+
+        waitFor(() -> storage.getReplicationFailedCount() == 1);
+        assertEquals(2, storage.getReplicationRetryCount());
+        assertFalse(target.exists());
+    }
+
+    @Test
+    public void testPendingRetriesAreDrainedOnShutdown() throws Exception {
+        storage.replicationRetryDelayMs = 60_000;
+
+        FileDescriptor fd = createFileDescriptor();
+        File source = storage.resolveFile(primaryRoot, fd);
+        FileUtils.writeStringToFile(source, "content", StandardCharsets.UTF_8);
+        File target = storage.resolveFile(secondaryRoot, fd);
+
+        storage.replicate(new FailingReplicationTask(storage, fd, source, target, checksum("content"), 1));
+        waitFor(() -> storage.getReplicationRetryCount() == 1);
+
+        storage.stopWriteExecutor();
+
+        assertEquals(1, storage.getReplicatedCount());
+        assertEquals("content", read(target));
+    }
+
+    @Test
+    public void testCallerSecurityContextIsRestored() throws Exception {
+        SecurityContext taskContext = new SecurityContext(UUID.randomUUID(), "task");
+        SecurityContext callerContext = new SecurityContext(UUID.randomUUID(), "caller");
+
+        FileDescriptor fd = createFileDescriptor();
+        File source = storage.resolveFile(primaryRoot, fd);
+        FileUtils.writeStringToFile(source, "content", StandardCharsets.UTF_8);
+
+        AppContext.setSecurityContext(taskContext);
+        FileStorage.ReplicationTask task = storage.new ReplicationTask(fd, source,
+                storage.resolveFile(secondaryRoot, fd), checksum("content"));
+
+        // the task runs in the saving thread when the replication queue is full
+        AppContext.setSecurityContext(callerContext);
+        try {
+            task.run();
+            assertSame(callerContext, AppContext.getSecurityContext());
+        } finally {
+            AppContext.setSecurityContext(null);
+        }
+        assertEquals(1, storage.getReplicatedCount());
+    }
+
+    protected static class FailingReplicationTask extends FileStorage.ReplicationTask {
+
+        protected int failures;
+
+        public FailingReplicationTask(FileStorage storage, FileDescriptor fileDescr, File source, File target,
+                                      HashCode checksum, int failures) {
+            storage.super(fileDescr, source, target, checksum);
+            this.failures = failures;
+        }
+
+        @Override
+        protected void transfer() throws IOException {
+            if (failures-- > 0) {
+                throw new IOException("Test failure");
+            }
+            super.transfer();
+        }
+    }
+
+    protected FileDescriptor createFileDescriptor() {
+        FileDescriptor fd = new FileDescriptor();
+        fd.setCreateDate(new Date());
+        fd.setName("test.txt");
+        fd.setExtension("txt");
+        return fd;
+    }
+
+    protected HashCode checksum(String content) {
+        return storage.checksumFunction.hashBytes(bytes(content));
+    }
+
+    protected byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    protected String read(File file) throws IOException {
+        return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+    }
+
+    protected void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Condition is not met in 10 seconds");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
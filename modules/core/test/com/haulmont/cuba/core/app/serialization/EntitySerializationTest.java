@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.app.serialization;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.haulmont.chile.core.model.MetaProperty;
+import com.haulmont.chile.core.model.Range;
+import com.haulmont.cuba.core.app.dynamicattributes.DynamicAttributes;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.security.entity.*;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.apache.commons.lang.ArrayUtils;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class EntitySerializationTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    protected EntitySerializationAPI entitySerialization;
+    protected PreviousEntitySerialization previousSerialization;
+    protected Metadata metadata;
+
+    /**
+     * Serializes entities as it was done before serialization plans: the properties of each entity are filtered
+     * by the view when the entity is written.
+     */
+    protected static class PreviousEntitySerialization extends EntitySerialization {
+
+        @Override
+        protected Gson createGsonForSerialization(View view, EntitySerializationOption... options) {
+            GsonBuilder gsonBuilder = new GsonBuilder()
+                    .registerTypeHierarchyAdapter(Entity.class, new PreviousEntitySerializer(view, options));
+            if (ArrayUtils.contains(options, EntitySerializationOption.SERIALIZE_NULLS)) {
+                gsonBuilder.serializeNulls();
+            }
+            return gsonBuilder.create();
+        }
+
+        protected class PreviousEntitySerializer extends EntitySerializer {
+
+            public PreviousEntitySerializer(View view, EntitySerializationOption... options) {
+                super(view, options);
+            }
+
+            @Override
+            protected void writeFields(Entity entity, JsonObject jsonObject, SerializationPlan plan,
+                                       Set<Entity> cyclicReferences) {
+                View view = plan.view;
+                for (MetaProperty metaProperty : entity.getMetaClass().getProperties()) {
+                    if (!propertyWritingAllowed(metaProperty, entity))
+                        continue;
+                    ViewProperty viewProperty = null;
+                    if (view != null) {
+                        viewProperty = view.getProperty(metaProperty.getName());
+                        if (viewProperty == null)
+                            continue;
+                    }
+                    if (!PersistenceHelper.isNew(entity) && !PersistenceHelper.isLoaded(entity, metaProperty.getName()))
+                        continue;
+
+                    Object fieldValue = entity.getValue(metaProperty.getName());
+                    if (fieldValue == null) {
+                        jsonObject.add(metaProperty.getName(), null);
+                        continue;
+                    }
+
+                    Range range = metaProperty.getRange();
+                    if (range.isDatatype()) {
+                        writeSimpleProperty(jsonObject, fieldValue, metaProperty);
+                    } else if (range.isEnum()) {
+                        jsonObject.addProperty(metaProperty.getName(), fieldValue.toString());
+                    } else if (range.isClass()) {
+                        SerializationPlan propertyPlan = new SerializationPlan(
+                                viewProperty != null ? viewProperty.getView() : null);
+                        if (fieldValue instanceof Entity) {
+                            jsonObject.add(metaProperty.getName(), serializeEntity((Entity) fieldValue,
+                                    propertyPlan, new HashSet<>(cyclicReferences)));
+                        } else if (fieldValue instanceof Collection) {
+                            JsonArray jsonArray = new JsonArray();
+                            for (Object item : (Collection) fieldValue) {
+                                if (item instanceof Entity) {
+                                    jsonArray.add(serializeEntity((Entity) item, propertyPlan,
+                                            new HashSet<>(cyclicReferences)));
+                                }
+                            }
+                            jsonObject.add(metaProperty.getName(), jsonArray);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        entitySerialization = AppBeans.get(EntitySerializationAPI.NAME);
+        metadata = AppBeans.get(Metadata.NAME);
+
+        previousSerialization = new PreviousEntitySerialization();
+        previousSerialization.metadata = metadata;
+        previousSerialization.metadataTools = AppBeans.get(MetadataTools.NAME);
+        previousSerialization.dynamicAttributes = AppBeans.get(DynamicAttributes.class);
+    }
+
+    @Test
+    public void testOutputMatchesPreviousSerializer() throws Exception {
+        List<User> users = createUsers();
+        View view = new View(User.class)
+                .addProperty("login")
+                .addProperty("active")
+                .addProperty("group", new View(Group.class).addProperty("name"))
+                .addProperty("userRoles", new View(UserRole.class)
+                        .addProperty("user")
+                        .addProperty("role", new View(Role.class).addProperty("name").addProperty("type")));
+
+        for (EntitySerializationOption[] options : Arrays.asList(
+                new EntitySerializationOption[0],
+                new EntitySerializationOption[]{EntitySerializationOption.SERIALIZE_INSTANCE_NAME},
+                new EntitySerializationOption[]{EntitySerializationOption.SERIALIZE_NULLS},
+                new EntitySerializationOption[]{EntitySerializationOption.COMPACT_REPEATED_ENTITIES})) {
+            assertEquals(previousSerialization.toJson(users, view, options), entitySerialization.toJson(users, view, options));
+            assertEquals(previousSerialization.toJson(users, null, options), entitySerialization.toJson(users, null, options));
+            assertEquals(previousSerialization.toJson(users.get(0), view, options),
+                    entitySerialization.toJson(users.get(0), view, options));
+        }
+    }
+
+    @Test
+    public void testPlansAreSharedByEqualViews() throws Exception {
+        EntitySerialization serialization = (EntitySerialization) entitySerialization;
+        View view = createUserView();
+        View equalView = createUserView();
+        View otherView = createUserView().addProperty("position");
+
+        assertSame(serialization.getSerializationPlan(view), serialization.getSerializationPlan(equalView));
+        assertNotSame(serialization.getSerializationPlan(view), serialization.getSerializationPlan(otherView));
+        assertSame(serialization.getViewKey(view), serialization.getViewKey(view));
+
+        List<User> users = createUsers();
+        assertEquals(previousSerialization.toJson(users, otherView), entitySerialization.toJson(users, otherView));
+    }
+
+    @Test
+    public void testStreamingMatchesStringSerialization() throws Exception {
+        List<User> users = createUsers();
+        View view = createUserView();
+
+        for (EntitySerializationOption[] options : Arrays.asList(
+                new EntitySerializationOption[0],
+                new EntitySerializationOption[]{EntitySerializationOption.SERIALIZE_INSTANCE_NAME},
+                new EntitySerializationOption[]{EntitySerializationOption.SERIALIZE_NULLS},
+                new EntitySerializationOption[]{EntitySerializationOption.COMPACT_REPEATED_ENTITIES})) {
+            assertEquals(entitySerialization.toJson(users, view, options), writeJson(users, view, options));
+            assertEquals(entitySerialization.toJson(users, null, options), writeJson(users, null, options));
+        }
+    }
+
+    @Test
+    public void testStreamingWritesNullElements() throws Exception {
+        List<User> users = new ArrayList<>(createUsers());
+        users.add(1, null);
+        View view = createUserView();
+
+        String json = writeJson(users, view);
+
+        assertEquals(entitySerialization.toJson(users, view), json);
+        assertEquals("[]", writeJson(Collections.emptyList(), view));
+    }
+
+    protected String writeJson(List<User> users, View view, EntitySerializationOption... options) {
+        StringWriter writer = new StringWriter();
+        entitySerialization.toJson(users, view, writer, options);
+        return writer.toString();
+    }
+
+    protected List<User> createUsers() {
+        Group group = metadata.create(Group.class);
+        group.setName("Group");
+
+        Role role = metadata.create(Role.class);
+        role.setName("Role");
+        role.setType(RoleType.STANDARD);
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User user = metadata.create(User.class);
+            user.setLogin("user" + i);
+            user.setName("User " + i);
+            user.setActive(i % 2 == 0);
+            user.setGroup(group);
+
+            UserRole userRole = metadata.create(UserRole.class);
+            userRole.setUser(user);
+            userRole.setRole(role);
+            user.setUserRoles(new ArrayList<>(Collections.singletonList(userRole)));
+
+            users.add(user);
+        }
+        return users;
+    }
+
+    protected View createUserView() {
+        return new View(User.class)
+                .addProperty("login")
+                .addProperty("name")
+                .addProperty("email")
+                .addProperty("group", new View(Group.class).addProperty("name"));
+    }
+}
@@ -858,6 +858,27 @@ public class QueryTransformerAstBasedTest {
                 transformer.getResult());
     }
 
+    @Test
+    public void testReplaceWithAggregates() throws RecognitionException {
+        DomainModel model = prepareDomainModel();
+
+        QueryTransformerAstBased transformer = new QueryTransformerAstBased(model,
+                "select h from sec$GroupHierarchy h where h.group = ?1 order by h.level");
+        transformer.replaceWithAggregates("sum({E}.level)", "max({E}.level)", "count({E})");
+        assertEquals(
+                "select sum(h.level), max(h.level), count(h) from sec$GroupHierarchy h where h.group = ?1",
+                transformer.getResult());
+
+        transformer = new QueryTransformerAstBased(model,
+                "select distinct h from sec$GroupHierarchy h where h.group = ?1");
+        try {
+            transformer.replaceWithAggregates("sum({E}.level)");
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
     @Test
     public void testHandleCaseInsensitiveParam() throws Exception {
         DomainModel model = prepareDomainModel();
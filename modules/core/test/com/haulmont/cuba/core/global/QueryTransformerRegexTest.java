@@ -156,6 +156,16 @@ public class QueryTransformerRegexTest extends TestCase {
                 res);
     }
 
+    public void testReplaceWithAggregates() {
+        QueryTransformerRegex transformer = new QueryTransformerRegex(
+                "select h from sec$GroupHierarchy h where h.group = ?1 order by h.level");
+        transformer.replaceWithAggregates("sum({E}.level)", "max({E}.level)", "count({E})");
+        String res = transformer.getResult();
+        assertEquals(
+                "select sum(h.level), max(h.level), count(h) from sec$GroupHierarchy h where h.group = ?1",
+                res);
+    }
+
     public void testReplaceWithSelectId() {
         QueryTransformerRegex transformer = new QueryTransformerRegex(
                 "select c from sec$GroupHierarchy h join h.parent.constraints c where h.group = ?1 " +
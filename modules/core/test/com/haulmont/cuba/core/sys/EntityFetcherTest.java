@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.core.global.ViewProperty;
+import com.haulmont.cuba.security.entity.Group;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.security.entity.UserRole;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class EntityFetcherTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private EntityFetcher entityFetcher;
+    private MetaClass userMetaClass;
+
+    @Before
+    public void setUp() throws Exception {
+        entityFetcher = AppBeans.get(EntityFetcher.NAME);
+        entityFetcher.fetchedProperties.invalidateAll();
+        userMetaClass = cont.metadata().getClassNN(User.class);
+    }
+
+    @Test
+    public void testViewCopiesShareCachedProperties() throws Exception {
+        View view1 = createUserView();
+        List<ViewProperty> properties = entityFetcher.getFetchedProperties(userMetaClass, view1);
+        assertEquals(1, properties.size());
+        assertSame(view1.getProperty("group"), properties.get(0));
+
+        View view2 = createUserView();
+        properties = entityFetcher.getFetchedProperties(userMetaClass, view2);
+        assertEquals(1, properties.size());
+        // properties are taken from the passed view, not from the view the entry was cached for
+        assertSame(view2.getProperty("group"), properties.get(0));
+        assertEquals(1, entityFetcher.fetchedProperties.size());
+    }
+
+    @Test
+    public void testModifiedView() throws Exception {
+        View view = createUserView();
+        List<ViewProperty> properties = entityFetcher.getFetchedProperties(userMetaClass, view);
+        assertEquals(1, properties.size());
+
+        view.addProperty("userRoles", new View(UserRole.class).addProperty("role"));
+        properties = entityFetcher.getFetchedProperties(userMetaClass, view);
+        assertEquals(2, properties.size());
+        assertSame(view.getProperty("group"), properties.get(0));
+        assertSame(view.getProperty("userRoles"), properties.get(1));
+        assertEquals(2, entityFetcher.fetchedProperties.size());
+    }
+
+    private View createUserView() {
+        return new View(User.class)
+                .addProperty("login")
+                .addProperty("name")
+                .addProperty("group", new View(Group.class).addProperty("name"));
+    }
+}
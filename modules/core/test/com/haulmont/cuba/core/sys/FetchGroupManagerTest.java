@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.cuba.core.EntityManager;
+import com.haulmont.cuba.core.Persistence;
+import com.haulmont.cuba.core.Transaction;
+import com.haulmont.cuba.core.TypedQuery;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.View;
+import com.haulmont.cuba.security.entity.Group;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.testsupport.TestContainer;
+import com.haulmont.cuba.testsupport.TestSupport;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import static com.haulmont.cuba.testsupport.TestSupport.reserialize;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class FetchGroupManagerTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private QueryTransformationCache transformationCache;
+
+    @Before
+    public void setUp() throws Exception {
+        transformationCache = AppBeans.get(QueryTransformationCache.NAME);
+    }
+
+    @Test
+    public void testFetchPlanCachedByViewStructure() throws Exception {
+        transformationCache.invalidateAll();
+
+        loadUser(createUserView());
+        long size = transformationCache.size();
+
+        // a copy of the view reuses the cached plan and still loads the references
+        User user = loadUser(createUserView());
+        assertEquals(size, transformationCache.size());
+        assertNotNull(user.getGroup().getName());
+
+        // a view with another structure gets its own plan
+        View view = createUserView().addProperty("email");
+        loadUser(view);
+        assertEquals(size + 1, transformationCache.size());
+
+        // a view modified after it has been used is not served by the plan of its previous structure
+        view.addProperty("position");
+        loadUser(view);
+        assertEquals(size + 2, transformationCache.size());
+    }
+
+    private User loadUser(View view) throws Exception {
+        Persistence persistence = cont.persistence();
+        User user;
+        try (Transaction tx = persistence.createTransaction()) {
+            EntityManager em = persistence.getEntityManager();
+            TypedQuery<User> query = em.createQuery("select u from sec$User u where u.id = :id", User.class);
+            query.setParameter("id", TestSupport.ADMIN_USER_ID);
+            query.setView(view);
+            user = query.getSingleResult();
+            tx.commit();
+        }
+        return reserialize(user);
+    }
+
+    private View createUserView() {
+        return new View(User.class)
+                .addProperty("login")
+                .addProperty("name")
+                .addProperty("group", new View(Group.class).addProperty("name"))
+                .setLoadPartialEntities(true);
+    }
+}
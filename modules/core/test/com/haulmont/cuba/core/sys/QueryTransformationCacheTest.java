@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.google.common.collect.Sets;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class QueryTransformationCacheTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    @Test
+    public void testCachedByKindQueryAndDiscriminator() throws Exception {
+        QueryTransformationCache cache = AppBeans.get(QueryTransformationCache.NAME);
+        AtomicInteger transformations = new AtomicInteger();
+        String query = "select u from sec$User u where u.id = :id and u.name = :name";
+
+        String result = cache.get("test", query, Sets.newHashSet("id", "name"),
+                () -> "result" + transformations.incrementAndGet());
+        assertEquals("result1", result);
+
+        // the discriminator is compared by equals
+        result = cache.get("test", query, Sets.newHashSet("name", "id"), () -> "result" + transformations.incrementAndGet());
+        assertEquals("result1", result);
+
+        result = cache.get("test", query, Sets.newHashSet("id:null", "name"), () -> "result" + transformations.incrementAndGet());
+        assertEquals("result2", result);
+
+        result = cache.get("test", query, null, () -> "result" + transformations.incrementAndGet());
+        assertEquals("result3", result);
+
+        result = cache.get("otherTest", query, null, () -> "result" + transformations.incrementAndGet());
+        assertEquals("result4", result);
+
+        result = cache.get("test", query + " order by u.name", null, () -> "result" + transformations.incrementAndGet());
+        assertEquals("result5", result);
+
+        cache.invalidateAll();
+        result = cache.get("test", query, Sets.newHashSet("id", "name"), () -> "result" + transformations.incrementAndGet());
+        assertEquals("result6", result);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.core.PersistenceSecurity;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Metadata;
+import com.haulmont.cuba.core.global.UserSessionSource;
+import com.haulmont.cuba.security.entity.GroupHierarchy;
+import com.haulmont.cuba.security.entity.User;
+import com.haulmont.cuba.security.global.UserSession;
+import com.haulmont.cuba.testmodel.sales.Customer;
+import com.haulmont.cuba.testmodel.sales.Order;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class SecurityImplTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    private SecurityImpl security;
+    private Metadata metadata;
+    private UserSession userSession;
+
+    @Before
+    public void setUp() throws Exception {
+        security = AppBeans.get(PersistenceSecurity.NAME);
+        metadata = cont.metadata();
+        userSession = AppBeans.get(UserSessionSource.class).getUserSession();
+    }
+
+    @Test
+    public void testNullPath() throws Exception {
+        Order withoutCustomer = metadata.create(Order.class);
+        Order withCustomer = createOrder("Smith", null);
+        Order withOtherCustomer = createOrder("Jones", null);
+        Order withUnnamedCustomer = createOrder(null, null);
+
+        Entity[] orders = {withoutCustomer, withCustomer, withOtherCustomer, withUnnamedCustomer};
+        assertSameAsGroovy(Order.class, "{E}.customer == null", orders);
+        assertSameAsGroovy(Order.class, "{E}.customer != null", orders);
+        assertSameAsGroovy(Order.class, "{E}.customer.name == 'Smith'", orders);
+        assertSameAsGroovy(Order.class, "{E}.customer.name != 'Smith'", orders);
+        assertSameAsGroovy(Order.class, "{E}.customer.name == null", orders);
+        assertSameAsGroovy(Order.class, "{E}.customer.name != null", orders);
+
+        // a null reference in the middle of the path filters the entity out for both operators
+        assertFalse(test(compileSimple(Order.class, "{E}.customer.name == 'Smith'"), withoutCustomer));
+        assertFalse(test(compileSimple(Order.class, "{E}.customer.name != 'Smith'"), withoutCustomer));
+    }
+
+    @Test
+    public void testNotEquals() throws Exception {
+        User active = metadata.create(User.class);
+        active.setActive(true);
+        User inactive = metadata.create(User.class);
+        inactive.setActive(false);
+        User undefined = metadata.create(User.class);
+        undefined.setActive(null);
+        undefined.setLogin("admin");
+
+        Entity[] users = {active, inactive, undefined};
+        assertSameAsGroovy(User.class, "{E}.active == true", users);
+        assertSameAsGroovy(User.class, "{E}.active != true", users);
+        assertSameAsGroovy(User.class, "{E}.active != false", users);
+        assertSameAsGroovy(User.class, "{E}.login != \"admin\"", users);
+        assertSameAsGroovy(User.class, "{E}.login != null", users);
+
+        assertTrue(test(compileSimple(User.class, "{E}.active != false"), undefined));
+    }
+
+    @Test
+    public void testNumericScale() throws Exception {
+        Entity[] orders = {
+                createOrder("Smith", new BigDecimal("10")),
+                createOrder("Smith", new BigDecimal("10.0")),
+                createOrder("Smith", new BigDecimal("10.50")),
+                createOrder("Smith", new BigDecimal("-1")),
+                createOrder("Smith", null)
+        };
+        assertSameAsGroovy(Order.class, "{E}.amount == 10", orders);
+        assertSameAsGroovy(Order.class, "{E}.amount == 10.00", orders);
+        assertSameAsGroovy(Order.class, "{E}.amount != 10.5", orders);
+        assertSameAsGroovy(Order.class, "{E}.amount == -1.0", orders);
+        assertSameAsGroovy(Order.class, "{E}.amount != null", orders);
+
+        GroupHierarchy first = metadata.create(GroupHierarchy.class);
+        first.setLevel(1);
+        GroupHierarchy second = metadata.create(GroupHierarchy.class);
+        second.setLevel(2);
+
+        Entity[] hierarchies = {first, second, metadata.create(GroupHierarchy.class)};
+        assertSameAsGroovy(GroupHierarchy.class, "{E}.level == 1", hierarchies);
+        assertSameAsGroovy(GroupHierarchy.class, "{E}.level == 1.0", hierarchies);
+        assertSameAsGroovy(GroupHierarchy.class, "{E}.level != 2.00", hierarchies);
+
+        assertTrue(test(compileSimple(Order.class, "{E}.amount == 10.00"), orders[1]));
+    }
+
+    @Test
+    public void testNotCompiled() throws Exception {
+        MetaClass metaClass = metadata.getClassNN(Order.class);
+        assertNull(security.compileSimpleConstraint(metaClass, "{E}.customer.name == userSession.user.login"));
+        assertNull(security.compileSimpleConstraint(metaClass, "{E}.amount > 10"));
+        // literal types not matching the attribute are left to Groovy
+        assertNull(security.compileSimpleConstraint(metaClass, "{E}.amount == '10'"));
+        assertNull(security.compileSimpleConstraint(metaClass, "{E}.customer.name == 10"));
+        assertNull(security.compileSimpleConstraint(metaClass, "{E}.unknown == null"));
+    }
+
+    @Test
+    public void testGroovyConstraintBoundPerCall() throws Exception {
+        BiPredicate<Entity, UserSession> groovy = security.compileGroovyConstraint("{E}.amount > 10");
+
+        // the script is compiled once, each check gets its own binding, also when checked concurrently
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            orders.add(createOrder("Smith", new BigDecimal(i % 20)));
+        }
+        List<Boolean> results = orders.parallelStream()
+                .map(order -> test(groovy, order))
+                .collect(Collectors.toList());
+        for (int i = 0; i < orders.size(); i++) {
+            assertEquals(orders.get(i).getAmount().intValue() > 10, results.get(i));
+        }
+    }
+
+    private Order createOrder(String customerName, BigDecimal amount) {
+        Customer customer = metadata.create(Customer.class);
+        customer.setName(customerName);
+        Order order = metadata.create(Order.class);
+        order.setCustomer(customer);
+        order.setAmount(amount);
+        return order;
+    }
+
+    private BiPredicate<Entity, UserSession> compileSimple(Class<?> entityClass, String script) {
+        BiPredicate<Entity, UserSession> predicate =
+                security.compileSimpleConstraint(metadata.getClassNN(entityClass), script);
+        assertNotNull(script, predicate);
+        return predicate;
+    }
+
+    private void assertSameAsGroovy(Class<?> entityClass, String script, Entity... entities) {
+        BiPredicate<Entity, UserSession> simple = compileSimple(entityClass, script);
+        BiPredicate<Entity, UserSession> groovy = security.compileGroovyConstraint(script);
+        for (Entity entity : entities) {
+            assertEquals(script + " for " + entity, test(groovy, entity), test(simple, entity));
+        }
+    }
+
+    // an exception thrown by a constraint filters the entity out, see SecurityImpl.isPermitted
+    private boolean test(BiPredicate<Entity, UserSession> predicate, Entity entity) {
+        try {
+            return predicate.test(entity, userSession);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
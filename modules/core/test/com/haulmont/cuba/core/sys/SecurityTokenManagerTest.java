@@ -56,4 +56,16 @@ public class SecurityTokenManagerTest {
         Assert.assertEquals(id3, userRoles.get(2));
         Assert.assertEquals(id4, userRoles.get(3));
     }
+
+    @Test
+    public void testEmptySecurityToken() throws Exception {
+        SecurityTokenManager securityTokenManager = AppBeans.get(SecurityTokenManager.class);
+        User user = new User();
+
+        securityTokenManager.writeSecurityToken(user);
+        Assert.assertNotNull(BaseEntityInternalAccess.getSecurityToken(user));
+
+        securityTokenManager.readSecurityToken(user);
+        Assert.assertNull(BaseEntityInternalAccess.getFilteredData(user));
+    }
 }
\ No newline at end of file
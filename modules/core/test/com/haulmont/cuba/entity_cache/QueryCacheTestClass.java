@@ -30,6 +30,9 @@ import com.haulmont.cuba.core.global.View;
 import com.haulmont.cuba.core.jmx.QueryCacheSupportMBean;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.core.sys.entitycache.QueryCache;
+import com.haulmont.cuba.core.sys.entitycache.QueryCacheManager;
+import com.haulmont.cuba.core.sys.entitycache.QueryKey;
+import com.haulmont.cuba.core.sys.entitycache.QueryResult;
 import com.haulmont.cuba.security.entity.*;
 import com.haulmont.cuba.testsupport.TestAppender;
 import com.haulmont.cuba.testsupport.TestContainer;
@@ -46,7 +49,9 @@ import javax.persistence.EntityManagerFactory;
 import javax.persistence.LockModeType;
 import javax.persistence.NoResultException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 import java.util.function.Consumer;
 
 import static com.haulmont.cuba.testsupport.TestSupport.assertFail;
@@ -237,6 +242,86 @@ public class QueryCacheTestClass {
         assertEquals(0, appender.filterMessages(m -> m.startsWith("SELECT")).count());
     }
 
+    @Test
+    public void testIndexPruning() throws Exception {
+        getResultListUserByRole("TestRole");
+        getResultListUsersByLoginPrefix();
+        assertEquals(2, queryCache.size());
+        assertTrue(queryCache.getIndexSize() > 0);
+
+        queryCache.invalidate("sec$Role");
+        assertEquals(1, queryCache.size());
+
+        QueryKey queryKey = queryCache.asMap().keySet().iterator().next();
+        assertEquals(queryKey, queryCache.findQueryKeyById(queryKey.getId()));
+
+        queryCache.invalidate(queryKey.getId());
+        assertEquals(0, queryCache.size());
+        assertNull(queryCache.findQueryKeyById(queryKey.getId()));
+        assertEquals(0, queryCache.getIndexSize());
+    }
+
+    @Test
+    public void testIndexOfReplacedResult() throws Exception {
+        getResultListUserByRole("TestRole");
+        assertEquals(1, queryCache.size());
+
+        QueryKey queryKey = queryCache.asMap().keySet().iterator().next();
+        QueryResult queryResult = queryCache.get(queryKey);
+        assertTrue(queryResult.getRelatedTypes().contains("sec$Role"));
+
+        // the new result of the same key is not related to roles anymore
+        queryCache.put(queryKey, new QueryResult(queryResult.getResult(), queryResult.getType(),
+                Collections.singleton(queryResult.getType())));
+        queryCache.invalidate("sec$Role");
+        assertEquals(1, queryCache.size());
+
+        queryCache.invalidate(queryResult.getType());
+        assertEquals(0, queryCache.size());
+        assertEquals(0, queryCache.getIndexSize());
+    }
+
+    @Test
+    public void testIndexDoesNotGrow() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            getResultListUserByRole("TestRole");
+            queryCache.invalidate("sec$Role");
+            assertEquals(0, queryCache.size());
+            assertEquals(0, queryCache.getIndexSize());
+        }
+
+        // invalidation of types and keys that are not cached must not leave index entries either
+        queryCache.invalidate("sec$Role");
+        queryCache.invalidate(UUID.randomUUID());
+        assertEquals(0, queryCache.getIndexSize());
+    }
+
+    @Test
+    public void testResultListBatchLoading() throws Exception {
+        QueryCacheManager queryCacheManager = AppBeans.get(QueryCacheManager.NAME);
+        appender.clearMessages();
+
+        List<User> users = getResultListUsersByLoginPrefix();
+        assertEquals(2, users.size());
+        assertEquals(1, queryCache.size());
+        appender.clearMessages();
+
+        cache.clear();
+        long batchLoadCount = queryCacheManager.getBatchLoadCount();
+
+        users = getResultListUsersByLoginPrefix();
+        assertEquals(2, users.size());
+        assertEquals(user.getId(), users.get(0).getId());
+        assertEquals(user2.getId(), users.get(1).getId());
+        assertEquals(1, appender.filterMessages(m -> m.startsWith("SELECT")).count()); // one batch for both users
+        assertEquals(batchLoadCount + 1, queryCacheManager.getBatchLoadCount());
+        appender.clearMessages();
+
+        users = getResultListUsersByLoginPrefix();
+        assertEquals(2, users.size());
+        assertEquals(0, appender.filterMessages(m -> m.startsWith("SELECT")).count());
+    }
+
 
     @Test
     public void testSingleResultQueryByLoginNamedParameter() throws Exception {
@@ -1141,6 +1226,19 @@ public class QueryCacheTestClass {
         return user;
     }
 
+    protected List<User> getResultListUsersByLoginPrefix() throws Exception {
+        List<User> resultList;
+        try (Transaction tx = cont.persistence().createTransaction()) {
+            EntityManager em = cont.entityManager();
+            TypedQuery<User> query = em.createQuery("select u from sec$User u where u.login like :login order by u.name", User.class);
+            query.setCacheable(true);
+            query.setParameter("login", "ECTest-%");
+            resultList = query.getResultList();
+            tx.commit();
+        }
+        return resultList;
+    }
+
     protected List<User> getResultListUserByRole(String roleName) throws Exception {
         List<User> resultList;
         try (Transaction tx = cont.persistence().createTransaction()) {
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.restapi;
+
+import com.haulmont.cuba.core.app.ClusterManagerAPI;
+import com.haulmont.cuba.core.app.ClusterStateCodec;
+import com.haulmont.cuba.core.app.ServerConfig;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.Configuration;
+import com.haulmont.cuba.core.global.TimeSource;
+import com.haulmont.cuba.security.sys.UserSessionManager;
+import com.haulmont.cuba.testsupport.TestContainer;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ServerTokenStoreImplTest {
+
+    @ClassRule
+    public static TestContainer cont = TestContainer.Common.INSTANCE;
+
+    protected TestServerTokenStore store;
+
+    /**
+     * Store which is not registered in the cluster, so it does not replace the listeners of the store bean.
+     */
+    protected static class TestServerTokenStore extends ServerTokenStoreImpl {
+
+        @Override
+        protected void initClusterListeners() {
+        }
+
+        @Override
+        public void storeAccessToken(String tokenValue, byte[] accessTokenBytes, String authenticationKey,
+                                     byte[] authenticationBytes, Date tokenExpiry) {
+            storeAccessTokenToMemory(tokenValue, accessTokenBytes, authenticationKey, authenticationBytes, tokenExpiry);
+        }
+
+        @Override
+        public void removeAccessToken(String tokenValue) {
+            removeAccessTokenFromMemory(tokenValue);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        store = createStore();
+    }
+
+    protected TestServerTokenStore createStore() {
+        TestServerTokenStore tokenStore = new TestServerTokenStore();
+        tokenStore.serverConfig = AppBeans.get(Configuration.class).getConfig(ServerConfig.class);
+        tokenStore.clusterManagerAPI = AppBeans.get(ClusterManagerAPI.NAME);
+        tokenStore.clusterStateCodec = AppBeans.get(ClusterStateCodec.class);
+        tokenStore.timeSource = AppBeans.get(TimeSource.NAME);
+        tokenStore.userSessionManager = AppBeans.get(UserSessionManager.NAME);
+        tokenStore.init();
+        return tokenStore;
+    }
+
+    @Test
+    public void testStoreAndRead() throws Exception {
+        store.storeAccessToken("token1", bytes("access1"), "key1", bytes("auth1"), inFuture());
+
+        assertEquals("access1", string(store.getAccessTokenByTokenValue("token1")));
+        assertEquals("auth1", string(store.getAuthenticationByTokenValue("token1")));
+        assertEquals("access1", string(store.getAccessTokenByAuthentication("key1")));
+        assertNull(store.getAccessTokenByTokenValue("token2"));
+
+        UUID sessionId = UUID.randomUUID();
+        assertNull(store.putSessionId("token1", sessionId));
+        assertEquals(sessionId, store.getSessionIdByTokenValue("token1"));
+        assertNull(store.putSessionId("token2", sessionId));
+        assertNull(store.getSessionIdByTokenValue("token2"));
+    }
+
+    @Test
+    public void testReplaceKeepsSessionAndIndexes() throws Exception {
+        Date firstExpiry = inFuture();
+        store.storeAccessToken("token1", bytes("access1"), "key1", bytes("auth1"), firstExpiry);
+        UUID sessionId = UUID.randomUUID();
+        store.putSessionId("token1", sessionId);
+
+        Date secondExpiry = new Date(firstExpiry.getTime() + 1000);
+        store.storeAccessToken("token1", bytes("access2"), "key2", bytes("auth2"), secondExpiry);
+
+        assertEquals("access2", string(store.getAccessTokenByTokenValue("token1")));
+        assertEquals(sessionId, store.getSessionIdByTokenValue("token1"));
+        assertEquals(1, store.getTokenCount());
+        assertEquals(1, store.getAuthenticationKeyCount());
+        assertEquals(1, store.getExpiryIndexSize());
+        assertEquals(secondExpiry, store.getNextExpiry());
+        assertNull(store.getAccessTokenByAuthentication("key1"));
+    }
+
+    @Test
+    public void testRemoveCleansIndexes() throws Exception {
+        store.storeAccessToken("token1", bytes("access1"), "key1", bytes("auth1"), inFuture());
+        store.storeAccessToken("token2", bytes("access2"), "key2", bytes("auth2"), null);
+
+        long since = System.currentTimeMillis();
+        store.removeAccessToken("token1");
+        store.removeAccessToken("token2");
+
+        assertEquals(0, store.getTokenCount());
+        assertEquals(0, store.getAuthenticationKeyCount());
+        assertEquals(0, store.getExpiryIndexSize());
+        assertNull(store.getAccessTokenByAuthentication("key1"));
+        assertTrue(store.getRemovedTokenValues(since).contains("token1"));
+        assertTrue(store.getRemovedTokenValues(since).contains("token2"));
+    }
+
+    @Test
+    public void testSessionIdPutBeforeToken() throws Exception {
+        UUID sessionId = UUID.randomUUID();
+        assertNull(store.putSessionId("token1", sessionId));
+        assertNull(store.getSessionIdByTokenValue("token1"));
+
+        store.storeAccessToken("token1", bytes("access1"), "key1", bytes("auth1"), inFuture());
+
+        assertEquals(sessionId, store.getSessionIdByTokenValue("token1"));
+        assertEquals(1, store.getSessionCount());
+    }
+
+    @Test
+    public void testClusterState() throws Exception {
+        store.storeAccessToken("token1", bytes("access1"), "key1", bytes("auth1"), inFuture());
+        store.storeAccessToken("token2", bytes("access2"), "key2", bytes("auth2"), null);
+        store.storeAccessToken("expired", bytes("access3"), "key3", bytes("auth3"), new Date(System.currentTimeMillis() - 1000));
+        UUID sessionId = UUID.randomUUID();
+        store.putSessionId("token1", sessionId);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        store.writeClusterState(output);
+
+        TestServerTokenStore joined = createStore();
+        joined.readClusterState(new ByteArrayInputStream(output.toByteArray()));
+
+        assertEquals(2, joined.getTokenCount());
+        assertEquals("access1", string(joined.getAccessTokenByAuthentication("key1")));
+        assertEquals(sessionId, joined.getSessionIdByTokenValue("token1"));
+        assertEquals(1, joined.getExpiryIndexSize());
+        assertNull(joined.getAccessTokenByTokenValue("expired"));
+    }
+
+    @Test
+    public void testLegacyClusterState() throws Exception {
+        ConcurrentHashMap<String, byte[]> accessTokens = new ConcurrentHashMap<>();
+        accessTokens.put("token1", bytes("access1"));
+        ConcurrentHashMap<String, byte[]> authentications = new ConcurrentHashMap<>();
+        authentications.put("token1", bytes("auth1"));
+        ConcurrentHashMap<String, byte[]> accessTokensByAuthentication = new ConcurrentHashMap<>();
+        accessTokensByAuthentication.put("key1", bytes("access1"));
+        UUID sessionId = UUID.randomUUID();
+        ConcurrentHashMap<String, UUID> sessionIds = new ConcurrentHashMap<>();
+        sessionIds.put("token1", sessionId);
+        ConcurrentHashMap<String, String> authenticationKeys = new ConcurrentHashMap<>();
+        authenticationKeys.put("token1", "key1");
+
+        // the format of the nodes of a previous version
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(output);
+        oos.writeObject(accessTokens);
+        oos.writeObject(authentications);
+        oos.writeObject(accessTokensByAuthentication);
+        oos.writeObject(sessionIds);
+        oos.writeObject(authenticationKeys);
+        oos.flush();
+        assertTrue(ClusterStateCodec.isJavaSerialized(output.toByteArray()));
+
+        store.setLegacyState(output.toByteArray());
+
+        assertEquals("access1", string(store.getAccessTokenByTokenValue("token1")));
+        assertEquals("auth1", string(store.getAuthenticationByTokenValue("token1")));
+        assertEquals("access1", string(store.getAccessTokenByAuthentication("key1")));
+        assertEquals(sessionId, store.getSessionIdByTokenValue("token1"));
+    }
+
+    @Test
+    public void testSweepExpiredTokens() throws Exception {
+        store.storeAccessToken("expired", bytes("access1"), "key1", bytes("auth1"), new Date(System.currentTimeMillis() - 1000));
+        store.storeAccessToken("valid", bytes("access2"), "key2", bytes("auth2"), inFuture());
+        store.storeAccessToken("eternal", bytes("access3"), "key3", bytes("auth3"), null);
+
+        store.sweepExpiredTokens();
+
+        assertNull(store.getAccessTokenByTokenValue("expired"));
+        assertNotNull(store.getAccessTokenByTokenValue("valid"));
+        assertNotNull(store.getAccessTokenByTokenValue("eternal"));
+        assertEquals(2, store.getAuthenticationKeyCount());
+        assertEquals(1, store.getExpiryIndexSize());
+    }
+
+    @Test
+    public void testConcurrentModificationsKeepIndexesConsistent() throws Exception {
+        int threads = 8;
+        int iterations = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                int thread = i;
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    for (int j = 0; j < iterations; j++) {
+                        // threads compete for a small set of tokens and authentication keys
+                        String tokenValue = "token" + (j % 10);
+                        String authenticationKey = "key" + ((j + thread) % 10);
+                        store.storeAccessToken(tokenValue, bytes("access"), authenticationKey, bytes("auth"),
+                                new Date(System.currentTimeMillis() + 60_000 + j));
+                        store.putSessionId(tokenValue, UUID.randomUUID());
+                        if (j % 3 == thread % 3) {
+                            store.removeAccessToken(tokenValue);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // each stored token has exactly one expiry entry, and each authentication key points to a stored token
+        assertEquals(store.getTokenCount(), store.getExpiryIndexSize());
+        assertTrue(store.getAuthenticationKeyCount() <= store.getTokenCount());
+        for (int i = 0; i < 10; i++) {
+            byte[] accessToken = store.getAccessTokenByAuthentication("key" + i);
+            assertTrue(accessToken == null || "access".equals(string(accessToken)));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            store.removeAccessToken("token" + i);
+        }
+        assertEquals(0, store.getTokenCount());
+        assertEquals(0, store.getAuthenticationKeyCount());
+        assertEquals(0, store.getExpiryIndexSize());
+    }
+
+    protected Date inFuture() {
+        return new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+    }
+
+    protected byte[] bytes(String value) {
+        return value.getBytes();
+    }
+
+    protected String string(byte[] bytes) {
+        return new String(bytes);
+    }
+}
@@ -17,10 +17,13 @@
 
 package com.haulmont.cuba.core.app.serialization;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import com.google.gson.*;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.haulmont.chile.core.datatypes.Datatype;
 import com.haulmont.chile.core.datatypes.Datatypes;
 import com.haulmont.chile.core.model.MetaClass;
@@ -40,12 +43,15 @@ import org.springframework.stereotype.Component;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.text.ParseException;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Component(EntitySerializationAPI.NAME)
 public class EntitySerialization implements EntitySerializationAPI {
@@ -55,6 +61,8 @@ public class EntitySerialization implements EntitySerializationAPI {
     protected static final String ENTITY_NAME_PROP = "_entityName";
     protected static final String INSTANCE_NAME_PROP = "_instanceName";
 
+    protected static final int SERIALIZATION_PLANS_CACHE_SIZE = 1000;
+
     @Inject
     protected MetadataTools metadataTools;
 
@@ -64,6 +72,12 @@ public class EntitySerialization implements EntitySerializationAPI {
     @Inject
     protected DynamicAttributes dynamicAttributes;
 
+    protected Cache<String, SerializationPlan> serializationPlans = CacheBuilder.newBuilder()
+            .maximumSize(SERIALIZATION_PLANS_CACHE_SIZE)
+            .build();
+
+    protected SerializationPlan noViewPlan = new SerializationPlan(null);
+
     protected ThreadLocal<EntitySerializationContext> context = new ThreadLocal<EntitySerializationContext>() {
         @Override
         protected EntitySerializationContext initialValue() {
@@ -108,6 +122,33 @@ public class EntitySerialization implements EntitySerializationAPI {
         return createGsonForSerialization(view, options).toJson(entities);
     }
 
+    @Override
+    public void toJson(Collection<? extends Entity> entities,
+                       @Nullable View view,
+                       Writer writer,
+                       EntitySerializationOption... options) {
+        context.remove();
+        Gson gson = createGsonForSerialization(view, options);
+        EntitySerializer serializer = new EntitySerializer(view, options);
+        try {
+            JsonWriter jsonWriter = gson.newJsonWriter(writer);
+            jsonWriter.beginArray();
+            for (Entity entity : entities) {
+                if (entity == null) {
+                    // the same as Gson writes for null elements of a collection
+                    jsonWriter.nullValue();
+                    continue;
+                }
+                // only the object graph of the current entity is kept in memory
+                gson.toJson(serializer.serializeEntity(entity, serializer.plan, new HashSet<>()), jsonWriter);
+            }
+            jsonWriter.endArray();
+            jsonWriter.flush();
+        } catch (IOException e) {
+            throw new EntitySerializationException("Unable to write JSON", e);
+        }
+    }
+
     @Override
     public Entity entityFromJson(String json,
                                  @Nullable MetaClass metaClass,
@@ -168,10 +209,10 @@ public class EntitySerialization implements EntitySerializationAPI {
 
         protected boolean compactRepeatedEntities = false;
         protected boolean serializeInstanceName;
-        protected View view;
+        protected SerializationPlan plan;
 
         public EntitySerializer(@Nullable View view, EntitySerializationOption... options) {
-            this.view = view;
+            this.plan = getSerializationPlan(view);
             if (options != null) {
                 for (EntitySerializationOption option : options) {
                     if (option == EntitySerializationOption.COMPACT_REPEATED_ENTITIES)
@@ -184,10 +225,10 @@ public class EntitySerialization implements EntitySerializationAPI {
 
         @Override
         public JsonElement serialize(Entity entity, Type typeOfSrc, JsonSerializationContext context) {
-            return serializeEntity(entity, view, new HashSet<>());
+            return serializeEntity(entity, plan, new HashSet<>());
         }
 
-        protected JsonObject serializeEntity(Entity entity, @Nullable View view, Set<Entity> cyclicReferences) {
+        protected JsonObject serializeEntity(Entity entity, SerializationPlan plan, Set<Entity> cyclicReferences) {
             JsonObject jsonObject = new JsonObject();
             MetaClass metaClass = entity.getMetaClass();
             if (!metadataTools.isEmbeddable(metaClass)) {
@@ -205,16 +246,16 @@ public class EntitySerialization implements EntitySerializationAPI {
                     Table<Object, MetaClass, Entity> processedObjects = context.get().getProcessedEntities();
                     if (processedObjects.get(entity.getId(), metaClass) == null) {
                         processedObjects.put(entity.getId(), metaClass, entity);
-                        writeFields(entity, jsonObject, view, cyclicReferences);
+                        writeFields(entity, jsonObject, plan, cyclicReferences);
                     }
                 } else {
                     if (!cyclicReferences.contains(entity)) {
                         cyclicReferences.add(entity);
-                        writeFields(entity, jsonObject, view, cyclicReferences);
+                        writeFields(entity, jsonObject, plan, cyclicReferences);
                     }
                 }
             } else {
-                writeFields(entity, jsonObject, view, cyclicReferences);
+                writeFields(entity, jsonObject, plan, cyclicReferences);
             }
 
             if (entity instanceof BaseGenericIdEntity) {
@@ -234,7 +275,7 @@ public class EntitySerialization implements EntitySerializationAPI {
             if (primaryKeyProperty == null)
                 throw new EntitySerializationException("Primary key property not found for entity " + entity.getMetaClass());
             if (metadataTools.hasCompositePrimaryKey(entity.getMetaClass())) {
-                JsonObject serializedIdEntity = serializeEntity((Entity) entity.getId(), null, Collections.emptySet());
+                JsonObject serializedIdEntity = serializeEntity((Entity) entity.getId(), noViewPlan, Collections.emptySet());
                 jsonObject.add("id", serializedIdEntity);
             } else {
                 Datatype idDatatype = Datatypes.getNN(primaryKeyProperty.getJavaType());
@@ -250,58 +291,38 @@ public class EntitySerialization implements EntitySerializationAPI {
                             (metadataTools.isPersistent(metaProperty) && PersistenceHelper.isLoaded(entity, metaProperty.getName())));
         }
 
-        protected void writeFields(Entity entity, JsonObject jsonObject, @Nullable View view, Set<Entity> cyclicReferences) {
-            Collection<MetaProperty> properties = new ArrayList<>(entity.getMetaClass().getProperties());
+        protected void writeFields(Entity entity, JsonObject jsonObject, SerializationPlan plan, Set<Entity> cyclicReferences) {
+            for (PropertyWriter propertyWriter : plan.getPropertyWriters(entity.getMetaClass())) {
+                writeField(entity, jsonObject, propertyWriter, cyclicReferences);
+            }
             if (entity instanceof BaseGenericIdEntity && ((BaseGenericIdEntity) entity).getDynamicAttributes() != null) {
-                List<MetaProperty> dynamicProperties = dynamicAttributes.getAttributesForMetaClass(entity.getMetaClass()).stream()
-                        .map(categoryAttribute -> DynamicAttributesUtils.getMetaPropertyPath(entity.getMetaClass(), categoryAttribute).getMetaProperty())
-                        .collect(Collectors.toList());
-                properties.addAll(dynamicProperties);
+                for (CategoryAttribute categoryAttribute : dynamicAttributes.getAttributesForMetaClass(entity.getMetaClass())) {
+                    MetaProperty metaProperty = DynamicAttributesUtils.getMetaPropertyPath(entity.getMetaClass(), categoryAttribute).getMetaProperty();
+                    writeField(entity, jsonObject, createPropertyWriter(metaProperty, null), cyclicReferences);
+                }
             }
-            for (MetaProperty metaProperty : properties) {
-                if (propertyWritingAllowed(metaProperty, entity)) {
-                    ViewProperty viewProperty = null;
-                    if (!DynamicAttributesUtils.isDynamicAttribute(metaProperty)) {
-                        if (view != null) {
-                            viewProperty = view.getProperty(metaProperty.getName());
-                            if (viewProperty == null) continue;
-                        }
-
-                        if (!PersistenceHelper.isNew(entity)
-                                && !PersistenceHelper.isLoaded(entity, metaProperty.getName())) {
-                            continue;
-                        }
-                    }
+        }
 
-                    Object fieldValue = entity.getValue(metaProperty.getName());
+        protected void writeField(Entity entity, JsonObject jsonObject, PropertyWriter propertyWriter, Set<Entity> cyclicReferences) {
+            MetaProperty metaProperty = propertyWriter.metaProperty;
+            if (!propertyWritingAllowed(metaProperty, entity))
+                return;
+            if (!propertyWriter.dynamic
+                    && !PersistenceHelper.isNew(entity)
+                    && !PersistenceHelper.isLoaded(entity, propertyWriter.name)) {
+                return;
+            }
 
-                    //always write nulls here. GSON will not serialize them to the result if
-                    //EntitySerializationOptions.SERIALIZE_NULLS was not set.
-                    if (fieldValue == null) {
-                        jsonObject.add(metaProperty.getName(), null);
-                        continue;
-                    }
+            Object fieldValue = entity.getValue(propertyWriter.name);
 
-                    Range propertyRange = metaProperty.getRange();
-                    if (propertyRange.isDatatype()) {
-                        writeSimpleProperty(jsonObject, fieldValue, metaProperty);
-                    } else if (propertyRange.isEnum()) {
-                        jsonObject.addProperty(metaProperty.getName(), fieldValue.toString());
-                    } else if (propertyRange.isClass()) {
-                        if (fieldValue instanceof Entity) {
-                            JsonObject propertyJsonObject = serializeEntity((Entity) fieldValue,
-                                    viewProperty != null ? viewProperty.getView() : null,
-                                    new HashSet<>(cyclicReferences));
-                            jsonObject.add(metaProperty.getName(), propertyJsonObject);
-                        } else if (fieldValue instanceof Collection) {
-                            JsonArray jsonArray = serializeCollection((Collection) fieldValue,
-                                    viewProperty != null ? viewProperty.getView() : null,
-                                    new HashSet<>(cyclicReferences));
-                            jsonObject.add(metaProperty.getName(), jsonArray);
-                        }
-                    }
-                }
+            //always write nulls here. GSON will not serialize them to the result if
+            //EntitySerializationOptions.SERIALIZE_NULLS was not set.
+            if (fieldValue == null) {
+                jsonObject.add(propertyWriter.name, null);
+                return;
             }
+
+            propertyWriter.valueWriter.write(this, jsonObject, propertyWriter.name, fieldValue, cyclicReferences);
         }
 
         protected void writeSimpleProperty(JsonObject jsonObject, @NotNull Object fieldValue, MetaProperty property) {
@@ -316,18 +337,153 @@ public class EntitySerialization implements EntitySerializationAPI {
             }
         }
 
-        protected JsonArray serializeCollection(Collection value, @Nullable View view, Set<Entity> cyclicReferences) {
+        protected void writeReferenceProperty(JsonObject jsonObject, String propertyName, Object fieldValue,
+                                              SerializationPlan plan, Set<Entity> cyclicReferences) {
+            if (fieldValue instanceof Entity) {
+                JsonObject propertyJsonObject = serializeEntity((Entity) fieldValue, plan, new HashSet<>(cyclicReferences));
+                jsonObject.add(propertyName, propertyJsonObject);
+            } else if (fieldValue instanceof Collection) {
+                JsonArray jsonArray = serializeCollection((Collection) fieldValue, plan, new HashSet<>(cyclicReferences));
+                jsonObject.add(propertyName, jsonArray);
+            }
+        }
+
+        protected JsonArray serializeCollection(Collection value, SerializationPlan plan, Set<Entity> cyclicReferences) {
             JsonArray jsonArray = new JsonArray();
             value.stream()
                     .filter(e -> e instanceof Entity)
                     .forEach(e -> {
-                        JsonObject jsonObject = serializeEntity((Entity) e, view, cyclicReferences);
+                        JsonObject jsonObject = serializeEntity((Entity) e, plan, cyclicReferences);
                         jsonArray.add(jsonObject);
                     });
             return jsonArray;
         }
     }
 
+    /**
+     * Returns the serialization plan for the view. Plans are cached by the view structure, because views returned by
+     * the {@link ViewRepository} are copies and cannot be compared by identity. Redeployed views with another
+     * structure get new plans, the old ones are evicted from the cache.
+     * <p>Views are mutable, so the structure key is computed on each call.</p>
+     */
+    protected SerializationPlan getSerializationPlan(@Nullable View view) {
+        if (view == null) {
+            return noViewPlan;
+        }
+        return serializationPlans.asMap().computeIfAbsent(getViewKey(view), key -> new SerializationPlan(view));
+    }
+
+    protected String getViewKey(View view) {
+        StringBuilder sb = new StringBuilder();
+        appendViewKey(sb, view);
+        return sb.toString();
+    }
+
+    protected void appendViewKey(StringBuilder sb, View view) {
+        sb.append(view.getEntityClass().getName()).append('{');
+        for (ViewProperty viewProperty : view.getProperties()) {
+            sb.append(viewProperty.getName());
+            if (viewProperty.getView() != null) {
+                appendViewKey(sb, viewProperty.getView());
+            }
+            sb.append(',');
+        }
+        sb.append('}');
+    }
+
+    protected PropertyWriter createPropertyWriter(MetaProperty metaProperty, @Nullable ViewProperty viewProperty) {
+        Range range = metaProperty.getRange();
+        String name = metaProperty.getName();
+        ValueWriter valueWriter;
+        if (range.isDatatype()) {
+            Class<?> javaType = range.asDatatype().getJavaClass();
+            if (Number.class.isAssignableFrom(javaType)) {
+                valueWriter = (serializer, jsonObject, propertyName, value, cyclicReferences) ->
+                        jsonObject.addProperty(propertyName, (Number) value);
+            } else if (Boolean.class.equals(javaType)) {
+                valueWriter = (serializer, jsonObject, propertyName, value, cyclicReferences) ->
+                        jsonObject.addProperty(propertyName, (Boolean) value);
+            } else {
+                valueWriter = (serializer, jsonObject, propertyName, value, cyclicReferences) ->
+                        serializer.writeSimpleProperty(jsonObject, value, metaProperty);
+            }
+        } else if (range.isEnum()) {
+            valueWriter = (serializer, jsonObject, propertyName, value, cyclicReferences) ->
+                    jsonObject.addProperty(propertyName, value.toString());
+        } else if (range.isClass()) {
+            SerializationPlan propertyPlan = viewProperty != null && viewProperty.getView() != null ?
+                    new SerializationPlan(viewProperty.getView()) : noViewPlan;
+            valueWriter = (serializer, jsonObject, propertyName, value, cyclicReferences) ->
+                    serializer.writeReferenceProperty(jsonObject, propertyName, value, propertyPlan, cyclicReferences);
+        } else {
+            valueWriter = (serializer, jsonObject, propertyName, value, cyclicReferences) -> {};
+        }
+        return new PropertyWriter(metaProperty, DynamicAttributesUtils.isDynamicAttribute(metaProperty), valueWriter);
+    }
+
+    /**
+     * Serialization plan compiled for a view. For each meta class it contains an ordered array of writers for the
+     * properties that are included in the view. Plans of nested views are created when the writers are compiled.
+     */
+    protected class SerializationPlan {
+        protected final View view;
+        protected final ConcurrentMap<MetaClass, PropertyWriter[]> propertyWriters = new ConcurrentHashMap<>();
+
+        public SerializationPlan(@Nullable View view) {
+            this.view = view;
+        }
+
+        public PropertyWriter[] getPropertyWriters(MetaClass metaClass) {
+            PropertyWriter[] writers = propertyWriters.get(metaClass);
+            if (writers == null) {
+                writers = compile(metaClass);
+                PropertyWriter[] existing = propertyWriters.putIfAbsent(metaClass, writers);
+                if (existing != null) {
+                    writers = existing;
+                }
+            }
+            return writers;
+        }
+
+        protected PropertyWriter[] compile(MetaClass metaClass) {
+            List<PropertyWriter> writers = new ArrayList<>();
+            for (MetaProperty metaProperty : metaClass.getProperties()) {
+                if ("id".equals(metaProperty.getName()))
+                    continue;
+                ViewProperty viewProperty = null;
+                if (view != null) {
+                    viewProperty = view.getProperty(metaProperty.getName());
+                    if (viewProperty == null)
+                        continue;
+                }
+                writers.add(createPropertyWriter(metaProperty, viewProperty));
+            }
+            return writers.toArray(new PropertyWriter[writers.size()]);
+        }
+    }
+
+    protected static class PropertyWriter {
+        protected final MetaProperty metaProperty;
+        protected final String name;
+        protected final boolean dynamic;
+        protected final ValueWriter valueWriter;
+
+        public PropertyWriter(MetaProperty metaProperty, boolean dynamic, ValueWriter valueWriter) {
+            this.metaProperty = metaProperty;
+            this.name = metaProperty.getName();
+            this.dynamic = dynamic;
+            this.valueWriter = valueWriter;
+        }
+    }
+
+    /**
+     * Writes a non-null property value of a specific type to the JSON object.
+     */
+    protected interface ValueWriter {
+        void write(EntitySerializer serializer, JsonObject jsonObject, String propertyName, Object value,
+                   Set<Entity> cyclicReferences);
+    }
+
     protected class EntityDeserializer implements JsonDeserializer<Entity> {
 
         protected MetaClass metaClass;
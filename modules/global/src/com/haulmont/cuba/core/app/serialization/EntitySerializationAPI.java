@@ -22,6 +22,8 @@ import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.View;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Collection;
 
 /**
@@ -65,6 +67,30 @@ public interface EntitySerializationAPI {
                   @Nullable View view,
                   EntitySerializationOption... options);
 
+    /**
+     * Serializes a collection of entities to the JSON array and writes it to the given writer. Method works like the
+     * {@link #toJson(Collection, View, EntitySerializationOption...)}. The default implementation writes the result
+     * of that method, {@link EntitySerialization} writes entities one by one, so the whole JSON is never kept
+     * in memory. The writer is flushed but not closed.
+     *
+     * @param entities a collection of entities to be serialized
+     * @param view     a view that defines which entity properties should be added to the result JSON object
+     * @param writer   a writer to write the JSON array to
+     * @param options  options specifying how an entity should be serialized
+     * @throws EntitySerializationException if writing fails
+     */
+    default void toJson(Collection<? extends Entity> entities,
+                        @Nullable View view,
+                        Writer writer,
+                        EntitySerializationOption... options) {
+        try {
+            writer.write(toJson(entities, view, options));
+            writer.flush();
+        } catch (IOException e) {
+            throw new EntitySerializationException("Unable to write JSON", e);
+        }
+    }
+
     /**
      * An overloaded version of the {@link #toJson(Entity, View, EntitySerializationOption...)} method with a null
      * {@code view} parameter and with no serialization options.
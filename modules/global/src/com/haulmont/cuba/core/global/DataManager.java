@@ -24,6 +24,7 @@ import com.haulmont.cuba.core.entity.KeyValueEntity;
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 /**
  * Central interface to provide CRUD functionality. Can be used on both middle and client tiers.
@@ -59,6 +60,20 @@ public interface DataManager {
      */
     <E extends Entity> List<E> loadList(LoadContext<E> context);
 
+    /**
+     * Loads entity instances and passes them to the consumer one by one, without collecting the whole result
+     * in memory. Intended for processing of large result sets, e.g. for exports.
+     * <p>On the middleware, instances are read from a database cursor in chunks of
+     * {@link LoadContext.Query#getFetchSize()} size and become detached before they are passed to the consumer.
+     * On the client tier, instances are loaded page by page, so the query should define a stable order.</p>
+     * <p>The default implementation loads the whole list by {@link #loadList(LoadContext)}.</p>
+     * @param context   {@link LoadContext} object, defining what and how to load
+     * @param consumer  receives detached instances in the order they are returned by the query
+     */
+    default <E extends Entity> void loadStream(LoadContext<E> context, Consumer<E> consumer) {
+        loadList(context).forEach(consumer);
+    }
+
     /**
      * Returns the number of entity instances for the given query passed in the {@link LoadContext}.
      * @param context   defines the query
@@ -180,6 +180,14 @@ public interface GlobalConfig extends Config {
     @DefaultInt(8)
     int getGroovyEvaluationPoolMaxIdle();
 
+    /**
+     * @return number of entity instances fetched from the database and processed at once by
+     * {@code DataManager.loadStream()}, unless the fetch size is specified in the query
+     */
+    @Property("cuba.dataManagerStreamingFetchSize")
+    @DefaultInt(1000)
+    int getDataManagerStreamingFetchSize();
+
     @Property("cuba.numberIdCacheSize")
     @DefaultInt(100)
     int getNumberIdCacheSize();
@@ -292,7 +292,12 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
         private String queryString;
         private int firstResult;
         private int maxResults;
+        private int fetchSize;
         private boolean cacheable;
+        private boolean keysetPagination;
+        private String keysetSortProperty;
+        private Object keysetSortValue;
+        private Object keysetId;
 
         /**
          * @param queryString JPQL query string. Only named parameters are supported.
@@ -372,6 +377,56 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             return this;
         }
 
+        /**
+         * @param fetchSize number of instances fetched from the database and processed at once when the query is
+         *                  executed by {@link DataManager#loadStream(LoadContext, java.util.function.Consumer)}.
+         *                  0 means the default value defined by {@link GlobalConfig#getDataManagerStreamingFetchSize()}
+         * @return this query instance for chaining
+         */
+        public Query setFetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        /**
+         * Enables keyset ("seek") pagination. The query results are ordered by {@link #getKeysetSortProperty()} and
+         * the entity identifier, and subsequent chunks are selected by a condition on the last loaded values
+         * instead of an offset. Keyset pagination is ignored for entities with composite primary keys.
+         * <p>The query may have no ORDER BY clause or be ordered by the sort attribute, optionally followed by the
+         * identifier, in the same direction. The results are returned in the ascending order unless the query
+         * specifies the descending one. A query with any other ORDER BY clause is rejected.
+         * @return this query instance for chaining
+         */
+        public Query setKeysetPagination(boolean keysetPagination) {
+            this.keysetPagination = keysetPagination;
+            return this;
+        }
+
+        /**
+         * @param keysetSortProperty name of an attribute of the loaded entity to order the results by in keyset
+         *                           pagination mode. Instances with null values of the attribute go last, ordered
+         *                           by identifier. If null, the results are ordered by identifier only.
+         * @return this query instance for chaining
+         */
+        public Query setKeysetSortProperty(String keysetSortProperty) {
+            this.keysetSortProperty = keysetSortProperty;
+            return this;
+        }
+
+        /**
+         * Sets the position after which the results are loaded in keyset pagination mode, usually taken from the last
+         * instance of the previous page. If set, {@link #getFirstResult()} is counted from this position.
+         * @param sortValue value of the {@link #getKeysetSortProperty()} attribute, null if the instance has no value.
+         *                  Ignored if the sort property is not set.
+         * @param id        entity identifier
+         * @return this query instance for chaining
+         */
+        public Query setKeysetAfter(Object sortValue, Object id) {
+            this.keysetSortValue = sortValue;
+            this.keysetId = id;
+            return this;
+        }
+
         /**
          * Indicates that the query results should be cached.
          * @return the same query instance
@@ -395,6 +450,41 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             return maxResults;
         }
 
+        /**
+         * @return whether keyset pagination is enabled
+         */
+        public boolean isKeysetPagination() {
+            return keysetPagination;
+        }
+
+        /**
+         * @return attribute to order the results by in keyset pagination mode
+         */
+        public String getKeysetSortProperty() {
+            return keysetSortProperty;
+        }
+
+        /**
+         * @return value of the sort attribute after which the results are loaded in keyset pagination mode
+         */
+        public Object getKeysetSortValue() {
+            return keysetSortValue;
+        }
+
+        /**
+         * @return identifier after which the results are loaded in keyset pagination mode
+         */
+        public Object getKeysetId() {
+            return keysetId;
+        }
+
+        /**
+         * @return number of instances fetched at once in streaming mode, 0 for the default value
+         */
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
 
         public boolean isCacheable() {
             return cacheable;
@@ -408,7 +498,12 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             query.parameters.putAll(parameters);
             query.firstResult = firstResult;
             query.maxResults = maxResults;
+            query.fetchSize = fetchSize;
             query.cacheable = cacheable;
+            query.keysetPagination = keysetPagination;
+            query.keysetSortProperty = keysetSortProperty;
+            query.keysetSortValue = keysetSortValue;
+            query.keysetId = keysetId;
             return query;
         }
 
@@ -421,6 +516,11 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
 
             if (firstResult != query.firstResult) return false;
             if (maxResults != query.maxResults) return false;
+            if (fetchSize != query.fetchSize) return false;
+            if (keysetPagination != query.keysetPagination) return false;
+            if (!Objects.equals(keysetSortProperty, query.keysetSortProperty)) return false;
+            if (!Objects.equals(keysetSortValue, query.keysetSortValue)) return false;
+            if (!Objects.equals(keysetId, query.keysetId)) return false;
             if (!parameters.equals(query.parameters)) return false;
             return queryString.equals(query.queryString);
         }
@@ -431,6 +531,11 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
             result = 31 * result + queryString.hashCode();
             result = 31 * result + firstResult;
             result = 31 * result + maxResults;
+            result = 31 * result + fetchSize;
+            result = 31 * result + (keysetPagination ? 1 : 0);
+            result = 31 * result + Objects.hashCode(keysetSortProperty);
+            result = 31 * result + Objects.hashCode(keysetSortValue);
+            result = 31 * result + Objects.hashCode(keysetId);
             return result;
         }
 
@@ -440,6 +545,9 @@ public class LoadContext<E extends Entity> implements DataLoadContext, Serializa
                     "queryString='" + queryString + '\'' +
                     ", firstResult=" + firstResult +
                     ", maxResults=" + maxResults +
+                    (fetchSize != 0 ? ", fetchSize=" + fetchSize : "") +
+                    (keysetPagination ? ", keysetSortProperty=" + keysetSortProperty
+                            + ", keysetSortValue=" + keysetSortValue + ", keysetId=" + keysetId : "") +
                     '}';
         }
     }
@@ -61,6 +61,9 @@ public class QueryParserRegex implements QueryParser {
     public static final String ORDER_BY_PATTERN_REGEX = "\\bORDER\\s+BY\\b";
     public static final Pattern ORDER_BY_PATTERN = Pattern.compile(ORDER_BY_PATTERN_REGEX, Pattern.CASE_INSENSITIVE);
 
+    public static final String GROUP_BY_PATTERN_REGEX = "\\bGROUP\\s+BY\\b";
+    public static final Pattern GROUP_BY_PATTERN = Pattern.compile(GROUP_BY_PATTERN_REGEX, Pattern.CASE_INSENSITIVE);
+
     public static final String PARAM_PATTERN_REGEX = ":([a-zA-Z_0-9$\\.]+)";
     public static final Pattern PARAM_PATTERN = Pattern.compile(PARAM_PATTERN_REGEX, Pattern.CASE_INSENSITIVE);
 
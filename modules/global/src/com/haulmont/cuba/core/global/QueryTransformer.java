@@ -49,6 +49,16 @@ public interface QueryTransformer {
     /** Replaces <code>select e.f1, e.f2, ...</code> clause with <code>select count(e) ...</code> */
     void replaceWithCount();
 
+    /**
+     * Replaces <code>select e from ...</code> clause with <code>select sum(e.f1), max(e.f2), ... from ...</code>
+     * and removes 'order by' clause. {@link #ALIAS_PLACEHOLDER} in the expressions is replaced with the entity alias.
+     * @throws IllegalStateException if the query selects distinct values or contains 'group by' clause
+     * @throws UnsupportedOperationException if the transformer does not support the replacement
+     */
+    default void replaceWithAggregates(String... selectExpressions) {
+        throw new UnsupportedOperationException();
+    }
+
     /** Replaces <code>select e from ...</code> clause with <code>select e.id from ...</code> */
     void replaceWithSelectId();
 
@@ -249,6 +249,31 @@ public class QueryTransformerRegex extends QueryParserRegex implements QueryTran
         }
     }
 
+    @Override
+    public void replaceWithAggregates(String... selectExpressions) {
+        if (SELECT_DISTINCT_PATTERN.matcher(buffer).find())
+            throw new IllegalStateException("Cannot replace selected items if distinct values are selected");
+        if (GROUP_BY_PATTERN.matcher(buffer).find())
+            throw new IllegalStateException("Cannot replace selected items if 'group by' clause is used");
+
+        Matcher entityMatcher = FROM_ENTITY_PATTERN.matcher(buffer);
+        String alias = findAlias(entityMatcher);
+
+        StringBuilder selection = new StringBuilder("select ");
+        for (int i = 0; i < selectExpressions.length; i++) {
+            if (i > 0)
+                selection.append(", ");
+            selection.append(selectExpressions[i].replace(ALIAS_PLACEHOLDER, alias));
+        }
+        selection.append(" ");
+        buffer.replace(0, entityMatcher.start(), selection.toString());
+
+        Matcher orderMatcher = ORDER_BY_PATTERN.matcher(buffer);
+        if (orderMatcher.find()) {
+            buffer.delete(orderMatcher.start(), buffer.length());
+        }
+    }
+
     @Override
     public void replaceWithSelectId() {
         replaceWithSelectId("id");
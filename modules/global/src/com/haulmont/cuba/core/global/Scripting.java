@@ -18,6 +18,8 @@
 package com.haulmont.cuba.core.global;
 
 import groovy.lang.Binding;
+import groovy.lang.GroovyShell;
+import groovy.lang.Script;
 
 import javax.annotation.Nullable;
 import java.util.Map;
@@ -51,6 +53,17 @@ public interface Scripting {
      */
     <T> T evaluateGroovy(String text, Map<String, Object> context);
 
+    /**
+     * Compiles Groovy expression, so it can be evaluated many times with different bindings without compiling it
+     * again. Create an instance of the script for each evaluation, e.g. by
+     * {@link org.codehaus.groovy.runtime.InvokerHelper#createScript(Class, Binding)}.
+     * @param text      expression text
+     * @return          compiled script class
+     */
+    default Class<? extends Script> compileGroovy(String text) {
+        return new GroovyShell(getClassLoader()).parse(text).getClass();
+    }
+
     /**
      * Runs Groovy script.
      * The script must be located as file under <em>conf</em> directory, or as a classpath resource.
@@ -131,35 +131,7 @@ public abstract class AbstractScripting implements Scripting {
                     new BaseKeyedPooledObjectFactory<String, Script>() {
                         @Override
                         public Script create(String key) throws Exception {
-                            StringBuilder sb = new StringBuilder();
-                            for (String importItem : imports) {
-                                sb.append("import ").append(importItem).append("\n");
-                            }
-
-                            Matcher matcher = IMPORT_PATTERN.matcher(key);
-                            String result;
-                            if (matcher.find()) {
-                                StringBuffer s = new StringBuffer();
-                                matcher.appendReplacement(s, sb + "$0");
-                                result = matcher.appendTail(s).toString();
-                            } else {
-                                Matcher packageMatcher = PACKAGE_PATTERN.matcher(key);
-                                if (packageMatcher.find()) {
-                                    StringBuffer s = new StringBuffer();
-                                    packageMatcher.appendReplacement(s, "$0\n" + sb);
-                                    result = packageMatcher.appendTail(s).toString();
-                                } else {
-                                    result = sb.append(key).toString();
-                                }
-                            }
-
-                            CompilerConfiguration cc = new CompilerConfiguration();
-                            cc.setClasspath(groovyClassPath);
-                            cc.setRecompileGroovySource(true);
-                            GroovyShell shell = new GroovyShell(javaClassLoader, new Binding(), cc);
-                            //noinspection UnnecessaryLocalVariable
-                            Script script = shell.parse(result);
-                            return script;
+                            return parseScript(key);
                         }
 
                         @Override
@@ -173,6 +145,39 @@ public abstract class AbstractScripting implements Scripting {
         return pool;
     }
 
+    /**
+     * Compiles the expression adding the default imports.
+     */
+    protected Script parseScript(String text) {
+        StringBuilder sb = new StringBuilder();
+        for (String importItem : imports) {
+            sb.append("import ").append(importItem).append("\n");
+        }
+
+        Matcher matcher = IMPORT_PATTERN.matcher(text);
+        String result;
+        if (matcher.find()) {
+            StringBuffer s = new StringBuffer();
+            matcher.appendReplacement(s, sb + "$0");
+            result = matcher.appendTail(s).toString();
+        } else {
+            Matcher packageMatcher = PACKAGE_PATTERN.matcher(text);
+            if (packageMatcher.find()) {
+                StringBuffer s = new StringBuffer();
+                packageMatcher.appendReplacement(s, "$0\n" + sb);
+                result = packageMatcher.appendTail(s).toString();
+            } else {
+                result = sb.append(text).toString();
+            }
+        }
+
+        CompilerConfiguration cc = new CompilerConfiguration();
+        cc.setClasspath(groovyClassPath);
+        cc.setRecompileGroovySource(true);
+        GroovyShell shell = new GroovyShell(javaClassLoader, new Binding(), cc);
+        return shell.parse(result);
+    }
+
     protected Binding createBinding(Map<String, Object> map) {
         Binding binding = new Binding();
         for (Map.Entry<String, Object> entry : map.entrySet()) {
@@ -218,6 +223,11 @@ public abstract class AbstractScripting implements Scripting {
         return (T) evaluateGroovy(text, binding);
     }
 
+    @Override
+    public Class<? extends Script> compileGroovy(String text) {
+        return parseScript(text).getClass();
+    }
+
     @Override
     public <T> T runGroovyScript(String name, Binding binding) {
         try {
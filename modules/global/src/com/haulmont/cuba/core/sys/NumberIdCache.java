@@ -18,32 +18,184 @@
 package com.haulmont.cuba.core.sys;
 
 import com.haulmont.cuba.core.global.GlobalConfig;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Hands out number identifiers from blocks of {@link GlobalConfig#getNumberIdCacheSize()} values reserved by
+ * a {@link NumberIdSequence}. When a block is 70% consumed, the next one is reserved asynchronously, so callers
+ * rarely wait for the sequence. If callers still have to wait, more blocks are reserved ahead.
+ * <p>Blocks of an entity are reserved one after another by a single task, so identifiers are handed out in
+ * increasing order. After the bean is destroyed, blocks are reserved synchronously.</p>
+ */
 @Component(NumberIdCache.NAME)
 public class NumberIdCache {
 
     public static final String NAME = "cuba_NumberIdCache";
 
+    private static final Logger log = LoggerFactory.getLogger(NumberIdCache.class);
+
+    protected static final double PREFETCH_THRESHOLD = 0.7;
+
+    protected static final int MAX_PREFETCH_DEPTH = 8;
+
+    /**
+     * If a block lasts longer, the number of blocks reserved ahead is decreased.
+     */
+    protected static final long SLOW_BLOCK_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    protected class Block {
+        protected final AtomicLong counter;
+        protected final long last;
+        protected final long prefetchValue;
+
+        protected Block(long sequenceValue) {
+            counter = new AtomicLong(sequenceValue);
+            last = sequenceValue + cacheSize;
+            prefetchValue = sequenceValue + Math.max(1, (long) (cacheSize * PREFETCH_THRESHOLD));
+        }
+    }
+
     protected class Generator {
-        protected AtomicLong counter;
-        protected long sequenceValue;
+        protected final String entityName;
+        protected final NumberIdSequence sequence;
+
+        protected volatile Block block;
+        protected long blockStartTime;
+
+        // guarded by this
+        protected final Deque<CompletableFuture<Long>> prefetched = new ArrayDeque<>();
+        // guarded by this, blocks not reserved yet by the running fetch task
+        protected final Deque<CompletableFuture<Long>> pending = new ArrayDeque<>();
+        protected boolean fetching;
+        protected int prefetchDepth = 1;
 
         protected Generator(String entityName, NumberIdSequence sequence) {
-            sequenceValue = sequence.createLongId(entityName);
-            counter = new AtomicLong(sequenceValue);
+            this.entityName = entityName;
+            this.sequence = sequence;
         }
 
         protected long getNext() {
-            long next = counter.incrementAndGet();
-            if (next > sequenceValue + cacheSize)
-                return -1;
-            return next;
+            while (true) {
+                Block current = block;
+                if (current != null) {
+                    long next = current.counter.incrementAndGet();
+                    if (next <= current.last) {
+                        if (next == current.prefetchValue) {
+                            prefetch();
+                        }
+                        return next;
+                    }
+                }
+                switchBlock(current);
+            }
+        }
+
+        protected synchronized void prefetch() {
+            while (prefetched.size() < prefetchDepth) {
+                CompletableFuture<Long> future = new CompletableFuture<>();
+                prefetched.add(future);
+                pending.add(future);
+            }
+            if (fetching || pending.isEmpty()) {
+                // the running task reserves the new blocks after the previous ones
+                return;
+            }
+
+            try {
+                executor.execute(new SecurityContextAwareRunnable(this::fetchPending));
+                fetching = true;
+            } catch (RejectedExecutionException e) {
+                log.debug("Unable to reserve ids for {} in advance, the executor is shut down", entityName);
+                prefetched.removeAll(pending);
+                pending.clear();
+            }
+        }
+
+        protected void fetchPending() {
+            while (true) {
+                CompletableFuture<Long> future;
+                synchronized (this) {
+                    future = pending.poll();
+                    if (future == null) {
+                        fetching = false;
+                        return;
+                    }
+                }
+                if (future.isDone()) {
+                    // cancelled after a failure
+                    continue;
+                }
+                try {
+                    future.complete(fetchBlock());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        }
+
+        protected synchronized void switchBlock(Block exhausted) {
+            if (block != exhausted) {
+                // already switched by another thread
+                return;
+            }
+
+            long now = System.nanoTime();
+            long sequenceValue;
+            CompletableFuture<Long> future = prefetched.poll();
+            if (future == null) {
+                waitCount.incrementAndGet();
+                sequenceValue = fetchBlock();
+            } else {
+                if (!future.isDone()) {
+                    waitCount.incrementAndGet();
+                    if (prefetchDepth < MAX_PREFETCH_DEPTH) {
+                        prefetchDepth++;
+                    }
+                } else if (exhausted != null && now - blockStartTime > SLOW_BLOCK_NANOS && prefetchDepth > 1) {
+                    prefetchDepth--;
+                }
+                sequenceValue = getPrefetched(future);
+            }
+            blockStartTime = now;
+            block = new Block(sequenceValue);
+        }
+
+        protected long getPrefetched(Future<Long> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for number id sequence", e);
+            } catch (ExecutionException e) {
+                log.warn("Unable to reserve ids for {} in advance, reserving synchronously", entityName, e.getCause());
+                for (Future<Long> next : prefetched) {
+                    next.cancel(false);
+                }
+                prefetched.clear();
+                pending.clear();
+                return fetchBlock();
+            }
+        }
+
+        protected long fetchBlock() {
+            long start = System.nanoTime();
+            long sequenceValue = sequence.createLongId(entityName);
+            long time = System.nanoTime() - start;
+
+            refillCount.incrementAndGet();
+            refillTime.addAndGet(time);
+            maxRefillTime.accumulateAndGet(time, Math::max);
+            return sequenceValue;
         }
     }
 
@@ -51,20 +203,35 @@ public class NumberIdCache {
 
     protected int cacheSize;
 
+    protected ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+        @Override
+        public Thread newThread(@Nonnull Runnable r) {
+            Thread thread = defaultFactory.newThread(r);
+            thread.setName("NumberIdCache-" + thread.getName());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    protected AtomicLong refillCount = new AtomicLong();
+    protected AtomicLong refillTime = new AtomicLong();
+    protected AtomicLong maxRefillTime = new AtomicLong();
+    protected AtomicLong waitCount = new AtomicLong();
+
     @Inject
     protected void setConfig(GlobalConfig config) {
         cacheSize = config.getNumberIdCacheSize();
     }
 
+    @PreDestroy
+    protected void shutdown() {
+        executor.shutdownNow();
+    }
+
     public Long createLongId(String entityName, NumberIdSequence sequence) {
-        Generator gen = getGenerator(entityName, sequence);
-        long next = gen.getNext();
-        if (next == -1) {
-            cache.remove(entityName);
-            gen = getGenerator(entityName, sequence);
-            next = gen.getNext();
-        }
-        return next;
+        return getGenerator(entityName, sequence).getNext();
     }
 
     protected Generator getGenerator(String entityName, NumberIdSequence sequence) {
@@ -78,4 +245,33 @@ public class NumberIdCache {
         }
         return gen;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return number of blocks reserved from sequences
+     */
+    public long getRefillCount() {
+        return refillCount.get();
+    }
+
+    /**
+     * @return average time of reserving a block from a sequence, in milliseconds
+     */
+    public double getAverageRefillTime() {
+        long count = refillCount.get();
+        return count == 0 ? 0 : (double) refillTime.get() / count / 1_000_000;
+    }
+
+    /**
+     * @return maximum time of reserving a block from a sequence, in milliseconds
+     */
+    public double getMaxRefillTime() {
+        return (double) maxRefillTime.get() / 1_000_000;
+    }
+
+    /**
+     * @return number of times callers had to wait for a block to be reserved
+     */
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+}
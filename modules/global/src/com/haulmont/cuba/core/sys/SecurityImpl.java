@@ -17,9 +17,13 @@
 
 package com.haulmont.cuba.core.sys;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.haulmont.bali.datastruct.Pair;
 import com.haulmont.chile.core.datatypes.Datatype;
 import com.haulmont.chile.core.datatypes.Datatypes;
 import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.chile.core.model.MetaPropertyPath;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.*;
@@ -29,16 +33,27 @@ import com.haulmont.cuba.security.entity.EntityOp;
 import com.haulmont.cuba.security.entity.PermissionType;
 import com.haulmont.cuba.security.global.ConstraintData;
 import com.haulmont.cuba.security.global.UserSession;
+import groovy.lang.Binding;
+import groovy.lang.Script;
 import org.apache.commons.lang.StringUtils;
+import org.codehaus.groovy.runtime.InvokerHelper;
 import org.codehaus.groovy.runtime.MethodClosure;
+import org.perf4j.StopWatch;
+import org.perf4j.log4j.Log4JStopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.math.BigDecimal;
 import java.text.ParseException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiPredicate;
 import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.haulmont.cuba.security.entity.ConstraintOperationType.ALL;
 import static com.haulmont.cuba.security.entity.ConstraintOperationType.CUSTOM;
@@ -49,6 +64,15 @@ import static java.lang.String.format;
 public class SecurityImpl implements Security {
     private final Logger log = LoggerFactory.getLogger(SecurityImpl.class);
 
+    protected static final Pattern SIMPLE_CONSTRAINT_PATTERN = Pattern.compile(
+            "^\\s*\\{E}\\.([\\w.]+)\\s*(==|!=)\\s*(null|true|false|-?\\d+(?:\\.\\d+)?|'[^'\\\\$]*'|\"[^\"\\\\$]*\")\\s*$");
+
+    /**
+     * Compiled in-memory constraints by entity name and Groovy script text.
+     */
+    protected Cache<Pair<String, String>, BiPredicate<Entity, UserSession>> compiledConstraints =
+            CacheBuilder.newBuilder().maximumSize(1000).build();
+
     @Inject
     protected UserSessionSource userSessionSource;
 
@@ -204,28 +228,169 @@ public class SecurityImpl implements Security {
     }
 
     protected boolean isPermitted(Entity entity, ConstraintData constraint) {
+        return !isInMemoryConstraint(constraint)
+                || isPermitted(entity, constraint, userSessionSource.getUserSession());
+    }
+
+    /**
+     * Returns entities that do not satisfy in-memory constraints selected by the predicate. Constraints are looked up
+     * once per entity class, and each constraint is evaluated over all entities of the class at once. Each evaluation
+     * of a constraint over the entities is timed by a stop watch tagged with the entity name and the constraint id.
+     */
+    protected Set<Entity> getNotPermitted(Collection<? extends Entity> entities, Predicate<ConstraintData> predicate) {
+        Set<Entity> notPermitted = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (entities.isEmpty()) {
+            return notPermitted;
+        }
+
+        Map<MetaClass, List<Entity>> entitiesByClass = new LinkedHashMap<>();
+        for (Entity entity : entities) {
+            entitiesByClass.computeIfAbsent(entity.getMetaClass(), metaClass -> new ArrayList<>()).add(entity);
+        }
+
+        UserSession userSession = userSessionSource.getUserSession();
+        for (Map.Entry<MetaClass, List<Entity>> entry : entitiesByClass.entrySet()) {
+            for (ConstraintData constraint : getConstraints(entry.getKey(), predicate)) {
+                if (!isInMemoryConstraint(constraint)) {
+                    continue;
+                }
+                StopWatch stopWatch = new Log4JStopWatch(
+                        "Security.constraint." + entry.getKey().getName() + "." + constraint.getId());
+                try {
+                    for (Entity entity : entry.getValue()) {
+                        if (!notPermitted.contains(entity) && !isPermitted(entity, constraint, userSession)) {
+                            notPermitted.add(entity);
+                        }
+                    }
+                } finally {
+                    stopWatch.stop();
+                }
+            }
+        }
+        return notPermitted;
+    }
+
+    protected boolean isInMemoryConstraint(ConstraintData constraint) {
+        return constraint.getCheckType().memory() && StringUtils.isNotBlank(constraint.getGroovyScript());
+    }
+
+    protected boolean isPermitted(Entity entity, ConstraintData constraint, UserSession userSession) {
         String metaClassName = entity.getMetaClass().getName();
-        String groovyScript = constraint.getGroovyScript();
-        if (constraint.getCheckType().memory() && StringUtils.isNotBlank(groovyScript)) {
+        try {
+            if (!getCompiledConstraint(entity.getMetaClass(), constraint.getGroovyScript()).test(entity, userSession)) {
+                log.trace("Entity does not match security constraint. Entity class [{}]. Entity [{}]. Constraint [{}].",
+                        metaClassName, entity.getId(), constraint.getCheckType());
+                return false;
+            }
+        } catch (Exception e) {
+            log.error("An error occurred while applying constraint's Groovy script. The entity has been filtered out." +
+                      "Entity class [{}]. Entity [{}].", metaClassName, entity.getId(), e);
+            return false;
+        }
+        return true;
+    }
+
+    protected BiPredicate<Entity, UserSession> getCompiledConstraint(MetaClass metaClass, String groovyScript) {
+        try {
+            return compiledConstraints.get(new Pair<>(metaClass.getName(), groovyScript),
+                    () -> compileConstraint(metaClass, groovyScript));
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unable to compile constraint", e.getCause());
+        }
+    }
+
+    /**
+     * Turns the constraint's Groovy script into a thread-safe predicate. Scripts comparing a property path with
+     * a literal are evaluated in Java, other ones are compiled to a Groovy script class.
+     */
+    protected BiPredicate<Entity, UserSession> compileConstraint(MetaClass metaClass, String groovyScript) {
+        BiPredicate<Entity, UserSession> predicate = compileSimpleConstraint(metaClass, groovyScript);
+        return predicate != null ? predicate : compileGroovyConstraint(groovyScript);
+    }
+
+    /**
+     * Compiles the script once. Script instances are not thread-safe, so a new instance is bound to the context
+     * of each check.
+     */
+    protected BiPredicate<Entity, UserSession> compileGroovyConstraint(String groovyScript) {
+        Class<? extends Script> scriptClass = scripting.compileGroovy(groovyScript.replace("{E}", "__entity__"));
+        return (entity, userSession) -> {
             Map<String, Object> context = new HashMap<>();
             context.put("__entity__", metadataTools.deepCopy(entity)); // copy to avoid implicit modification
             context.put("parse", new MethodClosure(this, "parseValue"));
-            context.put("userSession", userSessionSource.getUserSession());
+            context.put("userSession", userSession);
             fillGroovyConstraintsContext(context);
-            try {
-                Object o = scripting.evaluateGroovy(groovyScript.replace("{E}", "__entity__"), context);
-                if (Boolean.FALSE.equals(o)) {
-                    log.trace("Entity does not match security constraint. Entity class [{}]. Entity [{}]. Constraint [{}].",
-                            metaClassName, entity.getId(), constraint.getCheckType());
+            Object o = InvokerHelper.createScript(scriptClass, new Binding(context)).run();
+            return !Boolean.FALSE.equals(o);
+        };
+    }
+
+    /**
+     * Compiles scripts of the form {@code {E}.path == literal} or {@code {E}.path != literal} to a predicate giving
+     * the same result as the Groovy script: numbers are compared by value regardless of type and scale, and a null
+     * reference in the middle of the path fails the check, as the exception thrown by Groovy does.
+     *
+     * @return predicate or null if the script has another form
+     */
+    @Nullable
+    protected BiPredicate<Entity, UserSession> compileSimpleConstraint(MetaClass metaClass, String groovyScript) {
+        Matcher matcher = SIMPLE_CONSTRAINT_PATTERN.matcher(groovyScript);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        MetaPropertyPath propertyPath = metaClass.getPropertyPath(matcher.group(1));
+        if (propertyPath == null) {
+            return null;
+        }
+        for (MetaProperty property : propertyPath.getMetaProperties()) {
+            if (property.getRange().getCardinality().isMany()) {
+                return null;
+            }
+        }
+
+        Class<?> javaType = propertyPath.getRangeJavaClass();
+        String literal = matcher.group(3);
+        Predicate<Object> valuePredicate;
+        if ("null".equals(literal)) {
+            valuePredicate = Objects::isNull;
+        } else if ("true".equals(literal) || "false".equals(literal)) {
+            if (!Boolean.class.equals(javaType)) {
+                return null;
+            }
+            Boolean expected = Boolean.valueOf(literal);
+            valuePredicate = expected::equals;
+        } else if (literal.startsWith("'") || literal.startsWith("\"")) {
+            if (!String.class.equals(javaType)) {
+                return null;
+            }
+            String expected = literal.substring(1, literal.length() - 1);
+            valuePredicate = expected::equals;
+        } else {
+            if (!Number.class.isAssignableFrom(javaType)) {
+                return null;
+            }
+            BigDecimal expected = new BigDecimal(literal);
+            valuePredicate = value -> value != null && new BigDecimal(value.toString()).compareTo(expected) == 0;
+        }
+
+        boolean negate = "!=".equals(matcher.group(2));
+        String[] path = propertyPath.getPath();
+        return (entity, userSession) -> {
+            Object value = entity;
+            for (String property : path) {
+                if (value == null) {
+                    // Groovy would fail dereferencing null, which filters the entity out
                     return false;
                 }
-            } catch (Exception e) {
-                log.error("An error occurred while applying constraint's Groovy script. The entity has been filtered out." +
-                          "Entity class [{}]. Entity [{}].", metaClassName, entity.getId(), e);
-                return false;
+                Entity current = (Entity) value;
+                if (!PersistenceHelper.isLoaded(current, property)) {
+                    throw new IllegalStateException(format("Attribute [%s] is not loaded", property));
+                }
+                value = current.getValue(property);
             }
-        }
-        return true;
+            return valuePredicate.test(value) != negate;
+        };
     }
 
     /**
@@ -34,6 +34,7 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static java.lang.String.format;
 
@@ -231,6 +232,24 @@ public class QueryTransformerAstBased implements QueryTransformer {
         getQueryTransformer().replaceWithCount(ref);
     }
 
+    @Override
+    public void replaceWithAggregates(String... selectExpressions) {
+        EntityReferenceInferer inferer = new EntityReferenceInferer(getReturnedEntityName());
+        EntityReference ref = inferer.infer(getQueryTransformer());
+        String selection = Arrays.stream(selectExpressions)
+                .map(expression -> ref.replaceEntries(expression, "\\{E\\}"))
+                .collect(Collectors.joining(", "));
+        String statement = format("select %s from %s %s", selection, getReturnedEntityName(),
+                getQueryTransformer().getFirstReturnedVariableName());
+        try {
+            CommonTree statementTree = Parser.parse(statement, true);
+            CommonTree selectedItems = (CommonTree) statementTree.getFirstChildWithType(JPA2Lexer.T_SELECTED_ITEMS);
+            getQueryTransformer().replaceWithSelectedItems(selectedItems);
+        } catch (RecognitionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public void replaceWithSelectId() {
         getQueryTransformer().replaceWithSelectId("id");
@@ -130,6 +130,22 @@ public class QueryTreeTransformer extends QueryTreeAnalyzer {
         tree.freshenParentAndChildIndexes();
     }
 
+    public void replaceWithSelectedItems(CommonTree selectedItemsToReplace) {
+        Tree selectedItems = tree.getFirstChildWithType(JPA2Lexer.T_SELECTED_ITEMS);
+        if ("DISTINCT".equalsIgnoreCase(selectedItems.getChild(0).getText()))
+            throw new IllegalStateException("Cannot replace selected items if distinct values are selected");
+        if (tree.getFirstChildWithType(JPA2Lexer.T_GROUP_BY) != null)
+            throw new IllegalStateException("Cannot replace selected items if 'group by' clause is used");
+
+        tree.setChild(selectedItems.getChildIndex(), selectedItemsToReplace);
+
+        Tree orderBy = tree.getFirstChildWithType(JPA2Lexer.T_ORDER_BY);
+        if (orderBy != null) {
+            tree.deleteChild(orderBy.getChildIndex());
+        }
+        tree.freshenParentAndChildIndexes();
+    }
+
     public void removeOrderBy() {
         Tree orderBy = tree.getFirstChildWithType(JPA2Lexer.T_ORDER_BY);
         if (orderBy != null) {
@@ -17,6 +17,7 @@
 package com.haulmont.cuba.restapi;
 
 import java.util.Date;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -41,4 +42,14 @@ public interface ServerTokenStore {
     void removeAccessToken(String tokenValue);
 
     void deleteExpiredTokens();
+
+    /**
+     * Returns values of access tokens removed from the store since the given time, including tokens removed on
+     * other cluster nodes. Clients caching tokens use this method to invalidate revoked tokens.
+     * <p>The store keeps removed token values for a limited time, so clients should request them regularly.</p>
+     *
+     * @param since time in milliseconds
+     * @return values of removed access tokens
+     */
+    Set<String> getRemovedTokenValues(long since);
 }
@@ -47,5 +47,26 @@ public class LoadContextQueryTest {
 
         assertNotEquals(expected, expected.copy().setMaxResults(10));
 
+        assertNotEquals(expected, expected.copy().setFetchSize(500));
+
+        assertNotEquals(expected, expected.copy().setKeysetPagination(true));
+
+        assertNotEquals(expected, expected.copy().setKeysetSortProperty("name"));
+
+        assertNotEquals(expected, expected.copy().setKeysetAfter("value", 1L));
+    }
+
+    @Test
+    public void equalQueriesHaveEqualHashCodes() throws Exception {
+        Query expected = LoadContext.createQuery("select obj from Object obj where obj.param = :param")
+                                    .setParameter("param", "value")
+                                    .setMaxResults(100)
+                                    .setFetchSize(500)
+                                    .setKeysetPagination(true)
+                                    .setKeysetSortProperty("name")
+                                    .setKeysetAfter("value", 1L);
+
+        assertEquals(expected, expected.copy());
+        assertEquals(expected.hashCode(), expected.copy().hashCode());
     }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.core.sys;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NumberIdCacheTest {
+
+    @Test
+    public void testUniqueIds() throws Exception {
+        NumberIdCache cache = new NumberIdCache();
+        cache.cacheSize = 10;
+
+        AtomicLong sequenceValue = new AtomicLong();
+        NumberIdSequence sequence = entityName -> sequenceValue.getAndAdd(10);
+
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                executor.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        ids.add(cache.createLongId("test$Entity", sequence));
+                    }
+                });
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        } finally {
+            cache.shutdown();
+        }
+
+        assertEquals(4000, ids.size());
+        assertTrue(cache.getRefillCount() >= 400);
+    }
+
+    @Test
+    public void testSequentialIds() throws Exception {
+        NumberIdCache cache = new NumberIdCache();
+        cache.cacheSize = 5;
+
+        AtomicLong sequenceValue = new AtomicLong();
+        NumberIdSequence sequence = entityName -> sequenceValue.getAndAdd(5);
+        try {
+            for (long i = 1; i <= 5; i++) {
+                assertEquals(Long.valueOf(i), cache.createLongId("test$Entity", sequence));
+            }
+        } finally {
+            cache.shutdown();
+        }
+    }
+}
@@ -34,7 +34,6 @@ import com.haulmont.cuba.gui.logging.UIPerformanceLogger;
 import com.haulmont.cuba.gui.logging.UserActionsLogger;
 import com.haulmont.cuba.gui.settings.Settings;
 import com.haulmont.cuba.gui.settings.SettingsImpl;
-import com.haulmont.cuba.gui.xml.XmlInheritanceProcessor;
 import com.haulmont.cuba.gui.xml.data.DsContextLoader;
 import com.haulmont.cuba.gui.xml.layout.ComponentLoader;
 import com.haulmont.cuba.gui.xml.layout.LayoutLoader;
@@ -376,17 +375,8 @@ public abstract class WindowManager {
                 UIPerformanceLogger.LifeCycle.XML,
                 Logger.getLogger(UIPerformanceLogger.class));
 
-        Document document = screenXmlCache.get(template);
-        if (document == null) {
-            Document originalDocument = LayoutLoader.parseDescriptor(template);
-
-            XmlInheritanceProcessor processor = new XmlInheritanceProcessor(originalDocument, params);
-            Element resultRoot = processor.getResultRoot();
-
-            document = resultRoot.getDocument();
-
-            screenXmlCache.put(template, document);
-        }
+        Document document = screenXmlCache.getOrProcess(windowInfo.getId(), template, getLocale(), params,
+                descriptor -> LayoutLoader.processDescriptor(descriptor, params));
 
         Element element = document.getRootElement();
 
@@ -822,7 +812,8 @@ public abstract class WindowManager {
         Frame component;
         String frameId = id != null ? id : windowInfo.getId();
         try {
-            Pair<ComponentLoader, Element> loaderElementPair = loader.createFrameComponent(stream, frameId, context.getParams());
+            Pair<ComponentLoader, Element> loaderElementPair = loader.createFrameComponent(stream, frameId, windowInfo.getId(),
+                    context.getParams());
             component = (Frame) loaderElementPair.getFirst().getResultComponent();
 
             if (parent != null) {
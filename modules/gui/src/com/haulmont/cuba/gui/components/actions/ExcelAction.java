@@ -21,8 +21,11 @@ import com.haulmont.cuba.gui.AppConfig;
 import com.haulmont.cuba.gui.components.*;
 import com.haulmont.cuba.gui.components.DialogAction.Type;
 import com.haulmont.cuba.gui.components.Frame.MessageType;
+import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.data.GroupDatasource;
 import com.haulmont.cuba.gui.export.ExcelExporter;
 import com.haulmont.cuba.gui.export.ExportDisplay;
+import com.haulmont.cuba.gui.export.ExportFormat;
 import com.haulmont.cuba.gui.theme.ThemeConstantsManager;
 import org.springframework.context.annotation.Scope;
 
@@ -195,6 +198,11 @@ public class ExcelAction extends BaseAction implements Action.HasBeforeActionPer
      * Export via {@link ExcelExporter}.
      */
     protected void export(ExportMode exportMode) {
+        if (exportMode == ExportMode.ALL_ROWS && isBackgroundExportRequired()) {
+            exportInBackground();
+            return;
+        }
+
         ExcelExporter exporter = new ExcelExporter();
         if (listComponent instanceof Table) {
             Table<?> table = (Table) listComponent;
@@ -210,6 +218,69 @@ public class ExcelAction extends BaseAction implements Action.HasBeforeActionPer
         }
     }
 
+    /**
+     * Export all rows to XLSX in a background task via {@link ExcelExporter}.
+     */
+    @SuppressWarnings("unchecked")
+    protected void exportInBackground() {
+        ExcelExporter exporter = new ExcelExporter(ExportFormat.XLSX);
+        if (listComponent instanceof Table) {
+            Table table = (Table) listComponent;
+            exporter.exportTableInBackground(table, table.getNotCollapsedColumns(), display, null, null);
+        }
+
+        if (listComponent instanceof DataGrid) {
+            DataGrid dataGrid = (DataGrid) listComponent;
+            List<DataGrid.Column> columns = ((List<DataGrid.Column>) dataGrid.getVisibleColumns()).stream()
+                    .filter(col -> !col.isCollapsed())
+                    .collect(Collectors.toList());
+            exporter.exportDataGridInBackground(dataGrid, columns, display, null, null);
+        }
+    }
+
+    /**
+     * All rows are exported in background if the datasource contains only a page of them or loads them lazily.
+     * Hierarchical and grouped tables are always exported as they are displayed. Columns that can not be exported
+     * outside of the UI thread, e.g. generated ones, are exported synchronously with the loaded rows.
+     */
+    protected boolean isBackgroundExportRequired() {
+        CollectionDatasource datasource = listComponent.getDatasource();
+        if (listComponent instanceof TreeTable
+                || datasource instanceof GroupDatasource && ((GroupDatasource) datasource).hasGroups()) {
+            return false;
+        }
+
+        boolean partiallyLoaded;
+        if (datasource instanceof CollectionDatasource.Lazy) {
+            partiallyLoaded = !((CollectionDatasource.Lazy) datasource).isCompletelyLoaded();
+        } else if (datasource instanceof CollectionDatasource.SupportsPaging) {
+            int maxResults = datasource.getMaxResults();
+            partiallyLoaded = ((CollectionDatasource.SupportsPaging) datasource).getFirstResult() > 0
+                    || maxResults > 0 && datasource.size() >= maxResults;
+        } else {
+            partiallyLoaded = false;
+        }
+        return partiallyLoaded && isBackgroundExportSupported();
+    }
+
+    @SuppressWarnings("unchecked")
+    protected boolean isBackgroundExportSupported() {
+        ExcelExporter exporter = new ExcelExporter(ExportFormat.XLSX);
+        if (listComponent instanceof Table) {
+            Table table = (Table) listComponent;
+            return exporter.isBackgroundExportSupported(table, table.getNotCollapsedColumns());
+        }
+
+        if (listComponent instanceof DataGrid) {
+            DataGrid dataGrid = (DataGrid) listComponent;
+            List<DataGrid.Column> columns = ((List<DataGrid.Column>) dataGrid.getVisibleColumns()).stream()
+                    .filter(col -> !col.isCollapsed())
+                    .collect(Collectors.toList());
+            return exporter.isBackgroundExportSupported(dataGrid, columns);
+        }
+        return false;
+    }
+
     @Override
     public BeforeActionPerformedHandler getBeforeActionPerformedHandler() {
         return beforeActionPerformedHandler;
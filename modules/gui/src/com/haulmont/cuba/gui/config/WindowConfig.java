@@ -26,6 +26,7 @@ import com.haulmont.cuba.core.global.Resources;
 import com.haulmont.cuba.core.sys.AppContext;
 import com.haulmont.cuba.gui.NoSuchScreenException;
 import com.haulmont.cuba.gui.components.Window;
+import com.haulmont.cuba.gui.xml.layout.ScreenXmlDocumentCache;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.text.StrTokenizer;
@@ -72,6 +73,9 @@ public class WindowConfig {
     @Inject
     protected DeviceInfoProvider deviceInfoProvider;
 
+    @Inject
+    protected ScreenXmlDocumentCache screenXmlDocumentCache;
+
     // Map alias -> ScreenAgent
     protected Map<String, ScreenAgent> activeScreenAgents;
 
@@ -198,9 +202,11 @@ public class WindowConfig {
 
     /**
      * Make the config to reload screens on next request.
+     * Cached screen descriptors are dropped too, so changed ancestor descriptors are applied.
      */
     public void reset() {
         initialized = false;
+        screenXmlDocumentCache.invalidateAll();
     }
 
     public WindowInfo findWindowInfo(String id) {
@@ -356,6 +356,17 @@ public interface CollectionDatasource<T extends Entity<K>, K> extends Datasource
          * Perform aggregation
          */
         Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds);
+
+        /**
+         * Perform aggregation of the items that belong to the scope, e.g. a group of a group table. Implementations
+         * may keep the results for the scope and update them when the items change.
+         *
+         * @param scope object identifying the set of aggregated items, null if the results should not be kept
+         */
+        default Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds,
+                                                       @Nullable Object scope) {
+            return aggregate(aggregationInfos, itemIds);
+        }
     }
 
     /**
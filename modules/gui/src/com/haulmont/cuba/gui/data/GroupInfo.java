@@ -22,6 +22,8 @@ public class GroupInfo<P> {
 
     private LinkedMap groupingValues;
     private P groupProperty;
+    // string form is used for equals and hashCode, so it is computed once
+    private String stringValue;
 
     public GroupInfo(LinkedMap groupingValues) {
         this.groupingValues = new LinkedMap(groupingValues);
@@ -49,6 +51,9 @@ public class GroupInfo<P> {
 
     @Override
     public String toString() {
+        if (stringValue != null) {
+            return stringValue;
+        }
         final StringBuilder sb = new StringBuilder("{");
         for (int groupIndex = 0; groupIndex < groupingValues.size(); groupIndex++) {
             final Object value = groupingValues.getValue(groupIndex);
@@ -61,7 +66,8 @@ public class GroupInfo<P> {
                     .append(",");
         }
         sb.deleteCharAt(sb.length() - 1).append("}");
-        return sb.toString();
+        stringValue = sb.toString();
+        return stringValue;
     }
 
     @Override
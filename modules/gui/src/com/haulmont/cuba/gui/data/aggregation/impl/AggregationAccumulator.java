@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.data.aggregation.impl;
+
+import com.haulmont.cuba.gui.components.AggregationInfo;
+import com.haulmont.cuba.gui.data.aggregation.AggregationStrategy;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.*;
+
+/**
+ * Accumulates values of a property to compute all standard aggregations in a single pass over the items.
+ * <p>Integer numbers are summed in a primitive {@code long} field until it overflows, {@code double} and
+ * {@link BigDecimal} values are summed exactly. Values can be removed from an accumulator, so the results can be
+ * updated when items change; since the sums are exact, they do not depend on the order of additions and removals.
+ * If a removed value was the minimum or the maximum, the accumulator becomes invalid and must be rebuilt.
+ */
+public abstract class AggregationAccumulator {
+
+    protected int count;
+    protected boolean valid = true;
+
+    /**
+     * Creates an accumulator for the values of the given Java class.
+     *
+     * @return accumulator or null if values of the class cannot be aggregated
+     */
+    @Nullable
+    public static AggregationAccumulator create(Class<?> javaClass) {
+        if (Integer.class.equals(javaClass) || Long.class.equals(javaClass)) {
+            return new LongAccumulator();
+        } else if (Double.class.equals(javaClass)) {
+            return new DoubleAccumulator();
+        } else if (BigDecimal.class.equals(javaClass)) {
+            return new BigDecimalAccumulator();
+        } else if (Date.class.equals(javaClass)) {
+            return new DateAccumulator();
+        } else if (Boolean.class.equals(javaClass) || byte[].class.equals(javaClass)
+                || String.class.equals(javaClass) || UUID.class.equals(javaClass)) {
+            return new CountAccumulator();
+        }
+        return null;
+    }
+
+    /**
+     * Creates an accumulator that collects the values and passes them to the strategy.
+     */
+    public static AggregationAccumulator create(AggregationStrategy strategy) {
+        return new StrategyAccumulator(strategy);
+    }
+
+    public void add(@Nullable Object value) {
+        if (value != null) {
+            count++;
+            doAdd(value);
+        }
+    }
+
+    public void remove(@Nullable Object value) {
+        if (value != null) {
+            count--;
+            doRemove(value);
+        }
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public Object getResult(AggregationInfo.Type type) {
+        switch (type) {
+            case COUNT:
+                return count;
+            case SUM:
+                return sum();
+            case AVG:
+                return count == 0 ? null : avg();
+            case MIN:
+                return count == 0 ? null : min();
+            case MAX:
+                return count == 0 ? null : max();
+            default:
+                throw new IllegalArgumentException(String.format("Unknown aggregation type: %s", type));
+        }
+    }
+
+    protected abstract void doAdd(Object value);
+
+    protected abstract void doRemove(Object value);
+
+    protected Object sum() {
+        throw new UnsupportedOperationException();
+    }
+
+    protected Object avg() {
+        throw new UnsupportedOperationException();
+    }
+
+    protected Object min() {
+        throw new UnsupportedOperationException();
+    }
+
+    protected Object max() {
+        throw new UnsupportedOperationException();
+    }
+
+    protected static class CountAccumulator extends AggregationAccumulator {
+
+        @Override
+        protected void doAdd(Object value) {
+        }
+
+        @Override
+        protected void doRemove(Object value) {
+        }
+    }
+
+    protected static class LongAccumulator extends AggregationAccumulator {
+        protected long sum;
+        // used after the long sum overflows
+        protected BigInteger bigSum;
+        protected long min = Long.MAX_VALUE;
+        protected long max = Long.MIN_VALUE;
+
+        @Override
+        protected void doAdd(Object value) {
+            long v = ((Number) value).longValue();
+            if (bigSum != null) {
+                bigSum = bigSum.add(BigInteger.valueOf(v));
+            } else {
+                try {
+                    sum = Math.addExact(sum, v);
+                } catch (ArithmeticException e) {
+                    bigSum = BigInteger.valueOf(sum).add(BigInteger.valueOf(v));
+                }
+            }
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+
+        @Override
+        protected void doRemove(Object value) {
+            long v = ((Number) value).longValue();
+            if (bigSum != null) {
+                bigSum = bigSum.subtract(BigInteger.valueOf(v));
+            } else {
+                try {
+                    sum = Math.subtractExact(sum, v);
+                } catch (ArithmeticException e) {
+                    bigSum = BigInteger.valueOf(sum).subtract(BigInteger.valueOf(v));
+                }
+            }
+            if (v == min || v == max) {
+                valid = false;
+            }
+        }
+
+        @Override
+        protected Object sum() {
+            if (bigSum == null) {
+                return sum;
+            }
+            // a sum out of the long range is saturated like the result of BasicNumberAggregation
+            return bigSum.bitLength() < Long.SIZE ? bigSum.longValue() : (long) bigSum.doubleValue();
+        }
+
+        @Override
+        protected Object avg() {
+            return (long) ((bigSum != null ? bigSum.doubleValue() : sum) / count);
+        }
+
+        @Override
+        protected Object min() {
+            return min;
+        }
+
+        @Override
+        protected Object max() {
+            return max;
+        }
+    }
+
+    protected static class DoubleAccumulator extends AggregationAccumulator {
+        // finite values are summed exactly, so that removing a value restores the previous sum without rounding errors
+        protected BigDecimal sum = BigDecimal.ZERO;
+        protected int nanCount;
+        protected int positiveInfinityCount;
+        protected int negativeInfinityCount;
+        protected double min = Double.POSITIVE_INFINITY;
+        protected double max = Double.NEGATIVE_INFINITY;
+
+        @Override
+        protected void doAdd(Object value) {
+            double v = ((Number) value).doubleValue();
+            updateSum(v, 1);
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+
+        @Override
+        protected void doRemove(Object value) {
+            double v = ((Number) value).doubleValue();
+            updateSum(v, -1);
+            if (v == min || v == max) {
+                valid = false;
+            }
+        }
+
+        protected void updateSum(double v, int delta) {
+            if (Double.isNaN(v)) {
+                nanCount += delta;
+            } else if (v == Double.POSITIVE_INFINITY) {
+                positiveInfinityCount += delta;
+            } else if (v == Double.NEGATIVE_INFINITY) {
+                negativeInfinityCount += delta;
+            } else if (delta > 0) {
+                sum = sum.add(new BigDecimal(v));
+            } else {
+                sum = sum.subtract(new BigDecimal(v));
+            }
+        }
+
+        @Override
+        protected Object sum() {
+            if (nanCount > 0 || (positiveInfinityCount > 0 && negativeInfinityCount > 0)) {
+                return Double.NaN;
+            } else if (positiveInfinityCount > 0) {
+                return Double.POSITIVE_INFINITY;
+            } else if (negativeInfinityCount > 0) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            return sum.doubleValue();
+        }
+
+        @Override
+        protected Object avg() {
+            return (Double) sum() / count;
+        }
+
+        @Override
+        protected Object min() {
+            return min;
+        }
+
+        @Override
+        protected Object max() {
+            return max;
+        }
+    }
+
+    protected static class BigDecimalAccumulator extends AggregationAccumulator {
+        protected BigDecimal sum = BigDecimal.ZERO;
+        protected BigDecimal min;
+        protected BigDecimal max;
+
+        @Override
+        protected void doAdd(Object value) {
+            BigDecimal v = (BigDecimal) value;
+            sum = sum.add(v);
+            if (min == null || v.compareTo(min) < 0) min = v;
+            if (max == null || v.compareTo(max) > 0) max = v;
+        }
+
+        @Override
+        protected void doRemove(Object value) {
+            BigDecimal v = (BigDecimal) value;
+            sum = sum.subtract(v);
+            if (v.compareTo(min) == 0 || v.compareTo(max) == 0) {
+                valid = false;
+            }
+        }
+
+        @Override
+        protected Object sum() {
+            return sum;
+        }
+
+        @Override
+        protected Object avg() {
+            return sum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+        }
+
+        @Override
+        protected Object min() {
+            return min;
+        }
+
+        @Override
+        protected Object max() {
+            return max;
+        }
+    }
+
+    protected static class DateAccumulator extends AggregationAccumulator {
+        protected long min = Long.MAX_VALUE;
+        protected long max = Long.MIN_VALUE;
+
+        @Override
+        protected void doAdd(Object value) {
+            long v = ((Date) value).getTime();
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+
+        @Override
+        protected void doRemove(Object value) {
+            long v = ((Date) value).getTime();
+            if (v == min || v == max) {
+                valid = false;
+            }
+        }
+
+        @Override
+        protected Object min() {
+            return new Date(min);
+        }
+
+        @Override
+        protected Object max() {
+            return new Date(max);
+        }
+    }
+
+    protected static class StrategyAccumulator extends AggregationAccumulator {
+        protected AggregationStrategy strategy;
+        protected List<Object> values = new ArrayList<>();
+
+        public StrategyAccumulator(AggregationStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        @Override
+        protected void doAdd(Object value) {
+            values.add(value);
+        }
+
+        @Override
+        protected void doRemove(Object value) {
+            values.remove(value);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object getResult(AggregationInfo.Type type) {
+            return strategy.aggregate(values);
+        }
+    }
+}
@@ -17,18 +17,27 @@
 package com.haulmont.cuba.gui.data.impl;
 
 import com.haulmont.chile.core.datatypes.Datatypes;
+import com.haulmont.chile.core.model.Instance;
 import com.haulmont.chile.core.model.MetaPropertyPath;
 import com.haulmont.chile.core.model.Range;
+import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.core.global.UserSessionSource;
+import com.haulmont.cuba.gui.data.CollectionDatasource;
 import com.haulmont.cuba.gui.data.aggregation.Aggregation;
 import com.haulmont.cuba.gui.data.aggregation.AggregationStrategy;
 import com.haulmont.cuba.gui.data.aggregation.Aggregations;
+import com.haulmont.cuba.gui.data.aggregation.impl.AggregationAccumulator;
 import com.haulmont.cuba.gui.components.AggregationInfo;
 
+import javax.annotation.Nullable;
 import java.util.*;
 
 public abstract class AggregatableDelegate<K> {
+
+    // aggregation results of the item sets that are aggregated repeatedly, e.g. groups of a group table
+    protected Map<Object, AggregationScope> scopes = new HashMap<>();
+
     public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds) {
         if (aggregationInfos == null || aggregationInfos.length == 0) {
             throw new NullPointerException("Aggregation must be executed at least by one field");
@@ -37,10 +46,133 @@ public abstract class AggregatableDelegate<K> {
         return doAggregation(itemIds, aggregationInfos);
     }
 
+    /**
+     * Performs aggregation of the items that belong to the scope, e.g. a group. Results are kept for the scope and
+     * updated when the items are changed or removed, other collection changes cause the recalculation.
+     */
+    public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds,
+                                                 @Nullable Object scopeKey) {
+        if (aggregationInfos == null || aggregationInfos.length == 0) {
+            throw new NullPointerException("Aggregation must be executed at least by one field");
+        }
+
+        if (scopeKey == null || !isIncrementalAggregationSupported(aggregationInfos)) {
+            return doAggregation(itemIds, aggregationInfos);
+        }
+
+        AggregationScope scope = scopes.get(scopeKey);
+        if (scope == null || !scope.isValid(aggregationInfos, itemIds)) {
+            scope = new AggregationScope(aggregationInfos, itemIds);
+            scopes.put(scopeKey, scope);
+        }
+        return formatResults(aggregationInfos, scope.getResults());
+    }
+
+    /**
+     * Results can be updated incrementally only for the properties of the items themselves, since changes of the
+     * nested entities are not tracked by the datasource.
+     */
+    protected boolean isIncrementalAggregationSupported(AggregationInfo[] aggregationInfos) {
+        for (AggregationInfo aggregationInfo : aggregationInfos) {
+            if (aggregationInfo.getPropertyPath().getMetaProperties().length != 1
+                    || createAccumulator(aggregationInfo) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void itemPropertyChanged(K itemId, String property, Object prevValue, Object value) {
+        for (AggregationScope scope : scopes.values()) {
+            scope.itemPropertyChanged(itemId, property, prevValue, value);
+        }
+    }
+
+    public void collectionChanged(CollectionDatasource.Operation operation, List<? extends Entity> items) {
+        if (scopes.isEmpty()) {
+            return;
+        }
+
+        if (operation == CollectionDatasource.Operation.REMOVE) {
+            for (Entity item : items) {
+                for (AggregationScope scope : scopes.values()) {
+                    //noinspection unchecked
+                    scope.itemRemoved((K) item.getId(), item);
+                }
+            }
+        } else {
+            scopes.clear();
+        }
+    }
+
     protected Map<AggregationInfo, String> doAggregation(Collection<K> itemIds, AggregationInfo[] aggregationInfos) {
+        Map<AggregationInfo, Object> results = new HashMap<>();
+
+        // all the aggregations supported by the accumulators are calculated in a single pass over the items
+        Map<Object, AggregationAccumulator> accumulators = new LinkedHashMap<>();
+        for (AggregationInfo aggregationInfo : aggregationInfos) {
+            AggregationAccumulator accumulator = createAccumulator(aggregationInfo);
+            if (accumulator != null) {
+                accumulators.putIfAbsent(getAccumulatorKey(aggregationInfo), accumulator);
+            } else {
+                results.put(aggregationInfo, doPropertyAggregation(aggregationInfo, itemIds));
+            }
+        }
+
+        if (!accumulators.isEmpty()) {
+            accumulate(accumulators, itemIds);
+            for (AggregationInfo aggregationInfo : aggregationInfos) {
+                AggregationAccumulator accumulator = accumulators.get(getAccumulatorKey(aggregationInfo));
+                if (accumulator != null) {
+                    results.put(aggregationInfo, accumulator.getResult(aggregationInfo.getType()));
+                }
+            }
+        }
+
+        return formatResults(aggregationInfos, results);
+    }
+
+    protected void accumulate(Map<Object, AggregationAccumulator> accumulators, Collection<K> itemIds) {
+        MetaPropertyPath[] propertyPaths = new MetaPropertyPath[accumulators.size()];
+        AggregationAccumulator[] accumulatorsArray = new AggregationAccumulator[accumulators.size()];
+        int i = 0;
+        for (Map.Entry<Object, AggregationAccumulator> entry : accumulators.entrySet()) {
+            propertyPaths[i] = getAccumulatorPropertyPath(entry.getKey());
+            accumulatorsArray[i] = entry.getValue();
+            i++;
+        }
+
+        for (K itemId : itemIds) {
+            for (i = 0; i < propertyPaths.length; i++) {
+                accumulatorsArray[i].add(getItemValue(propertyPaths[i], itemId));
+            }
+        }
+    }
+
+    /**
+     * Aggregations of a property with the standard strategy share an accumulator, custom strategies have their own.
+     */
+    protected Object getAccumulatorKey(AggregationInfo aggregationInfo) {
+        return aggregationInfo.getStrategy() == null ? aggregationInfo.getPropertyPath() : aggregationInfo;
+    }
+
+    protected MetaPropertyPath getAccumulatorPropertyPath(Object accumulatorKey) {
+        return accumulatorKey instanceof AggregationInfo ?
+                ((AggregationInfo) accumulatorKey).getPropertyPath() : (MetaPropertyPath) accumulatorKey;
+    }
+
+    protected AggregationAccumulator createAccumulator(AggregationInfo aggregationInfo) {
+        if (aggregationInfo.getStrategy() != null) {
+            return AggregationAccumulator.create(aggregationInfo.getStrategy());
+        }
+        return AggregationAccumulator.create(aggregationInfo.getPropertyPath().getRangeJavaClass());
+    }
+
+    protected Map<AggregationInfo, String> formatResults(AggregationInfo[] aggregationInfos,
+                                                         Map<AggregationInfo, Object> values) {
         final Map<AggregationInfo, String> aggregationResults = new HashMap<>();
         for (AggregationInfo aggregationInfo : aggregationInfos) {
-            final Object value = doPropertyAggregation(aggregationInfo, itemIds);
+            final Object value = values.get(aggregationInfo);
 
             String formattedValue;
             if (aggregationInfo.getFormatter() != null) {
@@ -127,4 +259,65 @@ public abstract class AggregatableDelegate<K> {
     public abstract Object getItem(K itemId);
 
     public abstract Object getItemValue(MetaPropertyPath property, K itemId);
+
+    /**
+     * Accumulated aggregation results of a set of items.
+     */
+    protected class AggregationScope {
+        protected AggregationInfo[] aggregationInfos;
+        protected Set<K> itemIds;
+        protected Map<Object, AggregationAccumulator> accumulators = new LinkedHashMap<>();
+
+        public AggregationScope(AggregationInfo[] aggregationInfos, Collection<K> itemIds) {
+            this.aggregationInfos = aggregationInfos.clone();
+            this.itemIds = new HashSet<>(itemIds);
+            for (AggregationInfo aggregationInfo : aggregationInfos) {
+                accumulators.computeIfAbsent(getAccumulatorKey(aggregationInfo), k -> createAccumulator(aggregationInfo));
+            }
+            accumulate(accumulators, itemIds);
+        }
+
+        public boolean isValid(AggregationInfo[] aggregationInfos, Collection<K> itemIds) {
+            if (!Arrays.equals(this.aggregationInfos, aggregationInfos) || this.itemIds.size() != itemIds.size()) {
+                return false;
+            }
+            for (AggregationAccumulator accumulator : accumulators.values()) {
+                if (!accumulator.isValid()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public Map<AggregationInfo, Object> getResults() {
+            Map<AggregationInfo, Object> results = new HashMap<>();
+            for (AggregationInfo aggregationInfo : aggregationInfos) {
+                AggregationAccumulator accumulator = accumulators.get(getAccumulatorKey(aggregationInfo));
+                results.put(aggregationInfo, accumulator.getResult(aggregationInfo.getType()));
+            }
+            return results;
+        }
+
+        public void itemPropertyChanged(K itemId, String property, Object prevValue, Object value) {
+            if (!itemIds.contains(itemId)) {
+                return;
+            }
+            for (Map.Entry<Object, AggregationAccumulator> entry : accumulators.entrySet()) {
+                if (getAccumulatorPropertyPath(entry.getKey()).getMetaProperty().getName().equals(property)) {
+                    entry.getValue().remove(prevValue);
+                    entry.getValue().add(value);
+                }
+            }
+        }
+
+        public void itemRemoved(K itemId, Entity item) {
+            if (!itemIds.remove(itemId)) {
+                return;
+            }
+            for (Map.Entry<Object, AggregationAccumulator> entry : accumulators.entrySet()) {
+                String property = getAccumulatorPropertyPath(entry.getKey()).getMetaProperty().getName();
+                entry.getValue().remove(((Instance) item).getValue(property));
+            }
+        }
+    }
 }
\ No newline at end of file
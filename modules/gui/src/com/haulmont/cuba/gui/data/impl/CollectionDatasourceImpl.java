@@ -18,9 +18,11 @@ package com.haulmont.cuba.gui.data.impl;
 
 import com.haulmont.bali.collections.ReadOnlyLinkedMapValuesView;
 import com.haulmont.chile.core.model.Instance;
+import com.haulmont.chile.core.model.MetaProperty;
 import com.haulmont.chile.core.model.MetaPropertyPath;
 import com.haulmont.cuba.client.ClientConfig;
 import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.entity.KeyValueEntity;
 import com.haulmont.cuba.core.global.*;
 import com.haulmont.cuba.core.global.filter.Condition;
 import com.haulmont.cuba.core.global.filter.DenyingClause;
@@ -28,6 +30,8 @@ import com.haulmont.cuba.core.global.filter.LogicalCondition;
 import com.haulmont.cuba.core.global.filter.LogicalOp;
 import com.haulmont.cuba.gui.components.AggregationInfo;
 import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.data.aggregation.Aggregation;
+import com.haulmont.cuba.gui.data.aggregation.Aggregations;
 import com.haulmont.cuba.gui.logging.UIPerformanceLogger;
 import com.haulmont.cuba.security.entity.EntityOp;
 import org.apache.commons.collections.map.LinkedMap;
@@ -35,6 +39,8 @@ import org.apache.log4j.Logger;
 import org.perf4j.StopWatch;
 import org.perf4j.log4j.Log4JStopWatch;
 
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
 import java.util.*;
 
 /**
@@ -82,10 +88,22 @@ public class CollectionDatasourceImpl<T extends Entity<K>, K>
     protected boolean sortOnDb = AppBeans.<Configuration>get(Configuration.NAME)
             .getConfig(ClientConfig.class).getCollectionDatasourceDbSortEnabled();
 
+    protected boolean aggregateOnDb = AppBeans.<Configuration>get(Configuration.NAME)
+            .getConfig(ClientConfig.class).getCollectionDatasourceDbAggregationEnabled();
+
+    // results of the last aggregation on DB, valid until the collection is changed
+    protected ValueLoadContext.Query lastAggregationQuery;
+    protected Map<String, Object> lastAggregationValues;
+
     protected LoadContext.Query lastQuery;
     protected LinkedList<LoadContext.Query> prevQueries = new LinkedList<>();
     protected Integer queryKey;
 
+    public CollectionDatasourceImpl() {
+        addItemPropertyChangeListener(e ->
+                aggregatableDelegate.itemPropertyChanged(e.getItem().getId(), e.getProperty(), e.getPrevValue(), e.getValue()));
+    }
+
     @Override
     public void refreshIfNotSuspended() {
         if (suspended) {
@@ -670,7 +688,183 @@ public class CollectionDatasourceImpl<T extends Entity<K>, K>
     @Override
     @SuppressWarnings("unchecked")
     public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection itemIds) {
-        return aggregatableDelegate.aggregate(aggregationInfos, itemIds);
+        return aggregate(aggregationInfos, itemIds, null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection itemIds, Object scope) {
+        if (isAggregationOnDbRequired(aggregationInfos, itemIds)) {
+            Map<AggregationInfo, Object> values = aggregateOnDb(aggregationInfos);
+            if (values != null) {
+                return aggregatableDelegate.formatResults(aggregationInfos, values);
+            }
+        }
+        return aggregatableDelegate.aggregate(aggregationInfos, itemIds, scope);
+    }
+
+    /**
+     * Aggregations of all the items of a datasource that contains only a page of the query results are calculated
+     * on DB. Aggregations of a subset of items, e.g. a group of a group table, are always calculated in memory.
+     */
+    protected boolean isAggregationOnDbRequired(AggregationInfo[] aggregationInfos, Collection itemIds) {
+        if (!aggregateOnDb || maxResults <= 0 || containsAllDataFromDb()
+                || aggregationInfos == null || aggregationInfos.length == 0 || itemIds == null || itemIds.size() != data.size()
+                || !prevQueries.isEmpty()) {
+            return false;
+        }
+        return isAggregationOnDbSupported(aggregationInfos);
+    }
+
+    /**
+     * @return true if all the aggregations can be calculated by a single values query built from the current query
+     */
+    protected boolean isAggregationOnDbSupported(AggregationInfo[] aggregationInfos) {
+        // a values query is not restricted by the security constraints of the entities
+        Security security = AppBeans.get(Security.NAME);
+        if (security.hasConstraints(metaClass)) {
+            return false;
+        }
+        for (AggregationInfo aggregationInfo : aggregationInfos) {
+            if (getDbAggregateExpression(aggregationInfo) == null) {
+                return false;
+            }
+            for (MetaProperty metaProperty : aggregationInfo.getPropertyPath().getMetaProperties()) {
+                if (metaProperty.getRange().isClass() && security.hasConstraints(metaProperty.getRange().asClass())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return JPQL aggregate expression for the aggregation info with {@link QueryTransformer#ALIAS_PLACEHOLDER}
+     * as the entity alias, or null if the aggregation can not be calculated on DB
+     */
+    @Nullable
+    protected String getDbAggregateExpression(AggregationInfo aggregationInfo) {
+        AggregationInfo.Type type = aggregationInfo.getType();
+        if (type == null || type == AggregationInfo.Type.CUSTOM || aggregationInfo.getStrategy() != null) {
+            return null;
+        }
+
+        MetaPropertyPath propertyPath = aggregationInfo.getPropertyPath();
+        if (propertyPath == null || !propertyPath.getRange().isDatatype() || !metadata.getTools().isPersistent(propertyPath)) {
+            return null;
+        }
+        // a path through a reference is an inner join that would skip the items with null references,
+        // only the attributes of embedded entities are selected from the same row
+        MetaProperty[] metaProperties = propertyPath.getMetaProperties();
+        for (int i = 0; i < metaProperties.length - 1; i++) {
+            if (!metadata.getTools().isEmbedded(metaProperties[i])) {
+                return null;
+            }
+        }
+
+        if (type != AggregationInfo.Type.COUNT) {
+            Class javaClass = propertyPath.getRangeJavaClass();
+            boolean numeric = Number.class.isAssignableFrom(javaClass);
+            if ((type == AggregationInfo.Type.SUM || type == AggregationInfo.Type.AVG) && !numeric
+                    || !numeric && !Date.class.isAssignableFrom(javaClass)) {
+                return null;
+            }
+        }
+        // count of the property values skips nulls like the in-memory aggregation
+        return type.name().toLowerCase() + "(" + QueryTransformer.ALIAS_PLACEHOLDER + "." + propertyPath.toString() + ")";
+    }
+
+    /**
+     * Calculates the aggregations by a single values query built from the current query of the datasource.
+     *
+     * @return aggregation results converted to the result classes of in-memory aggregation, or null if the query
+     * can not be transformed
+     */
+    @Nullable
+    protected Map<AggregationInfo, Object> aggregateOnDb(AggregationInfo[] aggregationInfos) {
+        LoadContext context = getCompiledLoadContext();
+        LoadContext.Query query = context.getQuery();
+        if (query == null) {
+            return null;
+        }
+
+        List<String> expressions = new ArrayList<>();
+        for (AggregationInfo aggregationInfo : aggregationInfos) {
+            String expression = getDbAggregateExpression(aggregationInfo);
+            if (!expressions.contains(expression)) {
+                expressions.add(expression);
+            }
+        }
+
+        QueryTransformer transformer = QueryTransformerFactory.createTransformer(query.getQueryString());
+        try {
+            transformer.replaceWithAggregates(expressions.toArray(new String[expressions.size()]));
+        } catch (IllegalStateException | UnsupportedOperationException e) {
+            return null;
+        }
+
+        ValueLoadContext.Query aggregationQuery = ValueLoadContext.createQuery(transformer.getResult())
+                .setParameters(query.getParameters());
+        if (lastAggregationValues == null || lastAggregationQuery == null
+                || !lastAggregationQuery.getQueryString().equals(aggregationQuery.getQueryString())
+                || !lastAggregationQuery.getParameters().equals(aggregationQuery.getParameters())) {
+            ValueLoadContext valueContext = ValueLoadContext.create()
+                    .setQuery(aggregationQuery)
+                    .setStoreName(metadata.getTools().getStoreName(metaClass))
+                    .setSoftDeletion(isSoftDeletion());
+            for (int i = 0; i < expressions.size(); i++) {
+                valueContext.addProperty("value" + i);
+            }
+
+            List<KeyValueEntity> list = dataSupplier.loadValues(valueContext);
+            Map<String, Object> values = new HashMap<>();
+            if (!list.isEmpty()) {
+                for (int i = 0; i < expressions.size(); i++) {
+                    values.put(expressions.get(i), list.get(0).getValue("value" + i));
+                }
+            }
+            lastAggregationQuery = aggregationQuery;
+            lastAggregationValues = values;
+        }
+
+        Map<AggregationInfo, Object> results = new HashMap<>();
+        for (AggregationInfo aggregationInfo : aggregationInfos) {
+            Object value = lastAggregationValues.get(getDbAggregateExpression(aggregationInfo));
+            results.put(aggregationInfo, convertDbAggregationResult(aggregationInfo, value));
+        }
+        return results;
+    }
+
+    protected Object convertDbAggregationResult(AggregationInfo aggregationInfo, Object value) {
+        if (aggregationInfo.getType() == AggregationInfo.Type.COUNT) {
+            return value == null ? 0 : ((Number) value).intValue();
+        }
+        if (!(value instanceof Number)) {
+            return value;
+        }
+
+        // e.g. sum of integers is returned as long and average as double
+        Number number = (Number) value;
+        Aggregation aggregation = Aggregations.get(aggregationInfo.getPropertyPath().getRangeJavaClass());
+        Class resultClass = aggregation != null ? aggregation.getResultClass() : null;
+        if (resultClass == Integer.class) {
+            return number.intValue();
+        } else if (resultClass == Long.class) {
+            return number.longValue();
+        } else if (resultClass == Double.class) {
+            return number.doubleValue();
+        } else if (resultClass == BigDecimal.class && !(number instanceof BigDecimal)) {
+            return new BigDecimal(number.toString());
+        }
+        return number;
+    }
+
+    @Override
+    protected void fireCollectionChanged(Operation operation, List<T> items) {
+        lastAggregationQuery = null;
+        lastAggregationValues = null;
+        aggregatableDelegate.collectionChanged(operation, items);
+        super.fireCollectionChanged(operation, items);
     }
 
     protected Object getItemValue(MetaPropertyPath property, K itemId) {
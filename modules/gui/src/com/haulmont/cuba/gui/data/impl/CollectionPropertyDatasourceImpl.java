@@ -71,6 +71,11 @@ public class CollectionPropertyDatasourceImpl<T extends Entity<K>, K>
         }
     };
 
+    public CollectionPropertyDatasourceImpl() {
+        addItemPropertyChangeListener(e ->
+                aggregatableDelegate.itemPropertyChanged(e.getItem().getId(), e.getProperty(), e.getPrevValue(), e.getValue()));
+    }
+
     @Override
     public void setup(String id, Datasource masterDs, String property) {
         super.setup(id, masterDs, property);
@@ -782,6 +787,8 @@ public class CollectionPropertyDatasourceImpl<T extends Entity<K>, K>
     }
 
     protected void fireCollectionChanged(Operation operation, List<T> items) {
+        aggregatableDelegate.collectionChanged(operation, items);
+
         if (listenersSuspended) {
             lastCollectionChangeOperation = operation;
             lastCollectionChangeItems = items;
@@ -953,6 +960,11 @@ public class CollectionPropertyDatasourceImpl<T extends Entity<K>, K>
         return aggregatableDelegate.aggregate(aggregationInfos, itemIds);
     }
 
+    @Override
+    public Map<AggregationInfo, String> aggregate(AggregationInfo[] aggregationInfos, Collection<K> itemIds, Object scope) {
+        return aggregatableDelegate.aggregate(aggregationInfos, itemIds, scope);
+    }
+
     protected Object getItemValue(MetaPropertyPath property, K itemId) {
         Instance instance = getItemNN(itemId);
         if (property.getMetaProperties().length == 1) {
@@ -26,6 +26,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
 
 public class GenericDataSupplier implements DataSupplier {
 
@@ -102,6 +103,11 @@ public class GenericDataSupplier implements DataSupplier {
         return getDataManager().loadList(context);
     }
 
+    @Override
+    public <E extends Entity> void loadStream(LoadContext<E> context, Consumer<E> consumer) {
+        getDataManager().loadStream(context, consumer);
+    }
+
     @Override
     public long getCount(LoadContext<? extends Entity> context) {
         return getDataManager().getCount(context);
@@ -36,11 +36,25 @@ public class GroupDatasourceImpl<T extends Entity<K>, K>
         }
     };
 
+    public GroupDatasourceImpl() {
+        addItemPropertyChangeListener(e -> {
+            if (groupDelegate.isRegroupRequired(e.getItem(), e.getProperty())) {
+                fireCollectionChanged(Operation.UPDATE, Collections.singletonList(e.getItem()));
+            }
+        });
+    }
+
     @Override
     public void groupBy(Object[] properties) {
         groupDelegate.groupBy(properties, sortInfos);
     }
 
+    @Override
+    protected void fireCollectionChanged(Operation operation, List<T> items) {
+        groupDelegate.collectionChanged(operation, items);
+        super.fireCollectionChanged(operation, items);
+    }
+
     @Override
     protected void doSort() {
         if (hasGroups()) {
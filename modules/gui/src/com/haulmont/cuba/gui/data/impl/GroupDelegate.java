@@ -43,6 +43,15 @@ public abstract class GroupDelegate<T extends Entity<K>, K> {
     // reversed relations from groupItems
     protected Map<K, GroupInfo> itemGroups;
 
+    // child groups by the string form of their value, root groups are stored with the null key
+    protected Map<GroupInfo, Map<String, GroupInfo>> groupsByValue;
+    // number of items in the group including items of the nested groups
+    protected Map<GroupInfo, Integer> groupItemsCounts;
+    // groups are kept up to date with collection changes until the next refresh
+    protected boolean groupsValid;
+    // the last applied sorting, kept by the groups and items added incrementally
+    protected CollectionDatasource.Sortable.SortInfo<MetaPropertyPath>[] sortInfos;
+
     protected boolean isGrouping;
 
     protected CollectionDatasource<T, K> datasource;
@@ -56,14 +65,17 @@ public abstract class GroupDelegate<T extends Entity<K>, K> {
             return;
         }
         isGrouping = true;
+        this.sortInfos = sortInfos;
         try {
             if (properties != null) {
                 CollectionDsHelper.autoRefreshInvalid(datasource, true);
 
+                boolean propertiesChanged = !Arrays.equals(groupProperties, properties);
                 groupProperties = properties;
 
                 if (!ArrayUtils.isEmpty(groupProperties)) {
-                    if (datasource.getState() == Datasource.State.VALID) {
+                    if (datasource.getState() == Datasource.State.VALID
+                            && (propertiesChanged || !isGroupsValid())) {
                         doGroup();
                     }
                 } else {
@@ -72,6 +84,9 @@ public abstract class GroupDelegate<T extends Entity<K>, K> {
                     children = null;
                     groupItems = null;
                     itemGroups = null;
+                    groupsByValue = null;
+                    groupItemsCounts = null;
+                    groupsValid = false;
                 }
             }
         } finally {
@@ -93,58 +108,249 @@ public abstract class GroupDelegate<T extends Entity<K>, K> {
         children = new HashMap<>();
         groupItems = new HashMap<>();
         itemGroups = new HashMap<>();
+        groupsByValue = new HashMap<>();
+        groupItemsCounts = new HashMap<>();
 
         final Collection<K> itemIds = datasource.getItemIds();
         for (final K id : itemIds) {
             final T item = datasource.getItem(id);
-            GroupInfo<MetaPropertyPath> groupInfo = groupItems(0, null, roots, item, new LinkedMap());
+            addToGroups(item, false);
+        }
+        groupsValid = true;
+    }
 
-            if (groupInfo == null) {
-                throw new IllegalStateException("Item group cannot be NULL");
+    protected boolean isGroupsValid() {
+        return groupsValid && hasGroups() && itemGroups.size() == datasource.size();
+    }
+
+    /**
+     * Updates the groups after the datasource collection has been changed. Added, removed and updated items are
+     * regrouped individually, other changes cause the full regrouping on the next {@link #groupBy} call.
+     */
+    public void collectionChanged(CollectionDatasource.Operation operation, List<T> items) {
+        if (!groupsValid || !hasGroups()) {
+            return;
+        }
+
+        switch (operation) {
+            case ADD:
+                for (T item : items) {
+                    removeFromGroups(item.getId());
+                    addToGroups(item, isFirstItem(item.getId()));
+                }
+                break;
+            case REMOVE:
+                for (T item : items) {
+                    removeFromGroups(item.getId());
+                }
+                break;
+            case UPDATE:
+                for (T item : items) {
+                    regroupItem(item);
+                }
+                break;
+            default:
+                groupsValid = false;
+        }
+    }
+
+    /**
+     * @return true if the changed property of the item affects a grouping property and the item now belongs to
+     * another group
+     */
+    public boolean isRegroupRequired(T item, String property) {
+        if (!groupsValid || !hasGroups()) {
+            return false;
+        }
+
+        for (Object groupProperty : groupProperties) {
+            if (isPropertyPathAffected((MetaPropertyPath) groupProperty, property)) {
+                GroupInfo group = itemGroups.get(item.getId());
+                // the item is checked against the full paths of all grouping properties
+                return group != null && !isItemInGroup(item, group);
             }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the value of the property path can change when the given property changes, e.g.
+     * {@code customer.name} is affected by changes of {@code customer} and {@code customer.name}
+     */
+    protected boolean isPropertyPathAffected(MetaPropertyPath propertyPath, String property) {
+        String path = propertyPath.toString();
+        return path.equals(property) || path.startsWith(property + ".") || property.startsWith(path + ".");
+    }
+
+    protected boolean isFirstItem(K itemId) {
+        Collection<K> itemIds = datasource.getItemIds();
+        return itemIds.size() > 1 && itemId.equals(itemIds.iterator().next());
+    }
 
-            List<K> itemsIds = groupItems.get(groupInfo);
-            if (itemsIds == null) {
-                itemsIds = new ArrayList<>();
-                groupItems.put(groupInfo, itemsIds);
+    protected void regroupItem(T item) {
+        GroupInfo group = itemGroups.get(item.getId());
+        if (group == null || !isItemInGroup(item, group)) {
+            removeFromGroups(item.getId());
+            addToGroups(item, false);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected boolean isItemInGroup(T item, GroupInfo group) {
+        for (Object property : groupProperties) {
+            Object itemValue = getValueByProperty(item, (MetaPropertyPath) property);
+            if (!getGroupValueKey(itemValue).equals(getGroupValueKey(group.getPropertyValue(property)))) {
+                return false;
             }
-            itemsIds.add(id);
         }
+        return true;
     }
 
-    protected GroupInfo<MetaPropertyPath> groupItems(int propertyIndex, GroupInfo parent, List<GroupInfo> children,
-                                                     T item, final LinkedMap groupValues) {
-        final MetaPropertyPath property = (MetaPropertyPath) groupProperties[propertyIndex++];
-        Object itemValue = getValueByProperty(item, property);
-        groupValues.put(property, itemValue);
+    /**
+     * Returns the key of a grouping value. Groups are compared by the string form of their values, see
+     * {@link GroupInfo#equals(Object)}.
+     */
+    protected String getGroupValueKey(Object value) {
+        return value != null ? value.toString() : "";
+    }
+
+    @SuppressWarnings("unchecked")
+    protected void addToGroups(T item, boolean first) {
+        GroupInfo parent = null;
+        List<GroupInfo> siblings = roots;
+        for (Object groupProperty : groupProperties) {
+            MetaPropertyPath property = (MetaPropertyPath) groupProperty;
+            Object itemValue = getValueByProperty(item, property);
+            String valueKey = getGroupValueKey(itemValue);
+
+            Map<String, GroupInfo> siblingsByValue = groupsByValue.computeIfAbsent(parent, k -> new HashMap<>());
+            GroupInfo<MetaPropertyPath> groupInfo = siblingsByValue.get(valueKey);
+            if (groupInfo == null) {
+                LinkedMap groupValues = new LinkedMap();
+                if (parent != null) {
+                    for (Object parentProperty : groupProperties) {
+                        if (parentProperty == property) {
+                            break;
+                        }
+                        groupValues.put(parentProperty, parent.getPropertyValue(parentProperty));
+                    }
+                }
+                groupValues.put(property, itemValue);
+
+                groupInfo = new GroupInfo<>(groupValues);
+                siblingsByValue.put(valueKey, groupInfo);
+                parents.put(groupInfo, parent);
+                children.put(groupInfo, new ArrayList<>());
+                insertGroup(siblings, groupInfo, property, first);
+            }
+            groupItemsCounts.merge(groupInfo, 1, Integer::sum);
+
+            parent = groupInfo;
+            siblings = children.get(groupInfo);
+        }
 
-        GroupInfo<MetaPropertyPath> groupInfo = new GroupInfo<>(groupValues);
-        itemGroups.put(item.getId(), groupInfo);
+        List<K> itemIds = groupItems.computeIfAbsent(parent, k -> new ArrayList<>());
+        insertItem(itemIds, item.getId(), first);
+        itemGroups.put(item.getId(), parent);
+    }
 
-        if (!parents.containsKey(groupInfo)) {
-            parents.put(groupInfo, parent);
+    /**
+     * Adds a new group to its siblings. If the siblings are sorted by the grouping property, the group is inserted
+     * according to the sort order.
+     */
+    protected void insertGroup(List<GroupInfo> siblings, GroupInfo group, MetaPropertyPath property, boolean first) {
+        CollectionDatasource.Sortable.SortInfo<MetaPropertyPath> sortInfo = getIncrementalSortInfo();
+        if (sortInfo != null && sortInfo.getPropertyPath().equals(property)) {
+            GroupInfoComparator comparator = new GroupInfoComparator(isAscending(sortInfo));
+            siblings.add(getInsertionIndex(siblings, group, comparator), group);
+        } else if (first) {
+            siblings.add(0, group);
+        } else {
+            siblings.add(group);
         }
+    }
+
+    /**
+     * Adds an item to its group. If the items are sorted, the item is inserted according to the sort order.
+     */
+    protected void insertItem(List<K> itemIds, K itemId, boolean first) {
+        CollectionDatasource.Sortable.SortInfo<MetaPropertyPath> sortInfo = getIncrementalSortInfo();
+        if (sortInfo != null && !ArrayUtils.contains(groupProperties, sortInfo.getPropertyPath())) {
+            EntityByIdComparator<T, K> comparator =
+                    new EntityByIdComparator<>(sortInfo.getPropertyPath(), datasource, isAscending(sortInfo));
+            itemIds.add(getInsertionIndex(itemIds, itemId, comparator), itemId);
+        } else if (first) {
+            itemIds.add(0, itemId);
+        } else {
+            itemIds.add(itemId);
+        }
+    }
+
+    /**
+     * @return the sorting to keep when a single item is regrouped, or null if there is no sorting or the groups are
+     * being built from scratch and are sorted afterwards
+     */
+    protected CollectionDatasource.Sortable.SortInfo<MetaPropertyPath> getIncrementalSortInfo() {
+        return groupsValid && !ArrayUtils.isEmpty(sortInfos) ? sortInfos[0] : null;
+    }
 
-        if (!children.contains(groupInfo)) {
-            children.add(groupInfo);
+    protected boolean isAscending(CollectionDatasource.Sortable.SortInfo<MetaPropertyPath> sortInfo) {
+        return CollectionDatasource.Sortable.Order.ASC.equals(sortInfo.getOrder());
+    }
+
+    /**
+     * @return index after all elements that are not greater than the given one, which is the position a stable
+     * sort of the list would give to the element added to the end
+     */
+    protected <E> int getInsertionIndex(List<E> list, E element, Comparator<? super E> comparator) {
+        int low = 0;
+        int high = list.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.compare(list.get(mid), element) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
         }
+        return low;
+    }
 
-        List<GroupInfo> groupChildren = this.children.get(groupInfo);
-        if (groupChildren == null) {
-            groupChildren = new ArrayList<>();
-            this.children.put(groupInfo, groupChildren);
+    protected void removeFromGroups(K itemId) {
+        GroupInfo group = itemGroups.remove(itemId);
+        if (group == null) {
+            return;
         }
 
-        if (propertyIndex < groupProperties.length) {
-            groupInfo = groupItems(propertyIndex, groupInfo, groupChildren, item, groupValues);
+        List<K> itemIds = groupItems.get(group);
+        itemIds.remove(itemId);
+        if (itemIds.isEmpty()) {
+            groupItems.remove(group);
         }
 
-        return groupInfo;
+        while (group != null) {
+            GroupInfo parent = parents.get(group);
+            int count = groupItemsCounts.merge(group, -1, Integer::sum);
+            if (count == 0) {
+                groupItemsCounts.remove(group);
+                parents.remove(group);
+                children.remove(group);
+                groupsByValue.remove(group);
+                groupsByValue.get(parent).remove(getGroupValueKey(group.getValue()));
+                if (parent == null) {
+                    roots.remove(group);
+                } else {
+                    children.get(parent).remove(group);
+                }
+            }
+            group = parent;
+        }
     }
 
     protected abstract void doSort(CollectionDatasource.Sortable.SortInfo<MetaPropertyPath>[] sortInfo);
 
     protected void doGroupSort(CollectionDatasource.Sortable.SortInfo<MetaPropertyPath>[] sortInfo) {
+        this.sortInfos = sortInfo;
         if (hasGroups()) {
             final MetaPropertyPath propertyPath = sortInfo[0].getPropertyPath();
             final boolean asc = CollectionDatasource.Sortable.Order.ASC.equals(sortInfo[0].getOrder());
@@ -225,17 +431,8 @@ public abstract class GroupDelegate<T extends Entity<K>, K> {
 
     public int getGroupItemsCount(GroupInfo groupId) {
         if (containsGroup(groupId)) {
-            List<K> itemIds;
-            if ((itemIds = groupItems.get(groupId)) == null) {
-                int count = 0;
-                final List<GroupInfo> children = getChildren(groupId);
-                for (final GroupInfo child : children) {
-                    count += getGroupItemsCount(child);
-                }
-                return count;
-            } else {
-                return itemIds.size();
-            }
+            Integer count = groupItemsCounts.get(groupId);
+            return count != null ? count : 0;
         }
         return 0;
     }
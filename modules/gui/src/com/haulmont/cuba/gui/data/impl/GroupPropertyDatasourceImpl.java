@@ -22,6 +22,7 @@ import com.haulmont.cuba.gui.data.GroupDatasource;
 import com.haulmont.cuba.gui.data.GroupInfo;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 public class GroupPropertyDatasourceImpl<T extends Entity<K>, K>
@@ -35,11 +36,25 @@ public class GroupPropertyDatasourceImpl<T extends Entity<K>, K>
         }
     };
 
+    public GroupPropertyDatasourceImpl() {
+        addItemPropertyChangeListener(e -> {
+            if (groupDelegate.isRegroupRequired(e.getItem(), e.getProperty())) {
+                fireCollectionChanged(Operation.UPDATE, Collections.singletonList(e.getItem()));
+            }
+        });
+    }
+
     @Override
     public void groupBy(Object[] properties) {
         groupDelegate.groupBy(properties, sortInfos);
     }
 
+    @Override
+    protected void fireCollectionChanged(Operation operation, List<T> items) {
+        groupDelegate.collectionChanged(operation, items);
+        super.fireCollectionChanged(operation, items);
+    }
+
     @Override
     protected void doSort() {
         if (hasGroups()) {
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.data.impl;
+
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.Security;
+import com.haulmont.cuba.gui.components.AggregationInfo;
+import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.logging.UIPerformanceLogger;
+import com.haulmont.cuba.security.entity.EntityOp;
+import org.apache.log4j.Logger;
+import org.perf4j.StopWatch;
+import org.perf4j.log4j.Log4JStopWatch;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * {@link CollectionDatasource} that does not load the whole query result. It loads the total number of records by
+ * a count query and then loads windows of {@link #getWindowSize()} records on demand, when the items are requested
+ * by index. Only {@link #getMaxWindows()} recently used windows are kept in memory, so a table connected to
+ * the datasource browses any number of records without paging.
+ * <p>
+ * Methods accepting an item id, e.g. {@link #getItem(Object)} or {@link #indexOfId(Object)}, work only with the loaded
+ * windows. The selected and modified items are never evicted. Added and removed items are reflected in the windows
+ * after the changes are committed.
+ * <p>
+ * Use it in a screen descriptor as follows:
+ * <pre>
+ * &lt;collectionDatasource id="ordersDs" class="com.sample.Order" view="_local"
+ *                       datasourceClass="com.haulmont.cuba.gui.data.impl.LazyCollectionDatasourceImpl"&gt;
+ * </pre>
+ *
+ * @param <T> type of entity
+ * @param <K> type of entity ID
+ */
+public class LazyCollectionDatasourceImpl<T extends Entity<K>, K>
+        extends CollectionDatasourceImpl<T, K>
+        implements CollectionDatasource.Lazy<T, K> {
+
+    protected int windowSize = 100;
+
+    protected int maxWindows = 10;
+
+    // total number of records, -1 if it should be loaded by a count query
+    protected int count = -1;
+
+    protected Map<Integer, List<T>> windows = new LinkedHashMap<Integer, List<T>>(16, 0.75f, true) {
+        private static final long serialVersionUID = -3606612413318929741L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+            if (size() > maxWindows) {
+                releaseWindow(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public LazyCollectionDatasourceImpl() {
+        // the items are never loaded all together, so they can be sorted only by the query
+        sortOnDb = true;
+    }
+
+    /**
+     * @return number of records loaded by a single query
+     */
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("Window size must be positive");
+        }
+        this.windowSize = windowSize;
+        invalidateWindows();
+    }
+
+    /**
+     * @return max number of windows kept in memory
+     */
+    public int getMaxWindows() {
+        return maxWindows;
+    }
+
+    public void setMaxWindows(int maxWindows) {
+        if (maxWindows <= 0) {
+            throw new IllegalArgumentException("Max windows must be positive");
+        }
+        this.maxWindows = maxWindows;
+        invalidateWindows();
+    }
+
+    @Override
+    public boolean isCompletelyLoaded() {
+        int size = size();
+        return windows.size() >= (size + windowSize - 1) / windowSize;
+    }
+
+    @Override
+    public int size() {
+        backgroundWorker.checkUIAccess();
+
+        if ((state == State.NOT_INITIALIZED) || suspended) {
+            return 0;
+        }
+        if (count < 0) {
+            count = getCount();
+        }
+        return count;
+    }
+
+    @Override
+    public Collection<K> getItemIds() {
+        backgroundWorker.checkUIAccess();
+
+        if (state == State.NOT_INITIALIZED) {
+            return Collections.emptyList();
+        }
+        return new AbstractList<K>() {
+            @Override
+            public K get(int index) {
+                return getIdByIndex(index);
+            }
+
+            @Override
+            public int size() {
+                return LazyCollectionDatasourceImpl.this.size();
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public boolean contains(Object o) {
+                return containsItem((K) o);
+            }
+        };
+    }
+
+    @Override
+    public Collection<T> getItems() {
+        backgroundWorker.checkUIAccess();
+
+        if (state == State.NOT_INITIALIZED) {
+            return Collections.emptyList();
+        }
+        return new AbstractList<T>() {
+            @Override
+            public T get(int index) {
+                return getItemByIndex(index);
+            }
+
+            @Override
+            public int size() {
+                return LazyCollectionDatasourceImpl.this.size();
+            }
+        };
+    }
+
+    @Override
+    public int indexOfId(Object itemId) {
+        for (Map.Entry<Integer, List<T>> entry : windows.entrySet()) {
+            List<T> window = entry.getValue();
+            for (int i = 0; i < window.size(); i++) {
+                if (window.get(i).getId().equals(itemId)) {
+                    return entry.getKey() * windowSize + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public K getIdByIndex(int index) {
+        T item = getItemByIndex(index);
+        return item != null ? item.getId() : null;
+    }
+
+    @Override
+    public List<K> getItemIds(int startIndex, int numberOfItems) {
+        int endIndex = Math.min(startIndex + numberOfItems, size());
+        List<K> ids = new ArrayList<>(Math.max(endIndex - startIndex, 0));
+        for (int i = startIndex; i < endIndex; i++) {
+            K id = getIdByIndex(i);
+            if (id == null) {
+                break;
+            }
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Override
+    public K firstItemId() {
+        return getIdByIndex(0);
+    }
+
+    @Override
+    public K lastItemId() {
+        return getIdByIndex(size() - 1);
+    }
+
+    @Override
+    public K nextItemId(K itemId) {
+        int index = indexOfId(itemId);
+        return index >= 0 ? getIdByIndex(index + 1) : null;
+    }
+
+    @Override
+    public K prevItemId(K itemId) {
+        int index = indexOfId(itemId);
+        return index > 0 ? getIdByIndex(index - 1) : null;
+    }
+
+    /**
+     * @return item at the given position of the query result, loading its window if needed, or null if the index
+     * is out of range
+     */
+    protected T getItemByIndex(int index) {
+        if (index < 0 || index >= size()) {
+            return null;
+        }
+        List<T> window = getWindow(index / windowSize);
+        int windowIndex = index % windowSize;
+        // the window can be shorter if records have been deleted after the count query
+        return windowIndex < window.size() ? window.get(windowIndex) : null;
+    }
+
+    protected List<T> getWindow(int windowNumber) {
+        List<T> window = windows.get(windowNumber);
+        if (window == null) {
+            window = loadWindow(windowNumber);
+            if (window == null) {
+                return Collections.emptyList();
+            }
+            windows.put(windowNumber, window);
+        }
+        return window;
+    }
+
+    /**
+     * @return loaded window or null if the query can not be created
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    protected List<T> loadWindow(int windowNumber) {
+        String tag = getLoggingTag("LazyCDS");
+        StopWatch sw = new Log4JStopWatch(tag, Logger.getLogger(UIPerformanceLogger.class));
+
+        LoadContext context = createWindowLoadContext(windowNumber);
+        if (context == null) {
+            sw.stop();
+            return null;
+        }
+
+        List<T> entities = dataSupplier.loadList(context);
+        List<T> window = new ArrayList<>(entities.size());
+        for (T entity : entities) {
+            // keep the instance that can be selected or modified in the screen
+            T existing = (T) data.get(entity.getId());
+            if (existing != null) {
+                window.add(existing);
+            } else {
+                data.put(entity.getId(), entity);
+                attachListener(entity);
+                window.add(entity);
+            }
+        }
+        lastQuery = context.getQuery();
+
+        sw.stop();
+        return window;
+    }
+
+    /**
+     * Creates the load context of a window like {@link #beforeLoadData(Map)}, but keeps the loaded items if the query
+     * can not be created, since they include the selected and modified ones.
+     *
+     * @return load context or null if the query can not be created, e.g. a required parameter is missing
+     */
+    @Nullable
+    protected LoadContext createWindowLoadContext(int windowNumber) {
+        LoadContext context = new LoadContext(metaClass);
+        LoadContext.Query query = (LoadContext.Query) createDataQuery(context,
+                savedParameters == null ? Collections.emptyMap() : savedParameters);
+        if (query == null) {
+            return null;
+        }
+
+        if (sortInfos != null && sortOnDb) {
+            setSortDirection(query);
+        }
+        query.setFirstResult(windowNumber * windowSize);
+        query.setMaxResults(windowSize);
+
+        context.setView(view);
+        context.setSoftDeletion(isSoftDeletion());
+
+        prepareLoadContext(context);
+        return context;
+    }
+
+    protected void releaseWindow(List<T> window) {
+        for (T entity : window) {
+            if (!isPinned(entity)) {
+                data.remove(entity.getId());
+                detachListener(entity);
+            }
+        }
+    }
+
+    protected boolean isPinned(T entity) {
+        return entity.equals(item) || itemsToUpdate.contains(entity) || itemsToCreate.contains(entity);
+    }
+
+    /**
+     * Drops the loaded windows and the count, so they are loaded again from the current query when requested.
+     */
+    protected void invalidateWindows() {
+        for (List<T> window : windows.values()) {
+            releaseWindow(window);
+        }
+        windows.clear();
+        count = -1;
+    }
+
+    @Override
+    protected void loadData(Map<String, Object> params) {
+        detachListener(data.values());
+        data.clear();
+        windows.clear();
+        count = 0;
+
+        Security security = AppBeans.get(Security.NAME);
+        if (!security.isEntityOpPermitted(metaClass, EntityOp.READ)) {
+            return;
+        }
+
+        if (needLoading()) {
+            dataLoadError = null;
+            count = getCount();
+            if (dataLoadError == null && count > 0) {
+                try {
+                    getWindow(0);
+                } catch (Throwable e) {
+                    dataLoadError = e;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void sort(SortInfo[] sortInfos) {
+        if (sortInfos.length != 1)
+            throw new UnsupportedOperationException("Supporting sort by one field only");
+
+        if (!Arrays.equals(this.sortInfos, sortInfos)) {
+            //noinspection unchecked
+            this.sortInfos = sortInfos;
+            if (size() > 0) {
+                refresh();
+            }
+        }
+    }
+
+    @Override
+    protected void doSort() {
+        // the windows are loaded sorted by the query
+    }
+
+    @Override
+    protected boolean containsAllDataFromDb() {
+        return isCompletelyLoaded();
+    }
+
+    @Override
+    protected void internalAddItem(T item, Runnable addToData) {
+        super.internalAddItem(item, () -> {
+            invalidateWindows();
+            addToData.run();
+        });
+    }
+
+    @Override
+    protected void internalIncludeItem(T item, Runnable addToData) {
+        super.internalIncludeItem(item, () -> {
+            invalidateWindows();
+            addToData.run();
+        });
+    }
+
+    @Override
+    public void removeItem(T item) {
+        invalidateWindows();
+        super.removeItem(item);
+    }
+
+    @Override
+    public void excludeItem(T item) {
+        invalidateWindows();
+        super.excludeItem(item);
+    }
+
+    @Override
+    public void clear() {
+        windows.clear();
+        count = 0;
+        super.clear();
+    }
+
+    @Override
+    public void updateItem(T item) {
+        for (List<T> window : windows.values()) {
+            int index = window.indexOf(item);
+            if (index >= 0) {
+                window.set(index, item);
+            }
+        }
+        super.updateItem(item);
+    }
+
+    @Override
+    public void committed(Set<Entity> entities) {
+        if (!State.VALID.equals(state)) {
+            return;
+        }
+
+        super.committed(entities);
+
+        // committed creations and deletions change the query result
+        invalidateWindows();
+        fireCollectionChanged(Operation.REFRESH, Collections.emptyList());
+    }
+
+    @Override
+    protected boolean isAggregationOnDbRequired(AggregationInfo[] aggregationInfos, Collection itemIds) {
+        // aggregation in memory would load all the windows
+        return aggregateOnDb && aggregationInfos != null && aggregationInfos.length > 0
+                && itemIds != null && itemIds.size() == size() && !isCompletelyLoaded() && prevQueries.isEmpty()
+                && isAggregationOnDbSupported(aggregationInfos);
+    }
+}
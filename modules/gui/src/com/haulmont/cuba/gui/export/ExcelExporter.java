@@ -26,16 +26,30 @@ import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.entity.IdProxy;
 import com.haulmont.cuba.core.entity.annotation.IgnoreUserTimeZone;
 import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.gui.backgroundwork.BackgroundWorkProgressWindow;
 import com.haulmont.cuba.gui.components.*;
 import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.data.DataSupplier;
 import com.haulmont.cuba.gui.data.GroupDatasource;
 import com.haulmont.cuba.gui.data.GroupInfo;
 import com.haulmont.cuba.gui.data.HierarchicalDatasource;
+import com.haulmont.cuba.gui.executors.BackgroundTask;
+import com.haulmont.cuba.gui.executors.TaskLifeCycle;
 import org.apache.commons.lang.BooleanUtils;
 import org.apache.commons.lang.StringUtils;
-import org.apache.poi.hssf.usermodel.*;
+import org.apache.poi.hssf.usermodel.HSSFFont;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormat;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.RichTextString;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.VerticalAlignment;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.dom4j.Element;
 
 import javax.annotation.Nullable;
@@ -44,34 +58,67 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
 
 /**
  * Use this class to export {@link com.haulmont.cuba.gui.components.Table} into Excel format
  * and show using {@link ExportDisplay}.
  * <br>Just create an instance of this class and invoke one of <code>exportTable</code> methods.
+ * <br>Use <code>exportTableInBackground</code> and <code>exportDataGridInBackground</code> methods to export
+ * all rows of a paged datasource: the rows are loaded from the database page by page and written to
+ * a streaming XLSX workbook in a background task.
  */
 public class ExcelExporter {
     protected static final int COL_WIDTH_MAGIC = 48;
 
+    /** Number of rows kept in memory by a streaming XLSX workbook */
+    protected static final int STREAMING_WINDOW_SIZE = 100;
+
+    /** Number of rows loaded from the database at once by the background export */
+    protected static final int BACKGROUND_EXPORT_PAGE_SIZE = 1000;
+
+    protected static final long BACKGROUND_EXPORT_TIMEOUT_SEC = 3600;
+
     private static final int SPACE_COUNT = 10;
 
+    protected final ExportFormat exportFormat;
+
+    protected Workbook workbook;
+
+    protected Font workbookBoldFont;
+
+    private Font stdFont;
+
+    protected Sheet workbookSheet;
+
+    /**
+     * @deprecated use {@link #workbook}, this field is set only for {@link ExportFormat#XLS}
+     */
+    @Deprecated
     protected HSSFWorkbook wb;
 
+    /**
+     * @deprecated use {@link #workbookBoldFont}, this field is set only for {@link ExportFormat#XLS}
+     */
+    @Deprecated
     protected HSSFFont boldFont;
 
-    private HSSFFont stdFont;
-
+    /**
+     * @deprecated use {@link #workbookSheet}, this field is set only for {@link ExportFormat#XLS}
+     */
+    @Deprecated
     protected HSSFSheet sheet;
 
-    private HSSFCellStyle timeFormatCellStyle;
+    private CellStyle timeFormatCellStyle;
 
-    private HSSFCellStyle dateFormatCellStyle;
+    private CellStyle dateFormatCellStyle;
 
-    private HSSFCellStyle dateTimeFormatCellStyle;
+    private CellStyle dateTimeFormatCellStyle;
 
-    private HSSFCellStyle integerFormatCellStyle;
+    private CellStyle integerFormatCellStyle;
 
-    private HSSFCellStyle doubleFormatCellStyle;
+    private CellStyle doubleFormatCellStyle;
 
     protected ExcelAutoColumnSizer[] sizers;
 
@@ -85,15 +132,30 @@ public class ExcelExporter {
 
     private final TimeZones timeZones;
 
+    private final MetadataTools metadataTools;
+
     public enum ExportMode {
         SELECTED_ROWS,
         ALL_ROWS
     }
 
     public ExcelExporter() {
+        this(ExportFormat.XLS);
+    }
+
+    /**
+     * @param exportFormat {@link ExportFormat#XLS} or {@link ExportFormat#XLSX}
+     */
+    public ExcelExporter(ExportFormat exportFormat) {
+        if (exportFormat != ExportFormat.XLS && exportFormat != ExportFormat.XLSX) {
+            throw new IllegalArgumentException("Unsupported export format: " + exportFormat.getFileExt());
+        }
+        this.exportFormat = exportFormat;
+
         messages = AppBeans.get(Messages.NAME);
         userSessionSource = AppBeans.get(UserSessionSource.NAME);
         timeZones = AppBeans.get(TimeZones.NAME);
+        metadataTools = AppBeans.get(MetadataTools.NAME);
 
         trueStr = messages.getMessage(getClass(), "excelExporter.true");
         falseStr = messages.getMessage(getClass(), "excelExporter.false");
@@ -108,14 +170,27 @@ public class ExcelExporter {
     }
 
     protected void createWorkbookWithSheet() {
-        wb = new HSSFWorkbook();
-        sheet = wb.createSheet("Export");
+        if (exportFormat == ExportFormat.XLSX) {
+            workbook = new SXSSFWorkbook(STREAMING_WINDOW_SIZE);
+        } else {
+            workbook = new HSSFWorkbook();
+        }
+        workbookSheet = workbook.createSheet("Export");
+
+        if (workbook instanceof HSSFWorkbook) {
+            wb = (HSSFWorkbook) workbook;
+            sheet = (HSSFSheet) workbookSheet;
+        }
     }
 
     protected void createFonts() {
-        stdFont = wb.createFont();
-        boldFont = wb.createFont();
-        boldFont.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
+        stdFont = workbook.createFont();
+        workbookBoldFont = workbook.createFont();
+        workbookBoldFont.setBold(true);
+
+        if (workbookBoldFont instanceof HSSFFont) {
+            boldFont = (HSSFFont) workbookBoldFont;
+        }
     }
 
     protected void createAutoColumnSizers(int count) {
@@ -146,54 +221,10 @@ public class ExcelExporter {
         createFonts();
         createFormats();
 
-        int r = 0;
-        if (filterDescription != null) {
-            for (r = 0; r < filterDescription.size(); r++) {
-                String line = filterDescription.get(r);
-                HSSFRow row = sheet.createRow(r);
-                if (r == 0) {
-                    HSSFRichTextString richTextFilterName = new HSSFRichTextString(line);
-                    richTextFilterName.applyFont(boldFont);
-                    row.createCell(0).setCellValue(richTextFilterName);
-                } else {
-                    row.createCell(0).setCellValue(line);
-                }
-            }
-            r++;
-        }
-        HSSFRow row = sheet.createRow(r);
-        createAutoColumnSizers(columns.size());
-
-        float maxHeight = sheet.getDefaultRowHeightInPoints();
-
-        CellStyle headerCellStyle = wb.createCellStyle();
-        headerCellStyle.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
-        for (Table.Column column : columns) {
-            String caption = column.getCaption();
-
-            int countOfReturnSymbols = StringUtils.countMatches(caption, "\n");
-            if (countOfReturnSymbols > 0) {
-                maxHeight = Math.max(maxHeight, (countOfReturnSymbols + 1) * sheet.getDefaultRowHeightInPoints());
-                headerCellStyle.setWrapText(true);
-            }
-        }
-        row.setHeightInPoints(maxHeight);
-
-        for (int c = 0; c < columns.size(); c++) {
-            Table.Column column = columns.get(c);
-            String caption = column.getCaption();
-
-            HSSFCell cell = row.createCell(c);
-            HSSFRichTextString richTextString = new HSSFRichTextString(caption);
-            richTextString.applyFont(boldFont);
-            cell.setCellValue(richTextString);
-
-            ExcelAutoColumnSizer sizer = new ExcelAutoColumnSizer();
-            sizer.notifyCellValue(caption, boldFont);
-            sizers[c] = sizer;
-
-            cell.setCellStyle(headerCellStyle);
-        }
+        List<String> captions = columns.stream()
+                .map(Table.Column::getCaption)
+                .collect(Collectors.toList());
+        int r = createHeader(captions, filterDescription);
 
         CollectionDatasource datasource = table.getDatasource();
         if (exportMode == ExportMode.SELECTED_ROWS && table.getSelected().size() > 0) {
@@ -230,21 +261,79 @@ public class ExcelExporter {
         }
 
         for (int c = 0; c < columns.size(); c++) {
-            sheet.setColumnWidth(c, sizers[c].getWidth() * COL_WIDTH_MAGIC);
+            workbookSheet.setColumnWidth(c, sizers[c].getWidth() * COL_WIDTH_MAGIC);
         }
 
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            wb.write(out);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        byte[] bytes = writeWorkbook();
         if (fileName == null) {
             MessageTools messageTools = AppBeans.get(MessageTools.NAME);
             fileName = messageTools.getEntityCaption(datasource.getMetaClass());
         }
 
-        display.show(new ByteArrayDataProvider(out.toByteArray()), fileName + ".xls", ExportFormat.XLS);
+        display.show(new ByteArrayDataProvider(bytes), fileName + "." + exportFormat.getFileExt(), exportFormat);
+    }
+
+    /**
+     * Exports all rows of the table in a background task showing the progress. The rows are loaded from the database
+     * page by page using the current query of the datasource, including the rows that are not loaded to the
+     * datasource because of paging. The file is shown using {@link ExportDisplay} when the task is done.
+     * <br>Use the exporter created for {@link ExportFormat#XLSX} to keep only a window of the rows in memory.
+     * <br>Only the columns of entity attributes without printables and formatters can be exported, since the rows
+     * are written outside of the UI thread, see {@link #isBackgroundExportSupported(Table, List)}.
+     */
+    public void exportTableInBackground(Table<Entity> table, List<Table.Column> columns, ExportDisplay display,
+                                        @Nullable List<String> filterDescription, @Nullable String fileName) {
+        if (display == null) {
+            throw new IllegalArgumentException("ExportDisplay is null");
+        }
+        if (!isBackgroundExportSupported(table, columns)) {
+            throw new IllegalArgumentException("Table columns with printables or formatters can not be exported in background");
+        }
+
+        List<MetaPropertyPath> propertyPaths = new ArrayList<>(columns.size());
+        List<String> valuePaths = new ArrayList<>(columns.size());
+        for (Table.Column column : columns) {
+            MetaPropertyPath propertyPath = (MetaPropertyPath) column.getId();
+            propertyPaths.add(propertyPath);
+
+            Element xmlDescriptor = column.getXmlDescriptor();
+            if (xmlDescriptor != null && StringUtils.isNotEmpty(xmlDescriptor.attributeValue("captionProperty"))) {
+                valuePaths.add(xmlDescriptor.attributeValue("captionProperty"));
+            } else {
+                valuePaths.add(propertyPath.toString());
+            }
+        }
+
+        createWorkbookWithSheet();
+        createFonts();
+        createFormats();
+
+        List<String> captions = columns.stream()
+                .map(Table.Column::getCaption)
+                .collect(Collectors.toList());
+        int r = createHeader(captions, filterDescription);
+
+        CollectionDatasource datasource = table.getDatasource();
+        if (table.isAggregatable()) {
+            r = createAggregatableRow(table, columns, ++r, 1, datasource);
+        }
+
+        exportInBackground(table.getFrame(), datasource, r, columns.size(), display, fileName,
+                (item, rowNumber) -> createPropertyRow(propertyPaths, valuePaths, rowNumber, item));
+    }
+
+    /**
+     * @return true if all the columns show entity attributes and don't have printables and formatters, which may
+     * work only in the UI thread
+     */
+    public boolean isBackgroundExportSupported(Table table, List<Table.Column> columns) {
+        for (Table.Column column : columns) {
+            if (!(column.getId() instanceof MetaPropertyPath)
+                    || table.getPrintable(column) != null || column.getFormatter() != null) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public void exportDataGrid(DataGrid dataGrid, ExportDisplay display) {
@@ -276,14 +365,199 @@ public class ExcelExporter {
         createFonts();
         createFormats();
 
+        List<String> captions = columns.stream()
+                .map(DataGrid.Column::getCaption)
+                .collect(Collectors.toList());
+        int r = createHeader(captions, filterDescription);
+
+        CollectionDatasource datasource = dataGrid.getDatasource();
+        if (exportMode == ExportMode.SELECTED_ROWS && dataGrid.getSelected().size() > 0) {
+            for (Entity item : dataGrid.getSelected()) {
+                createDataGridRow(dataGrid, columns, 0, ++r, item.getId());
+            }
+        } else {
+            for (Object itemId : datasource.getItemIds()) {
+                createDataGridRow(dataGrid, columns, 0, ++r, itemId);
+            }
+        }
+
+        for (int c = 0; c < columns.size(); c++) {
+            workbookSheet.setColumnWidth(c, sizers[c].getWidth() * COL_WIDTH_MAGIC);
+        }
+
+        byte[] bytes = writeWorkbook();
+        if (fileName == null) {
+            MessageTools messageTools = AppBeans.get(MessageTools.NAME);
+            fileName = messageTools.getEntityCaption(datasource.getMetaClass());
+        }
+
+        display.show(new ByteArrayDataProvider(bytes), fileName + "." + exportFormat.getFileExt(), exportFormat);
+    }
+
+    /**
+     * Exports all rows of the data grid in a background task showing the progress. The rows are loaded from
+     * the database page by page using the current query of the datasource, including the rows that are not loaded to
+     * the datasource because of paging. The file is shown using {@link ExportDisplay} when the task is done.
+     * <br>Use the exporter created for {@link ExportFormat#XLSX} to keep only a window of the rows in memory.
+     * <br>Only the columns of entity attributes without formatters can be exported, since the rows are written
+     * outside of the UI thread, see {@link #isBackgroundExportSupported(DataGrid, List)}.
+     */
+    public void exportDataGridInBackground(DataGrid<Entity> dataGrid, List<DataGrid.Column> columns,
+                                           ExportDisplay display, @Nullable List<String> filterDescription,
+                                           @Nullable String fileName) {
+        if (display == null) {
+            throw new IllegalArgumentException("ExportDisplay is null");
+        }
+        if (!isBackgroundExportSupported(dataGrid, columns)) {
+            throw new IllegalArgumentException("Generated data grid columns and columns with formatters " +
+                    "can not be exported in background");
+        }
+
+        List<MetaPropertyPath> propertyPaths = new ArrayList<>(columns.size());
+        List<String> valuePaths = new ArrayList<>(columns.size());
+        for (DataGrid.Column column : columns) {
+            propertyPaths.add(column.getPropertyPath());
+            valuePaths.add(column.getPropertyPath().toString());
+        }
+
+        createWorkbookWithSheet();
+        createFonts();
+        createFormats();
+
+        List<String> captions = columns.stream()
+                .map(DataGrid.Column::getCaption)
+                .collect(Collectors.toList());
+        int r = createHeader(captions, filterDescription);
+
+        exportInBackground(dataGrid.getFrame(), dataGrid.getDatasource(), r, columns.size(), display, fileName,
+                (item, rowNumber) -> createPropertyRow(propertyPaths, valuePaths, rowNumber, item));
+    }
+
+    /**
+     * @return true if all the columns show entity attributes and don't have formatters, which may work only in
+     * the UI thread
+     */
+    public boolean isBackgroundExportSupported(DataGrid dataGrid, List<DataGrid.Column> columns) {
+        for (DataGrid.Column column : columns) {
+            if (column.getPropertyPath() == null || column.getFormatter() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected void exportInBackground(Frame frame, CollectionDatasource datasource, int lastRowNumber,
+                                      int columnsCount, ExportDisplay display, @Nullable String fileName,
+                                      ObjIntConsumer<Entity> rowWriter) {
+        LoadContext loadContext = createBackgroundExportLoadContext(datasource);
+        DataSupplier dataSupplier = datasource.getDataSupplier();
+        int total = datasource instanceof CollectionDatasource.SupportsPaging ?
+                ((CollectionDatasource.SupportsPaging) datasource).getCount() : datasource.size();
+
+        String exportFileName;
+        if (fileName == null) {
+            MessageTools messageTools = AppBeans.get(MessageTools.NAME);
+            exportFileName = messageTools.getEntityCaption(datasource.getMetaClass());
+        } else {
+            exportFileName = fileName;
+        }
+
+        BackgroundTask<Integer, byte[]> task = new BackgroundTask<Integer, byte[]>(BACKGROUND_EXPORT_TIMEOUT_SEC, frame) {
+            @Override
+            public byte[] run(TaskLifeCycle<Integer> taskLifeCycle) throws Exception {
+                try {
+                    int rowNumber = lastRowNumber;
+                    if (loadContext.getQuery() != null) {
+                        int count = 0;
+                        List<Entity> items;
+                        do {
+                            loadContext.getQuery().setFirstResult(count);
+                            //noinspection unchecked
+                            items = dataSupplier.loadList(loadContext);
+                            for (Entity item : items) {
+                                if (taskLifeCycle.isInterrupted()) {
+                                    disposeWorkbook();
+                                    return null;
+                                }
+                                rowWriter.accept(item, ++rowNumber);
+                            }
+                            count += items.size();
+                            taskLifeCycle.publish(count);
+                        } while (items.size() == BACKGROUND_EXPORT_PAGE_SIZE && !taskLifeCycle.isInterrupted());
+                    }
+
+                    if (taskLifeCycle.isInterrupted()) {
+                        disposeWorkbook();
+                        return null;
+                    }
+                    for (int c = 0; c < columnsCount; c++) {
+                        workbookSheet.setColumnWidth(c, sizers[c].getWidth() * COL_WIDTH_MAGIC);
+                    }
+                } catch (Exception e) {
+                    disposeWorkbook();
+                    throw e;
+                }
+                return writeWorkbook();
+            }
+
+            @Override
+            public void done(byte[] result) {
+                display.show(new ByteArrayDataProvider(result), exportFileName + "." + exportFormat.getFileExt(),
+                        exportFormat);
+            }
+
+            // the working thread disposes the workbook when it is interrupted,
+            // these calls free the temporary files if it is blocked by a query
+
+            @Override
+            public void canceled() {
+                disposeWorkbook();
+            }
+
+            @Override
+            public boolean handleTimeoutException() {
+                disposeWorkbook();
+                return false;
+            }
+        };
+
+        BackgroundWorkProgressWindow.show(task, messages.getMessage(getClass(), "excelExporter.backgroundExport"),
+                null, total, true, true);
+    }
+
+    /**
+     * @return load context of the datasource query that loads a page of {@link #BACKGROUND_EXPORT_PAGE_SIZE} rows
+     */
+    protected LoadContext createBackgroundExportLoadContext(CollectionDatasource datasource) {
+        LoadContext loadContext = datasource.getCompiledLoadContext();
+        LoadContext.Query query = loadContext.getQuery();
+        if (query != null) {
+            // pages of the unordered query may overlap
+            String pkName = metadataTools.getPrimaryKeyName(datasource.getMetaClass());
+            if (pkName != null && !QueryParserRegex.ORDER_BY_PATTERN.matcher(query.getQueryString()).find()) {
+                QueryTransformer transformer = QueryTransformerFactory.createTransformer(query.getQueryString());
+                transformer.replaceOrderBy(false, pkName);
+                query.setQueryString(transformer.getResult());
+            }
+            query.setMaxResults(BACKGROUND_EXPORT_PAGE_SIZE);
+        }
+        return loadContext;
+    }
+
+    /**
+     * Creates filter description rows and the header row with the given column captions.
+     *
+     * @return number of the header row
+     */
+    protected int createHeader(List<String> captions, @Nullable List<String> filterDescription) {
         int r = 0;
         if (filterDescription != null) {
             for (r = 0; r < filterDescription.size(); r++) {
                 String line = filterDescription.get(r);
-                HSSFRow row = sheet.createRow(r);
+                Row row = workbookSheet.createRow(r);
                 if (r == 0) {
-                    HSSFRichTextString richTextFilterName = new HSSFRichTextString(line);
-                    richTextFilterName.applyFont(boldFont);
+                    RichTextString richTextFilterName = createRichTextString(line);
+                    richTextFilterName.applyFont(workbookBoldFont);
                     row.createCell(0).setCellValue(richTextFilterName);
                 } else {
                     row.createCell(0).setCellValue(line);
@@ -291,84 +565,79 @@ public class ExcelExporter {
             }
             r++;
         }
-        HSSFRow row = sheet.createRow(r);
-        createAutoColumnSizers(columns.size());
+        Row row = workbookSheet.createRow(r);
+        createAutoColumnSizers(captions.size());
 
-        float maxHeight = sheet.getDefaultRowHeightInPoints();
+        float maxHeight = workbookSheet.getDefaultRowHeightInPoints();
 
-        CellStyle headerCellStyle = wb.createCellStyle();
+        CellStyle headerCellStyle = workbook.createCellStyle();
         headerCellStyle.setVerticalAlignment(VerticalAlignment.CENTER);
-        for (DataGrid.Column column : columns) {
-            String caption = column.getCaption();
-
+        for (String caption : captions) {
             int countOfReturnSymbols = StringUtils.countMatches(caption, "\n");
             if (countOfReturnSymbols > 0) {
-                maxHeight = Math.max(maxHeight, (countOfReturnSymbols + 1) * sheet.getDefaultRowHeightInPoints());
+                maxHeight = Math.max(maxHeight, (countOfReturnSymbols + 1) * workbookSheet.getDefaultRowHeightInPoints());
                 headerCellStyle.setWrapText(true);
             }
         }
         row.setHeightInPoints(maxHeight);
 
-        for (int c = 0; c < columns.size(); c++) {
-            DataGrid.Column column = columns.get(c);
-            String caption = column.getCaption();
+        for (int c = 0; c < captions.size(); c++) {
+            String caption = captions.get(c);
 
-            HSSFCell cell = row.createCell(c);
-            HSSFRichTextString richTextString = new HSSFRichTextString(caption);
-            richTextString.applyFont(boldFont);
+            Cell cell = row.createCell(c);
+            RichTextString richTextString = createRichTextString(caption);
+            richTextString.applyFont(workbookBoldFont);
             cell.setCellValue(richTextString);
 
             ExcelAutoColumnSizer sizer = new ExcelAutoColumnSizer();
-            sizer.notifyCellValue(caption, boldFont);
+            sizer.notifyCellValue(caption, workbookBoldFont);
             sizers[c] = sizer;
 
             cell.setCellStyle(headerCellStyle);
         }
+        return r;
+    }
 
-        CollectionDatasource datasource = dataGrid.getDatasource();
-        if (exportMode == ExportMode.SELECTED_ROWS && dataGrid.getSelected().size() > 0) {
-            for (Entity item : dataGrid.getSelected()) {
-                createDataGridRow(dataGrid, columns, 0, ++r, item.getId());
-            }
-        } else {
-            for (Object itemId : datasource.getItemIds()) {
-                createDataGridRow(dataGrid, columns, 0, ++r, itemId);
-            }
-        }
-
-        for (int c = 0; c < columns.size(); c++) {
-            sheet.setColumnWidth(c, sizers[c].getWidth() * COL_WIDTH_MAGIC);
-        }
+    protected RichTextString createRichTextString(String str) {
+        return workbook.getCreationHelper().createRichTextString(str);
+    }
 
+    protected byte[] writeWorkbook() {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         try {
-            wb.write(out);
+            workbook.write(out);
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            disposeWorkbook();
         }
-        if (fileName == null) {
-            MessageTools messageTools = AppBeans.get(MessageTools.NAME);
-            fileName = messageTools.getEntityCaption(datasource.getMetaClass());
-        }
+        return out.toByteArray();
+    }
 
-        display.show(new ByteArrayDataProvider(out.toByteArray()), fileName + ".xls", ExportFormat.XLS);
+    protected synchronized void disposeWorkbook() {
+        if (workbook instanceof SXSSFWorkbook) {
+            // deletes temporary files of the rows flushed from the window
+            ((SXSSFWorkbook) workbook).dispose();
+        }
     }
 
     protected void createFormats() {
-        timeFormatCellStyle = wb.createCellStyle();
-        timeFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("h:mm"));
+        DataFormat dataFormat = workbook.createDataFormat();
+
+        timeFormatCellStyle = workbook.createCellStyle();
+        timeFormatCellStyle.setDataFormat(dataFormat.getFormat("h:mm"));
 
-        dateFormatCellStyle = wb.createCellStyle();
-        dateFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("m/d/yy"));
+        dateFormatCellStyle = workbook.createCellStyle();
+        dateFormatCellStyle.setDataFormat(dataFormat.getFormat("m/d/yy"));
 
-        dateTimeFormatCellStyle = wb.createCellStyle();
-        dateTimeFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("m/d/yy h:mm"));
+        dateTimeFormatCellStyle = workbook.createCellStyle();
+        dateTimeFormatCellStyle.setDataFormat(dataFormat.getFormat("m/d/yy h:mm"));
 
-        integerFormatCellStyle = wb.createCellStyle();
-        integerFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("#,##0"));
+        integerFormatCellStyle = workbook.createCellStyle();
+        integerFormatCellStyle.setDataFormat(dataFormat.getFormat("#,##0"));
 
-        doubleFormatCellStyle = wb.createCellStyle();
-        doubleFormatCellStyle.setDataFormat(HSSFDataFormat.getBuiltinFormat("#,##0.00"));
+        doubleFormatCellStyle = workbook.createCellStyle();
+        doubleFormatCellStyle.setDataFormat(dataFormat.getFormat("#,##0.00"));
     }
 
     protected int createHierarhicalRow(TreeTable table, List<Table.Column> columns,
@@ -393,7 +662,7 @@ public class ExcelExporter {
     }
 
     protected int createAggregatableRow(Table table, List<Table.Column> columns, int rowNumber, int aggregatableRow, CollectionDatasource datasource) {
-        HSSFRow row = sheet.createRow(rowNumber);
+        Row row = workbookSheet.createRow(rowNumber);
         Map<Object, Object> results = table.getAggregationResults();
 
         int i = 0;
@@ -402,7 +671,7 @@ public class ExcelExporter {
             if (agr != null) {
                 Object agregationResult = results.get(agr.getPropertyPath());
                 if (agregationResult != null) {
-                    HSSFCell cell = row.createCell(i);
+                    Cell cell = row.createCell(i);
                     formatValueCell(cell, agregationResult, null, i, rowNumber, 0, null);
                 }
             }
@@ -414,8 +683,8 @@ public class ExcelExporter {
     protected int createGroupRow(GroupTable table, List<Table.Column> columns, int rowNumber, GroupInfo groupInfo, int groupNumber) {
         GroupDatasource ds = table.getDatasource();
 
-        HSSFRow row = sheet.createRow(rowNumber);
-        HSSFCell cell = row.createCell(groupNumber);
+        Row row = workbookSheet.createRow(rowNumber);
+        Cell cell = row.createCell(groupNumber);
         Object val = groupInfo.getValue();
 
         if (val == null) {
@@ -457,7 +726,7 @@ public class ExcelExporter {
                 createRow(table, columns, groupNumber, ++rowNumber, itemId);
             }
         }
-        sheet.groupRow(oldRowNumber + 1, rowNumber);
+        workbookSheet.groupRow(oldRowNumber + 1, rowNumber);
         return rowNumber;
     }
 
@@ -465,15 +734,24 @@ public class ExcelExporter {
         if (startColumn >= columns.size()) {
             return;
         }
-        HSSFRow row = sheet.createRow(rowNumber);
         Instance instance = table.getDatasource().getItem(itemId);
 
         int level = 0;
         if (table instanceof TreeTable) {
             level = ((TreeTable) table).getLevel(itemId);
         }
+        createRow(table, columns, startColumn, rowNumber, instance, level);
+    }
+
+    protected void createRow(Table table, List<Table.Column> columns, int startColumn, int rowNumber,
+                             Instance instance, int level) {
+        if (startColumn >= columns.size()) {
+            return;
+        }
+        Row row = workbookSheet.createRow(rowNumber);
+
         for (int c = startColumn; c < columns.size(); c++) {
-            HSSFCell cell = row.createCell(c);
+            Cell cell = row.createCell(c);
 
             Table.Column column = columns.get(c);
             Object cellValue = null;
@@ -507,17 +785,38 @@ public class ExcelExporter {
         }
     }
 
+    /**
+     * Creates a row of the entity attribute values, used by the background export outside of the UI thread.
+     *
+     * @param propertyPaths property paths of the columns
+     * @param valuePaths    paths of the exported values, e.g. the caption properties of the columns
+     */
+    protected void createPropertyRow(List<MetaPropertyPath> propertyPaths, List<String> valuePaths, int rowNumber,
+                                     Instance instance) {
+        Row row = workbookSheet.createRow(rowNumber);
+
+        for (int c = 0; c < propertyPaths.size(); c++) {
+            Cell cell = row.createCell(c);
+            Object cellValue = InstanceUtils.getValueEx(instance, valuePaths.get(c));
+            formatValueCell(cell, cellValue, propertyPaths.get(c), c, rowNumber, 0, null);
+        }
+    }
+
     protected void createDataGridRow(DataGrid dataGrid, List<DataGrid.Column> columns,
                                      int startColumn, int rowNumber, Object itemId) {
+        createDataGridRow(dataGrid, columns, startColumn, rowNumber, dataGrid.getDatasource().getItem(itemId));
+    }
+
+    protected void createDataGridRow(DataGrid dataGrid, List<DataGrid.Column> columns,
+                                     int startColumn, int rowNumber, Instance instance) {
         if (startColumn >= columns.size()) {
             return;
         }
-        HSSFRow row = sheet.createRow(rowNumber);
-        Instance instance = dataGrid.getDatasource().getItem(itemId);
+        Row row = workbookSheet.createRow(rowNumber);
 
         int level = 0;
         for (int c = startColumn; c < columns.size(); c++) {
-            HSSFCell cell = row.createCell(c);
+            Cell cell = row.createCell(c);
 
             DataGrid.Column column = columns.get(c);
             Object cellValue;
@@ -554,7 +853,7 @@ public class ExcelExporter {
         return sb.toString();
     }
 
-    protected void formatValueCell(HSSFCell cell, @Nullable Object cellValue, @Nullable MetaPropertyPath metaPropertyPath,
+    protected void formatValueCell(Cell cell, @Nullable Object cellValue, @Nullable MetaPropertyPath metaPropertyPath,
                                    int sizersIndex, int notificationRequired, int level, @Nullable Integer groupChildCount) {
         if (cellValue == null) {
             return;
@@ -592,7 +891,7 @@ public class ExcelExporter {
                 } catch (ParseException e) {
                     throw new RuntimeException(e);
                 }
-                cell.setCellType(HSSFCell.CELL_TYPE_NUMERIC);
+                cell.setCellType(Cell.CELL_TYPE_NUMERIC);
             }
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
@@ -643,7 +942,7 @@ public class ExcelExporter {
                 str += createSpaceString(level);
             }
             str += ((Boolean) cellValue) ? trueStr : falseStr;
-            cell.setCellValue(new HSSFRichTextString(str));
+            cell.setCellValue(createRichTextString(str));
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
             }
@@ -661,13 +960,13 @@ public class ExcelExporter {
             String instanceName = entityVal.getInstanceName();
             String str = sizersIndex == 0 ? createSpaceString(level) + instanceName : instanceName;
             str = str + childCountValue;
-            cell.setCellValue(new HSSFRichTextString(str));
+            cell.setCellValue(createRichTextString(str));
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
             }
         } else if (cellValue instanceof Collection) {
             String str = "";
-            cell.setCellValue(new HSSFRichTextString(str));
+            cell.setCellValue(createRichTextString(str));
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
             }
@@ -675,7 +974,7 @@ public class ExcelExporter {
             String strValue = cellValue == null ? "" : cellValue.toString();
             String str = sizersIndex == 0 ? createSpaceString(level) + strValue : strValue;
             str = str + childCountValue;
-            cell.setCellValue(new HSSFRichTextString(str));
+            cell.setCellValue(createRichTextString(str));
             if (sizers[sizersIndex].isNotificationRequired(notificationRequired)) {
                 sizers[sizersIndex].notifyCellValue(str, stdFont);
             }
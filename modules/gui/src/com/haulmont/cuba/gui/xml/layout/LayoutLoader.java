@@ -34,6 +34,7 @@ import org.dom4j.Element;
 import org.perf4j.StopWatch;
 import org.perf4j.log4j.Log4JStopWatch;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
@@ -43,11 +44,18 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.haulmont.bali.util.Preconditions.checkNotNullArgument;
 
 public class LayoutLoader {
 
+    /**
+     * Constructors of component loaders resolved once per loader class instead of each loaded element.
+     */
+    protected static final Map<Class<? extends ComponentLoader>, Constructor<? extends ComponentLoader>>
+            loaderConstructors = new ConcurrentHashMap<>();
+
     protected ComponentLoader.Context context;
     protected ComponentsFactory factory;
     protected LayoutLoaderConfig config;
@@ -78,6 +86,20 @@ public class LayoutLoader {
         return document;
     }
 
+    /**
+     * Parses the descriptor and applies its inheritance.
+     *
+     * @return the resulting document
+     */
+    public static Document processDescriptor(String template, Map<String, Object> params) {
+        Document originalDocument = parseDescriptor(template);
+
+        XmlInheritanceProcessor processor = new XmlInheritanceProcessor(originalDocument, params);
+        Element resultRoot = processor.getResultRoot();
+
+        return resultRoot.getDocument();
+    }
+
     protected static void replaceAssignParameters(Document document) {
         Map<String, String> assignedParams = new HashMap<>();
 
@@ -146,7 +168,11 @@ public class LayoutLoader {
 
         ComponentLoader loader;
         try {
-            Constructor<? extends ComponentLoader> constructor = loaderClass.getConstructor();
+            Constructor<? extends ComponentLoader> constructor = loaderConstructors.get(loaderClass);
+            if (constructor == null) {
+                constructor = loaderClass.getConstructor();
+                loaderConstructors.put(loaderClass, constructor);
+            }
             loader = constructor.newInstance();
 
             loader.setLocale(locale);
@@ -163,6 +189,20 @@ public class LayoutLoader {
     }
 
     public Pair<ComponentLoader, Element> createFrameComponent(InputStream stream, String id, Map<String, Object> params) {
+        return createFrameComponent(stream, id, null, params);
+    }
+
+    /**
+     * Creates the frame component from the descriptor.
+     *
+     * @param stream       frame descriptor
+     * @param id           id of the frame component
+     * @param descriptorId id of the screen or template path of the frame used to cache the processed descriptor
+     * @param params       screen parameters
+     */
+    public Pair<ComponentLoader, Element> createFrameComponent(InputStream stream, String id,
+                                                               @Nullable String descriptorId,
+                                                               Map<String, Object> params) {
         StopWatch xmlLoadWatch = new Log4JStopWatch(context.getCurrentFrameId() + "#" +
                 UIPerformanceLogger.LifeCycle.XML,
                 Logger.getLogger(UIPerformanceLogger.class));
@@ -176,17 +216,8 @@ public class LayoutLoader {
 
         ScreenXmlDocumentCache screenXmlCache = AppBeans.get(ScreenXmlDocumentCache.class);
 
-        Document document = screenXmlCache.get(template);
-        if (document == null) {
-            Document originalDocument = parseDescriptor(template);
-
-            XmlInheritanceProcessor processor = new XmlInheritanceProcessor(originalDocument, context.getParams());
-            Element resultRoot = processor.getResultRoot();
-
-            document = resultRoot.getDocument();
-
-            screenXmlCache.put(template, document);
-        }
+        Document document = screenXmlCache.getOrProcess(descriptorId, template, locale, params,
+                descriptor -> processDescriptor(descriptor, context.getParams()));
 
         Element element = document.getRootElement();
 
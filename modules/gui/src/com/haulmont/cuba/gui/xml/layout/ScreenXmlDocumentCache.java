@@ -18,12 +18,35 @@ package com.haulmont.cuba.gui.xml.layout;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.haulmont.cuba.gui.config.WindowConfig;
+import com.haulmont.cuba.gui.theme.ThemeConstants;
+import com.haulmont.cuba.gui.theme.ThemeConstantsManager;
 import org.dom4j.Document;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Application-wide cache of processed screen descriptors, i.e. documents with applied 'assign' parameters and
+ * inheritance.
+ * <p>
+ * Descriptors are cached per screen id, locale, theme and screen parameters, because 'assign' parameters can refer
+ * to theme constants. The template text is kept together with the document, so a descriptor changed in the conf
+ * directory is processed again. All descriptors are dropped by {@link WindowConfig#reset()} on hot deploy.
+ * The cached documents are shared by all sessions and must not be modified.
+ */
 @Component("cuba_ScreenXmlDocumentCache")
 public class ScreenXmlDocumentCache {
-    protected Cache<String, Document> cache;
+    protected Cache<DescriptorKey, CachedDescriptor> cache;
+
+    @Inject
+    protected ThemeConstantsManager themeConstantsManager;
 
     public ScreenXmlDocumentCache() {
         this(100);
@@ -33,15 +56,109 @@ public class ScreenXmlDocumentCache {
         cache = CacheBuilder.newBuilder().maximumSize(cacheDescriptorsCount).build();
     }
 
+    /**
+     * Returns the processed descriptor from the cache or processes the template and caches the result.
+     *
+     * @param screenId  id of the screen or template path of the frame, if null the template text is used instead
+     * @param template  descriptor text
+     * @param locale    locale of the screen
+     * @param params    screen parameters
+     * @param processor function creating the processed document from the template
+     * @return processed document which must not be modified
+     */
+    public Document getOrProcess(@Nullable String screenId, String template, @Nullable Locale locale,
+                                 @Nullable Map<String, Object> params, Function<String, Document> processor) {
+        DescriptorKey key = createKey(screenId != null ? screenId : template, locale, params);
+        CachedDescriptor cached = cache.getIfPresent(key);
+        if (cached != null && cached.template.equals(template)) {
+            return cached.document;
+        }
+
+        Document document = processor.apply(template);
+        cache.put(key, new CachedDescriptor(template, document));
+        return document;
+    }
+
+    /**
+     * @deprecated Use {@link #getOrProcess(String, String, Locale, Map, Function)}
+     */
+    @Deprecated
     public void put(String xml, Document document) {
-        cache.put(xml, document);
+        cache.put(createKey(xml, null, null), new CachedDescriptor(xml, document));
     }
 
+    /**
+     * @deprecated Use {@link #getOrProcess(String, String, Locale, Map, Function)}
+     */
+    @Deprecated
     public Document get(String xml) {
-        return cache.getIfPresent(xml);
+        CachedDescriptor cached = cache.getIfPresent(createKey(xml, null, null));
+        return cached != null ? cached.document : null;
     }
 
     public void invalidateAll() {
         cache.invalidateAll();
     }
+
+    public long size() {
+        return cache.size();
+    }
+
+    protected DescriptorKey createKey(String screenId, @Nullable Locale locale, @Nullable Map<String, Object> params) {
+        return new DescriptorKey(screenId, locale, themeConstantsManager.getConstants(), getParamsHash(params));
+    }
+
+    /**
+     * Only parameter names are taken into account. Descriptors are processed in the same way for any parameter
+     * values, and an editor would miss the cache for each edited item otherwise.
+     */
+    protected int getParamsHash(@Nullable Map<String, Object> params) {
+        return (params != null ? params : Collections.emptyMap()).keySet().hashCode();
+    }
+
+    protected static class DescriptorKey {
+        protected final String screenId;
+        protected final Locale locale;
+        // theme constants are loaded once per theme, so instances can be compared by identity
+        protected final ThemeConstants theme;
+        protected final int paramsHash;
+
+        public DescriptorKey(String screenId, @Nullable Locale locale, ThemeConstants theme, int paramsHash) {
+            this.screenId = screenId;
+            this.locale = locale;
+            this.theme = theme;
+            this.paramsHash = paramsHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            DescriptorKey that = (DescriptorKey) o;
+            return theme == that.theme
+                    && paramsHash == that.paramsHash
+                    && screenId.equals(that.screenId)
+                    && Objects.equals(locale, that.locale);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = screenId.hashCode();
+            result = 31 * result + Objects.hashCode(locale);
+            result = 31 * result + System.identityHashCode(theme);
+            result = 31 * result + paramsHash;
+            return result;
+        }
+    }
+
+    protected static class CachedDescriptor {
+        protected final String template;
+        protected final Document document;
+
+        public CachedDescriptor(String template, Document document) {
+            this.template = template;
+            this.document = document;
+        }
+    }
 }
\ No newline at end of file
@@ -70,7 +70,7 @@ public class RuntimePropertiesFrameLoader extends ContainerLoader<Frame> {
         String currentFrameId = context.getCurrentFrameId();
         context.setCurrentFrameId(frameId);
         try {
-            Pair<ComponentLoader, Element> loaderElementPair = layoutLoader.createFrameComponent(stream, frameId, context.getParams());
+            Pair<ComponentLoader, Element> loaderElementPair = layoutLoader.createFrameComponent(stream, frameId, src, context.getParams());
             frameLoader = loaderElementPair.getFirst();
             resultComponent = (Frame) frameLoader.getResultComponent();
         } finally {
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.data.aggregation.impl;
+
+import com.haulmont.cuba.gui.components.AggregationInfo;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AggregationAccumulatorTest {
+
+    @Test
+    public void testDoubleSumDoesNotDrift() throws Exception {
+        Random random = new Random(42);
+        List<Double> values = new ArrayList<>();
+        AggregationAccumulator accumulator = AggregationAccumulator.create(Double.class);
+        assertNotNull(accumulator);
+
+        // values of very different magnitudes lose precision when summed and subtracted in a double
+        for (int i = 0; i < 1000; i++) {
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 5);
+            values.add(value);
+            accumulator.add(value);
+        }
+        for (int i = 0; i < 10000; i++) {
+            int index = random.nextInt(values.size());
+            double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 5);
+            accumulator.remove(values.get(index));
+            accumulator.add(value);
+            values.set(index, value);
+        }
+
+        AggregationAccumulator recalculated = AggregationAccumulator.create(Double.class);
+        assertNotNull(recalculated);
+        values.forEach(recalculated::add);
+
+        assertEquals(recalculated.getResult(AggregationInfo.Type.SUM), accumulator.getResult(AggregationInfo.Type.SUM));
+        assertEquals(recalculated.getResult(AggregationInfo.Type.AVG), accumulator.getResult(AggregationInfo.Type.AVG));
+        assertEquals(values.size(), accumulator.getResult(AggregationInfo.Type.COUNT));
+    }
+
+    @Test
+    public void testDoubleRemoveRestoresSum() throws Exception {
+        AggregationAccumulator accumulator = AggregationAccumulator.create(Double.class);
+        assertNotNull(accumulator);
+        accumulator.add(0.1);
+        accumulator.add(0.2);
+        accumulator.add(1e20);
+        accumulator.remove(1e20);
+
+        assertEquals(0.30000000000000004, (Double) accumulator.getResult(AggregationInfo.Type.SUM), 0);
+        // the maximum is removed
+        assertFalse(accumulator.isValid());
+    }
+
+    @Test
+    public void testDoubleNonFiniteValues() throws Exception {
+        AggregationAccumulator accumulator = AggregationAccumulator.create(Double.class);
+        assertNotNull(accumulator);
+        accumulator.add(1.0);
+        accumulator.add(Double.NaN);
+        assertTrue(Double.isNaN((Double) accumulator.getResult(AggregationInfo.Type.SUM)));
+
+        accumulator.remove(Double.NaN);
+        accumulator.add(Double.POSITIVE_INFINITY);
+        assertEquals(Double.POSITIVE_INFINITY, accumulator.getResult(AggregationInfo.Type.SUM));
+
+        accumulator.remove(Double.POSITIVE_INFINITY);
+        assertEquals(1.0, accumulator.getResult(AggregationInfo.Type.SUM));
+    }
+
+    @Test
+    public void testLongSumOverflow() throws Exception {
+        AggregationAccumulator accumulator = AggregationAccumulator.create(Long.class);
+        assertNotNull(accumulator);
+        accumulator.add(Long.MAX_VALUE);
+        accumulator.add(10L);
+        assertEquals(Long.MAX_VALUE, accumulator.getResult(AggregationInfo.Type.SUM));
+
+        // the exact sum is restored after the overflow
+        accumulator.remove(10L);
+        accumulator.add(-5L);
+        assertEquals(Long.MAX_VALUE - 5, accumulator.getResult(AggregationInfo.Type.SUM));
+        assertEquals(2, accumulator.getResult(AggregationInfo.Type.COUNT));
+    }
+
+    @Test
+    public void testBigDecimal() throws Exception {
+        AggregationAccumulator accumulator = AggregationAccumulator.create(BigDecimal.class);
+        assertNotNull(accumulator);
+        accumulator.add(new BigDecimal("0.1"));
+        accumulator.add(new BigDecimal("0.2"));
+        accumulator.add(null);
+        accumulator.add(new BigDecimal("0.3"));
+        accumulator.remove(new BigDecimal("0.2"));
+
+        assertEquals(new BigDecimal("0.4"), accumulator.getResult(AggregationInfo.Type.SUM));
+        assertEquals(0, new BigDecimal("0.2").compareTo((BigDecimal) accumulator.getResult(AggregationInfo.Type.AVG)));
+        assertEquals(new BigDecimal("0.1"), accumulator.getResult(AggregationInfo.Type.MIN));
+        assertEquals(new BigDecimal("0.3"), accumulator.getResult(AggregationInfo.Type.MAX));
+        assertTrue(accumulator.isValid());
+    }
+}
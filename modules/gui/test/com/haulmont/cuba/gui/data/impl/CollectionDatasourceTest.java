@@ -17,9 +17,11 @@
 package com.haulmont.cuba.gui.data.impl;
 
 import com.haulmont.cuba.client.testsupport.CubaClientTestCase;
+import com.haulmont.cuba.gui.components.AggregationInfo;
 import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
 import com.haulmont.cuba.core.global.AppBeans;
 import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.data.Datasource;
 import com.haulmont.cuba.gui.data.impl.testmodel1.TestDetailEntity;
 import com.haulmont.cuba.gui.data.impl.testmodel1.TestMasterEntity;
 import com.haulmont.cuba.gui.executors.BackgroundWorker;
@@ -31,7 +33,7 @@ import org.junit.Test;
 import java.util.HashSet;
 import java.util.UUID;
 
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 
 public class CollectionDatasourceTest extends CubaClientTestCase {
 
@@ -105,4 +107,62 @@ public class CollectionDatasourceTest extends CubaClientTestCase {
         assertEquals(1, cpds.itemsToUpdate.size());
         assertEquals(0, cpds.itemsToDelete.size());
     }
+
+    @Test
+    public void testIncrementalAggregation() throws Exception {
+        CollectionDatasourceImpl<TestMasterEntity, UUID> cds = new CollectionDatasourceImpl<>();
+        cds.setMetaClass(metadata.getClassNN(TestMasterEntity.class));
+        cds.setRefreshMode(CollectionDatasource.RefreshMode.NEVER);
+
+        TestMasterEntity master1 = createMaster("master1");
+        TestMasterEntity master2 = createMaster("master2");
+        cds.data.put(master1.getId(), master1);
+        cds.data.put(master2.getId(), master2);
+        cds.attachListener(master1);
+        cds.attachListener(master2);
+        cds.state = Datasource.State.VALID;
+
+        AggregationInfo countInfo = new AggregationInfo();
+        countInfo.setPropertyPath(cds.getMetaClass().getPropertyPath("masterName"));
+        countInfo.setType(AggregationInfo.Type.COUNT);
+        AggregationInfo[] aggregationInfos = {countInfo};
+
+        Object scope = new Object();
+        cds.aggregate(aggregationInfos, cds.getItemIds(), scope);
+        assertEquals(2, getScopeResult(cds, scope, countInfo));
+
+        // a property change is applied to the kept results
+        master1.setMasterName(null);
+        assertEquals(1, getScopeResult(cds, scope, countInfo));
+        master1.setMasterName("master1");
+        assertEquals(2, getScopeResult(cds, scope, countInfo));
+
+        // a removed item is subtracted
+        cds.removeItem(master2);
+        assertEquals(1, getScopeResult(cds, scope, countInfo));
+        assertEquals(cds.aggregate(aggregationInfos, cds.getItemIds()),
+                cds.aggregate(aggregationInfos, cds.getItemIds(), scope));
+
+        // other changes drop the results
+        cds.addItem(createMaster("master3"));
+        assertFalse(cds.aggregatableDelegate.scopes.containsKey(scope));
+        assertEquals(cds.aggregate(aggregationInfos, cds.getItemIds()),
+                cds.aggregate(aggregationInfos, cds.getItemIds(), scope));
+        assertEquals(2, getScopeResult(cds, scope, countInfo));
+    }
+
+    protected Object getScopeResult(CollectionDatasourceImpl<TestMasterEntity, UUID> cds, Object scope,
+                                    AggregationInfo aggregationInfo) {
+        AggregatableDelegate<UUID>.AggregationScope aggregationScope = cds.aggregatableDelegate.scopes.get(scope);
+        assertNotNull(aggregationScope);
+        return aggregationScope.getResults().get(aggregationInfo);
+    }
+
+    protected TestMasterEntity createMaster(String name) {
+        TestMasterEntity master = new TestMasterEntity();
+        master.setMasterName(name);
+        BaseEntityInternalAccess.setNew(master, false);
+        BaseEntityInternalAccess.setDetached(master, true);
+        return master;
+    }
 }
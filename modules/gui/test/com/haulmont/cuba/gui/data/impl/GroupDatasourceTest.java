@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.data.impl;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.chile.core.model.MetaPropertyPath;
+import com.haulmont.cuba.client.testsupport.CubaClientTestCase;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.data.Datasource;
+import com.haulmont.cuba.gui.data.GroupInfo;
+import com.haulmont.cuba.gui.data.impl.testmodel1.TestDetailEntity;
+import com.haulmont.cuba.gui.data.impl.testmodel1.TestMasterEntity;
+import com.haulmont.cuba.gui.executors.BackgroundWorker;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import org.apache.commons.collections.map.LinkedMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class GroupDatasourceTest extends CubaClientTestCase {
+
+    @Mocked
+    protected BackgroundWorker backgroundWorker;
+
+    protected GroupDatasourceImpl<TestDetailEntity, UUID> ds;
+    protected MetaClass metaClass;
+
+    protected TestMasterEntity master1;
+    protected TestMasterEntity master2;
+
+    @Before
+    public void setUp() throws Exception {
+        addEntityPackage("com.haulmont.cuba");
+        setupInfrastructure();
+
+        new NonStrictExpectations() {
+            {
+                backgroundWorker.checkUIAccess(); result = null;
+                AppBeans.get(BackgroundWorker.NAME); result = backgroundWorker;
+                AppBeans.get(BackgroundWorker.class); result = backgroundWorker;
+                AppBeans.get(BackgroundWorker.NAME, BackgroundWorker.class); result = backgroundWorker;
+            }
+        };
+
+        metaClass = metadata.getClassNN(TestDetailEntity.class);
+
+        ds = new GroupDatasourceImpl<>();
+        ds.setMetaClass(metaClass);
+        ds.setRefreshMode(CollectionDatasource.RefreshMode.NEVER);
+
+        master1 = createMaster("master1");
+        master2 = createMaster("master2");
+
+        addToData(createDetail("b", master1));
+        addToData(createDetail("a", master2));
+        addToData(createDetail("b", master2));
+        ds.state = Datasource.State.VALID;
+    }
+
+    @Test
+    public void testIncrementalAddAndRemove() throws Exception {
+        ds.groupBy(new Object[]{path("detailName")});
+
+        assertEquals(list("b", "a"), values(ds.rootGroups()));
+        GroupInfo groupB = ds.rootGroups().get(0);
+        assertEquals(2, ds.getGroupItemsCount(groupB));
+
+        TestDetailEntity detailC = createDetail("c", master1);
+        ds.addItem(detailC);
+
+        assertEquals(list("b", "a", "c"), values(ds.rootGroups()));
+        assertEquals(list(detailC), ds.getOwnChildItems(ds.getParentGroup(detailC)));
+
+        TestDetailEntity detailB = createDetail("b", master1);
+        ds.addItem(detailB);
+        assertEquals(3, ds.getGroupItemsCount(groupB));
+        assertSame(groupB, ds.getParentGroup(detailB));
+
+        ds.removeItem(detailC);
+        assertEquals(list("b", "a"), values(ds.rootGroups()));
+        assertFalse(ds.containsGroup(new GroupInfo<>(groupValues(path("detailName"), "c"))));
+
+        assertGroupsEqualFullRegrouping();
+    }
+
+    @Test
+    public void testNestedGroups() throws Exception {
+        MetaPropertyPath masterName = path("master.masterName");
+        ds.groupBy(new Object[]{masterName, path("detailName")});
+
+        assertEquals(list("master1", "master2"), values(ds.rootGroups()));
+        GroupInfo master2Group = ds.rootGroups().get(1);
+        assertEquals(list("a", "b"), values(ds.getChildren(master2Group)));
+        assertEquals(2, ds.getGroupItemsCount(master2Group));
+
+        TestDetailEntity detail = createDetail("a", master1);
+        ds.addItem(detail);
+        assertEquals(list("b", "a"), values(ds.getChildren(ds.rootGroups().get(0))));
+        assertEquals(2, ds.getGroupItemsCount(ds.rootGroups().get(0)));
+
+        ds.removeItem(detail);
+        assertEquals(list("b"), values(ds.getChildren(ds.rootGroups().get(0))));
+
+        assertGroupsEqualFullRegrouping();
+    }
+
+    @Test
+    public void testRegroupOnNestedPropertyChange() throws Exception {
+        MetaPropertyPath masterName = path("master.masterName");
+        ds.groupBy(new Object[]{masterName});
+
+        TestDetailEntity detail = createDetail("c", master1);
+        ds.addItem(detail);
+        assertEquals("master1", ds.getParentGroup(detail).getValue());
+        assertFalse(ds.groupDelegate.isRegroupRequired(detail, "master"));
+        assertFalse(ds.groupDelegate.isRegroupRequired(detail, "master.masterName"));
+
+        // the reference is replaced, the item is regrouped on its property change event
+        detail.setMaster(master2);
+        assertEquals("master2", ds.getParentGroup(detail).getValue());
+        assertEquals(3, ds.getGroupItemsCount(ds.getParentGroup(detail)));
+
+        // an attribute of the referenced entity is changed, which is not reported by the item itself
+        master2.setMasterName("master3");
+        assertTrue(ds.groupDelegate.isRegroupRequired(detail, "master.masterName"));
+        assertTrue(ds.groupDelegate.isRegroupRequired(detail, "master"));
+        assertFalse(ds.groupDelegate.isRegroupRequired(detail, "detailName"));
+
+        for (TestDetailEntity item : new ArrayList<>(ds.getItems())) {
+            ds.updateItem(item);
+        }
+        assertEquals("master3", ds.getParentGroup(detail).getValue());
+        assertEquals(list("master1", "master3"), values(ds.rootGroups()));
+
+        assertGroupsEqualFullRegrouping();
+    }
+
+    @Test
+    public void testIncrementalChangesKeepSortOrder() throws Exception {
+        MetaPropertyPath masterName = path("master.masterName");
+        MetaPropertyPath detailName = path("detailName");
+
+        // groups are sorted
+        ds.sortInfos = new CollectionDatasource.Sortable.SortInfo[]{sortInfo(masterName, CollectionDatasource.Sortable.Order.DESC)};
+        ds.groupBy(new Object[]{masterName});
+        assertEquals(list("master2", "master1"), values(ds.rootGroups()));
+
+        ds.addItem(createDetail("d", createMaster("master3")));
+        ds.addItem(createDetail("d", createMaster("master0")));
+        ds.addItem(createDetail("d", createMaster("master15")));
+        assertEquals(list("master3", "master2", "master15", "master1", "master0"), values(ds.rootGroups()));
+
+        // items within the groups are sorted
+        ds.sortInfos = new CollectionDatasource.Sortable.SortInfo[]{sortInfo(detailName, CollectionDatasource.Sortable.Order.ASC)};
+        ds.doSort();
+
+        TestDetailEntity detailC = createDetail("c", master2);
+        ds.addItem(detailC);
+        TestDetailEntity detail0 = createDetail("0", master2);
+        ds.addItem(detail0);
+
+        GroupInfo master2Group = ds.getParentGroup(detailC);
+        List<String> names = new ArrayList<>();
+        for (Object item : ds.getOwnChildItems(master2Group)) {
+            names.add(((TestDetailEntity) item).getDetailName());
+        }
+        assertEquals(list("0", "a", "b", "c"), names);
+    }
+
+    protected void assertGroupsEqualFullRegrouping() {
+        List<String> incremental = describeGroups(ds.rootGroups(), "");
+
+        ds.groupDelegate.groupsValid = false;
+        ds.groupBy(ds.getGroupProperties().toArray());
+
+        assertEquals(describeGroups(ds.rootGroups(), ""), incremental);
+    }
+
+    protected List<String> describeGroups(List<GroupInfo> groups, String indent) {
+        List<String> result = new ArrayList<>();
+        for (GroupInfo group : groups) {
+            result.add(indent + group.getValue() + " (" + ds.getGroupItemsCount(group) + ")");
+            result.addAll(describeGroups(ds.getChildren(group), indent + "  "));
+            for (Object item : ds.getOwnChildItems(group)) {
+                result.add(indent + "  - " + ((TestDetailEntity) item).getId());
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    protected MetaPropertyPath path(String path) {
+        return metaClass.getPropertyPath(path);
+    }
+
+    protected LinkedMap groupValues(Object property, Object value) {
+        LinkedMap map = new LinkedMap();
+        map.put(property, value);
+        return map;
+    }
+
+    protected CollectionDatasource.Sortable.SortInfo<MetaPropertyPath> sortInfo(MetaPropertyPath path,
+                                                                              CollectionDatasource.Sortable.Order order) {
+        CollectionDatasource.Sortable.SortInfo<MetaPropertyPath> sortInfo = new CollectionDatasource.Sortable.SortInfo<>();
+        sortInfo.setPropertyPath(path);
+        sortInfo.setOrder(order);
+        return sortInfo;
+    }
+
+    protected List<Object> values(List<GroupInfo> groups) {
+        List<Object> values = new ArrayList<>();
+        for (GroupInfo group : groups) {
+            values.add(group.getValue());
+        }
+        return values;
+    }
+
+    protected List<Object> list(Object... values) {
+        List<Object> list = new ArrayList<>();
+        for (Object value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    protected TestMasterEntity createMaster(String name) {
+        TestMasterEntity master = new TestMasterEntity();
+        master.setMasterName(name);
+        return master;
+    }
+
+    protected TestDetailEntity createDetail(String name, TestMasterEntity master) {
+        TestDetailEntity detail = new TestDetailEntity();
+        detail.setDetailName(name);
+        detail.setMaster(master);
+        return detail;
+    }
+
+    protected void addToData(TestDetailEntity detail) {
+        ds.data.put(detail.getId(), detail);
+    }
+}
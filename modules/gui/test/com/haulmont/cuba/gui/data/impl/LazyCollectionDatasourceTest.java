@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.data.impl;
+
+import com.haulmont.cuba.client.testsupport.CubaClientTestCase;
+import com.haulmont.cuba.core.entity.BaseEntityInternalAccess;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.*;
+import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.data.impl.testmodel1.TestMasterEntity;
+import com.haulmont.cuba.gui.executors.BackgroundWorker;
+import mockit.Delegate;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LazyCollectionDatasourceTest extends CubaClientTestCase {
+
+    @Mocked
+    protected BackgroundWorker backgroundWorker;
+
+    @Mocked
+    protected QueryTransformerFactory queryTransformerFactory;
+
+    protected List<TestMasterEntity> masters = new ArrayList<>();
+
+    protected List<Integer> loadedWindows = new ArrayList<>();
+
+    protected String lastQueryString;
+
+    protected boolean queryAvailable = true;
+
+    protected LazyCollectionDatasourceImpl<TestMasterEntity, UUID> ds;
+
+    @Before
+    public void setUp() throws Exception {
+        addEntityPackage("com.haulmont.cuba");
+        setupInfrastructure();
+
+        new NonStrictExpectations() {
+            {
+                backgroundWorker.checkUIAccess(); result = null;
+                AppBeans.get(BackgroundWorker.NAME); result = backgroundWorker;
+                AppBeans.get(BackgroundWorker.class); result = backgroundWorker;
+                AppBeans.get(BackgroundWorker.NAME, BackgroundWorker.class); result = backgroundWorker;
+
+                QueryTransformerFactory.createTransformer(anyString);
+                result = new Delegate<QueryTransformer>() {
+                    @SuppressWarnings("unused")
+                    QueryTransformer createTransformer(String query) {
+                        return new QueryTransformerRegex(query);
+                    }
+                };
+            }
+        };
+
+        for (int i = 0; i < 250; i++) {
+            TestMasterEntity master = new TestMasterEntity();
+            master.setMasterName(String.format("master%03d", i));
+            masters.add(master);
+        }
+
+        ds = new LazyCollectionDatasourceImpl<TestMasterEntity, UUID>() {
+            @Override
+            protected DataLoadContextQuery createDataQuery(DataLoadContext context, Map<String, Object> params) {
+                return queryAvailable ? super.createDataQuery(context, params) : null;
+            }
+        };
+        ds.setup(null, new TestDataSupplier() {
+            @Override
+            @Nonnull
+            @SuppressWarnings("unchecked")
+            public <E extends Entity> List<E> loadList(LoadContext<E> context) {
+                LoadContext.Query query = context.getQuery();
+                assertEquals(0, query.getFirstResult() % ds.getWindowSize());
+                assertEquals(ds.getWindowSize(), query.getMaxResults());
+                loadedWindows.add(query.getFirstResult() / ds.getWindowSize());
+                lastQueryString = query.getQueryString();
+
+                // the middleware returns new instances each time
+                List<E> result = new ArrayList<>();
+                int to = Math.min(query.getFirstResult() + query.getMaxResults(), masters.size());
+                for (TestMasterEntity master : masters.subList(query.getFirstResult(), to)) {
+                    result.add((E) copy(master));
+                }
+                return result;
+            }
+
+            @Override
+            public long getCount(LoadContext<? extends Entity> context) {
+                return masters.size();
+            }
+        }, "mastersDs", metadata.getClassNN(TestMasterEntity.class), null);
+        ds.setWindowSize(100);
+        ds.setMaxWindows(2);
+    }
+
+    @Test
+    public void testWindowLoading() throws Exception {
+        ds.refresh();
+        assertEquals(250, ds.size());
+        assertEquals(Collections.singletonList(0), loadedWindows);
+        assertFalse(ds.isCompletelyLoaded());
+
+        List<TestMasterEntity> items = new ArrayList<>(ds.getItems().size());
+        for (int i = 0; i < ds.size(); i++) {
+            items.add(((List<TestMasterEntity>) ds.getItems()).get(i));
+        }
+        assertEquals(Arrays.asList(0, 1, 2), loadedWindows);
+        for (int i = 0; i < masters.size(); i++) {
+            assertEquals(masters.get(i), items.get(i));
+        }
+
+        assertNull(ds.getIdByIndex(250));
+        assertEquals(masters.get(249).getId(), ds.lastItemId());
+        assertEquals(Arrays.asList(0, 1, 2), loadedWindows);
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ds.refresh();
+        TestMasterEntity selected = ds.getItem(masters.get(5).getId());
+        ds.setItem(selected);
+        TestMasterEntity modified = ds.getItem(masters.get(7).getId());
+        BaseEntityInternalAccess.setNew(modified, false);
+        modified.setMasterName("modified");
+
+        ds.getIdByIndex(100);
+        ds.getIdByIndex(200);
+        assertEquals(Arrays.asList(0, 1, 2), loadedWindows);
+
+        // the first window is evicted, but the selected and modified items are kept
+        assertNull(ds.getItem(masters.get(6).getId()));
+        assertEquals(-1, ds.indexOfId(masters.get(6).getId()));
+        assertSame(selected, ds.getItem(masters.get(5).getId()));
+        assertSame(modified, ds.getItem(masters.get(7).getId()));
+
+        // the window is loaded again with the kept instances
+        assertEquals(masters.get(6).getId(), ds.getIdByIndex(6));
+        assertEquals(Arrays.asList(0, 1, 2, 0), loadedWindows);
+        assertSame(selected, ((List<TestMasterEntity>) ds.getItems()).get(5));
+        assertSame(modified, ((List<TestMasterEntity>) ds.getItems()).get(7));
+        assertEquals("modified", ((List<TestMasterEntity>) ds.getItems()).get(7).getMasterName());
+    }
+
+    @Test
+    public void testWindowLoadingWithoutQuery() throws Exception {
+        ds.refresh();
+        TestMasterEntity selected = ds.getItem(masters.get(5).getId());
+        ds.setItem(selected);
+
+        // e.g. a parameter of the query is not available anymore
+        queryAvailable = false;
+        assertNull(ds.getIdByIndex(150));
+
+        // loaded items are not cleared
+        assertSame(selected, ds.getItem(masters.get(5).getId()));
+        assertSame(selected, ds.getItem());
+        assertEquals(masters.get(6).getId(), ds.getIdByIndex(6));
+        assertEquals(Collections.singletonList(0), loadedWindows);
+    }
+
+    @Test
+    public void testSort() throws Exception {
+        ds.refresh();
+        ds.getIdByIndex(150);
+        assertEquals(Arrays.asList(0, 1), loadedWindows);
+
+        CollectionDatasource.Sortable.SortInfo<Object> sortInfo = new CollectionDatasource.Sortable.SortInfo<>();
+        sortInfo.setPropertyPath(ds.getMetaClass().getPropertyPath("masterName"));
+        sortInfo.setOrder(CollectionDatasource.Sortable.Order.DESC);
+        ds.sort(new CollectionDatasource.Sortable.SortInfo[]{sortInfo});
+
+        // the windows are loaded again by the sorted query
+        assertEquals(Arrays.asList(0, 1, 0), loadedWindows);
+        assertTrue(lastQueryString, lastQueryString.endsWith("order by e.masterName desc"));
+        assertNull(ds.getItem(masters.get(150).getId()));
+
+        // the same sort does not reload the data
+        ds.sort(new CollectionDatasource.Sortable.SortInfo[]{sortInfo});
+        assertEquals(Arrays.asList(0, 1, 0), loadedWindows);
+    }
+
+    @Test
+    public void testGetItemIds() throws Exception {
+        ds.refresh();
+
+        List<UUID> ids = ds.getItemIds(95, 10);
+        assertEquals(10, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(masters.get(95 + i).getId(), ids.get(i));
+        }
+        assertEquals(Arrays.asList(0, 1), loadedWindows);
+
+        assertEquals(5, ds.getItemIds(245, 10).size());
+        assertTrue(ds.getItemIds(250, 10).isEmpty());
+
+        List<UUID> allIds = (List<UUID>) ds.getItemIds();
+        assertEquals(250, allIds.size());
+        assertEquals(masters.get(199).getId(), allIds.get(199));
+        assertEquals(199, ds.indexOfId(masters.get(199).getId()));
+        assertTrue(allIds.contains(masters.get(199).getId()));
+
+        assertEquals(masters.get(101).getId(), ds.nextItemId(masters.get(100).getId()));
+        assertEquals(masters.get(99).getId(), ds.prevItemId(masters.get(100).getId()));
+        assertEquals(masters.get(0).getId(), ds.firstItemId());
+    }
+
+    protected TestMasterEntity copy(TestMasterEntity master) {
+        TestMasterEntity copy = new TestMasterEntity();
+        copy.setId(master.getId());
+        copy.setMasterName(master.getMasterName());
+        BaseEntityInternalAccess.setNew(copy, false);
+        BaseEntityInternalAccess.setDetached(copy, true);
+        return copy;
+    }
+}
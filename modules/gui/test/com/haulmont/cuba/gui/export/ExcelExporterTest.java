@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.export;
+
+import com.haulmont.chile.core.model.MetaClass;
+import com.haulmont.cuba.client.testsupport.CubaClientTestCase;
+import com.haulmont.cuba.core.entity.Entity;
+import com.haulmont.cuba.core.global.AppBeans;
+import com.haulmont.cuba.core.global.LoadContext;
+import com.haulmont.cuba.core.global.TimeZones;
+import com.haulmont.cuba.gui.backgroundwork.BackgroundWorkProgressWindow;
+import com.haulmont.cuba.gui.components.Table;
+import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.data.impl.TestDataSupplier;
+import com.haulmont.cuba.gui.data.impl.testmodel1.TestMasterEntity;
+import com.haulmont.cuba.gui.executors.BackgroundTask;
+import com.haulmont.cuba.gui.executors.TaskLifeCycle;
+import mockit.Mocked;
+import mockit.NonStrictExpectations;
+import mockit.Verifications;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class ExcelExporterTest extends CubaClientTestCase {
+
+    @Mocked
+    protected TimeZones timeZones;
+
+    @Mocked
+    protected BackgroundWorkProgressWindow progressWindow;
+
+    @Mocked
+    protected Table<Entity> table;
+
+    @Mocked
+    protected CollectionDatasource datasource;
+
+    @Mocked
+    protected ExportDisplay display;
+
+    protected MetaClass metaClass;
+
+    protected List<TestMasterEntity> masters = new ArrayList<>();
+
+    protected List<Integer> loadedPages = new ArrayList<>();
+
+    protected int disposeCount;
+
+    @Before
+    public void setUp() throws Exception {
+        addEntityPackage("com.haulmont.cuba");
+        setupInfrastructure();
+
+        metaClass = metadata.getClassNN(TestMasterEntity.class);
+        for (int i = 0; i < ExcelExporter.BACKGROUND_EXPORT_PAGE_SIZE + 10; i++) {
+            TestMasterEntity master = new TestMasterEntity();
+            master.setMasterName("master" + i);
+            masters.add(master);
+        }
+
+        LoadContext<TestMasterEntity> loadContext = LoadContext.create(TestMasterEntity.class)
+                .setQuery(LoadContext.createQuery("select e from test$MasterEntity e order by e.masterName"));
+
+        TestDataSupplier dataSupplier = new TestDataSupplier() {
+            @Override
+            @Nonnull
+            @SuppressWarnings("unchecked")
+            public <E extends Entity> List<E> loadList(LoadContext<E> context) {
+                LoadContext.Query query = context.getQuery();
+                loadedPages.add(query.getFirstResult());
+                int to = Math.min(query.getFirstResult() + query.getMaxResults(), masters.size());
+                return (List<E>) new ArrayList<>(masters.subList(query.getFirstResult(), to));
+            }
+        };
+
+        new NonStrictExpectations() {
+            {
+                AppBeans.get(TimeZones.NAME); result = timeZones;
+                AppBeans.get(TimeZones.class); result = timeZones;
+                AppBeans.get(TimeZones.NAME, TimeZones.class); result = timeZones;
+
+                table.getDatasource(); result = datasource;
+                table.isAggregatable(); result = false;
+                table.getPrintable((Table.Column) any); result = null;
+
+                datasource.getMetaClass(); result = metaClass;
+                datasource.getCompiledLoadContext(); result = loadContext;
+                datasource.getDataSupplier(); result = dataSupplier;
+                datasource.size(); result = 10;
+            }
+        };
+    }
+
+    @Test
+    public void testBackgroundExportSupported() throws Exception {
+        ExcelExporter exporter = new ExcelExporter(ExportFormat.XLSX);
+        Table.Column nameColumn = new Table.Column(metaClass.getPropertyPath("masterName"), "Name");
+        assertTrue(exporter.isBackgroundExportSupported(table, Collections.singletonList(nameColumn)));
+
+        Table.Column generatedColumn = new Table.Column("generated", "Generated");
+        assertFalse(exporter.isBackgroundExportSupported(table, Arrays.asList(nameColumn, generatedColumn)));
+
+        nameColumn.setFormatter(value -> "formatted");
+        assertFalse(exporter.isBackgroundExportSupported(table, Collections.singletonList(nameColumn)));
+    }
+
+    @Test
+    public void testBackgroundExport() throws Exception {
+        ExcelExporter exporter = new TestExcelExporter();
+        Table.Column nameColumn = new Table.Column(metaClass.getPropertyPath("masterName"), "Name");
+        exporter.exportTableInBackground(table, Collections.singletonList(nameColumn), display, null, "masters");
+
+        byte[] bytes = runTask(false);
+        assertNotNull(bytes);
+        assertEquals(Arrays.asList(0, ExcelExporter.BACKGROUND_EXPORT_PAGE_SIZE), loadedPages);
+        assertEquals(1, disposeCount);
+
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(bytes))) {
+            Sheet sheet = workbook.getSheetAt(0);
+            assertEquals("Name", sheet.getRow(0).getCell(0).getStringCellValue());
+            assertEquals(masters.size(), sheet.getLastRowNum());
+            for (int i = 0; i < masters.size(); i++) {
+                assertEquals(masters.get(i).getMasterName(), sheet.getRow(i + 1).getCell(0).getStringCellValue());
+            }
+        }
+    }
+
+    @Test
+    public void testInterruptedBackgroundExport() throws Exception {
+        ExcelExporter exporter = new TestExcelExporter();
+        Table.Column nameColumn = new Table.Column(metaClass.getPropertyPath("masterName"), "Name");
+        exporter.exportTableInBackground(table, Collections.singletonList(nameColumn), display, null, "masters");
+
+        assertNull(runTask(true));
+        assertEquals(Collections.singletonList(0), loadedPages);
+        // temporary files of the streaming workbook are deleted
+        assertEquals(1, disposeCount);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected byte[] runTask(boolean interrupted) throws Exception {
+        List<BackgroundTask<Integer, byte[]>> tasks = new ArrayList<>();
+        new Verifications() {
+            {
+                BackgroundWorkProgressWindow.show(withCapture(tasks), (String) any, (String) any, (Number) any, true, true);
+            }
+        };
+        assertEquals(1, tasks.size());
+
+        return tasks.get(0).run(new TaskLifeCycle<Integer>() {
+            @Override
+            public void publish(Integer... changes) {
+            }
+
+            @Override
+            public boolean isInterrupted() {
+                return interrupted;
+            }
+
+            @Nonnull
+            @Override
+            public Map<String, Object> getParams() {
+                return Collections.emptyMap();
+            }
+        });
+    }
+
+    protected class TestExcelExporter extends ExcelExporter {
+
+        public TestExcelExporter() {
+            super(ExportFormat.XLSX);
+        }
+
+        @Override
+        protected synchronized void disposeWorkbook() {
+            disposeCount++;
+            super.disposeWorkbook();
+        }
+    }
+}
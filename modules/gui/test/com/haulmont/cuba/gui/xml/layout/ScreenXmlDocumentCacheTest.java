@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.cuba.gui.xml.layout;
+
+import com.haulmont.cuba.gui.theme.ThemeConstants;
+import com.haulmont.cuba.gui.theme.ThemeConstantsManager;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class ScreenXmlDocumentCacheTest {
+
+    protected static final String TEMPLATE = "<window/>";
+
+    protected ScreenXmlDocumentCache cache;
+    protected ThemeConstants theme;
+    protected AtomicInteger processedCount;
+    protected Function<String, Document> processor;
+
+    @Before
+    public void setUp() throws Exception {
+        theme = new ThemeConstants(Collections.emptyMap());
+
+        cache = new ScreenXmlDocumentCache();
+        cache.themeConstantsManager = new ThemeConstantsManager() {
+            @Override
+            public ThemeConstants getConstants() {
+                return theme;
+            }
+
+            @Override
+            public String getThemeValue(String key) {
+                return theme.get(key);
+            }
+
+            @Override
+            public int getThemeValueInt(String key) {
+                return theme.getInt(key);
+            }
+        };
+
+        processedCount = new AtomicInteger();
+        processor = template -> {
+            processedCount.incrementAndGet();
+            return DocumentHelper.createDocument();
+        };
+    }
+
+    @Test
+    public void testSecondOpenSkipsProcessing() throws Exception {
+        Map<String, Object> params = new HashMap<>();
+        params.put("item", "first");
+        Document document = cache.getOrProcess("screen", TEMPLATE, Locale.ENGLISH, params, processor);
+
+        params.put("item", "second");
+        assertSame(document, cache.getOrProcess("screen", TEMPLATE, Locale.ENGLISH, params, processor));
+        assertEquals(1, processedCount.get());
+
+        cache.getOrProcess("anotherScreen", TEMPLATE, Locale.ENGLISH, params, processor);
+        assertEquals(2, processedCount.get());
+    }
+
+    @Test
+    public void testThemeAndLocaleChangeMissCache() throws Exception {
+        Map<String, Object> params = Collections.emptyMap();
+        Document document = cache.getOrProcess("screen", TEMPLATE, Locale.ENGLISH, params, processor);
+
+        ThemeConstants firstTheme = theme;
+        theme = new ThemeConstants(Collections.emptyMap());
+        cache.getOrProcess("screen", TEMPLATE, Locale.ENGLISH, params, processor);
+        assertEquals(2, processedCount.get());
+
+        cache.getOrProcess("screen", TEMPLATE, Locale.GERMAN, params, processor);
+        assertEquals(3, processedCount.get());
+
+        theme = firstTheme;
+        assertSame(document, cache.getOrProcess("screen", TEMPLATE, Locale.ENGLISH, params, processor));
+        assertEquals(3, processedCount.get());
+    }
+
+    @Test
+    public void testChangedTemplateAndResetMissCache() throws Exception {
+        Map<String, Object> params = Collections.emptyMap();
+        cache.getOrProcess("screen", TEMPLATE, Locale.ENGLISH, params, processor);
+
+        cache.getOrProcess("screen", "<window caption=\"changed\"/>", Locale.ENGLISH, params, processor);
+        assertEquals(2, processedCount.get());
+        assertEquals(1, cache.size());
+
+        cache.invalidateAll();
+        cache.getOrProcess("screen", "<window caption=\"changed\"/>", Locale.ENGLISH, params, processor);
+        assertEquals(3, processedCount.get());
+    }
+}
@@ -35,6 +35,7 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
 import org.springframework.security.oauth2.provider.token.TokenStore;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.util.Collection;
 import java.util.Locale;
@@ -58,6 +59,9 @@ public class ClientProxyTokenStore implements TokenStore {
     @Inject
     protected LoginService loginService;
 
+    @Inject
+    protected ClientTokenCache tokenCache;
+
     protected AuthenticationKeyGenerator authenticationKeyGenerator;
 
     private Logger log = LoggerFactory.getLogger(ClientProxyTokenStore.class);
@@ -73,14 +77,21 @@ public class ClientProxyTokenStore implements TokenStore {
 
     @Override
     public OAuth2Authentication readAuthentication(String token) {
-        byte[] authenticationBytes = serverTokenStore.getAuthenticationByTokenValue(token);
-        OAuth2Authentication authentication = authenticationBytes != null ? deserializeAuthentication(authenticationBytes) : null;
+        OAuth2Authentication authentication = tokenCache.isEnabled()
+                ? tokenCache.getAuthentication(token, this::loadAuthentication)
+                : loadAuthentication(token);
         if (authentication != null) {
             processSession(authentication, token);
         }
         return authentication;
     }
 
+    @Nullable
+    protected OAuth2Authentication loadAuthentication(String tokenValue) {
+        byte[] authenticationBytes = serverTokenStore.getAuthenticationByTokenValue(tokenValue);
+        return authenticationBytes != null ? deserializeAuthentication(authenticationBytes) : null;
+    }
+
     @Override
     public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
         String authenticationKey = authenticationKeyGenerator.extractKey(authentication);
@@ -89,18 +100,29 @@ public class ClientProxyTokenStore implements TokenStore {
                 authenticationKey,
                 serializeAuthentication(authentication),
                 token.getExpiration());
+        if (tokenCache.isEnabled()) {
+            tokenCache.put(token, authentication);
+        }
         processSession(authentication, token.getValue());
         log.info("REST API access token stored: [{}] {}", authentication.getPrincipal(), token.getValue()) ;
     }
 
     @Override
     public OAuth2AccessToken readAccessToken(String tokenValue) {
+        return tokenCache.isEnabled()
+                ? tokenCache.getAccessToken(tokenValue, this::loadAccessToken)
+                : loadAccessToken(tokenValue);
+    }
+
+    @Nullable
+    protected OAuth2AccessToken loadAccessToken(String tokenValue) {
         byte[] accessTokenBytes = serverTokenStore.getAccessTokenByTokenValue(tokenValue);
         return accessTokenBytes != null ? deserializeAccessToken(accessTokenBytes) : null;
     }
 
     @Override
     public void removeAccessToken(OAuth2AccessToken token) {
+        tokenCache.invalidate(token.getValue());
         serverTokenStore.removeAccessToken(token.getValue());
     }
 
@@ -115,9 +137,19 @@ public class ClientProxyTokenStore implements TokenStore {
      * Tries to find the session associated with the given {@code authentication}. If the session id is in the store and
      * exists then it is set to the {@link SecurityContext}. If the session id is not in the store or the session with
      * the id doesn't exist in the middleware, then the trusted login attempt is performed.
+     * <p>If the token cache is enabled, the session is taken from the cache without requests to the middleware.</p>
      */
     protected void processSession(OAuth2Authentication authentication, String tokenValue) {
-        UUID sessionId = serverTokenStore.getSessionIdByTokenValue(tokenValue);
+        if (tokenCache.isEnabled()) {
+            UserSession cachedSession = tokenCache.getSession(tokenValue);
+            if (cachedSession != null) {
+                AppContext.setSecurityContext(new SecurityContext(cachedSession));
+                return;
+            }
+        }
+
+        UUID storedSessionId = serverTokenStore.getSessionIdByTokenValue(tokenValue);
+        UUID sessionId = storedSessionId;
 
         if (sessionId == null) {
             Map<String, String> userAuthenticationDetails = (Map<String, String>) authentication.getUserAuthentication().getDetails();
@@ -145,7 +177,12 @@ public class ClientProxyTokenStore implements TokenStore {
         }
 
         if (session != null) {
-            serverTokenStore.putSessionId(tokenValue, session.getId());
+            if (!session.getId().equals(storedSessionId)) {
+                serverTokenStore.putSessionId(tokenValue, session.getId());
+            }
+            if (tokenCache.isEnabled()) {
+                tokenCache.putSession(tokenValue, session);
+            }
             AppContext.setSecurityContext(new SecurityContext(session));
         }
     }
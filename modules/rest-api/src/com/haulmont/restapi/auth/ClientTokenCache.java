@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.restapi.auth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.haulmont.cuba.restapi.ServerTokenStore;
+import com.haulmont.cuba.security.global.UserSession;
+import com.haulmont.restapi.config.RestApiConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Client tier cache of deserialized access tokens and authentications read from the {@link ServerTokenStore}
+ * together with the user sessions associated with the tokens.
+ * <p>Tokens removed on the middleware are evicted when the cache regularly requests
+ * {@link ServerTokenStore#getRemovedTokenValues(long)}. Expired tokens are never returned from the cache.
+ * The middleware does not report killed user sessions, so a cached user session is used only until the next
+ * revocation check, after which it is verified on the middleware again. It is evicted earlier if the middleware
+ * reports that the session does not exist.</p>
+ */
+@Component(ClientTokenCache.NAME)
+public class ClientTokenCache {
+
+    public static final String NAME = "cuba_RestClientTokenCache";
+
+    private final Logger log = LoggerFactory.getLogger(ClientTokenCache.class);
+
+    /**
+     * Removed tokens are requested starting from a bit earlier time than the previous request
+     * to tolerate clock differences between the client and the middleware.
+     */
+    protected static final long REVOCATION_CHECK_OVERLAP_MS = TimeUnit.MINUTES.toMillis(1);
+
+    @Inject
+    protected ServerTokenStore serverTokenStore;
+
+    @Inject
+    protected RestApiConfig restApiConfig;
+
+    protected Cache<String, CachedToken> cache;
+
+    protected volatile long lastRevocationCheck;
+
+    /**
+     * Incremented by each revocation check. A cached user session is valid only within the generation
+     * it was put in.
+     */
+    protected volatile int revocationCheckGeneration;
+
+    protected final AtomicBoolean revocationCheckInProgress = new AtomicBoolean();
+
+    protected final AtomicLong hitCount = new AtomicLong();
+    protected final AtomicLong missCount = new AtomicLong();
+    protected final AtomicLong revokedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(restApiConfig.getTokenCacheMaxSize())
+                .expireAfterWrite(restApiConfig.getTokenCacheTtlSec(), TimeUnit.SECONDS)
+                .build();
+        lastRevocationCheck = System.currentTimeMillis();
+    }
+
+    public boolean isEnabled() {
+        return restApiConfig.getTokenCacheEnabled();
+    }
+
+    /**
+     * Returns the cached access token or loads it if it is not cached.
+     */
+    @Nullable
+    public OAuth2AccessToken getAccessToken(String tokenValue, Function<String, OAuth2AccessToken> loader) {
+        checkRevocations();
+
+        CachedToken cachedToken = cache.getIfPresent(tokenValue);
+        OAuth2AccessToken accessToken = cachedToken != null ? cachedToken.accessToken : null;
+        if (accessToken != null && !accessToken.isExpired()) {
+            hitCount.incrementAndGet();
+            return accessToken;
+        }
+
+        missCount.incrementAndGet();
+        accessToken = loader.apply(tokenValue);
+        if (accessToken != null && !accessToken.isExpired()) {
+            getOrCreate(tokenValue).accessToken = accessToken;
+        } else {
+            cache.invalidate(tokenValue);
+        }
+        return accessToken;
+    }
+
+    /**
+     * Returns the cached authentication or loads it if it is not cached.
+     */
+    @Nullable
+    public OAuth2Authentication getAuthentication(String tokenValue, Function<String, OAuth2Authentication> loader) {
+        checkRevocations();
+
+        CachedToken cachedToken = cache.getIfPresent(tokenValue);
+        if (cachedToken != null && cachedToken.authentication != null && !cachedToken.isExpired()) {
+            hitCount.incrementAndGet();
+            return cachedToken.authentication;
+        }
+
+        missCount.incrementAndGet();
+        OAuth2Authentication authentication = loader.apply(tokenValue);
+        if (authentication != null) {
+            getOrCreate(tokenValue).authentication = authentication;
+        } else {
+            cache.invalidate(tokenValue);
+        }
+        return authentication;
+    }
+
+    /**
+     * @return the user session associated with the cached token or null if the token or its session is not cached
+     */
+    @Nullable
+    public UserSession getSession(String tokenValue) {
+        CachedToken cachedToken = cache.getIfPresent(tokenValue);
+        if (cachedToken == null || cachedToken.isExpired()) {
+            return null;
+        }
+        CachedSession cachedSession = cachedToken.session;
+        if (cachedSession == null || cachedSession.generation != revocationCheckGeneration) {
+            return null;
+        }
+        return cachedSession.session;
+    }
+
+    /**
+     * Associates the user session with the token if the token is cached. The session is returned from the cache
+     * until the next revocation check.
+     */
+    public void putSession(String tokenValue, UserSession session) {
+        CachedToken cachedToken = cache.getIfPresent(tokenValue);
+        if (cachedToken != null) {
+            cachedToken.session = new CachedSession(session, revocationCheckGeneration);
+        }
+    }
+
+    /**
+     * Removes the user session from all cached tokens associated with it, e.g. after the session has expired
+     * on the middleware.
+     */
+    public void invalidateSession(UUID sessionId) {
+        for (CachedToken cachedToken : cache.asMap().values()) {
+            CachedSession session = cachedToken.session;
+            if (session != null && session.session.getId().equals(sessionId)) {
+                cachedToken.session = null;
+            }
+        }
+    }
+
+    /**
+     * Puts a newly stored access token and its authentication to the cache.
+     */
+    public void put(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+        CachedToken cachedToken = new CachedToken();
+        cachedToken.accessToken = accessToken;
+        cachedToken.authentication = authentication;
+        cache.put(accessToken.getValue(), cachedToken);
+    }
+
+    public void invalidate(String tokenValue) {
+        cache.invalidate(tokenValue);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Evicts tokens removed on the middleware since the previous check. Performed not more often than
+     * {@link RestApiConfig#getTokenRevocationCheckIntervalSec()} by one of the threads reading tokens.
+     */
+    public void checkRevocations() {
+        long now = System.currentTimeMillis();
+        if (now - lastRevocationCheck < TimeUnit.SECONDS.toMillis(restApiConfig.getTokenRevocationCheckIntervalSec())
+                || !revocationCheckInProgress.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Set<String> removedTokenValues =
+                    serverTokenStore.getRemovedTokenValues(lastRevocationCheck - REVOCATION_CHECK_OVERLAP_MS);
+            for (String tokenValue : removedTokenValues) {
+                if (cache.getIfPresent(tokenValue) != null) {
+                    cache.invalidate(tokenValue);
+                    revokedCount.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            // the cache cannot be trusted if removed tokens are unknown
+            log.warn("Unable to get removed tokens from the middleware, the cache is cleared: {}", e.toString());
+            cache.invalidateAll();
+        } finally {
+            lastRevocationCheck = now;
+            // sessions killed on the middleware are not reported, so cached sessions are verified again
+            revocationCheckGeneration++;
+            revocationCheckInProgress.set(false);
+        }
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getRevokedCount() {
+        return revokedCount.get();
+    }
+
+    public void resetStatistics() {
+        hitCount.set(0);
+        missCount.set(0);
+        revokedCount.set(0);
+    }
+
+    protected CachedToken getOrCreate(String tokenValue) {
+        CachedToken cachedToken = cache.getIfPresent(tokenValue);
+        if (cachedToken == null) {
+            cachedToken = new CachedToken();
+            CachedToken existing = cache.asMap().putIfAbsent(tokenValue, cachedToken);
+            if (existing != null) {
+                cachedToken = existing;
+            }
+        }
+        return cachedToken;
+    }
+
+    protected static class CachedToken {
+        protected volatile OAuth2AccessToken accessToken;
+        protected volatile OAuth2Authentication authentication;
+        protected volatile CachedSession session;
+
+        protected boolean isExpired() {
+            OAuth2AccessToken token = accessToken;
+            return token != null && token.isExpired();
+        }
+    }
+
+    protected static class CachedSession {
+        protected final UserSession session;
+        protected final int generation;
+
+        protected CachedSession(UserSession session, int generation) {
+            this.session = session;
+            this.generation = generation;
+        }
+    }
+}
@@ -26,17 +26,29 @@ import com.haulmont.cuba.core.global.*;
 import com.haulmont.restapi.config.RestJsonTransformations;
 import com.haulmont.restapi.exception.RestAPIException;
 import com.haulmont.restapi.transform.JsonTransformationDirection;
+import com.haulmont.restapi.transform.JsonTransformingWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.function.Consumer;
 
 /**
  */
 @Component("cuba_RestControllerUtils")
 public class RestControllerUtils {
 
+    private final Logger log = LoggerFactory.getLogger(RestControllerUtils.class);
+
     @Inject
     protected Metadata metadata;
 
@@ -98,6 +110,40 @@ public class RestControllerUtils {
             restJsonTransformations.getTransformer(entityName, modelVersion, direction).transformJson(json);
     }
 
+    /**
+     * Returns a writer that transforms the JSON written to it if the model version is specified. Otherwise the given
+     * writer is returned.
+     */
+    public Writer transformJsonIfRequired(String entityName, String modelVersion, JsonTransformationDirection direction, Writer writer) {
+        return Strings.isNullOrEmpty(modelVersion) ? writer :
+            new JsonTransformingWriter(writer, restJsonTransformations.getTransformer(entityName, modelVersion, direction));
+    }
+
+    /**
+     * Writes JSON to the response body with the OK status. The body is streamed to the client while it is written,
+     * so it is not kept in memory entirely.
+     * <p>If writing fails before the response is committed, the written part is discarded and the exception is
+     * rethrown to be reported with the proper status by the exception handler. If the response is already committed,
+     * the client receives an incomplete body, which is logged.</p>
+     */
+    public void writeJsonResponse(HttpServletResponse response, Consumer<Writer> bodyWriter) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        // the output stream is used instead of the response writer to let the exception handler write the error
+        Writer writer = new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8);
+        try {
+            bodyWriter.accept(writer);
+            writer.flush();
+        } catch (RuntimeException e) {
+            if (response.isCommitted()) {
+                log.error("Error writing JSON response, the response is already committed and is incomplete", e);
+            } else {
+                response.resetBuffer();
+            }
+            throw e;
+        }
+    }
+
     private class FillingInaccessibleAttributesVisitor implements EntityAttributeVisitor {
 
         @Override
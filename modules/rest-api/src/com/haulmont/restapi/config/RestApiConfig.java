@@ -20,6 +20,8 @@ import com.haulmont.cuba.core.config.Config;
 import com.haulmont.cuba.core.config.Property;
 import com.haulmont.cuba.core.config.Source;
 import com.haulmont.cuba.core.config.SourceType;
+import com.haulmont.cuba.core.config.defaults.DefaultBoolean;
+import com.haulmont.cuba.core.config.defaults.DefaultInt;
 
 /**
  */
@@ -27,4 +29,32 @@ import com.haulmont.cuba.core.config.SourceType;
 public interface RestApiConfig extends Config {
     @Property("cuba.trustedClientPassword")
     String getTrustedClientPassword();
+
+    /**
+     * @return whether access tokens and authentications read from the middleware are cached in the client tier
+     */
+    @Property("cuba.rest.tokenCacheEnabled")
+    @DefaultBoolean(true)
+    boolean getTokenCacheEnabled();
+
+    /**
+     * @return maximum number of tokens in the client tier cache
+     */
+    @Property("cuba.rest.tokenCacheMaxSize")
+    @DefaultInt(10000)
+    int getTokenCacheMaxSize();
+
+    /**
+     * @return time in seconds after which a cached token is read from the middleware again
+     */
+    @Property("cuba.rest.tokenCacheTtlSec")
+    @DefaultInt(60)
+    int getTokenCacheTtlSec();
+
+    /**
+     * @return interval in seconds of requesting tokens revoked on the middleware to remove them from the cache
+     */
+    @Property("cuba.rest.tokenRevocationCheckIntervalSec")
+    @DefaultInt(5)
+    int getTokenRevocationCheckIntervalSec();
 }
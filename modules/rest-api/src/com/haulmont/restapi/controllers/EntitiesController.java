@@ -16,6 +16,7 @@
 
 package com.haulmont.restapi.controllers;
 
+import com.haulmont.restapi.common.RestControllerUtils;
 import com.haulmont.restapi.config.RestQueriesConfiguration;
 import com.haulmont.restapi.data.CreatedEntityInfo;
 import com.haulmont.restapi.service.EntitiesControllerManager;
@@ -31,6 +32,8 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import javax.inject.Inject;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.HashMap;
 
 /**
@@ -46,6 +49,9 @@ public class EntitiesController {
     @Inject
     protected QueriesControllerManager queriesControllerManager;
 
+    @Inject
+    protected RestControllerUtils restControllerUtils;
+
     @GetMapping("/{entityName}/{entityId}")
     public String loadEntity(@PathVariable String entityName,
                              @PathVariable String entityId,
@@ -57,22 +63,23 @@ public class EntitiesController {
     }
 
     @GetMapping("/{entityName}")
-    public ResponseEntity<String> loadEntitiesList(@PathVariable String entityName,
-                                   @RequestParam(required = false) String view,
-                                   @RequestParam(required = false) Integer limit,
-                                   @RequestParam(required = false) Integer offset,
-                                   @RequestParam(required = false) String sort,
-                                   @RequestParam(required = false) Boolean returnNulls,
-                                   @RequestParam(required = false) Boolean returnCount,
-                                   @RequestParam(required = false) Boolean dynamicAttributes,
-                                   @RequestParam(required = false) String modelVersion) {
-        String resultJson = entitiesControllerManager.loadEntitiesList(entityName, view, limit, offset, sort, returnNulls, dynamicAttributes, modelVersion);
-        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.status(HttpStatus.OK);
+    public void loadEntitiesList(@PathVariable String entityName,
+                                 @RequestParam(required = false) String view,
+                                 @RequestParam(required = false) Integer limit,
+                                 @RequestParam(required = false) Integer offset,
+                                 @RequestParam(required = false) String sort,
+                                 @RequestParam(required = false) Boolean returnNulls,
+                                 @RequestParam(required = false) Boolean returnCount,
+                                 @RequestParam(required = false) Boolean dynamicAttributes,
+                                 @RequestParam(required = false) String modelVersion,
+                                 HttpServletResponse response) throws IOException {
+        //the header must be set before the body is streamed to the client
         if (BooleanUtils.isTrue(returnCount)) {
             String count = queriesControllerManager.getCount(entityName, RestQueriesConfiguration.ALL_ENTITIES_QUERY_NAME, modelVersion, new HashMap<>());
-            responseBuilder.header("X-Total-Count", count);
+            response.setHeader("X-Total-Count", count);
         }
-        return responseBuilder.body(resultJson);
+        restControllerUtils.writeJsonResponse(response, writer ->
+                entitiesControllerManager.writeEntitiesList(entityName, view, limit, offset, sort, returnNulls, dynamicAttributes, modelVersion, writer));
     }
 
     @PostMapping("/{entityName}")
@@ -16,15 +16,16 @@
 
 package com.haulmont.restapi.controllers;
 
+import com.haulmont.restapi.common.RestControllerUtils;
 import com.haulmont.restapi.config.RestQueriesConfiguration;
 import com.haulmont.restapi.service.QueriesControllerManager;
 import org.apache.commons.lang.BooleanUtils;
-import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.List;
 import java.util.Map;
@@ -39,24 +40,28 @@ public class QueriesController {
     @Inject
     protected QueriesControllerManager queriesControllerManager;
 
+    @Inject
+    protected RestControllerUtils restControllerUtils;
+
     @GetMapping("/{entityName}/{queryName}")
-    public ResponseEntity<String> executeQuery(@PathVariable String entityName,
-                               @PathVariable String queryName,
-                               @RequestParam(required = false) Integer limit,
-                               @RequestParam(required = false) Integer offset,
-                               @RequestParam(required = false) String view,
-                               @RequestParam(required = false) Boolean returnNulls,
-                               @RequestParam(required = false) Boolean dynamicAttributes,
-                               @RequestParam(required = false) Boolean returnCount,
-                               @RequestParam(required = false) String modelVersion,
-                               @RequestParam Map<String, String> params) {
-        String resultJson = queriesControllerManager.executeQuery(entityName, queryName, limit, offset, view, returnNulls, dynamicAttributes, modelVersion, params);
-        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.status(HttpStatus.OK);
+    public void executeQuery(@PathVariable String entityName,
+                             @PathVariable String queryName,
+                             @RequestParam(required = false) Integer limit,
+                             @RequestParam(required = false) Integer offset,
+                             @RequestParam(required = false) String view,
+                             @RequestParam(required = false) Boolean returnNulls,
+                             @RequestParam(required = false) Boolean dynamicAttributes,
+                             @RequestParam(required = false) Boolean returnCount,
+                             @RequestParam(required = false) String modelVersion,
+                             @RequestParam Map<String, String> params,
+                             HttpServletResponse response) throws IOException {
+        //the header must be set before the body is streamed to the client
         if (BooleanUtils.isTrue(returnCount)) {
             String count = queriesControllerManager.getCount(entityName, queryName, modelVersion, params);
-            responseBuilder.header("X-Total-Count", count);
+            response.setHeader("X-Total-Count", count);
         }
-        return responseBuilder.body(resultJson);
+        restControllerUtils.writeJsonResponse(response, writer ->
+                queriesControllerManager.writeQueryResult(entityName, queryName, limit, offset, view, returnNulls, dynamicAttributes, modelVersion, params, writer));
     }
 
     @GetMapping(value = "/{entityName}/{queryName}/count", produces = "text/plain;charset=UTF-8")
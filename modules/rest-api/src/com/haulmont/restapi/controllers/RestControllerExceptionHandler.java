@@ -19,6 +19,10 @@ package com.haulmont.restapi.controllers;
 import com.haulmont.cuba.core.global.validation.CustomValidationException;
 import com.haulmont.cuba.core.global.validation.MethodParametersValidationException;
 import com.haulmont.cuba.core.global.validation.MethodResultValidationException;
+import com.haulmont.cuba.core.sys.AppContext;
+import com.haulmont.cuba.core.sys.SecurityContext;
+import com.haulmont.cuba.security.global.NoUserSessionException;
+import com.haulmont.restapi.auth.ClientTokenCache;
 import com.haulmont.restapi.exception.ConstraintViolationInfo;
 import com.haulmont.restapi.exception.ErrorInfo;
 import com.haulmont.restapi.exception.RestAPIException;
@@ -30,6 +34,7 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import javax.inject.Inject;
 import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.ValidationException;
@@ -44,6 +49,9 @@ public class RestControllerExceptionHandler {
             String.class, Date.class, Number.class, Enum.class, UUID.class
     };
 
+    @Inject
+    protected ClientTokenCache tokenCache;
+
     @ExceptionHandler(RestAPIException.class)
     @ResponseBody
     public ResponseEntity<ErrorInfo> handleRestAPIException(RestAPIException e) {
@@ -102,6 +110,19 @@ public class RestControllerExceptionHandler {
         return new ResponseEntity<>(errorInfo, HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    @ExceptionHandler(NoUserSessionException.class)
+    @ResponseBody
+    public ResponseEntity<ErrorInfo> handleNoUserSessionException(NoUserSessionException e) {
+        log.info("NoUserSessionException: {}", e.getMessage());
+        // the next request with the same token will get a new session instead of the cached one
+        SecurityContext securityContext = AppContext.getSecurityContext();
+        if (securityContext != null) {
+            tokenCache.invalidateSession(securityContext.getSessionId());
+        }
+        ErrorInfo errorInfo = new ErrorInfo("Unauthorized", "User session does not exist");
+        return new ResponseEntity<>(errorInfo, HttpStatus.UNAUTHORIZED);
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseBody
     public ResponseEntity<ErrorInfo> handleException(Exception e) {
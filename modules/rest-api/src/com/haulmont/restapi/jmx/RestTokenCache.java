@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.restapi.jmx;
+
+import com.haulmont.restapi.auth.ClientTokenCache;
+import org.springframework.stereotype.Component;
+
+import javax.inject.Inject;
+
+@Component("cuba_RestTokenCacheMBean")
+public class RestTokenCache implements RestTokenCacheMBean {
+
+    @Inject
+    protected ClientTokenCache tokenCache;
+
+    @Override
+    public boolean isEnabled() {
+        return tokenCache.isEnabled();
+    }
+
+    @Override
+    public long getSize() {
+        return tokenCache.getSize();
+    }
+
+    @Override
+    public long getHitCount() {
+        return tokenCache.getHitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return tokenCache.getMissCount();
+    }
+
+    @Override
+    public long getRevokedCount() {
+        return tokenCache.getRevokedCount();
+    }
+
+    @Override
+    public void resetStatistics() {
+        tokenCache.resetStatistics();
+    }
+
+    @Override
+    public void clear() {
+        tokenCache.invalidateAll();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.restapi.jmx;
+
+public interface RestTokenCacheMBean {
+
+    boolean isEnabled();
+
+    long getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return number of cached tokens evicted because they have been removed on the middleware
+     */
+    long getRevokedCount();
+
+    void resetStatistics();
+
+    void clear();
+}
@@ -47,6 +47,8 @@ import javax.validation.ConstraintViolation;
 import javax.validation.ConstraintViolationException;
 import javax.validation.Validator;
 import javax.validation.groups.Default;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.*;
 
 /**
@@ -127,6 +129,24 @@ public class EntitiesControllerManager {
                                    @Nullable Boolean returnNulls,
                                    @Nullable Boolean dynamicAttributes,
                                    @Nullable String modelVersion) {
+        StringWriter writer = new StringWriter();
+        writeEntitiesList(entityName, viewName, limit, offset, sort, returnNulls, dynamicAttributes, modelVersion, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Loads the entities list and writes it to the given writer as JSON. Entities are serialized one by one, so the
+     * whole JSON of the list is never kept in memory.
+     */
+    public void writeEntitiesList(String entityName,
+                                  @Nullable String viewName,
+                                  @Nullable Integer limit,
+                                  @Nullable Integer offset,
+                                  @Nullable String sort,
+                                  @Nullable Boolean returnNulls,
+                                  @Nullable Boolean dynamicAttributes,
+                                  @Nullable String modelVersion,
+                                  Writer writer) {
         entityName = restControllerUtils.transformEntityNameIfRequired(entityName, modelVersion, JsonTransformationDirection.FROM_VERSION);
         MetaClass metaClass = restControllerUtils.getMetaClass(entityName);
         checkCanReadEntity(metaClass);
@@ -170,9 +190,8 @@ public class EntitiesControllerManager {
         serializationOptions.add(EntitySerializationOption.SERIALIZE_INSTANCE_NAME);
         if (BooleanUtils.isTrue(returnNulls)) serializationOptions.add(EntitySerializationOption.SERIALIZE_NULLS);
 
-        String json = entitySerializationAPI.toJson(entities, view, serializationOptions.toArray(new EntitySerializationOption[0]));
-        json = restControllerUtils.transformJsonIfRequired(entityName, modelVersion, JsonTransformationDirection.TO_VERSION, json);
-        return json;
+        Writer resultWriter = restControllerUtils.transformJsonIfRequired(entityName, modelVersion, JsonTransformationDirection.TO_VERSION, writer);
+        entitySerializationAPI.toJson(entities, view, resultWriter, serializationOptions.toArray(new EntitySerializationOption[0]));
     }
 
     public CreatedEntityInfo createEntity(String entityJson, String entityName, String modelVersion) {
@@ -40,6 +40,8 @@ import org.springframework.util.ClassUtils;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.math.BigDecimal;
 import java.text.ParseException;
 import java.util.*;
@@ -77,6 +79,25 @@ public class QueriesControllerManager {
                                @Nullable Boolean dynamicAttributes,
                                @Nullable String version,
                                Map<String, String> params) {
+        StringWriter writer = new StringWriter();
+        writeQueryResult(entityName, queryName, limit, offset, viewName, returnNulls, dynamicAttributes, version, params, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Executes the query and writes the result to the given writer as JSON. Entities are serialized one by one, so
+     * the whole JSON of the result is never kept in memory.
+     */
+    public void writeQueryResult(String entityName,
+                                 String queryName,
+                                 @Nullable Integer limit,
+                                 @Nullable Integer offset,
+                                 @Nullable String viewName,
+                                 @Nullable Boolean returnNulls,
+                                 @Nullable Boolean dynamicAttributes,
+                                 @Nullable String version,
+                                 Map<String, String> params,
+                                 Writer writer) {
         LoadContext<Entity> ctx;
         entityName = restControllerUtils.transformEntityNameIfRequired(entityName, version, JsonTransformationDirection.FROM_VERSION);
         try {
@@ -99,9 +120,8 @@ public class QueriesControllerManager {
         serializationOptions.add(EntitySerializationOption.SERIALIZE_INSTANCE_NAME);
         if (BooleanUtils.isTrue(returnNulls)) serializationOptions.add(EntitySerializationOption.SERIALIZE_NULLS);
 
-        String json = entitySerializationAPI.toJson(entities, ctx.getView(), serializationOptions.toArray(new EntitySerializationOption[0]));
-        json = restControllerUtils.transformJsonIfRequired(entityName, version, JsonTransformationDirection.TO_VERSION, json);
-        return json;
+        Writer resultWriter = restControllerUtils.transformJsonIfRequired(entityName, version, JsonTransformationDirection.TO_VERSION, writer);
+        entitySerializationAPI.toJson(entities, ctx.getView(), resultWriter, serializationOptions.toArray(new EntitySerializationOption[0]));
     }
 
     public String getCount(String entityName,
@@ -48,6 +48,11 @@ public abstract class AbstractEntityJsonTransformer implements EntityJsonTransfo
     protected JsonTransformationDirection direction;
     protected Set<String> attributesToRemove = new HashSet<>();
 
+    /**
+     * Mapper shared by all invocations of the transformer, as creating it is expensive
+     */
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
     @Inject
     protected RestJsonTransformations jsonTransformations;
 
@@ -74,7 +79,6 @@ public abstract class AbstractEntityJsonTransformer implements EntityJsonTransfo
      */
     @Override
     public String transformJson(String json) {
-        ObjectMapper objectMapper = new ObjectMapper();
         try {
             JsonNode rootNode = objectMapper.readTree(json);
             if (rootNode.isArray()) {
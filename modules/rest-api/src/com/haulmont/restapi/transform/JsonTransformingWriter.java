@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.restapi.transform;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writer that applies an {@link EntityJsonTransformer} to a JSON entities array while it is being written. Each
+ * element of the array (or the root JSON object) is buffered until it is complete, transformed and passed to the
+ * underlying writer, so only one entity JSON is kept in memory at a time.
+ */
+public class JsonTransformingWriter extends Writer {
+
+    protected final Writer out;
+    protected final EntityJsonTransformer transformer;
+
+    protected StringBuilder element;
+    protected int elementDepth;
+    protected int depth;
+    protected boolean inString;
+    protected boolean escape;
+
+    public JsonTransformingWriter(Writer out, EntityJsonTransformer transformer) {
+        this.out = out;
+        this.transformer = transformer;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(cbuf[i]);
+        }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        if (element == null) {
+            if (c == '{' && depth <= 1) {
+                element = new StringBuilder().append((char) c);
+                elementDepth = depth++;
+                return;
+            }
+            if (c == '[') {
+                depth++;
+            } else if (c == ']') {
+                depth--;
+            }
+            out.write(c);
+            return;
+        }
+
+        element.append((char) c);
+        if (inString) {
+            if (escape) {
+                escape = false;
+            } else if (c == '\\') {
+                escape = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+        } else if (c == '"') {
+            inString = true;
+        } else if (c == '{' || c == '[') {
+            depth++;
+        } else if (c == '}' || c == ']') {
+            if (--depth == elementDepth) {
+                out.write(transformer.transformJson(element.toString()));
+                element = null;
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (element != null) {
+            out.write(element.toString());
+            element = null;
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2008-2017 Haulmont.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.haulmont.restapi.transform;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class JsonTransformingWriterTest {
+
+    /**
+     * Marks each transformed JSON object and remembers what it received.
+     */
+    protected static class TestTransformer implements EntityJsonTransformer {
+
+        protected List<String> received = new ArrayList<>();
+
+        @Override
+        public String getTransformedEntityName() {
+            return "test$Entity";
+        }
+
+        @Override
+        public String transformJson(String json) {
+            received.add(json);
+            return "{\"transformed\":true," + json.substring(1);
+        }
+    }
+
+    @Test
+    public void testArrayElementsAreTransformedOneByOne() throws Exception {
+        TestTransformer transformer = new TestTransformer();
+        String json = "[{\"id\":1,\"ref\":{\"id\":2},\"list\":[{\"id\":3}]},{\"id\":4}]";
+
+        String result = write(transformer, json);
+
+        assertEquals("[{\"transformed\":true,\"id\":1,\"ref\":{\"id\":2},\"list\":[{\"id\":3}]}," +
+                "{\"transformed\":true,\"id\":4}]", result);
+        assertEquals(2, transformer.received.size());
+        assertEquals("{\"id\":4}", transformer.received.get(1));
+    }
+
+    @Test
+    public void testRootObject() throws Exception {
+        TestTransformer transformer = new TestTransformer();
+
+        String result = write(transformer, "{\"id\":1,\"ref\":{\"id\":2}}");
+
+        assertEquals("{\"transformed\":true,\"id\":1,\"ref\":{\"id\":2}}", result);
+        assertEquals(1, transformer.received.size());
+    }
+
+    @Test
+    public void testBracesInStrings() throws Exception {
+        TestTransformer transformer = new TestTransformer();
+        String json = "[{\"name\":\"}]{[\\\"\\\\\"},{\"name\":\"\\\\\"}]";
+
+        String result = write(transformer, json);
+
+        assertEquals(2, transformer.received.size());
+        assertEquals("{\"name\":\"}]{[\\\"\\\\\"}", transformer.received.get(0));
+        assertEquals("{\"name\":\"\\\\\"}", transformer.received.get(1));
+        assertEquals("[{\"transformed\":true,\"name\":\"}]{[\\\"\\\\\"}," +
+                "{\"transformed\":true,\"name\":\"\\\\\"}]", result);
+    }
+
+    @Test
+    public void testNullElementsAndEmptyArray() throws Exception {
+        TestTransformer transformer = new TestTransformer();
+
+        assertEquals("[null,{\"transformed\":true,\"id\":1},null]", write(transformer, "[null,{\"id\":1},null]"));
+        assertEquals("[]", write(transformer, "[]"));
+        assertEquals(1, transformer.received.size());
+    }
+
+    @Test
+    public void testElementWrittenInParts() throws Exception {
+        TestTransformer transformer = new TestTransformer();
+        StringWriter out = new StringWriter();
+        Writer writer = new JsonTransformingWriter(out, transformer);
+
+        writer.write("[{\"id\"");
+        assertEquals("[", out.toString());
+        writer.write(":1}");
+        writer.write(",{\"id\":2}]");
+        writer.close();
+
+        assertEquals("[{\"transformed\":true,\"id\":1},{\"transformed\":true,\"id\":2}]", out.toString());
+    }
+
+    protected String write(EntityJsonTransformer transformer, String json) throws Exception {
+        StringWriter out = new StringWriter();
+        try (Writer writer = new JsonTransformingWriter(out, transformer)) {
+            writer.write(json);
+        }
+        return out.toString();
+    }
+}
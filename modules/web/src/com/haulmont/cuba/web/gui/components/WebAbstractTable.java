@@ -1877,7 +1877,8 @@ public abstract class WebAbstractTable<T extends com.vaadin.ui.Table & CubaEnhan
         @SuppressWarnings("unchecked")
         Map<AggregationInfo, Object> results = ((CollectionDatasource.Aggregatable) datasource).aggregate(
                 aggregationInfos.toArray(new AggregationInfo[aggregationInfos.size()]),
-                context.getItemIds()
+                context.getItemIds(),
+                getAggregationScope(context)
         );
         Map<Object, Object> resultsByColumns = new LinkedHashMap<>();
         for (final Object propertyId : container.getAggregationPropertyIds()) {
@@ -1892,6 +1893,16 @@ public abstract class WebAbstractTable<T extends com.vaadin.ui.Table & CubaEnhan
         return resultsByColumns;
     }
 
+    /**
+     * @return object identifying the set of items aggregated in the context, results are cached by the datasource
+     * for this object. Null if the results should not be cached.
+     */
+    @Nullable
+    protected Object getAggregationScope(AggregationContainer.Context context) {
+        // totals of all the items
+        return context.getItemIds().size() == datasource.size() ? this : null;
+    }
+
     protected Map<Object, Object> __handleAggregationResults(AggregationContainer.Context context,
                                                              Map<Object, Object> results) {
         for (final Map.Entry<Object, Object> entry : results.entrySet()) {
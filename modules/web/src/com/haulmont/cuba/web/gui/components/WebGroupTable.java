@@ -158,6 +158,15 @@ public class WebGroupTable<E extends Entity> extends WebAbstractTable<CubaGroupT
         return new GroupTableDsWrapper(datasource, columns);
     }
 
+    @Nullable
+    @Override
+    protected Object getAggregationScope(AggregationContainer.Context context) {
+        if (context instanceof CubaGroupTable.GroupAggregationContext) {
+            return ((CubaGroupTable.GroupAggregationContext) context).getGroupId();
+        }
+        return super.getAggregationScope(context);
+    }
+
     @Override
     protected Map<Object, Object> __handleAggregationResults(AggregationContainer.Context context, Map<Object, Object> results) {
         if (context instanceof CubaGroupTable.GroupAggregationContext) {
@@ -21,6 +21,7 @@ import com.haulmont.chile.core.model.MetaPropertyPath;
 import com.haulmont.cuba.core.entity.Entity;
 import com.haulmont.cuba.core.global.View;
 import com.haulmont.cuba.gui.data.CollectionDatasource;
+import com.haulmont.cuba.gui.data.impl.CollectionDsHelper;
 import com.haulmont.cuba.web.gui.data.CollectionDsWrapper;
 import com.haulmont.cuba.web.gui.data.ItemWrapper;
 import com.haulmont.cuba.web.gui.data.PropertyWrapper;
@@ -28,6 +29,8 @@ import com.haulmont.cuba.web.gui.data.SortableCollectionDsWrapper;
 import com.haulmont.cuba.web.toolkit.data.AggregationContainer;
 import com.haulmont.cuba.web.toolkit.data.TableContainer;
 import com.haulmont.cuba.web.toolkit.ui.CubaTable;
+import com.vaadin.data.Container;
+import com.vaadin.data.Item;
 import com.vaadin.server.Resource;
 
 import java.util.*;
@@ -59,6 +62,9 @@ public class WebTable<E extends Entity> extends WebAbstractTable<CubaTable, E> {
 
     @Override
     protected CollectionDsWrapper createContainerDatasource(CollectionDatasource datasource, Collection<MetaPropertyPath> columns) {
+        if (datasource instanceof CollectionDatasource.Lazy && datasource instanceof CollectionDatasource.Indexed) {
+            return new LazyTableDsWrapper(datasource, columns);
+        }
         return datasource instanceof CollectionDatasource.Sortable && isSortable() ?
                 new SortableTableDsWrapper(datasource, columns) :
                 new TableDsWrapper(datasource, columns);
@@ -214,4 +220,44 @@ public class WebTable<E extends Entity> extends WebAbstractTable<CubaTable, E> {
             }
         }
     }
+
+    /**
+     * Indexed container, so the table requests only the rows of the visible range from a lazy datasource
+     * instead of iterating all the item ids.
+     */
+    protected class LazyTableDsWrapper extends SortableTableDsWrapper implements Container.Indexed {
+
+        public LazyTableDsWrapper(CollectionDatasource datasource, Collection<MetaPropertyPath> properties) {
+            super(datasource, properties);
+        }
+
+        @Override
+        public int indexOfId(Object itemId) {
+            CollectionDsHelper.autoRefreshInvalid(datasource, autoRefresh);
+            //noinspection unchecked
+            return ((CollectionDatasource.Indexed) datasource).indexOfId(itemId);
+        }
+
+        @Override
+        public Object getIdByIndex(int index) {
+            CollectionDsHelper.autoRefreshInvalid(datasource, autoRefresh);
+            return ((CollectionDatasource.Indexed) datasource).getIdByIndex(index);
+        }
+
+        @Override
+        public List getItemIds(int startIndex, int numberOfItems) {
+            CollectionDsHelper.autoRefreshInvalid(datasource, autoRefresh);
+            return ((CollectionDatasource.Indexed) datasource).getItemIds(startIndex, numberOfItems);
+        }
+
+        @Override
+        public Object addItemAt(int index) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Item addItemAt(int index, Object newItemId) throws UnsupportedOperationException {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
\ No newline at end of file
@@ -121,7 +121,20 @@ public class CollectionDsWrapper implements Container, Container.ItemSetChangeNo
         return item == null ? null : getItemWrapper(item);
     }
 
-    protected Map<Object, ItemWrapper> itemsCache = new HashMap<>();
+    /**
+     * Max number of item wrappers kept by the container. A table requests only the visible rows and its cache rows,
+     * so wrappers of the least recently used items are dropped and created again if requested.
+     */
+    protected static final int ITEMS_CACHE_SIZE = 1000;
+
+    protected Map<Object, ItemWrapper> itemsCache = new LinkedHashMap<Object, ItemWrapper>(16, 0.75f, true) {
+        private static final long serialVersionUID = 5765457281546389523L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, ItemWrapper> eldest) {
+            return size() > ITEMS_CACHE_SIZE;
+        }
+    };
 
     protected Item getItemWrapper(Object item) {
         ItemWrapper wrapper = itemsCache.get(item);
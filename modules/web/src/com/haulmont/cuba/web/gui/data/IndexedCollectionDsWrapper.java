@@ -190,7 +190,17 @@ public class IndexedCollectionDsWrapper
         return item == null ? null : getItemWrapper(item);
     }
 
-    protected Map<Object, ItemWrapper> itemsCache = new HashMap<>();
+    // the grid requests wrappers only for the rows sent to the client, older ones are created again on demand
+    protected static final int ITEMS_CACHE_SIZE = 1000;
+
+    protected Map<Object, ItemWrapper> itemsCache = new LinkedHashMap<Object, ItemWrapper>(16, 0.75f, true) {
+        private static final long serialVersionUID = -2127584390716493350L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Object, ItemWrapper> eldest) {
+            return size() > ITEMS_CACHE_SIZE;
+        }
+    };
 
     protected Item getItemWrapper(Object item) {
         return itemsCache.computeIfAbsent(item, k -> createItemWrapper(item));
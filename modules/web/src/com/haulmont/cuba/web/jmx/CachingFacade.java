@@ -22,6 +22,7 @@ import com.haulmont.cuba.core.global.Messages;
 import com.haulmont.cuba.core.global.Scripting;
 import com.haulmont.cuba.core.global.ViewRepository;
 import com.haulmont.cuba.core.sys.AbstractViewRepository;
+import com.haulmont.cuba.core.sys.NumberIdCache;
 import com.haulmont.cuba.gui.config.MenuConfig;
 import com.haulmont.cuba.gui.config.WindowConfig;
 import org.slf4j.Logger;
@@ -53,6 +54,9 @@ public class CachingFacade implements CachingFacadeMBean {
     @Inject
     private MenuConfig menuConfig;
 
+    @Inject
+    private NumberIdCache numberIdCache;
+
     @Override
     public int getMessagesCacheSize() {
         return messages.getCacheSize();
@@ -90,4 +94,24 @@ public class CachingFacade implements CachingFacadeMBean {
     public void clearMenuConfig() {
         menuConfig.reset();
     }
+
+    @Override
+    public long getNumberIdCacheRefillCount() {
+        return numberIdCache.getRefillCount();
+    }
+
+    @Override
+    public double getNumberIdCacheAverageRefillTime() {
+        return numberIdCache.getAverageRefillTime();
+    }
+
+    @Override
+    public double getNumberIdCacheMaxRefillTime() {
+        return numberIdCache.getMaxRefillTime();
+    }
+
+    @Override
+    public long getNumberIdCacheWaitCount() {
+        return numberIdCache.getWaitCount();
+    }
 }
\ No newline at end of file
@@ -32,4 +32,12 @@ public interface CachingFacadeMBean {
     void clearWindowConfig();
 
     void clearMenuConfig();
+
+    long getNumberIdCacheRefillCount();
+
+    double getNumberIdCacheAverageRefillTime();
+
+    double getNumberIdCacheMaxRefillTime();
+
+    long getNumberIdCacheWaitCount();
 }
\ No newline at end of file